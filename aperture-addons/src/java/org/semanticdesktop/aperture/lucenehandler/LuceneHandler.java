@@ -8,6 +8,13 @@ package org.semanticdesktop.aperture.lucenehandler;
 
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
@@ -15,17 +22,13 @@ import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.DateTools.Resolution;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
 import org.ontoware.aifbcommons.collection.ClosableIterator;
-import org.ontoware.rdf2go.RDF2Go;
-import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.node.DatatypeLiteral;
 import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.model.node.Variable;
-import org.ontoware.rdf2go.model.node.impl.URIImpl;
 import org.ontoware.rdf2go.util.RDFTool;
 import org.ontoware.rdf2go.vocabulary.XSD;
 import org.semanticdesktop.aperture.accessor.DataObject;
@@ -34,7 +37,7 @@ import org.semanticdesktop.aperture.crawler.CrawlerHandler;
 import org.semanticdesktop.aperture.crawler.ExitCode;
 import org.semanticdesktop.aperture.crawler.base.CrawlerHandlerBase;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
-import org.semanticdesktop.aperture.rdf.impl.RDFContainerImpl;
+import org.semanticdesktop.aperture.rdf.impl.BufferedRDFContainer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,11 +52,40 @@ import org.slf4j.LoggerFactory;
  * The updater enhances the documents returned by the crawler by adding
  * information about the crawler to the documents.
  * 
+ * <p>
+ * All changes of a crawl go through a single IndexWriter that stays open
+ * until the crawl stops. Changed objects replace their old version with
+ * IndexWriter.updateDocument and removed objects are deleted by term; Lucene
+ * buffers these deletes and applies them in batches. The binary content of
+ * an object is processed on the crawler thread, the Document is built and
+ * written by a pool of worker threads. The pool has a bounded queue, when it
+ * is full the crawler thread builds the Document itself.
+ * 
+ * <p>
+ * The writer is flushed after a configurable number of changes and whenever
+ * its RAM buffer grows beyond a configurable size. The index is only
+ * optimized at the end of a crawl when this is requested explicitly.
+ * 
  * @author Sauermann
  */
 
 public class LuceneHandler extends CrawlerHandlerBase implements CrawlerHandler {
 
+	/**
+	 * The default number of changes after which the writer is flushed.
+	 */
+	public static final int DEFAULT_COMMIT_INTERVAL = 1000;
+
+	/**
+	 * The default size of the RAM buffer of the writer, in bytes.
+	 */
+	public static final long DEFAULT_RAM_BUFFER_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * The number of Documents that may wait for a worker thread, per thread.
+	 */
+	private static final int QUEUE_SIZE_PER_THREAD = 16;
+
 	/**
 	 * java logger for simplicity
 	 */
@@ -64,6 +96,24 @@ public class LuceneHandler extends CrawlerHandlerBase implements CrawlerHandler
 	String indexDir;
 	Analyzer analyzer;
 
+	/**
+	 * True when the index has been created by the current crawl, new
+	 * Documents can then be added without deleting an older version first.
+	 */
+	private boolean indexCreated;
+
+	private int commitInterval = DEFAULT_COMMIT_INTERVAL;
+
+	private long ramBufferSize = DEFAULT_RAM_BUFFER_SIZE;
+
+	private int workerThreads = Runtime.getRuntime().availableProcessors();
+
+	private boolean optimizeOnStop = false;
+
+	private ThreadPoolExecutor workers;
+
+	private final AtomicInteger uncommittedChanges = new AtomicInteger();
+
 	
 	public void init(String indexDir, Analyzer analyzer)
 	{
@@ -76,6 +126,67 @@ public class LuceneHandler extends CrawlerHandlerBase implements CrawlerHandler
 		init(indexDir, new StandardAnalyzer());
 	}
 
+	/**
+	 * Sets the number of changes (added, updated or deleted Documents) after
+	 * which the writer is flushed to the index directory.
+	 * 
+	 * @param commitInterval the number of changes, at least 1
+	 */
+	public void setCommitInterval(int commitInterval) {
+		if (commitInterval < 1) {
+			throw new IllegalArgumentException("commitInterval should be at least 1: " + commitInterval);
+		}
+		this.commitInterval = commitInterval;
+	}
+
+	public int getCommitInterval() {
+		return commitInterval;
+	}
+
+	/**
+	 * Sets the number of bytes the writer may buffer in RAM. The writer is
+	 * flushed as soon as its buffered Documents exceed this size.
+	 * 
+	 * @param ramBufferSize the size of the RAM buffer in bytes
+	 */
+	public void setRamBufferSize(long ramBufferSize) {
+		this.ramBufferSize = ramBufferSize;
+	}
+
+	public long getRamBufferSize() {
+		return ramBufferSize;
+	}
+
+	/**
+	 * Sets the number of threads that build and write Documents. Zero means
+	 * that the Documents are built on the crawler thread. This setting takes
+	 * effect at the start of the next crawl.
+	 * 
+	 * @param workerThreads the number of worker threads
+	 */
+	public void setWorkerThreads(int workerThreads) {
+		if (workerThreads < 0) {
+			throw new IllegalArgumentException("workerThreads should not be negative: " + workerThreads);
+		}
+		this.workerThreads = workerThreads;
+	}
+
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+
+	/**
+	 * Sets whether the whole index is optimized when a crawl stops. This is
+	 * off by default, as optimizing rewrites the complete index.
+	 */
+	public void setOptimizeOnStop(boolean optimizeOnStop) {
+		this.optimizeOnStop = optimizeOnStop;
+	}
+
+	public boolean isOptimizeOnStop() {
+		return optimizeOnStop;
+	}
+
 
 	@Override
 	public void clearFinished(Crawler crawler, ExitCode exitCode) {
@@ -94,29 +205,37 @@ public class LuceneHandler extends CrawlerHandlerBase implements CrawlerHandler
 	public void crawlStarted(Crawler crawler) {
 		super.crawlStarted(crawler);
 //		 check Lucene
+		indexCreated = false;
 		try {
 			writer = new IndexWriter(indexDir, analyzer, false);
 		} catch (Exception y) {
 			logger.info("creating new index");
 			try {
 				writer = new IndexWriter(indexDir, analyzer, true);
+				indexCreated = true;
 			} catch (Exception e) {
 				logger.error("cannot create store, this is a problem: "+e, e);
 				throw new RuntimeException(e);
 			}
 		} 
-		// higher merge factor, menasit buffers 50 docs in ram
-		writer.setMergeFactor(3);
-		// take 1000 resource in mind before writing
-		//writer.setMinMergeDocs(1000);
+		// flushing is driven by the RAM buffer and the commit interval
+		writer.setMaxBufferedDocs(Math.max(2, commitInterval));
+		writer.setMaxBufferedDeleteTerms(commitInterval);
+		uncommittedChanges.set(0);
 
+		if (workerThreads > 0) {
+			workers = new ThreadPoolExecutor(workerThreads, workerThreads, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(workerThreads * QUEUE_SIZE_PER_THREAD),
+				new WorkerThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+		}
 	}
 
 
 	@Override
 	public void objectRemoved(Crawler dataCrawler, String url) {
 		try {
-			removeUri(new URIImpl(url));
+			writer.deleteDocuments(new Term("uri", url));
+			changeWritten();
 		} catch (IOException e) {
 			logger.warn("Error removing object: "+e, e);
 		}
@@ -124,18 +243,31 @@ public class LuceneHandler extends CrawlerHandlerBase implements CrawlerHandler
 
 
 	public RDFContainer getRDFContainer(URI uri) {
-		Model m = RDF2Go.getModelFactory().createModel();
-		m.open();
-		return new RDFContainerImpl(m, uri);
+		return new BufferedRDFContainer(uri);
 	}
 
 
 	public void crawlStopped(Crawler crawler, ExitCode exitCode) {
 
+		if (workers != null) {
+			workers.shutdown();
+			try {
+				while (!workers.awaitTermination(60L, TimeUnit.SECONDS)) {
+					logger.info("waiting for " + workers.getQueue().size() + " documents to be written");
+				}
+			} catch (InterruptedException e) {
+				logger.warn("interrupted while waiting for the documents to be written", e);
+				Thread.currentThread().interrupt();
+			}
+			workers = null;
+		}
+
 		// close writer
 		try {
-		writer.optimize();
-		writer.close();
+			if (optimizeOnStop) {
+				writer.optimize();
+			}
+			writer.close();
 		} catch (Exception x)
 		{
 			logger.warn("cannot store data: "+x,x);
@@ -144,54 +276,83 @@ public class LuceneHandler extends CrawlerHandlerBase implements CrawlerHandler
 	}
 
 	public void objectNew(Crawler crawler, DataObject object) {
-		// extract full text and more
-		try {
-			processBinary(crawler,object);
-		} catch (Exception e) {
-			logger.warn("Cannot process "+object+": "+e,e);
-		} 
-		
-		Document doc = objectToDocument(object);
-		if (doc != null)
-			try {
-				logger.debug("adding document to index: " + object.getID());
-				writer.addDocument(doc);
-			} catch (IOException e1) {
-				logger.warn("error storing doc: "+e1, e1);
-			}
-		object.dispose();
+		// a new object may still be in the index when the access data was lost
+		process(crawler, object, !indexCreated);
 	}
 
 	public void objectChanged(Crawler crawler, DataObject object) {
+		process(crawler, object, true);
+	}
+
+	/**
+	 * Extracts the contents of the object on the calling thread, then hands
+	 * the object to a worker that builds its Document and writes it.
+	 */
+	private void process(Crawler crawler, final DataObject object, final boolean replace) {
 		// extract full text and more
 		try {
 			processBinary(crawler,object);
 		} catch (Exception e) {
 			logger.warn("Cannot process "+object+": "+e,e);
 		} 
-		
-		Document doc = objectToDocument(object);
-		
-		// remove old
+
+		Runnable task = new Runnable() {
+
+			public void run() {
+				try {
+					writeDocument(object, replace);
+				}
+				finally {
+					object.dispose();
+				}
+			}
+		};
+
+		if (workers == null) {
+			task.run();
+		}
+		else {
+			workers.execute(task);
+		}
+	}
+
+	private void writeDocument(DataObject object, boolean replace) {
+		Document doc;
 		try {
-			removeUri(object.getID());
-		} catch (IOException e) {
-			logger.warn("cannot remove old version of "+object.getID()+": "+e, e);
+			doc = objectToDocument(object);
+		} catch (RuntimeException e) {
+			logger.warn("Cannot create document for "+object.getID()+": "+e, e);
+			return;
 		}
-		if (doc != null)
-			try {
-				logger.debug("adding document to index: " + object.getID());
+
+		try {
+			logger.debug("adding document to index: " + object.getID());
+			if (replace) {
+				writer.updateDocument(new Term("uri", object.getID().toString()), doc);
+			}
+			else {
 				writer.addDocument(doc);
-			} catch (IOException e1) {
-				logger.warn("Error storing doc: "+e1, e1);
 			}
-		object.dispose();
+			changeWritten();
+		} catch (IOException e1) {
+			logger.warn("Error storing doc: "+e1, e1);
+		}
 	}
-	
-	private void removeUri(URI id) throws IOException {
-		IndexReader indexreader = IndexReader.open(indexDir);
-		indexreader.deleteDocuments(new Term("uri", id.toString()));
-		indexreader.close();
+
+	/**
+	 * Flushes the writer when the commit interval has been reached or when
+	 * its RAM buffer is full.
+	 */
+	private void changeWritten() throws IOException {
+		int changes = uncommittedChanges.incrementAndGet();
+		if (changes >= commitInterval || writer.ramSizeInBytes() >= ramBufferSize) {
+			synchronized (uncommittedChanges) {
+				if (uncommittedChanges.get() > 0) {
+					writer.flush();
+					uncommittedChanges.set(0);
+				}
+			}
+		}
 	}
 
 	/**
@@ -206,9 +367,8 @@ public class LuceneHandler extends CrawlerHandlerBase implements CrawlerHandler
 		doc.add(new Field("uri", meta.getDescribedUri().toString(), Field.Store.YES, Field.Index.UN_TOKENIZED));
 		// iterate through all fields
 		
-		for (ClosableIterator<? extends Statement> i = meta.getModel().findStatements(meta.getDescribedUri(), Variable.ANY, Variable.ANY); i.hasNext(); )
+		for (Statement s : getStatements(meta))
 		{
-			Statement s = i.next();
 			if (s.getObject() instanceof DatatypeLiteral) {
 				DatatypeLiteral l = (DatatypeLiteral) s.getObject();
 				if (l.getDatatype().equals(XSD._dateTime)){
@@ -233,6 +393,41 @@ public class LuceneHandler extends CrawlerHandlerBase implements CrawlerHandler
 		return doc;
 	}
 
+	/**
+	 * Returns the statements about the described URI of the container. The
+	 * statements of a BufferedRDFContainer are read without creating a Model.
+	 */
+	private List<Statement> getStatements(RDFContainer meta) {
+		List<Statement> result = new ArrayList<Statement>();
+		if (meta instanceof BufferedRDFContainer) {
+			for (Statement s : ((BufferedRDFContainer) meta).getStatements()) {
+				if (s.getSubject().equals(meta.getDescribedUri())) {
+					result.add(s);
+				}
+			}
+		}
+		else {
+			ClosableIterator<? extends Statement> i = meta.getModel().findStatements(meta.getDescribedUri(), Variable.ANY, Variable.ANY);
+			try {
+				while (i.hasNext()) {
+					result.add(i.next());
+				}
+			}
+			finally {
+				i.close();
+			}
+		}
+		return result;
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
 
+		private final AtomicInteger threadCount = new AtomicInteger();
 
-}
\ No newline at end of file
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "LuceneHandler-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ * 
+ * Licensed under the Academic Free License version 3.0.
+ */
+package org.semanticdesktop.aperture.lucenehandler;
+
+import java.io.File;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.ontoware.rdf2go.vocabulary.RDFS;
+import org.semanticdesktop.aperture.ApertureTestBase;
+import org.semanticdesktop.aperture.accessor.base.DataObjectBase;
+import org.semanticdesktop.aperture.crawler.ExitCode;
+import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.util.FileUtil;
+
+/**
+ * Tests the LuceneHandler on an index in a temporary folder.
+ */
+public class TestLuceneHandler extends ApertureTestBase {
+
+    private File indexDir;
+
+    public void setUp() throws Exception {
+        indexDir = File.createTempFile("lucenehandler", "");
+        indexDir.delete();
+        indexDir.mkdirs();
+    }
+
+    public void tearDown() throws Exception {
+        FileUtil.deltree(indexDir);
+    }
+
+    public void testIncrementalCrawls() throws Exception {
+        LuceneHandler handler = createHandler();
+        handler.crawlStarted(null);
+        for (int i = 0; i < 50; i++) {
+            handler.objectNew(null, createObject(handler, i, "first"));
+        }
+        handler.crawlStopped(null, ExitCode.COMPLETED);
+        assertEquals(50, countDocuments());
+
+        handler = createHandler();
+        handler.crawlStarted(null);
+        handler.objectChanged(null, createObject(handler, 3, "second"));
+        handler.objectNew(null, createObject(handler, 4, "second"));
+        handler.objectNew(null, createObject(handler, 50, "second"));
+        handler.objectRemoved(null, "uri:test:7");
+        handler.crawlStopped(null, ExitCode.COMPLETED);
+
+        IndexReader reader = IndexReader.open(indexDir);
+        try {
+            assertEquals(50, reader.numDocs());
+            assertEquals(0, countDocuments(reader, "uri:test:7"));
+            assertEquals(1, countDocuments(reader, "uri:test:3"));
+            assertEquals(1, countDocuments(reader, "uri:test:4"));
+            assertEquals(1, countDocuments(reader, "uri:test:50"));
+            for (int i = 0; i < reader.maxDoc(); i++) {
+                if (!reader.isDeleted(i)) {
+                    Document doc = reader.document(i);
+                    if (doc.get("uri").equals("uri:test:3")) {
+                        assertEquals("second", doc.get(RDFS.label.toString()));
+                    }
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private LuceneHandler createHandler() {
+        LuceneHandler handler = new LuceneHandler();
+        handler.setExtractingContents(false);
+        handler.setWorkerThreads(2);
+        handler.setCommitInterval(7);
+        handler.init(indexDir.getAbsolutePath());
+        return handler;
+    }
+
+    private DataObjectBase createObject(LuceneHandler handler, int index, String label) {
+        URI uri = new URIImpl("uri:test:" + index);
+        RDFContainer metadata = handler.getRDFContainer(uri);
+        metadata.put(RDFS.label, label);
+        return new DataObjectBase(uri, null, metadata);
+    }
+
+    private int countDocuments(IndexReader reader, String uri) throws Exception {
+        // docFreq also counts deleted documents
+        TermDocs termDocs = reader.termDocs(new Term("uri", uri));
+        try {
+            int result = 0;
+            while (termDocs.next()) {
+                result++;
+            }
+            return result;
+        }
+        finally {
+            termDocs.close();
+        }
+    }
+
+    private int countDocuments() throws Exception {
+        IndexReader reader = IndexReader.open(indexDir);
+        try {
+            return reader.numDocs();
+        }
+        finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2005 Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ * 
+ * Licensed under the Academic Free License version 3.0.
+ */
+package org.semanticdesktop.aperture.servlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Holds the content of a fetched or uploaded document, so that it can be read several times. Content up to a
+ * given size is kept in memory, larger content is spooled to a temporary file. A SHA-1 digest of the content
+ * is computed while it is spooled.
+ */
+public class ContentSpool {
+
+    private byte[] memory;
+
+    private int memoryLength;
+
+    private File file;
+
+    private long length;
+
+    private String digest;
+
+    /**
+     * Reads the stream into a new ContentSpool. The stream is not closed.
+     * 
+     * @param stream the content
+     * @param memoryLimit the number of bytes that are kept in memory, larger content is written to a
+     *            temporary file
+     * @param maxLength the maximum number of bytes that are accepted
+     * @throws IOException when the stream cannot be read, or when it is longer than maxLength
+     */
+    public ContentSpool(InputStream stream, int memoryLimit, long maxLength) throws IOException {
+	MessageDigest messageDigest;
+	try {
+	    messageDigest = MessageDigest.getInstance("SHA-1");
+	} catch (NoSuchAlgorithmException e) {
+	    throw new RuntimeException(e);
+	}
+
+	memory = new byte[Math.min(memoryLimit, 8192)];
+	OutputStream fileStream = null;
+	byte[] chunk = new byte[8192];
+	try {
+	    int read;
+	    while ((read = stream.read(chunk)) != -1) {
+		length += read;
+		if (length > maxLength) {
+		    throw new IOException("Content is longer than " + maxLength + " bytes");
+		}
+		messageDigest.update(chunk, 0, read);
+
+		if (fileStream == null && memoryLength + read <= memoryLimit) {
+		    if (memoryLength + read > memory.length) {
+			byte[] newMemory = new byte[Math.min(memoryLimit, Math.max(memory.length * 2, memoryLength + read))];
+			System.arraycopy(memory, 0, newMemory, 0, memoryLength);
+			memory = newMemory;
+		    }
+		    System.arraycopy(chunk, 0, memory, memoryLength, read);
+		    memoryLength += read;
+		} else {
+		    if (fileStream == null) {
+			// the content does not fit in memory, move it to a file
+			file = File.createTempFile("fileinspector", ".tmp");
+			fileStream = new FileOutputStream(file);
+			fileStream.write(memory, 0, memoryLength);
+			memory = null;
+			memoryLength = 0;
+		    }
+		    fileStream.write(chunk, 0, read);
+		}
+	    }
+	} catch (IOException e) {
+	    if (fileStream != null) {
+		fileStream.close();
+		fileStream = null;
+	    }
+	    dispose();
+	    throw e;
+	} finally {
+	    if (fileStream != null) {
+		fileStream.close();
+	    }
+	}
+
+	digest = toHex(messageDigest.digest());
+    }
+
+    /**
+     * Returns a new stream on the content. Every invocation returns a stream that starts at the beginning.
+     */
+    public InputStream openStream() throws IOException {
+	if (file == null) {
+	    return new ByteArrayInputStream(memory, 0, memoryLength);
+	} else {
+	    return new BufferedInputStream(new FileInputStream(file));
+	}
+    }
+
+    /**
+     * Returns the length of the content in bytes.
+     */
+    public long getLength() {
+	return length;
+    }
+
+    /**
+     * Returns the hexadecimal SHA-1 digest of the content.
+     */
+    public String getDigest() {
+	return digest;
+    }
+
+    /**
+     * Returns whether the content has been spooled to a temporary file.
+     */
+    public boolean isOnDisk() {
+	return file != null;
+    }
+
+    /**
+     * Releases the memory and deletes the temporary file, if any.
+     */
+    public void dispose() {
+	memory = null;
+	if (file != null) {
+	    file.delete();
+	    file = null;
+	}
+    }
+
+    private static String toHex(byte[] bytes) {
+	StringBuilder builder = new StringBuilder(bytes.length * 2);
+	for (byte b : bytes) {
+	    builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+	    builder.append(Character.forDigit(b & 0xf, 16));
+	}
+	return builder.toString();
+    }
+}
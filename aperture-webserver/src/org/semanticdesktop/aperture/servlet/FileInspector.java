@@ -8,15 +8,24 @@ package org.semanticdesktop.aperture.servlet;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -28,8 +37,11 @@ import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.FileItemFactory;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.ontoware.rdf2go.model.Syntax;
 import org.semanticdesktop.aperture.extractor.Extractor;
@@ -39,15 +51,44 @@ import org.semanticdesktop.aperture.extractor.impl.DefaultExtractorRegistry;
 import org.semanticdesktop.aperture.mime.identifier.MimeTypeIdentifier;
 import org.semanticdesktop.aperture.mime.identifier.magic.MagicMimeTypeIdentifier;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
-import org.semanticdesktop.aperture.rdf.impl.RDFContainerFactoryImpl;
+import org.semanticdesktop.aperture.rdf.impl.BufferedRDFContainerFactory;
 import org.semanticdesktop.aperture.util.IOUtil;
-import org.semanticdesktop.aperture.vocabulary.DATA;
+import org.semanticdesktop.aperture.vocabulary.NIE;
 
 /**
  * Servlet implementation class for Servlet: FileInspector
  * author: Benjamin Horak
+ * 
+ * <p>
+ * The document at a URL is fetched once and held in a {@link ContentSpool}. MIME type identification, link
+ * extraction and the inspection itself all read from that spool. Results are kept in an LRU cache keyed by
+ * URL. A cached result is reused when the server reports that the ETag is unchanged, or when the fetched
+ * content has the same digest. At most a fixed number of inspections run concurrently, requests that cannot
+ * even be queued are answered with 503 Service Unavailable.
+ * 
+ * <p>
+ * The following init parameters are supported: maxInspections (default: number of processors),
+ * maxQueuedInspections (default: 4 per inspection thread), cacheSize (default: 256 results), memoryBufferSize
+ * (default: 1 MB, larger documents are spooled to disk) and maxContentLength (default: 64 MB).
  */
 public class FileInspector extends javax.servlet.http.HttpServlet implements javax.servlet.Servlet {
+
+    private int memoryBufferSize = 1024 * 1024;
+
+    private long maxContentLength = 64L * 1024 * 1024;
+
+    private HttpClient httpClient;
+
+    private MultiThreadedHttpConnectionManager connectionManager;
+
+    private ThreadPoolExecutor inspectionPool;
+
+    private Map<String, CachedResult> cache;
+
+    private MimeTypeIdentifier identifier;
+
+    private ExtractorRegistry extractorRegistry;
+
     /*
          * (non-Java-doc)
          * 
@@ -57,56 +98,176 @@ public class FileInspector extends javax.servlet.http.HttpServlet implements jav
 	super();
     }
 
-    public String getMimeType(String url) throws Exception {
-	HttpClient client = new HttpClient();
-	GetMethod get = new GetMethod(url);
-	get.setFollowRedirects(true);
-	int httpResult = client.executeMethod(get);
-	if (httpResult == 200) {
-	    return getMimeType(get.getResponseBodyAsStream(), url);
+    @Override
+    public void init() throws ServletException {
+	int maxInspections = getIntParameter("maxInspections", Runtime.getRuntime().availableProcessors());
+	int maxQueuedInspections = getIntParameter("maxQueuedInspections", maxInspections * 4);
+	final int cacheSize = getIntParameter("cacheSize", 256);
+	memoryBufferSize = getIntParameter("memoryBufferSize", memoryBufferSize);
+	maxContentLength = getLongParameter("maxContentLength", maxContentLength);
+	if (memoryBufferSize < 0) {
+	    throw new ServletException("Invalid value for init parameter memoryBufferSize: " + memoryBufferSize);
+	}
+	if (maxContentLength < 0) {
+	    throw new ServletException("Invalid value for init parameter maxContentLength: " + maxContentLength);
 	}
-	throw new HttpException("Invalid result: HTTP code is " + httpResult);
+
+	connectionManager = new MultiThreadedHttpConnectionManager();
+	connectionManager.getParams().setDefaultMaxConnectionsPerHost(maxInspections);
+	connectionManager.getParams().setMaxTotalConnections(maxInspections * 2);
+	httpClient = new HttpClient(connectionManager);
+
+	inspectionPool = new ThreadPoolExecutor(maxInspections, maxInspections, 60L, TimeUnit.SECONDS,
+		new ArrayBlockingQueue<Runnable>(Math.max(1, maxQueuedInspections)));
+
+	cache = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+
+	    protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+		return size() > cacheSize;
+	    }
+	};
+
+	identifier = new MagicMimeTypeIdentifier();
+	extractorRegistry = new DefaultExtractorRegistry();
     }
 
-    public List<String> extractHyperlinks(String url) throws Exception {
-	HttpClient client = new HttpClient();
-	GetMethod get = new GetMethod(url);
-	get.setFollowRedirects(true);
-	int httpResult = client.executeMethod(get);
-	if (httpResult == 200) {
-	    return extractHyperlinks(get.getResponseBodyAsStream());
+    @Override
+    public void destroy() {
+	inspectionPool.shutdownNow();
+	connectionManager.shutdown();
+	super.destroy();
+    }
+
+    private int getIntParameter(String name, int defaultValue) throws ServletException {
+	String value = getInitParameter(name);
+	if (value == null) {
+	    return defaultValue;
+	}
+	try {
+	    return Integer.parseInt(value.trim());
+	} catch (NumberFormatException e) {
+	    throw new ServletException("Invalid value for init parameter " + name + ": " + value);
 	}
-	throw new HttpException("Invalid result: HTTP code is " + httpResult);
     }
 
-    public String inspectFile(String url, String mimeType, List<String> links) throws Exception {
-	HttpClient client = new HttpClient();
-	GetMethod get = new GetMethod(url);
+    private long getLongParameter(String name, long defaultValue) throws ServletException {
+	String value = getInitParameter(name);
+	if (value == null) {
+	    return defaultValue;
+	}
+	try {
+	    return Long.parseLong(value.trim());
+	} catch (NumberFormatException e) {
+	    throw new ServletException("Invalid value for init parameter " + name + ": " + value);
+	}
+    }
+
+    /**
+     * Fetches the document at the specified URL and inspects it, unless a cached result is still valid.
+     */
+    public String inspectUrl(String url) throws Exception {
+	CachedResult cached;
+	synchronized (cache) {
+	    cached = cache.get(url);
+	}
+
+	FetchResponse response = fetch(url, cached == null ? null : cached.etag);
+	ContentSpool spool = null;
+	try {
+	    int httpResult = response.getStatus();
+	    if (httpResult == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+		return cached.rdf;
+	    }
+	    if (httpResult != HttpStatus.SC_OK) {
+		throw new HttpException("Invalid result: HTTP code is " + httpResult);
+	    }
+
+	    String etag = response.getETag();
+	    if (cached != null && etag != null && etag.equals(cached.etag)) {
+		return cached.rdf;
+	    }
+
+	    InputStream body = response.getBody();
+	    spool = new ContentSpool(body == null ? new ByteArrayInputStream(new byte[0]) : body,
+		    memoryBufferSize, maxContentLength);
+	    if (cached != null && spool.getDigest().equals(cached.digest)) {
+		cached = new CachedResult(etag, cached.digest, cached.rdf);
+	    } else {
+		cached = new CachedResult(etag, spool.getDigest(), inspect(spool, url));
+	    }
+	    synchronized (cache) {
+		cache.put(url, cached);
+	    }
+	    return cached.rdf;
+	} finally {
+	    response.release();
+	    if (spool != null) {
+		spool.dispose();
+	    }
+	}
+    }
+
+    /**
+     * Executes a GET request for the specified URL. The ETag of a cached result, if any, is sent in an
+     * If-None-Match header.
+     */
+    FetchResponse fetch(String url, String etag) throws IOException {
+	final GetMethod get = new GetMethod(url);
 	get.setFollowRedirects(true);
-	int httpResult = client.executeMethod(get);
-	if (httpResult == 200) {
-	    return inspectFile(get.getResponseBodyAsStream(), url, mimeType, links);
+	if (etag != null) {
+	    get.setRequestHeader("If-None-Match", etag);
+	}
+
+	try {
+	    int status = httpClient.executeMethod(get);
+	    Header etagHeader = get.getResponseHeader("ETag");
+	    return new FetchResponse(status, etagHeader == null ? null : etagHeader.getValue(), get
+		    .getResponseBodyAsStream()) {
+
+		public void release() {
+		    get.releaseConnection();
+		}
+	    };
+	} catch (IOException e) {
+	    get.releaseConnection();
+	    throw e;
+	}
+    }
+
+    /**
+     * Runs the inspection of a URL in the inspection pool and writes the result to the response.
+     */
+    private void respond(final String url, HttpServletResponse response) throws Exception {
+	Future<String> future;
+	try {
+	    future = inspectionPool.submit(new Callable<String>() {
+
+		public String call() throws Exception {
+		    return inspectUrl(url);
+		}
+	    });
+	} catch (RejectedExecutionException e) {
+	    response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many inspections in progress");
+	    return;
+	}
+
+	String rdf;
+	try {
+	    rdf = future.get();
+	} catch (ExecutionException e) {
+	    Throwable cause = e.getCause();
+	    throw cause instanceof Exception ? (Exception) cause : e;
 	}
-	throw new HttpException("Invalid result: HTTP code is " + httpResult);
+	response.getOutputStream().print(rdf);
     }
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-	String mimeType = null;
 	String urls = request.getParameter("url");
-	List<String> links = new ArrayList<String>();
-	String rdf;
 	try {
 	    if (urls != null) {
 		urls = urls.replace(" ", "%20");
-		mimeType = getMimeType(urls);
-
-		if (mimeType.equals("text/html")) {
-		    links = extractHyperlinks(urls);
-		}
-
-		rdf = inspectFile(urls, mimeType, links);
-		response.getOutputStream().print(rdf);
+		respond(urls, response);
 		return;
 	    }
 	} catch (Exception e) {
@@ -122,26 +283,12 @@ public class FileInspector extends javax.servlet.http.HttpServlet implements jav
          */
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException,
 	    IOException {
-	String rdf;
-	List<String> links = new ArrayList<String>();
-
 	try {
-	    String mimeType = null;
 	    String urls = request.getParameter("url");
 	    if (urls != null) {
 		urls = urls.replace(" ", "%20");
-		mimeType = getMimeType(urls);
-
-		if (mimeType != null && mimeType.equals("text/html")) {
-		    links = extractHyperlinks(urls);
-		}
-
-		rdf = inspectFile(urls, mimeType, links);
-		response.getOutputStream().print(rdf);
+		respond(urls, response);
 		return;
-		// } else {
-		// throw new ServletException(get.getResponseBodyAsString());
-		// }
 	    }
 
 	    // Create a factory for disk-based file items
@@ -153,16 +300,37 @@ public class FileInspector extends javax.servlet.http.HttpServlet implements jav
 	    // Parse the request
 	    List<FileItem> /* FileItem */items = upload.parseRequest(request);
 
-	    for (FileItem fileItem : items) {
-		File uploadedFile = File.createTempFile(fileItem.getName(), ".tmp");
-		fileItem.write(uploadedFile);
-		mimeType = getMimeType(new FileInputStream(uploadedFile), uploadedFile.toURI().toString());
-		if (mimeType != null && mimeType.equals("text/html")) {
-		    links = extractHyperlinks(new FileInputStream(uploadedFile));
+	    for (final FileItem fileItem : items) {
+		Future<String> future;
+		try {
+		    future = inspectionPool.submit(new Callable<String>() {
+
+			public String call() throws Exception {
+			    InputStream stream = fileItem.getInputStream();
+			    ContentSpool spool = null;
+			    try {
+				spool = new ContentSpool(stream, memoryBufferSize, maxContentLength);
+				return inspect(spool, new File(fileItem.getName()).toURI().toString());
+			    } finally {
+				stream.close();
+				if (spool != null) {
+				    spool.dispose();
+				}
+			    }
+			}
+		    });
+		} catch (RejectedExecutionException e) {
+		    response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many inspections in progress");
+		    return;
+		}
+		try {
+		    response.getOutputStream().print(future.get());
+		} catch (ExecutionException e) {
+		    Throwable cause = e.getCause();
+		    throw cause instanceof Exception ? (Exception) cause : e;
+		} finally {
+		    fileItem.delete();
 		}
-		rdf = inspectFile(new FileInputStream(uploadedFile), uploadedFile.toURI().toString(), mimeType, links);
-		uploadedFile.delete();
-		response.getOutputStream().print(rdf);
 		return;
 	    }
 
@@ -172,13 +340,38 @@ public class FileInspector extends javax.servlet.http.HttpServlet implements jav
 	}
     }
 
-    private String getMimeType(InputStream stream, String path) throws IOException {
-	MimeTypeIdentifier identifier = new MagicMimeTypeIdentifier();
+    /**
+     * Identifies the MIME type of the spooled content, extracts its hyperlinks when it is HTML and inspects
+     * it. All three steps read the spool, the content is not fetched again.
+     */
+    String inspect(ContentSpool spool, String path) throws Exception {
+	String mimeType = getMimeType(spool, path);
+	List<String> links = new ArrayList<String>();
+	if (mimeType.equals("text/html")) {
+	    InputStream stream = spool.openStream();
+	    try {
+		links = extractHyperlinks(stream);
+	    } finally {
+		stream.close();
+	    }
+	}
+	InputStream stream = spool.openStream();
+	try {
+	    return inspectFile(stream, path, mimeType, links);
+	} finally {
+	    stream.close();
+	}
+    }
+
+    private String getMimeType(ContentSpool spool, String path) throws IOException {
 	int minimumArrayLength = identifier.getMinArrayLength();
-	int bufferSize = Math.max(minimumArrayLength, 8192);
-	BufferedInputStream buffer = new BufferedInputStream(stream, bufferSize);
-	buffer.mark(minimumArrayLength + 10); // add some for safety
-	byte[] bytes = IOUtil.readBytes(buffer, minimumArrayLength);
+	InputStream stream = spool.openStream();
+	byte[] bytes;
+	try {
+	    bytes = IOUtil.readBytes(stream, minimumArrayLength);
+	} finally {
+	    stream.close();
+	}
 
 	// let the MimeTypeIdentifier determine the MIME type of this file
 	String mimeType = identifier.identify(bytes, path, null);
@@ -249,10 +442,6 @@ public class FileInspector extends javax.servlet.http.HttpServlet implements jav
 	    throws Exception {
 
 	StringWriter stringWriter = new StringWriter();
-	// create a MimeTypeIdentifier
-
-	// create an ExtractorRegistry containing all Extractors
-	ExtractorRegistry extractorRegistry = new DefaultExtractorRegistry();
 
 	BufferedInputStream buffer = new BufferedInputStream(stream);
 
@@ -262,7 +451,7 @@ public class FileInspector extends javax.servlet.http.HttpServlet implements jav
 	} else {
 
 	    // create the RDFContainer that will hold the RDF model
-	    RDFContainerFactoryImpl containerFactory = new RDFContainerFactoryImpl();
+	    BufferedRDFContainerFactory containerFactory = new BufferedRDFContainerFactory();
 	    RDFContainer container = containerFactory.newInstance(path);
 
 	    // determine and apply an Extractor that can handle this MIME
@@ -276,9 +465,9 @@ public class FileInspector extends javax.servlet.http.HttpServlet implements jav
 		extractor.extract(container.getDescribedUri(), buffer, null, mimeType, container);
 	    }
 	    // add the MIME type as an additional statement to the RDF model
-	    container.add(DATA.mimeType, mimeType);
+	    container.add(NIE.mimeType, mimeType);
 	    for (String link : hyperlinks) {
-		container.add(DATA.keyword, link);
+		container.add(NIE.keyword, link);
 	    }
 	    // report the output to System.out
 	    container.getModel().writeTo(stringWriter, Syntax.RdfXml);
@@ -306,4 +495,62 @@ public class FileInspector extends javax.servlet.http.HttpServlet implements jav
 	out = matcher.replaceAll(replaceStr);
 	return out;
     }
+
+    /**
+     * The response to a GET request made by {@link FileInspector#fetch(String, String)}.
+     */
+    static class FetchResponse {
+
+	private final int status;
+
+	private final String etag;
+
+	private final InputStream body;
+
+	public FetchResponse(int status, String etag, InputStream body) {
+	    this.status = status;
+	    this.etag = etag;
+	    this.body = body;
+	}
+
+	public int getStatus() {
+	    return status;
+	}
+
+	public String getETag() {
+	    return etag;
+	}
+
+	/**
+	 * Returns the response body, may be null.
+	 */
+	public InputStream getBody() {
+	    return body;
+	}
+
+	/**
+	 * Releases the connection, the body cannot be read afterwards.
+	 */
+	public void release() {
+	    // nothing to release
+	}
+    }
+
+    /**
+     * A cached inspection result, with the ETag and the digest of the content it was computed from.
+     */
+    private static class CachedResult {
+
+	private final String etag;
+
+	private final String digest;
+
+	private final String rdf;
+
+	public CachedResult(String etag, String digest, String rdf) {
+	    this.etag = etag;
+	    this.digest = digest;
+	    this.rdf = rdf;
+	}
+    }
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2005 Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ * 
+ * Licensed under the Academic Free License version 3.0.
+ */
+package org.semanticdesktop.aperture.servlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.semanticdesktop.aperture.util.IOUtil;
+
+public class TestContentSpool extends TestCase {
+
+    public void testContentInMemory() throws IOException {
+	byte[] content = createContent(1000);
+	ContentSpool spool = new ContentSpool(new ByteArrayInputStream(content), 1024, 4096);
+	assertFalse(spool.isOnDisk());
+	assertEquals(1000, spool.getLength());
+	assertContent(content, spool);
+	assertContent(content, spool);
+	spool.dispose();
+    }
+
+    public void testContentOnDisk() throws IOException {
+	int tempFileCount = countTempFiles();
+	byte[] content = createContent(20000);
+	ContentSpool spool = new ContentSpool(new ByteArrayInputStream(content), 1024, 100000);
+	assertTrue(spool.isOnDisk());
+	assertEquals(20000, spool.getLength());
+	assertEquals(tempFileCount + 1, countTempFiles());
+	assertContent(content, spool);
+	assertContent(content, spool);
+
+	spool.dispose();
+	assertEquals(tempFileCount, countTempFiles());
+    }
+
+    public void testContentTooLong() throws IOException {
+	int tempFileCount = countTempFiles();
+	try {
+	    new ContentSpool(new ByteArrayInputStream(createContent(20000)), 1024, 10000);
+	    fail("expected an IOException");
+	} catch (IOException e) {
+	    // expected
+	}
+	assertEquals(tempFileCount, countTempFiles());
+
+	try {
+	    new ContentSpool(new ByteArrayInputStream(createContent(1000)), 1024, 999);
+	    fail("expected an IOException");
+	} catch (IOException e) {
+	    // expected
+	}
+    }
+
+    public void testDigest() throws IOException {
+	ContentSpool spool = new ContentSpool(new ByteArrayInputStream("abc".getBytes("US-ASCII")), 1024, 1024);
+	assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", spool.getDigest());
+	spool.dispose();
+
+	// the digest does not depend on where the content is kept
+	byte[] content = createContent(20000);
+	ContentSpool memorySpool = new ContentSpool(new ByteArrayInputStream(content), 100000, 100000);
+	ContentSpool diskSpool = new ContentSpool(new ByteArrayInputStream(content), 1024, 100000);
+	assertFalse(memorySpool.isOnDisk());
+	assertTrue(diskSpool.isOnDisk());
+	assertEquals(memorySpool.getDigest(), diskSpool.getDigest());
+	memorySpool.dispose();
+	diskSpool.dispose();
+    }
+
+    public void testEmptyContent() throws IOException {
+	ContentSpool spool = new ContentSpool(new ByteArrayInputStream(new byte[0]), 0, 0);
+	assertFalse(spool.isOnDisk());
+	assertEquals(0, spool.getLength());
+	assertContent(new byte[0], spool);
+	spool.dispose();
+    }
+
+    private byte[] createContent(int length) {
+	byte[] content = new byte[length];
+	for (int i = 0; i < length; i++) {
+	    content[i] = (byte) (i * 31 + i / 256);
+	}
+	return content;
+    }
+
+    private void assertContent(byte[] expected, ContentSpool spool) throws IOException {
+	InputStream stream = spool.openStream();
+	try {
+	    assertTrue(Arrays.equals(expected, IOUtil.readBytes(stream)));
+	} finally {
+	    stream.close();
+	}
+    }
+
+    private int countTempFiles() {
+	File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles();
+	int count = 0;
+	for (int i = 0; files != null && i < files.length; i++) {
+	    String name = files[i].getName();
+	    if (name.startsWith("fileinspector") && name.endsWith(".tmp")) {
+		count++;
+	    }
+	}
+	return count;
+    }
+}
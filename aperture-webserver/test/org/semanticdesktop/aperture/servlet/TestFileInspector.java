@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2005 Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ * 
+ * Licensed under the Academic Free License version 3.0.
+ */
+package org.semanticdesktop.aperture.servlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.httpclient.HttpException;
+import org.apache.commons.httpclient.HttpStatus;
+
+public class TestFileInspector extends TestCase {
+
+    private static final String URL = "http://example.org/document.txt";
+
+    private StubFileInspector inspector;
+
+    public void setUp() throws ServletException {
+	inspector = new StubFileInspector();
+	inspector.init(new StubServletConfig(new HashMap<String, String>()));
+    }
+
+    public void tearDown() {
+	inspector.destroy();
+    }
+
+    public void testUnchangedETag() throws Exception {
+	inspector.addResponse(HttpStatus.SC_OK, "\"v1\"", "first");
+	assertEquals("result 1", inspector.inspectUrl(URL));
+	assertNull(inspector.requestedETags.get(0));
+
+	// the server ignores the If-None-Match header, but reports the same ETag
+	inspector.addResponse(HttpStatus.SC_OK, "\"v1\"", "second");
+	assertEquals("result 1", inspector.inspectUrl(URL));
+	assertEquals("\"v1\"", inspector.requestedETags.get(1));
+	assertEquals(1, inspector.inspectionCount);
+	assertEquals(2, inspector.releaseCount);
+    }
+
+    public void testNotModified() throws Exception {
+	inspector.addResponse(HttpStatus.SC_OK, "\"v1\"", "first");
+	assertEquals("result 1", inspector.inspectUrl(URL));
+
+	inspector.addResponse(HttpStatus.SC_NOT_MODIFIED, "\"v1\"", null);
+	assertEquals("result 1", inspector.inspectUrl(URL));
+	assertEquals("\"v1\"", inspector.requestedETags.get(1));
+	assertEquals(1, inspector.inspectionCount);
+	assertEquals(2, inspector.releaseCount);
+
+	// a 304 for a URL that is not cached is an error
+	inspector.addResponse(HttpStatus.SC_NOT_MODIFIED, null, null);
+	try {
+	    inspector.inspectUrl("http://example.org/other.txt");
+	    fail("expected an HttpException");
+	} catch (HttpException e) {
+	    // expected
+	}
+	assertEquals(3, inspector.releaseCount);
+    }
+
+    public void testSameDigest() throws Exception {
+	inspector.addResponse(HttpStatus.SC_OK, null, "content");
+	assertEquals("result 1", inspector.inspectUrl(URL));
+
+	// the content is fetched again, but not inspected again
+	inspector.addResponse(HttpStatus.SC_OK, "\"v2\"", "content");
+	assertEquals("result 1", inspector.inspectUrl(URL));
+	assertEquals(1, inspector.inspectionCount);
+
+	// the ETag of the second response has been stored with the cached result
+	inspector.addResponse(HttpStatus.SC_NOT_MODIFIED, null, null);
+	assertEquals("result 1", inspector.inspectUrl(URL));
+	assertEquals("\"v2\"", inspector.requestedETags.get(2));
+
+	// changed content is inspected again
+	inspector.addResponse(HttpStatus.SC_OK, "\"v3\"", "changed content");
+	assertEquals("result 2", inspector.inspectUrl(URL));
+	assertEquals(2, inspector.inspectionCount);
+	assertEquals(4, inspector.releaseCount);
+    }
+
+    public void testInvalidParameters() {
+	Map<String, String> parameters = new HashMap<String, String>();
+	parameters.put("memoryBufferSize", "-1");
+	assertInvalid(parameters);
+
+	parameters.clear();
+	parameters.put("maxContentLength", "-1");
+	assertInvalid(parameters);
+
+	parameters.clear();
+	parameters.put("cacheSize", "many");
+	assertInvalid(parameters);
+
+	// values beyond 2 GB are accepted for the maximum content length
+	parameters.clear();
+	parameters.put("maxContentLength", "4294967296");
+	FileInspector fileInspector = new FileInspector();
+	try {
+	    fileInspector.init(new StubServletConfig(parameters));
+	} catch (ServletException e) {
+	    fail(e.getMessage());
+	}
+	fileInspector.destroy();
+    }
+
+    private void assertInvalid(Map<String, String> parameters) {
+	try {
+	    new FileInspector().init(new StubServletConfig(parameters));
+	    fail("expected a ServletException");
+	} catch (ServletException e) {
+	    // expected
+	}
+    }
+
+    /**
+     * A FileInspector that returns prepared responses instead of fetching URLs, and that returns a numbered
+     * result instead of inspecting the content.
+     */
+    private static class StubFileInspector extends FileInspector {
+
+	private LinkedList<FetchResponse> responses = new LinkedList<FetchResponse>();
+
+	private LinkedList<String> requestedETags = new LinkedList<String>();
+
+	private int inspectionCount;
+
+	private int releaseCount;
+
+	public void addResponse(int status, String etag, String body) throws IOException {
+	    ByteArrayInputStream stream = body == null ? null : new ByteArrayInputStream(body.getBytes("UTF-8"));
+	    responses.add(new FetchResponse(status, etag, stream) {
+
+		public void release() {
+		    releaseCount++;
+		}
+	    });
+	}
+
+	FetchResponse fetch(String url, String etag) {
+	    requestedETags.add(etag);
+	    return responses.removeFirst();
+	}
+
+	String inspect(ContentSpool spool, String path) {
+	    inspectionCount++;
+	    return "result " + inspectionCount;
+	}
+    }
+
+    private static class StubServletConfig implements ServletConfig {
+
+	private Map<String, String> parameters;
+
+	public StubServletConfig(Map<String, String> parameters) {
+	    this.parameters = parameters;
+	}
+
+	public String getServletName() {
+	    return "FileInspector";
+	}
+
+	public ServletContext getServletContext() {
+	    return null;
+	}
+
+	public String getInitParameter(String name) {
+	    return parameters.get(name);
+	}
+
+	public Enumeration getInitParameterNames() {
+	    return Collections.enumeration(parameters.keySet());
+	}
+    }
+}
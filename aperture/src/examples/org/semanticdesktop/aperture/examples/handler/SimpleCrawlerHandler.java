@@ -42,6 +42,7 @@ import org.semanticdesktop.aperture.extractor.impl.DefaultExtractorRegistry;
 import org.semanticdesktop.aperture.mime.identifier.MimeTypeIdentifier;
 import org.semanticdesktop.aperture.mime.identifier.magic.MagicMimeTypeIdentifier;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.rdf.impl.BufferedRDFContainer;
 import org.semanticdesktop.aperture.rdf.impl.RDFContainerImpl;
 import org.semanticdesktop.aperture.subcrawler.SubCrawler;
 import org.semanticdesktop.aperture.subcrawler.SubCrawlerException;
@@ -324,9 +325,12 @@ public class SimpleCrawlerHandler implements CrawlerHandler, RDFContainerFactory
         // note: by using ModelSet.getModel, all statements added to this Model are added to the ModelSet
         // automatically, unlike ModelFactory.createModel, which creates stand-alone models.
 
-        // when running performance tests, we dump the dataobjects,
+        // when running performance tests, we dump the dataobjects without ever creating a model for them,
         // otherwise we channel the triples into the modelSet
-        Model model = (modelSet == null) ? RDF2Go.getModelFactory().createModel() : modelSet.getModel(uri);
+        if (modelSet == null) {
+            return new BufferedRDFContainer(uri);
+        }
+        Model model = modelSet.getModel(uri);
         model.open();
         return new RDFContainerImpl(model, uri);
     }
@@ -9,6 +9,8 @@ package org.semanticdesktop.aperture.accessor;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.semanticdesktop.aperture.util.IOUtil;
 
@@ -56,6 +58,28 @@ public interface FileDataObject extends DataObject {
      */
     public File getFile();
 
+    /**
+     * Returns a read-only FileChannel on the file holding the content of this FileDataObject. Consumers that
+     * can use random access do not have to copy the content stream, they can read or map (see
+     * {@link #mapContent()}) the file directly. The channel is independent of the content stream and is
+     * closed when this FileDataObject is disposed.
+     * 
+     * @return a FileChannel on the content, or null when the content is not held in a file (see
+     *         {@link #getFile()})
+     * @throws IOException If the file could not be opened.
+     */
+    public FileChannel getContentChannel() throws IOException;
+
+    /**
+     * Maps the file holding the content of this FileDataObject into memory. The resulting buffer is
+     * read-only and remains valid after this FileDataObject has been disposed.
+     * 
+     * @return a ByteBuffer holding the entire content, or null when the content is not held in a file (see
+     *         {@link #getFile()})
+     * @throws IOException If the file could not be opened or mapped, e.g. because it is larger than 2 GB.
+     */
+    public ByteBuffer mapContent() throws IOException;
+
     /**
      * Downloads the entire content of the stream to a temporary file (created with
      * {@link File#createTempFile(String, String)}). It is the responsibility of the user to delete the file
@@ -68,7 +92,8 @@ public interface FileDataObject extends DataObject {
      * Note that the content stream may become unusable after a call to this method.<br/><br/>
      * 
      * This method will always create a temporary file, including cases when the {@link #getFile()} method
-     * returns a non-null value.
+     * returns a non-null value. In these cases the file is copied directly, whatever the position of the
+     * content stream.
      * 
      * @return the {@link File} instance for the temporary file where the content of the stream has been
      *         downloaded.
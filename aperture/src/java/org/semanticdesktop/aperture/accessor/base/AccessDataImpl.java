@@ -245,7 +245,11 @@ public class AccessDataImpl implements AccessData {
         } else {
             // this prevents links from appearing in the aggregation hierarchy
             String oldParent = childNode.parent;
-            if (oldParent != null && !oldParent.equals(parentId)) {
+            if (oldParent == null) {
+                // the node has been registered before it got a parent (e.g. as the parent of another node)
+                childNode.parent = parentId;
+            }
+            else if (!oldParent.equals(parentId)) {
                 // we need to reattach the aggregated node to a new parent
                 AggregationNode oldParentNode = aggregatedIDMap.get(oldParent);
                 oldParentNode.children.remove(childID);
@@ -255,6 +259,18 @@ public class AccessDataImpl implements AccessData {
         parentNode.children.add(childID);
     }
 
+    /**
+     * Registers the given id in the aggregation relation, without a parent and without children. Does
+     * nothing if the id is already registered. Used by subclasses that restore persisted access data.
+     * 
+     * @param id the id to register
+     */
+    void putAggregationNode(String id) {
+        if (!aggregatedIDMap.containsKey(id)) {
+            aggregatedIDMap.put(id, new AggregationNode(null));
+        }
+    }
+
     public void removeAggregatedID(String id, String aggregatedID) {
         AggregationNode parentNode = aggregatedIDMap.get(id);
         AggregationNode aggregatedIDNode = aggregatedIDMap.get(aggregatedID);
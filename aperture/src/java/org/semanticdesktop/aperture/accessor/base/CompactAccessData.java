@@ -0,0 +1,956 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.accessor.base;
+
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.semanticdesktop.aperture.accessor.AccessData;
+import org.semanticdesktop.aperture.util.ArrayMap;
+
+/**
+ * An in-memory AccessData implementation optimized for crawls with a very large number of ids.
+ *
+ * <p>
+ * Every id is stored exactly once, in a dictionary that maps it to an int index. All other information is kept
+ * in arrays indexed by that int: the values of the {@link AccessData#DATE_KEY} and
+ * {@link AccessData#BYTE_SIZE_KEY} keys are stored as primitive longs, referred ids are stored as int arrays,
+ * the aggregation tree is encoded in parent, first child and sibling arrays and the touched ids of the
+ * current crawl are kept in a bit set. Values of other keys, and date or size values that are not plain
+ * decimal longs, are stored in a small {@link ArrayMap} per id, as in {@link AccessDataImpl}.
+ *
+ * <p>
+ * The behaviour is the same as that of {@link AccessDataImpl}, with two exceptions: the Sets returned by
+ * {@link #getReferredIDs(String)} are copies that are not backed by this AccessData, and the Set returned
+ * by {@link #getStoredIDs()} is a read-only snapshot. No persistency facilities are provided.
+ *
+ * <p>
+ * This class is not thread-safe. Wrap it in a {@link SynchronizedAccessData} if it is shared between
+ * threads.
+ */
+public class CompactAccessData implements AccessData {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Marks a missing index in the aggregation arrays */
+    private static final int NONE = -1;
+
+    /** Marks a missing value in the long columns */
+    private static final long ABSENT = Long.MIN_VALUE;
+
+    /** Set when key-value pairs have been stored for an id, or when it has been touched */
+    private static final byte HAS_INFO = 1;
+
+    /** Set when an id takes part in the aggregation relation */
+    private static final byte HAS_AGGREGATION = 2;
+
+    /**
+     * The ids, indexed by their int index. Free indices have a null entry.
+     */
+    private String[] ids;
+
+    /**
+     * An open-addressing hash table with linear probing, containing the index of every id plus one. Empty
+     * slots contain 0.
+     */
+    private int[] table;
+
+    private int tableEntries;
+
+    private byte[] flags;
+
+    private long[] dates;
+
+    private long[] byteSizes;
+
+    private ArrayMap[] infoMaps;
+
+    /**
+     * For every id, the referred ids. The first element of every array holds the number of referred ids.
+     */
+    private int[][] referredIDs;
+
+    /**
+     * For every id, the number of ids that refer to it. An id that is referred to stays in the dictionary
+     * after it has been removed.
+     */
+    private int[] referenceCounts;
+
+    private int[] parents;
+
+    private int[] firstChildren;
+
+    private int[] nextSiblings;
+
+    private int[] previousSiblings;
+
+    /**
+     * The ids that have been touched in the current crawl.
+     */
+    private long[] touched;
+
+    /**
+     * The number of indices that have ever been used, all indices above this one are free.
+     */
+    private int highestIndex;
+
+    private int[] freeIndices;
+
+    private int freeIndexCount;
+
+    /**
+     * The number of known ids.
+     */
+    private int size;
+
+    /**
+     * @see AccessData#initialize()
+     */
+    public void initialize() throws IOException {
+        if (ids == null) {
+            ids = new String[INITIAL_CAPACITY];
+            table = new int[INITIAL_CAPACITY * 2];
+            flags = new byte[INITIAL_CAPACITY];
+            dates = newLongArray(INITIAL_CAPACITY);
+            byteSizes = newLongArray(INITIAL_CAPACITY);
+            infoMaps = new ArrayMap[INITIAL_CAPACITY];
+            referredIDs = new int[INITIAL_CAPACITY][];
+            referenceCounts = new int[INITIAL_CAPACITY];
+            parents = newIntArray(INITIAL_CAPACITY);
+            firstChildren = newIntArray(INITIAL_CAPACITY);
+            nextSiblings = newIntArray(INITIAL_CAPACITY);
+            previousSiblings = newIntArray(INITIAL_CAPACITY);
+            touched = new long[INITIAL_CAPACITY >> 6];
+            freeIndices = new int[16];
+        }
+        else {
+            // a new crawl starts, nothing has been touched in it yet
+            Arrays.fill(touched, 0l);
+        }
+    }
+
+    /**
+     * @see AccessData#store()
+     */
+    public void store() throws IOException {
+        // do nothing
+    }
+
+    /**
+     * @see AccessData#clear()
+     */
+    public void clear() throws IOException {
+        ids = null;
+        table = null;
+        tableEntries = 0;
+        flags = null;
+        dates = null;
+        byteSizes = null;
+        infoMaps = null;
+        referredIDs = null;
+        referenceCounts = null;
+        parents = null;
+        firstChildren = null;
+        nextSiblings = null;
+        previousSiblings = null;
+        touched = null;
+        highestIndex = 0;
+        freeIndices = null;
+        freeIndexCount = 0;
+        size = 0;
+    }
+
+    /**
+     * @see AccessData#getSize()
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @see AccessData#getStoredIDs()
+     */
+    public Set getStoredIDs() {
+        int[] indices = new int[size];
+        String[] values = new String[size];
+        int count = 0;
+        for (int i = 0; i < highestIndex; i++) {
+            if (isKnown(i)) {
+                indices[count] = i;
+                values[count] = ids[i];
+                count++;
+            }
+        }
+        return new StoredIDSet(indices, values);
+    }
+
+    /**
+     * @see AccessData#isKnownId(String)
+     */
+    public boolean isKnownId(String id) {
+        int index = lookup(id);
+        return index != NONE && isKnown(index);
+    }
+
+    /**
+     * @see AccessData#put(String, String, String)
+     */
+    public void put(String id, String key, String value) {
+        int index = intern(id);
+        setFlag(index, HAS_INFO);
+
+        long longValue = ABSENT;
+        long[] column = getColumn(key);
+        if (column != null) {
+            longValue = parseLong(value);
+            column[index] = longValue;
+        }
+
+        if (longValue == ABSENT) {
+            ArrayMap infoMap = infoMaps[index];
+            if (infoMap == null) {
+                // assumption: lots of objects with relative few things to store: use an ArrayMap
+                infoMap = new ArrayMap();
+                infoMaps[index] = infoMap;
+            }
+            infoMap.put(key, value);
+        }
+        else {
+            removeInfo(index, key);
+        }
+    }
+
+    /**
+     * @see AccessData#get(String, String)
+     */
+    public String get(String id, String key) {
+        int index = lookup(id);
+        if (index == NONE || (flags[index] & HAS_INFO) == 0) {
+            return null;
+        }
+
+        long[] column = getColumn(key);
+        if (column != null && column[index] != ABSENT) {
+            return String.valueOf(column[index]);
+        }
+
+        ArrayMap infoMap = infoMaps[index];
+        return infoMap == null ? null : (String) infoMap.get(key);
+    }
+
+    /**
+     * @see AccessData#remove(String, String)
+     */
+    public void remove(String id, String key) {
+        int index = lookup(id);
+        if (index != NONE) {
+            long[] column = getColumn(key);
+            if (column != null) {
+                column[index] = ABSENT;
+            }
+            removeInfo(index, key);
+        }
+    }
+
+    /**
+     * @see AccessData#putReferredID(String, String)
+     */
+    public void putReferredID(String id, String referredID) {
+        int index = intern(id);
+        int referredIndex = intern(referredID);
+        boolean known = isKnown(index);
+
+        int[] list = referredIDs[index];
+        if (list == null) {
+            list = new int[4];
+            referredIDs[index] = list;
+        }
+        else {
+            for (int i = 1; i <= list[0]; i++) {
+                if (list[i] == referredIndex) {
+                    return;
+                }
+            }
+            if (list[0] + 1 == list.length) {
+                list = growIntArray(list, list.length * 2, 0);
+                referredIDs[index] = list;
+            }
+        }
+
+        list[0]++;
+        list[list[0]] = referredIndex;
+        referenceCounts[referredIndex]++;
+        updateSize(index, known);
+    }
+
+    /**
+     * @see AccessData#getReferredIDs(String)
+     */
+    public Set getReferredIDs(String id) {
+        int index = lookup(id);
+        if (index == NONE || referredIDs[index] == null) {
+            return null;
+        }
+
+        int[] list = referredIDs[index];
+        HashSet<String> result = new HashSet<String>(list[0] * 2);
+        for (int i = 1; i <= list[0]; i++) {
+            result.add(ids[list[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * @see AccessData#removeReferredID(String, String)
+     */
+    public void removeReferredID(String id, String referredID) {
+        int index = lookup(id);
+        int referredIndex = lookup(referredID);
+        if (index == NONE || referredIndex == NONE || referredIDs[index] == null) {
+            return;
+        }
+
+        int[] list = referredIDs[index];
+        for (int i = 1; i <= list[0]; i++) {
+            if (list[i] == referredIndex) {
+                // the order of the referred ids is irrelevant, move the last one into the gap
+                list[i] = list[list[0]];
+                list[0]--;
+                releaseReference(referredIndex);
+                break;
+            }
+        }
+
+        if (list[0] == 0) {
+            removeReferredIDs(index);
+        }
+    }
+
+    /**
+     * @see AccessData#removeReferredIDs(String)
+     */
+    public void removeReferredIDs(String id) {
+        int index = lookup(id);
+        if (index != NONE) {
+            removeReferredIDs(index);
+        }
+    }
+
+    /**
+     * @see AccessData#remove(String)
+     */
+    public void remove(String id) {
+        int index = lookup(id);
+        if (index != NONE) {
+            remove(index);
+        }
+    }
+
+    /**
+     * @see AccessData#putAggregatedID(String, String)
+     */
+    public void putAggregatedID(String id, String aggregatedID) {
+        int parentIndex = intern(id);
+        int childIndex = intern(aggregatedID);
+        setFlag(parentIndex, HAS_AGGREGATION);
+        setFlag(childIndex, HAS_AGGREGATION);
+
+        // this prevents links from appearing in the aggregation hierarchy
+        if (parents[childIndex] != parentIndex) {
+            unlink(childIndex);
+            link(parentIndex, childIndex);
+        }
+    }
+
+    /**
+     * @see AccessData#removeAggregatedID(String, String)
+     */
+    public void removeAggregatedID(String id, String aggregatedID) {
+        int childIndex = lookup(aggregatedID);
+        if (childIndex != NONE && (flags[childIndex] & HAS_AGGREGATION) != 0) {
+            boolean known = isKnown(childIndex);
+            clearAggregation(childIndex);
+            updateSize(childIndex, known);
+        }
+    }
+
+    /**
+     * @see AccessData#getAggregatedIDs(String)
+     */
+    public Set getAggregatedIDs(String id) {
+        int index = lookup(id);
+        if (index == NONE || firstChildren[index] == NONE) {
+            return Collections.EMPTY_SET;
+        }
+
+        HashSet<String> result = new HashSet<String>();
+        for (int child = firstChildren[index]; child != NONE; child = nextSiblings[child]) {
+            result.add(ids[child]);
+        }
+        return result;
+    }
+
+    /**
+     * @see AccessData#getAggregatedIDsClosure(String)
+     */
+    public ClosableIterator getAggregatedIDsClosure(String id) {
+        return new AggregatedClosureIterator(id, lookup(id));
+    }
+
+    /**
+     * @see AccessData#touch(String)
+     */
+    public void touch(String id) {
+        touch(intern(id));
+    }
+
+    /**
+     * @see AccessData#isTouched(String)
+     */
+    public boolean isTouched(String id) {
+        int index = lookup(id);
+        return index != NONE && isTouched(index);
+    }
+
+    /**
+     * @see AccessData#touchRecursively(String)
+     */
+    public void touchRecursively(String id) {
+        int root = intern(id);
+        for (int index = root; index != NONE; index = nextInClosure(root, index)) {
+            touch(index);
+        }
+    }
+
+    /**
+     * @see AccessData#getUntouchedIDsIterator()
+     */
+    public ClosableIterator getUntouchedIDsIterator() {
+        return new UntouchedIterator();
+    }
+
+    /**
+     * @see AccessData#removeUntouchedIDs()
+     */
+    public void removeUntouchedIDs() {
+        for (int index = 0; index < highestIndex; index++) {
+            if (ids[index] != null && (flags[index] & HAS_INFO) != 0 && !isTouched(index)) {
+                boolean known = isKnown(index);
+                clearInfo(index);
+                clearReferredIDs(index);
+                clearAggregation(index);
+                updateSize(index, known);
+            }
+        }
+    }
+
+    /* ----------------------------- index operations ----------------------------- */
+
+    private boolean isKnown(int index) {
+        return flags[index] != 0 || referredIDs[index] != null;
+    }
+
+    private boolean isTouched(int index) {
+        return (touched[index >> 6] & (1l << index)) != 0;
+    }
+
+    private void touch(int index) {
+        setFlag(index, HAS_INFO);
+        touched[index >> 6] |= 1l << index;
+    }
+
+    private void setFlag(int index, byte flag) {
+        boolean known = isKnown(index);
+        flags[index] |= flag;
+        updateSize(index, known);
+    }
+
+    /**
+     * Updates the number of known ids after the given index has been modified, and releases the index
+     * when it is no longer used.
+     */
+    private void updateSize(int index, boolean wasKnown) {
+        boolean known = isKnown(index);
+        if (known && !wasKnown) {
+            size++;
+        }
+        else if (!known && wasKnown) {
+            size--;
+        }
+        release(index);
+    }
+
+    private void remove(int index) {
+        boolean known = isKnown(index);
+        clearInfo(index);
+        clearReferredIDs(index);
+        if ((flags[index] & HAS_AGGREGATION) != 0) {
+            unlink(index);
+            // removing a child unlinks it, which makes its next sibling the first child
+            while (firstChildren[index] != NONE) {
+                remove(firstChildren[index]);
+            }
+            flags[index] &= ~HAS_AGGREGATION;
+        }
+        updateSize(index, known);
+    }
+
+    private void removeInfo(int index, String key) {
+        ArrayMap infoMap = infoMaps[index];
+        if (infoMap != null) {
+            infoMap.remove(key);
+            if (infoMap.isEmpty()) {
+                infoMaps[index] = null;
+            }
+        }
+    }
+
+    private void clearInfo(int index) {
+        flags[index] &= ~HAS_INFO;
+        dates[index] = ABSENT;
+        byteSizes[index] = ABSENT;
+        infoMaps[index] = null;
+        touched[index >> 6] &= ~(1l << index);
+    }
+
+    private void removeReferredIDs(int index) {
+        boolean known = isKnown(index);
+        clearReferredIDs(index);
+        updateSize(index, known);
+    }
+
+    private void clearReferredIDs(int index) {
+        int[] list = referredIDs[index];
+        if (list != null) {
+            referredIDs[index] = null;
+            for (int i = 1; i <= list[0]; i++) {
+                releaseReference(list[i]);
+            }
+        }
+    }
+
+    private void releaseReference(int referredIndex) {
+        referenceCounts[referredIndex]--;
+        release(referredIndex);
+    }
+
+    /**
+     * Removes an id from the aggregation relation. It is detached from its parent and its children lose
+     * their parent.
+     */
+    private void clearAggregation(int index) {
+        unlink(index);
+        int child = firstChildren[index];
+        while (child != NONE) {
+            int next = nextSiblings[child];
+            parents[child] = NONE;
+            nextSiblings[child] = NONE;
+            previousSiblings[child] = NONE;
+            child = next;
+        }
+        firstChildren[index] = NONE;
+        flags[index] &= ~HAS_AGGREGATION;
+    }
+
+    private void link(int parent, int child) {
+        int first = firstChildren[parent];
+        parents[child] = parent;
+        nextSiblings[child] = first;
+        previousSiblings[child] = NONE;
+        if (first != NONE) {
+            previousSiblings[first] = child;
+        }
+        firstChildren[parent] = child;
+    }
+
+    private void unlink(int child) {
+        int parent = parents[child];
+        if (parent == NONE) {
+            return;
+        }
+
+        int previous = previousSiblings[child];
+        int next = nextSiblings[child];
+        if (previous == NONE) {
+            firstChildren[parent] = next;
+        }
+        else {
+            nextSiblings[previous] = next;
+        }
+        if (next != NONE) {
+            previousSiblings[next] = previous;
+        }
+
+        parents[child] = NONE;
+        nextSiblings[child] = NONE;
+        previousSiblings[child] = NONE;
+    }
+
+    /**
+     * Returns the index that follows the given one in a depth-first traversal of the subtree rooted at the
+     * given root, or NONE when the traversal is finished.
+     */
+    private int nextInClosure(int root, int index) {
+        if (firstChildren[index] != NONE) {
+            return firstChildren[index];
+        }
+        while (index != root) {
+            if (nextSiblings[index] != NONE) {
+                return nextSiblings[index];
+            }
+            index = parents[index];
+        }
+        return NONE;
+    }
+
+    private long[] getColumn(String key) {
+        if (DATE_KEY.equals(key)) {
+            return dates;
+        }
+        else if (BYTE_SIZE_KEY.equals(key)) {
+            return byteSizes;
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the long represented by the given value, or ABSENT if the value is not the canonical decimal
+     * representation of a long and therefore cannot be restored from a long.
+     */
+    private static long parseLong(String value) {
+        if (value == null) {
+            return ABSENT;
+        }
+
+        int length = value.length();
+        if (length == 0 || length > 19) {
+            return ABSENT;
+        }
+
+        boolean negative = value.charAt(0) == '-';
+        int start = negative ? 1 : 0;
+        if (start == length || (value.charAt(start) == '0' && length > start + 1)) {
+            // no digits or a leading zero
+            return ABSENT;
+        }
+
+        long result = 0;
+        for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return ABSENT;
+            }
+            int digit = c - '0';
+            if (result > (Long.MAX_VALUE - digit) / 10) {
+                // too large for a long, e.g. "9999999999999999999"
+                return ABSENT;
+            }
+            result = result * 10 + digit;
+        }
+
+        if (negative) {
+            // also rejects "-0", which would be restored as "0"
+            return result == 0 ? ABSENT : -result;
+        }
+        else {
+            return result;
+        }
+    }
+
+    /* ----------------------------- the dictionary ----------------------------- */
+
+    private static int hash(String id) {
+        int h = id.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+    /**
+     * Returns the index of the given id, or NONE if the id is not in the dictionary.
+     */
+    private int lookup(String id) {
+        int mask = table.length - 1;
+        int slot = hash(id) & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return NONE;
+            }
+            else if (ids[entry - 1].equals(id)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the index of the given id, adding the id to the dictionary if necessary.
+     */
+    private int intern(String id) {
+        int index = lookup(id);
+        if (index != NONE) {
+            return index;
+        }
+
+        if (freeIndexCount > 0) {
+            index = freeIndices[--freeIndexCount];
+        }
+        else {
+            if (highestIndex == ids.length) {
+                grow(ids.length * 2);
+            }
+            index = highestIndex++;
+        }
+        ids[index] = id;
+
+        if ((tableEntries + 1) * 4 > table.length * 3) {
+            rehash(table.length * 2);
+        }
+        insert(index);
+        tableEntries++;
+        return index;
+    }
+
+    /**
+     * Removes the id with the given index from the dictionary when nothing is known about it anymore and no
+     * other id refers to it.
+     */
+    private void release(int index) {
+        if (isKnown(index) || referenceCounts[index] != 0 || ids[index] == null) {
+            return;
+        }
+
+        // remove the entry from the table, moving back the entries that follow it in the same cluster
+        int mask = table.length - 1;
+        int slot = hash(ids[index]) & mask;
+        while (table[slot] != index + 1) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = 0;
+        int next = (slot + 1) & mask;
+        while (table[next] != 0) {
+            int home = hash(ids[table[next] - 1]) & mask;
+            boolean movable = slot <= next ? (home <= slot || home > next) : (home <= slot && home > next);
+            if (movable) {
+                table[slot] = table[next];
+                table[next] = 0;
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        tableEntries--;
+
+        ids[index] = null;
+        touched[index >> 6] &= ~(1l << index);
+        if (freeIndexCount == freeIndices.length) {
+            freeIndices = growIntArray(freeIndices, freeIndices.length * 2, 0);
+        }
+        freeIndices[freeIndexCount++] = index;
+    }
+
+    private void insert(int index) {
+        int mask = table.length - 1;
+        int slot = hash(ids[index]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    private void rehash(int tableSize) {
+        table = new int[tableSize];
+        for (int i = 0; i < highestIndex; i++) {
+            if (ids[i] != null) {
+                insert(i);
+            }
+        }
+    }
+
+    private void grow(int capacity) {
+        String[] newIds = new String[capacity];
+        System.arraycopy(ids, 0, newIds, 0, highestIndex);
+        ids = newIds;
+
+        byte[] newFlags = new byte[capacity];
+        System.arraycopy(flags, 0, newFlags, 0, highestIndex);
+        flags = newFlags;
+
+        dates = growLongArray(dates, capacity);
+        byteSizes = growLongArray(byteSizes, capacity);
+
+        ArrayMap[] newInfoMaps = new ArrayMap[capacity];
+        System.arraycopy(infoMaps, 0, newInfoMaps, 0, highestIndex);
+        infoMaps = newInfoMaps;
+
+        int[][] newReferredIDs = new int[capacity][];
+        System.arraycopy(referredIDs, 0, newReferredIDs, 0, highestIndex);
+        referredIDs = newReferredIDs;
+
+        referenceCounts = growIntArray(referenceCounts, capacity, 0);
+        parents = growIntArray(parents, capacity, NONE);
+        firstChildren = growIntArray(firstChildren, capacity, NONE);
+        nextSiblings = growIntArray(nextSiblings, capacity, NONE);
+        previousSiblings = growIntArray(previousSiblings, capacity, NONE);
+
+        long[] newTouched = new long[(capacity + 63) >> 6];
+        System.arraycopy(touched, 0, newTouched, 0, touched.length);
+        touched = newTouched;
+    }
+
+    private static int[] newIntArray(int length) {
+        int[] result = new int[length];
+        Arrays.fill(result, NONE);
+        return result;
+    }
+
+    private static long[] newLongArray(int length) {
+        long[] result = new long[length];
+        Arrays.fill(result, ABSENT);
+        return result;
+    }
+
+    private static int[] growIntArray(int[] array, int length, int fill) {
+        int[] result = new int[length];
+        System.arraycopy(array, 0, result, 0, array.length);
+        if (fill != 0) {
+            Arrays.fill(result, array.length, length, fill);
+        }
+        return result;
+    }
+
+    private static long[] growLongArray(long[] array, int length) {
+        long[] result = new long[length];
+        System.arraycopy(array, 0, result, 0, array.length);
+        Arrays.fill(result, array.length, length, ABSENT);
+        return result;
+    }
+
+    /* ----------------------------- iterators and views ----------------------------- */
+
+    /**
+     * A read-only snapshot of the known ids. The ids are sorted by their index, which allows contains
+     * checks without a hash set.
+     */
+    private class StoredIDSet extends AbstractSet<String> {
+
+        private int[] indices;
+
+        private String[] values;
+
+        public StoredIDSet(int[] indices, String[] values) {
+            this.indices = indices;
+            this.values = values;
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof String) || ids == null) {
+                return false;
+            }
+            int position = Arrays.binarySearch(indices, lookup((String) o));
+            return position >= 0 && values[position].equals(o);
+        }
+
+        public Iterator<String> iterator() {
+            return Collections.unmodifiableList(Arrays.asList(values)).iterator();
+        }
+    }
+
+    private class UntouchedIterator implements ClosableIterator {
+
+        private int nextIndex;
+
+        public boolean hasNext() {
+            findNextUntouched();
+            return nextIndex < highestIndex;
+        }
+
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String result = ids[nextIndex];
+            nextIndex++;
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() {
+            // don't do anything
+        }
+
+        private void findNextUntouched() {
+            while (nextIndex < highestIndex
+                    && (ids[nextIndex] == null || (flags[nextIndex] & HAS_INFO) == 0 || isTouched(nextIndex))) {
+                nextIndex++;
+            }
+        }
+    }
+
+    private class AggregatedClosureIterator implements ClosableIterator {
+
+        private String firstValue;
+
+        private int root;
+
+        private int nextIndex;
+
+        public AggregatedClosureIterator(String firstValue, int root) {
+            this.firstValue = firstValue;
+            this.root = root;
+            this.nextIndex = root;
+        }
+
+        public boolean hasNext() {
+            return firstValue != null || nextIndex != NONE;
+        }
+
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            String result;
+            if (firstValue != null) {
+                // the root is returned even if it is unknown
+                result = firstValue;
+                firstValue = null;
+            }
+            else {
+                result = ids[nextIndex];
+            }
+
+            if (nextIndex != NONE) {
+                nextIndex = nextInClosure(root, nextIndex);
+            }
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() {
+            // don't do anything
+        }
+    }
+}
@@ -12,8 +12,6 @@ import org.semanticdesktop.aperture.accessor.DataObject;
 import org.semanticdesktop.aperture.datasource.DataSource;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 import org.semanticdesktop.aperture.vocabulary.NIE;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * A trivial default implementation of DataObject.
@@ -40,26 +38,6 @@ public class DataObjectBase implements DataObject {
         metadata.add(RDF.type, NIE.DataObject);
     }
 
-    public void finalize() throws Throwable {
-        // if the object is garbage-collected without having been disposed, this probably signals an
-        // implementation error on the side of the integrator. Issue a warning, as especially in the case
-        // of FileDataObjectBase this may lead to unclosed streams. This is a trick learned from PDFBox.
-        if (!disposed) {
-            Logger logger = LoggerFactory.getLogger(getClass());
-            logger.error("DataObject has not been disposed. URI: " + id);
-
-            // try to dispose of it now
-            try {
-                dispose();
-            }
-            catch (Throwable t) {
-                logger.error("Error while disposing DataObject", t);
-            }
-        }
-
-        super.finalize();
-    }
-
     public void setID(URI id) {
         this.id = id;
     }
@@ -6,31 +6,51 @@
  */
 package org.semanticdesktop.aperture.accessor.base;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.ontoware.rdf2go.model.node.URI;
 import org.semanticdesktop.aperture.accessor.DataObject;
 import org.semanticdesktop.aperture.accessor.FileDataObject;
 import org.semanticdesktop.aperture.datasource.DataSource;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.util.ExposedFileInputStream;
 import org.semanticdesktop.aperture.util.IOUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A trivial default implementation of FileDataObject.
+ * 
+ * <p>
+ * The content stream of a FileDataObjectBase that has a file is only opened when it is asked for, so that
+ * objects whose content is never read hold no file descriptor or buffer. The streams and channels opened on
+ * the file are closed by {@link #dispose()}; when an object is garbage collected without having been
+ * disposed, they are closed the next time any FileDataObjectBase opens a resource. The content stream on a
+ * file is an {@link ExposedFileInputStream}, which lets extractors and subcrawlers access the file randomly.
  */
 public class FileDataObjectBase extends DataObjectBase implements FileDataObject {
 
-    private CountingInputStream content;
+    /** The content stream, a CountingInputStream unless it has been opened on the file */
+    private InputStream content;
 
     private File file;
 
+    /** Whether the content stream is to be opened on the file when it is asked for */
+    private boolean openContent;
+
+    private ResourceTracker.TrackedResource contentResource;
+
+    private FileChannel channel;
+
+    private ResourceTracker.TrackedResource channelResource;
+
     /**
      * Default constructor.
      */
@@ -63,18 +83,6 @@ public class FileDataObjectBase extends DataObjectBase implements FileDataObject
         setFile(file);
     }
 
-    @Override
-    public void finalize() throws Throwable {
-        try {
-            // Just try to close the InputStream once more: can remedy nasty programming errors.
-            // Not documented in the Javadoc as programmers shouldn't rely on this.
-            closeContent();
-        }
-        finally {
-            super.finalize();
-        }
-    }
-
     public void setContent(InputStream content) {
         if (content != null && !content.markSupported()) {
             throw new IllegalArgumentException("content should support mark and reset");
@@ -84,7 +92,26 @@ public class FileDataObjectBase extends DataObjectBase implements FileDataObject
         this.file = null;
     }
 
+    /**
+     * Returns the content stream. The stream on the file of this FileDataObject is opened by the first
+     * invocation of this method.
+     * 
+     * @return the content stream, or null when the file could not be opened
+     */
     public InputStream getContent() {
+        if (openContent) {
+            openContent = false;
+            try {
+                ExposedFileInputStream stream = new ExposedFileInputStream(file);
+                contentResource = ResourceTracker.track(this, stream, file.getPath());
+                content = stream;
+            }
+            catch (FileNotFoundException e) {
+                // the file has been removed or made unreadable since it was set
+                Logger logger = LoggerFactory.getLogger(getClass());
+                logger.warn("Could not open " + file, e);
+            }
+        }
         return content;
     }
 
@@ -102,13 +129,8 @@ public class FileDataObjectBase extends DataObjectBase implements FileDataObject
             throw new IllegalArgumentException("File not readable: " + file);
         }
         closeContent();
-        try {
-            this.file = file;
-            this.content = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
-        }
-        catch (FileNotFoundException e) {
-            // this can't happen because we check for this case
-        }
+        this.file = file;
+        this.openContent = true;
     }
 
     public File getFile() {
@@ -125,16 +147,54 @@ public class FileDataObjectBase extends DataObjectBase implements FileDataObject
         this.file = file;
     }
 
+    public FileChannel getContentChannel() throws IOException {
+        if (channel == null && file != null && !isDisposed()) {
+            FileInputStream stream = new FileInputStream(file);
+            channelResource = ResourceTracker.track(this, stream, file.getPath());
+            channel = stream.getChannel();
+        }
+        return channel;
+    }
+
+    public ByteBuffer mapContent() throws IOException {
+        FileChannel channel = getContentChannel();
+        if (channel == null) {
+            return null;
+        }
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("File too large to be mapped: " + file);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
     public File downloadContent() throws IOException {
-        if (content.getCurrentByte() != 0) {
+        File result = File.createTempFile("aperture", "tmp");
+        if (file != null) {
+            // copy the file without passing its bytes through the content stream, whose position does not
+            // matter in this case
+            FileChannel channel = getContentChannel();
+            FileOutputStream out = new FileOutputStream(result);
+            try {
+                long position = 0;
+                long size = channel.size();
+                while (position < size) {
+                    position += channel.transferTo(position, size - position, out.getChannel());
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+        else if (((CountingInputStream) content).getCurrentByte() != 0) {
+            result.delete();
             throw new IOException("The content stream hasn't been reset before calling getFile(), "
                     + "can't create a temporary file");
         }
         else {
-            File file = File.createTempFile("aperture", "tmp");
-            IOUtil.writeStream(content, file);
-            return file;
+            IOUtil.writeStream(content, result);
         }
+        return result;
     }
 
     /**
@@ -149,14 +209,24 @@ public class FileDataObjectBase extends DataObjectBase implements FileDataObject
     }
 
     /**
-     * Closes the content stream and sets it to null.
+     * Closes the content stream and sets it to null. The channel on the file is closed as well.
      */
     protected void closeContent() {
         try {
+            openContent = false;
             if (content != null) {
                 content.close();
                 content = null;
             }
+            if (contentResource != null) {
+                contentResource.close();
+                contentResource = null;
+            }
+            if (channelResource != null) {
+                channel = null;
+                channelResource.close();
+                channelResource = null;
+            }
         }
         catch (IOException e) {
             Logger logger = LoggerFactory.getLogger(getClass());
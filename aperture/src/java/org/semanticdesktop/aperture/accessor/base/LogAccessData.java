@@ -0,0 +1,934 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.accessor.base;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.semanticdesktop.aperture.accessor.AccessData;
+import org.semanticdesktop.aperture.util.ArrayMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * LogAccessData extends AccessDataImpl with a persistent storage that consists of a snapshot file and an
+ * append-only change log.
+ *
+ * <p>
+ * Every modification is appended to the change log as soon as it is made. A call to {@link #store()} only
+ * flushes the log to disk, so its cost is proportional to the number of changes since the previous call,
+ * not to the total number of stored ids. When the log grows larger than the snapshot (and larger than the
+ * compaction threshold), the complete state is written to a new snapshot and a new, empty log is started.
+ * The snapshot is memory-mapped when it is read by {@link #initialize()}.
+ *
+ * <p>
+ * All files are kept in a single directory. A new snapshot is written to a temporary file and only becomes
+ * visible by renaming it, the files of the previous generation are deleted afterwards. Every log record
+ * carries a checksum and an incomplete record at the end of the log (e.g. after a crash) is discarded.
+ * Therefore a crash during {@link #store()} never destroys the previously stored state.
+ *
+ * <p>
+ * Like its superclass, this class is not thread-safe. Wrap it in a {@link SynchronizedAccessData} if it is
+ * to be used by multiple threads.
+ *
+ * @see FileAccessData
+ */
+public class LogAccessData extends AccessDataImpl {
+
+    /**
+     * The default minimum number of log records before the log is compacted.
+     */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 10000;
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private static final String LOG_PREFIX = "log-";
+
+    private static final String FILE_SUFFIX = ".dat";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x41504C44;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 16;
+
+    private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+
+    private static final byte END = 0;
+
+    private static final byte PUT = 1;
+
+    private static final byte REMOVE_KEY = 2;
+
+    private static final byte PUT_REFERRED_ID = 3;
+
+    private static final byte REMOVE_REFERRED_ID = 4;
+
+    private static final byte REMOVE_REFERRED_IDS = 5;
+
+    private static final byte REMOVE = 6;
+
+    private static final byte PUT_AGGREGATED_ID = 7;
+
+    private static final byte REMOVE_AGGREGATED_ID = 8;
+
+    private static final byte PUT_AGGREGATION_NODE = 9;
+
+    private static final byte PUT_ID = 10;
+
+    private static final byte REMOVE_UNTOUCHED_ID = 11;
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * The directory containing the snapshot and the log.
+     */
+    private File directory;
+
+    private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    private int autoSaveInterval;
+
+    private int autoSaveCounter;
+
+    /**
+     * The generation of the current snapshot and log, incremented by every compaction.
+     */
+    private long generation;
+
+    private int snapshotRecordCount;
+
+    private int logRecordCount;
+
+    private FileOutputStream logFileStream;
+
+    private DataOutputStream logStream;
+
+    /**
+     * Set when appending to the log has failed. The records that were lost cannot be recovered from the
+     * log, so nothing is appended anymore until the next compaction has written the complete state to a new
+     * snapshot.
+     */
+    private boolean logFailed;
+
+    /**
+     * Set while restoring the stored state and while performing a modification that has already been
+     * logged, to prevent the nested modifications from being logged as well.
+     */
+    private boolean loggingSuppressed;
+
+    private ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+
+    private DataOutputStream recordStream = new DataOutputStream(recordBuffer);
+
+    private CRC32 crc = new CRC32();
+
+    /**
+     * The total length of the record read by the last call to readRecord, including the length field and
+     * the checksum.
+     */
+    private int readRecordLength;
+
+    /**
+     * Creates a new LogAccessData instance. The access data cannot be made persistent until a directory is
+     * specified.
+     */
+    public LogAccessData() {
+        super();
+    }
+
+    /**
+     * Creates a new LogAccessData that uses the specified directory for persistent storage.
+     *
+     * @param directory the directory for the snapshot and log files, it is created when necessary
+     */
+    public LogAccessData(File directory) {
+        super();
+        this.directory = directory;
+    }
+
+    /**
+     * Sets the directory containing the snapshot and log files. Call this method before
+     * {@link #initialize()}.
+     *
+     * @param directory the directory to use or 'null' when the LogAccessData is not required (anymore) to
+     *            persistently store its access data.
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the minimum number of log records before the log is compacted into a new snapshot
+     */
+    public int getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    /**
+     * Sets the minimum number of log records before the log is compacted into a new snapshot. The log is
+     * compacted by {@link #store()} when it contains more records than this threshold and more records than
+     * the snapshot.
+     *
+     * @param compactionThreshold the new threshold
+     */
+    public void setCompactionThreshold(int compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * @return Returns the autoSaveInterval or 0 if the autosave feature is disabled.
+     */
+    public int getAutoSaveInterval() {
+        return autoSaveInterval;
+    }
+
+    /**
+     * Sets the auto save interval. If set to a non-zero value, {@link #store()} will be called after every
+     * autoSaveInterval modifications. As the modifications have already been appended to the log, this only
+     * forces them to disk. Each call to this method resets the counter.
+     *
+     * @param autoSaveInterval The new autoSaveInterval value, if set to zero, the autosave feature will be
+     *            disabled
+     */
+    public void setAutoSaveInterval(int autoSaveInterval) {
+        this.autoSaveInterval = autoSaveInterval;
+        this.autoSaveCounter = 0;
+    }
+
+    /**
+     * @see AccessData#initialize()
+     */
+    public void initialize() throws IOException {
+        closeLog();
+        idMap = null;
+        referredIDMap = null;
+        aggregatedIDMap = null;
+        super.initialize();
+
+        generation = 0;
+        snapshotRecordCount = 0;
+        logRecordCount = 0;
+        logFailed = false;
+        if (directory == null) {
+            return;
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create the access data directory: " + directory);
+        }
+
+        loggingSuppressed = true;
+        try {
+            generation = findLatestGeneration();
+            File snapshotFile = getSnapshotFile(generation);
+            if (snapshotFile.exists()) {
+                snapshotRecordCount = readSnapshot(snapshotFile);
+            }
+            File logFile = getLogFile(generation);
+            if (logFile.exists()) {
+                logRecordCount = readLog(logFile, true);
+            }
+        }
+        finally {
+            loggingSuppressed = false;
+        }
+
+        deleteObsoleteFiles();
+    }
+
+    /**
+     * Forces all logged modifications to disk and compacts the log if it has grown too large.
+     *
+     * @see AccessData#store()
+     */
+    public void store() throws IOException {
+        if (logStream != null) {
+            try {
+                logStream.flush();
+                logFileStream.getFD().sync();
+            }
+            catch (IOException e) {
+                logWriteFailed();
+                throw e;
+            }
+        }
+        if (directory != null && idMap != null && logRecordCount > compactionThreshold
+                && logRecordCount > snapshotRecordCount) {
+            compact();
+        }
+    }
+
+    /**
+     * Writes the complete current state to a new snapshot and starts a new, empty log.
+     *
+     * @throws IOException if an I/O error occurs, the previously stored state is left intact in that case
+     */
+    public void compact() throws IOException {
+        if (directory == null) {
+            return;
+        }
+
+        long newGeneration = generation + 1;
+        File tmpFile = new File(directory, SNAPSHOT_PREFIX + newGeneration + TMP_SUFFIX);
+        FileOutputStream fileStream = new FileOutputStream(tmpFile);
+        int recordCount;
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream, 65536));
+            writeHeader(out, newGeneration);
+            recordCount = writeState(out);
+            writeRecord(out, END, null, null, null);
+            out.flush();
+            fileStream.getFD().sync();
+        }
+        finally {
+            fileStream.close();
+        }
+
+        File snapshotFile = getSnapshotFile(newGeneration);
+        if (!tmpFile.renameTo(snapshotFile)) {
+            tmpFile.delete();
+            throw new IOException("Couldn't rename " + tmpFile + " to " + snapshotFile);
+        }
+
+        // from now on the new snapshot is the valid state
+        closeLog();
+        generation = newGeneration;
+        snapshotRecordCount = recordCount;
+        logRecordCount = 0;
+        logFailed = false;
+        deleteObsoleteFiles();
+    }
+
+    /**
+     * @see AccessData#clear()
+     */
+    public void clear() throws IOException {
+        super.clear();
+        closeLog();
+        if (directory != null && directory.exists()) {
+            File[] files = directory.listFiles();
+            for (int i = 0; files != null && i < files.length; i++) {
+                if (isAccessDataFile(files[i].getName())) {
+                    files[i].delete();
+                }
+            }
+        }
+        generation = 0;
+        snapshotRecordCount = 0;
+        logRecordCount = 0;
+        logFailed = false;
+    }
+
+    /**
+     * @see AccessData#put(String, String, String)
+     */
+    public void put(String id, String key, String value) {
+        log(PUT, id, key, value);
+        super.put(id, key, value);
+    }
+
+    /**
+     * @see AccessData#remove(String, String)
+     */
+    public void remove(String id, String key) {
+        log(REMOVE_KEY, id, key, null);
+        super.remove(id, key);
+    }
+
+    /**
+     * @see AccessData#putReferredID(String, String)
+     */
+    public void putReferredID(String id, String referredID) {
+        log(PUT_REFERRED_ID, id, referredID, null);
+        super.putReferredID(id, referredID);
+    }
+
+    /**
+     * @see AccessData#removeReferredID(String, String)
+     */
+    public void removeReferredID(String id, String referredID) {
+        log(REMOVE_REFERRED_ID, id, referredID, null);
+        super.removeReferredID(id, referredID);
+    }
+
+    /**
+     * @see AccessData#removeReferredIDs(String)
+     */
+    public void removeReferredIDs(String id) {
+        log(REMOVE_REFERRED_IDS, id, null, null);
+        super.removeReferredIDs(id);
+    }
+
+    /**
+     * @see AccessData#remove(String)
+     */
+    public void remove(String id) {
+        // the removal is recursive, only the top-level call needs to be logged
+        boolean suppressed = loggingSuppressed;
+        log(REMOVE, id, null, null);
+        loggingSuppressed = true;
+        try {
+            super.remove(id);
+        }
+        finally {
+            loggingSuppressed = suppressed;
+        }
+    }
+
+    /**
+     * @see AccessData#putAggregatedID(String, String)
+     */
+    public void putAggregatedID(String id, String aggregatedID) {
+        log(PUT_AGGREGATED_ID, id, aggregatedID, null);
+        super.putAggregatedID(id, aggregatedID);
+    }
+
+    /**
+     * @see AccessData#removeAggregatedID(String, String)
+     */
+    public void removeAggregatedID(String id, String aggregatedID) {
+        log(REMOVE_AGGREGATED_ID, id, aggregatedID, null);
+        super.removeAggregatedID(id, aggregatedID);
+    }
+
+    /**
+     * Touches the given id. Touches are only relevant for the current crawl, so they are only logged when
+     * they register a previously unknown id.
+     *
+     * @see AccessData#touch(String)
+     */
+    public void touch(String id) {
+        if (idMap.get(id) == null) {
+            log(PUT_ID, id, null, null);
+        }
+        super.touch(id);
+    }
+
+    /**
+     * @see AccessData#removeUntouchedIDs()
+     */
+    public void removeUntouchedIDs() {
+        List<String> untouchedIDs = new ArrayList<String>();
+        ClosableIterator iterator = getUntouchedIDsIterator();
+        try {
+            while (iterator.hasNext()) {
+                untouchedIDs.add((String) iterator.next());
+            }
+        }
+        finally {
+            iterator.close();
+        }
+
+        for (String id : untouchedIDs) {
+            log(REMOVE_UNTOUCHED_ID, id, null, null);
+            removeUntouchedID(id);
+        }
+    }
+
+    /**
+     * Removes a single untouched id, in the same way as {@link AccessDataImpl#removeUntouchedIDs()} does.
+     */
+    private void removeUntouchedID(String id) {
+        idMap.remove(id);
+        referredIDMap.remove(id);
+        detachFromParent(id);
+        aggregatedIDMap.remove(id);
+    }
+
+    /* ----------------------------------- writing ----------------------------------- */
+
+    private void log(byte type, String id, String arg1, String arg2) {
+        if (loggingSuppressed || directory == null) {
+            return;
+        }
+
+        if (!logFailed) {
+            try {
+                openLog();
+                writeRecord(logStream, type, id, arg1, arg2);
+                logRecordCount++;
+            }
+            catch (IOException e) {
+                // the interface does not allow us to throw an IOException here, the state will be restored
+                // by the next compaction
+                logger.error("Couldn't append to the access data log in " + directory, e);
+                logWriteFailed();
+            }
+        }
+
+        if (autoSaveInterval > 0) {
+            autoSaveCounter++;
+            if (autoSaveCounter >= autoSaveInterval) {
+                autoSaveCounter = 0;
+                try {
+                    store();
+                }
+                catch (IOException e) {
+                    logger.warn("Couldn't auto-save the LogAccessData instance", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the log after a write failure and truncates it to the last complete record, so that it can
+     * still be replayed by {@link #initialize()}. Appending is suspended until the next compaction, which
+     * is forced by the next call to {@link #store()}.
+     */
+    private void logWriteFailed() {
+        closeLog();
+        logFailed = true;
+        logRecordCount = Integer.MAX_VALUE;
+
+        File logFile = getLogFile(generation);
+        try {
+            readLog(logFile, false);
+        }
+        catch (IOException e) {
+            logger.warn("Couldn't truncate the access data log " + logFile, e);
+        }
+    }
+
+    private void openLog() throws IOException {
+        if (logStream == null) {
+            File logFile = getLogFile(generation);
+            boolean newFile = logFile.length() == 0;
+            logFileStream = new FileOutputStream(logFile, true);
+            logStream = new DataOutputStream(new BufferedOutputStream(wrapLogStream(logFileStream), 65536));
+            if (newFile) {
+                writeHeader(logStream, generation);
+            }
+        }
+    }
+
+    /**
+     * Returns the stream that log records are appended to. Tests override this method to simulate write
+     * failures.
+     */
+    OutputStream wrapLogStream(FileOutputStream stream) {
+        return stream;
+    }
+
+    private void closeLog() {
+        if (logStream != null) {
+            try {
+                logStream.close();
+            }
+            catch (IOException e) {
+                logger.warn("Couldn't close the access data log in " + directory, e);
+            }
+            logStream = null;
+            logFileStream = null;
+        }
+    }
+
+    private void writeHeader(DataOutputStream out, long headerGeneration) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(headerGeneration);
+    }
+
+    /**
+     * Writes the records needed to restore the current state.
+     *
+     * @return the number of written records
+     */
+    private int writeState(DataOutputStream out) throws IOException {
+        int count = 0;
+
+        Iterator<Map.Entry<String, Map<String, String>>> entries = idMap.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Map<String, String>> entry = entries.next();
+            String id = entry.getKey();
+            Map<String, String> infoMap = entry.getValue();
+            if (infoMap == null || infoMap.isEmpty()) {
+                writeRecord(out, PUT_ID, id, null, null);
+                count++;
+            }
+            else {
+                Iterator<Map.Entry<String, String>> infoEntries = infoMap.entrySet().iterator();
+                while (infoEntries.hasNext()) {
+                    Map.Entry<String, String> infoEntry = infoEntries.next();
+                    writeRecord(out, PUT, id, infoEntry.getKey(), infoEntry.getValue());
+                    count++;
+                }
+            }
+        }
+
+        Iterator<Map.Entry<String, Set<String>>> referredEntries = referredIDMap.entrySet().iterator();
+        while (referredEntries.hasNext()) {
+            Map.Entry<String, Set<String>> entry = referredEntries.next();
+            for (String referredID : entry.getValue()) {
+                writeRecord(out, PUT_REFERRED_ID, entry.getKey(), referredID, null);
+                count++;
+            }
+        }
+
+        Iterator<String> aggregatedIDs = aggregatedIDMap.keySet().iterator();
+        while (aggregatedIDs.hasNext()) {
+            String id = aggregatedIDs.next();
+            Set children = getAggregatedIDs(id);
+            if (children.isEmpty()) {
+                writeRecord(out, PUT_AGGREGATION_NODE, id, null, null);
+                count++;
+            }
+            else {
+                Iterator iterator = children.iterator();
+                while (iterator.hasNext()) {
+                    writeRecord(out, PUT_AGGREGATED_ID, id, (String) iterator.next(), null);
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Writes a single record: the length of the payload, the payload and its CRC32 checksum.
+     */
+    private void writeRecord(DataOutputStream out, byte type, String id, String arg1, String arg2)
+            throws IOException {
+        recordBuffer.reset();
+        recordStream.writeByte(type);
+        writeString(recordStream, id);
+        writeString(recordStream, arg1);
+        writeString(recordStream, arg2);
+        recordStream.flush();
+
+        byte[] payload = recordBuffer.toByteArray();
+        crc.reset();
+        crc.update(payload);
+
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        }
+        else {
+            byte[] bytes = string.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /* ----------------------------------- reading ----------------------------------- */
+
+    /**
+     * Reads a snapshot file.
+     *
+     * @return the number of records in the snapshot
+     * @throws IOException if the snapshot is incomplete or corrupt
+     */
+    private int readSnapshot(File snapshotFile) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(snapshotFile, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            InputStream stream;
+            if (size <= Integer.MAX_VALUE) {
+                stream = new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+            else {
+                stream = new BufferedInputStream(new FileInputStream(snapshotFile), 65536);
+            }
+
+            try {
+                DataInputStream in = new DataInputStream(stream);
+                readHeader(in, snapshotFile);
+                int count = 0;
+                while (true) {
+                    byte type = readRecord(in, true);
+                    if (type == END) {
+                        return count;
+                    }
+                    else if (type < 0) {
+                        throw new IOException("Incomplete access data snapshot: " + snapshotFile);
+                    }
+                    count++;
+                }
+            }
+            finally {
+                stream.close();
+            }
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Replays a log file. An incomplete or corrupt record at the end of the log is discarded and the file
+     * is truncated to the last valid record.
+     *
+     * @param replay whether the records are applied, when false the log is only checked and truncated
+     * @return the number of valid records
+     */
+    private int readLog(File logFile, boolean replay) throws IOException {
+        long validLength = 0;
+        int count = 0;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile), 65536));
+        try {
+            readHeader(in, logFile);
+            validLength = HEADER_LENGTH;
+            while (true) {
+                byte type = readRecord(in, replay);
+                if (type < 0) {
+                    break;
+                }
+                validLength += readRecordLength;
+                count++;
+            }
+        }
+        catch (EOFException e) {
+            // an incomplete header, the log is empty
+        }
+        finally {
+            in.close();
+        }
+
+        if (validLength < logFile.length()) {
+            logger.warn("Discarding an incomplete record at the end of the access data log " + logFile);
+            RandomAccessFile randomAccessFile = new RandomAccessFile(logFile, "rw");
+            try {
+                randomAccessFile.setLength(validLength);
+            }
+            finally {
+                randomAccessFile.close();
+            }
+        }
+
+        return count;
+    }
+
+    private void readHeader(DataInputStream in, File file) throws IOException {
+        int magic = in.readInt();
+        int version = in.readInt();
+        long headerGeneration = in.readLong();
+        if (magic != MAGIC) {
+            throw new IOException("Not an access data file: " + file);
+        }
+        if (version != VERSION) {
+            throw new IOException("Unsupported access data file version " + version + ": " + file);
+        }
+        if (headerGeneration != generation) {
+            throw new IOException("Access data file of the wrong generation: " + file);
+        }
+    }
+
+    /**
+     * Reads and optionally applies a single record.
+     *
+     * @return the type of the record, or -1 if the end of the stream has been reached or the record is
+     *         incomplete or corrupt
+     */
+    private byte readRecord(DataInputStream in, boolean replay) throws IOException {
+        byte[] payload;
+        int checksum;
+        try {
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                return -1;
+            }
+            payload = new byte[length];
+            in.readFully(payload);
+            checksum = in.readInt();
+            readRecordLength = 4 + length + 4;
+        }
+        catch (EOFException e) {
+            return -1;
+        }
+
+        crc.reset();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+            return -1;
+        }
+
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = record.readByte();
+        if (!replay) {
+            return type;
+        }
+        String id = readString(record);
+        String arg1 = readString(record);
+        String arg2 = readString(record);
+        apply(type, id, arg1, arg2);
+        return type;
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private void apply(byte type, String id, String arg1, String arg2) throws IOException {
+        switch (type) {
+        case END:
+            break;
+        case PUT:
+            // the info maps compare keys by identity
+            put(id, arg1.intern(), arg2);
+            break;
+        case REMOVE_KEY:
+            remove(id, arg1.intern());
+            break;
+        case PUT_REFERRED_ID:
+            putReferredID(id, arg1);
+            break;
+        case REMOVE_REFERRED_ID:
+            removeReferredID(id, arg1);
+            break;
+        case REMOVE_REFERRED_IDS:
+            removeReferredIDs(id);
+            break;
+        case REMOVE:
+            remove(id);
+            break;
+        case PUT_AGGREGATED_ID:
+            putAggregatedID(id, arg1);
+            break;
+        case REMOVE_AGGREGATED_ID:
+            removeAggregatedID(id, arg1);
+            break;
+        case PUT_AGGREGATION_NODE:
+            putAggregationNode(id);
+            break;
+        case PUT_ID:
+            if (idMap.get(id) == null) {
+                idMap.put(id, new ArrayMap());
+            }
+            break;
+        case REMOVE_UNTOUCHED_ID:
+            removeUntouchedID(id);
+            break;
+        default:
+            throw new IOException("Unknown access data record type: " + type);
+        }
+    }
+
+    /* ----------------------------------- files ----------------------------------- */
+
+    private File getSnapshotFile(long fileGeneration) {
+        return new File(directory, SNAPSHOT_PREFIX + fileGeneration + FILE_SUFFIX);
+    }
+
+    private File getLogFile(long fileGeneration) {
+        return new File(directory, LOG_PREFIX + fileGeneration + FILE_SUFFIX);
+    }
+
+    private boolean isAccessDataFile(String name) {
+        return (name.startsWith(SNAPSHOT_PREFIX) || name.startsWith(LOG_PREFIX))
+                && (name.endsWith(FILE_SUFFIX) || name.endsWith(TMP_SUFFIX));
+    }
+
+    /**
+     * Returns the generation of the newest snapshot in the directory, or 0 if there is none.
+     */
+    private long findLatestGeneration() {
+        long latest = 0;
+        String[] names = directory.list();
+        for (int i = 0; names != null && i < names.length; i++) {
+            String name = names[i];
+            if (name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(FILE_SUFFIX)) {
+                try {
+                    long fileGeneration = Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name
+                            .length()
+                            - FILE_SUFFIX.length()));
+                    latest = Math.max(latest, fileGeneration);
+                }
+                catch (NumberFormatException e) {
+                    // not one of our files
+                }
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Deletes the files of previous generations and unfinished snapshots.
+     */
+    private void deleteObsoleteFiles() {
+        File snapshotFile = getSnapshotFile(generation);
+        File logFile = getLogFile(generation);
+        File[] files = directory.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            File file = files[i];
+            if (isAccessDataFile(file.getName()) && !file.equals(snapshotFile) && !file.equals(logFile)) {
+                if (!file.delete()) {
+                    logger.warn("Couldn't delete obsolete access data file " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * An InputStream reading from a (memory-mapped) ByteBuffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
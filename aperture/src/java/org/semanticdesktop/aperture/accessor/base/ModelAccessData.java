@@ -7,9 +7,14 @@
 package org.semanticdesktop.aperture.accessor.base;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
@@ -18,9 +23,13 @@ import org.ontoware.rdf2go.exception.ModelException;
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.TriplePattern;
+import org.ontoware.rdf2go.model.impl.TriplePatternImpl;
 import org.ontoware.rdf2go.model.node.Literal;
 import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
 import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
 import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.model.node.Variable;
 import org.ontoware.rdf2go.model.node.impl.URIImpl;
@@ -42,6 +51,18 @@ import org.slf4j.LoggerFactory;
  * The AccessData.DATE_KEY, AccessData.BYTE_SITE_KEY and AccessData.REDIRECTS_TO_KEY keys are mapped to
  * Aperture DATA predicates. In that case the value must be a long encoded as a String or, in the last case, a
  * URL encoded as a String.
+ * 
+ * <p>
+ * By default every modification is written to the Model immediately and every query is answered by the
+ * Model. When a batch size is set with {@link #setBatchSize(int)}, ModelAccessData switches to a write-behind
+ * mode: modifications are buffered and written to the Model in a single transaction once the buffer holds
+ * the given number of modifications, when {@link #store()} is called or when a query needs them. In this
+ * mode the ids, their dates, byte sizes, touched state and parents are also kept in an in-memory cache that
+ * is filled with a single scan of the Model in {@link #initialize()}. {@link #get(String, String)} for the
+ * date and byte size keys, {@link #isKnownId(String)}, {@link #touch(String)}, {@link #isTouched(String)},
+ * {@link #getStoredIDs()}, {@link #getSize()} and {@link #getUntouchedIDsIterator()} are then answered from
+ * the cache, without accessing the Model. The Model must not be modified by others while the cache is in
+ * use.
  */
 public class ModelAccessData implements AccessData {
 
@@ -75,6 +96,45 @@ public class ModelAccessData implements AccessData {
     
     private long timestampLong = -1;
 
+    /**
+     * The maximum number of buffered modifications, 0 when modifications are written immediately.
+     */
+    private int batchSize = 0;
+
+    /**
+     * Statement patterns that are to be removed from the Model. They are removed before the pending
+     * additions are added.
+     */
+    private List<TriplePattern> pendingRemovals = new ArrayList<TriplePattern>();
+
+    private Set<Statement> pendingAdditions = new LinkedHashSet<Statement>();
+
+    /**
+     * Cached information about all ids in the Model, only used in write-behind mode.
+     */
+    private Map<String, CachedID> cache;
+
+    /**
+     * The information about an id that is kept in the cache.
+     */
+    private static class CachedID {
+
+        private String date;
+
+        private String byteSize;
+
+        /** The timestamp statement in the Model, -1 if there is none */
+        private long timestamp = -1;
+
+        private String parent;
+
+        /** The number of ids aggregated by this id */
+        private int children;
+
+        /** Set when a removal may have removed the last statement about this id */
+        private boolean unverified;
+    }
+
     /**
      * Creates a new ModelAccessData instance.
      * 
@@ -90,6 +150,29 @@ public class ModelAccessData implements AccessData {
         this.timestampLong = -1;
     }
     
+    /**
+     * Sets the number of modifications that are buffered before they are written to the Model. A value
+     * larger than 0 switches this ModelAccessData to write-behind mode, 0 (the default) writes every
+     * modification immediately. This method must be called before {@link #initialize()}.
+     * 
+     * @param batchSize the maximum number of buffered modifications
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("batchSize cannot be negative");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the number of modifications that are buffered before they are written to the Model.
+     * 
+     * @return the batch size, 0 if modifications are written immediately
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
     private void checkInitialization() {
         if (timestampLong < 0) {
             throw new IllegalStateException("AccessData not initialized, call initialize() first");
@@ -98,6 +181,9 @@ public class ModelAccessData implements AccessData {
 
     public void clear() throws IOException {
         this.timestampLong = -1;
+        this.cache = null;
+        pendingRemovals.clear();
+        pendingAdditions.clear();
         try {
             model.removeAll();
         }
@@ -114,6 +200,12 @@ public class ModelAccessData implements AccessData {
     }
     
     public boolean isTouched(String id) {
+        if (cache != null) {
+            CachedID cachedID = cache.get(id);
+            return cachedID != null && cachedID.timestamp == timestampLong;
+        }
+
+        commit();
         URI idURI = model.createURI(id);
         ClosableIterator<? extends Statement> iter = null;
         try {
@@ -133,6 +225,18 @@ public class ModelAccessData implements AccessData {
     }
     
     private void touch(URI id) {
+        if (cache != null) {
+            CachedID cachedID = getCachedID(id.toString());
+            if (cachedID.timestamp != timestampLong) {
+                if (cachedID.timestamp >= 0) {
+                    remove(id, timestamp, createTimestampLiteral(cachedID.timestamp));
+                }
+                add(model.createStatement(id, timestamp, createTimestampLiteral(timestampLong)));
+                cachedID.timestamp = timestampLong;
+            }
+            return;
+        }
+
         model.removeStatement(id,timestamp,(Node)null);
         try {
             // this is crappy, the ModelUtil class shouldn't throw ModelExceptions anymore
@@ -145,6 +249,13 @@ public class ModelAccessData implements AccessData {
 
     public String get(String id, String key) {
         checkInitialization();
+        if (cache != null && (key == AccessData.DATE_KEY || key == AccessData.BYTE_SIZE_KEY)) {
+            CachedID cachedID = cache.get(id);
+            if (cachedID == null) {
+                return null;
+            }
+            return key == AccessData.DATE_KEY ? cachedID.date : cachedID.byteSize;
+        }
         commit();
 
         ClosableIterator<? extends Statement> iterator = null;
@@ -215,16 +326,24 @@ public class ModelAccessData implements AccessData {
     }
 
     /**
-     * Warning: expensive operation, as this implementation queries for all unique subjects used in this
-     * ModelAccessData's context.
+     * Warning: expensive operation when the write-behind mode is not used, as this implementation then
+     * queries for all unique subjects used in this ModelAccessData's context.
      */
     public int getSize() {
         checkInitialization();
+        if (cache != null) {
+            verifyCache();
+            return cache.size();
+        }
         return getStoredIDs().size();
     }
 
     public Set<String> getStoredIDs() {
         checkInitialization();
+        if (cache != null) {
+            verifyCache();
+            return new HashSet<String>(cache.keySet());
+        }
         commit();
 
         ClosableIterator<? extends Statement> iterator = null;
@@ -253,24 +372,114 @@ public class ModelAccessData implements AccessData {
         safelySleep(2); // this is to ensure that two consecutive crawler will have diferent timestamps
         // it is ugly, but without it the mechanism could get unreliable (e.g. in unit tests)
         // using uuid's would be inefficient in SPARQL, since we'd have to use the FILTER regex constructs
+        if (batchSize > 0 && cache == null) {
+            loadCache();
+        }
     }
 
-    private void safelySleep(long ms) {
-        long start = System.currentTimeMillis();
-        long now = System.currentTimeMillis();
-        while (now < start + ms) {
-            try {
-                Thread.sleep(start + ms - now);
+    /**
+     * Fills the cache with a single scan over all statements in the Model.
+     */
+    private void loadCache() {
+        commit();
+        cache = new HashMap<String, CachedID>(1024);
+        Map<String, String> parents = new HashMap<String, String>();
+
+        ClosableIterator<? extends Statement> iterator = model.findStatements(Variable.ANY, Variable.ANY,
+            Variable.ANY);
+        try {
+            while (iterator.hasNext()) {
+                Statement statement = iterator.next();
+                Resource subject = statement.getSubject();
+                CachedID cachedID = getCachedID(subject.toString());
+                URI predicate = statement.getPredicate();
+                Node object = statement.getObject();
+
+                if (timestamp.equals(predicate)) {
+                    long value = parseTimestamp(object);
+                    if (value > cachedID.timestamp) {
+                        cachedID.timestamp = value;
+                    }
+                }
+                else if (dateAsNumber.equals(predicate) && object instanceof Literal) {
+                    cachedID.date = ((Literal) object).getValue();
+                }
+                else if (byteSize.equals(predicate) && object instanceof Literal) {
+                    cachedID.byteSize = ((Literal) object).getValue();
+                }
+                else if (aggregates.equals(predicate) && object instanceof URI) {
+                    parents.put(object.toString(), subject.toString());
+                }
             }
-            catch (InterruptedException e) {
-                // do nothing
+        }
+        finally {
+            iterator.close();
+        }
+
+        // aggregated ids without statements of their own are not known
+        for (Map.Entry<String, String> entry : parents.entrySet()) {
+            CachedID cachedID = cache.get(entry.getKey());
+            if (cachedID != null) {
+                cachedID.parent = entry.getValue();
+                cache.get(entry.getValue()).children++;
             }
-            now = System.currentTimeMillis();
         }
     }
-    
-    public boolean isKnownId(String id) {
-        checkInitialization();
+
+    private CachedID getCachedID(String id) {
+        CachedID cachedID = cache.get(id);
+        if (cachedID == null) {
+            cachedID = new CachedID();
+            cache.put(id, cachedID);
+        }
+        cachedID.unverified = false;
+        return cachedID;
+    }
+
+    /**
+     * Updates the cache after the aggregation link between the given id and its parent has been removed.
+     */
+    private void detachCachedID(CachedID cachedID) {
+        if (cachedID.parent != null) {
+            CachedID parentID = cache.get(cachedID.parent);
+            if (parentID != null) {
+                parentID.children--;
+                markUnverified(cachedID.parent);
+            }
+            cachedID.parent = null;
+        }
+    }
+
+    /**
+     * Marks the given id as possibly unknown, after a removal that may have removed the last statement about
+     * it. Ids with a timestamp, a date or a byte size are certainly still known.
+     */
+    private void markUnverified(String id) {
+        CachedID cachedID = cache.get(id);
+        if (cachedID != null && cachedID.timestamp < 0 && cachedID.date == null && cachedID.byteSize == null) {
+            cachedID.unverified = true;
+        }
+    }
+
+    /**
+     * Removes all ids marked as possibly unknown from the cache that have no statements left in the Model.
+     */
+    private void verifyCache() {
+        Iterator<Map.Entry<String, CachedID>> iterator = cache.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CachedID> entry = iterator.next();
+            if (entry.getValue().unverified) {
+                if (hasStatements(entry.getKey())) {
+                    entry.getValue().unverified = false;
+                }
+                else {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private boolean hasStatements(String id) {
         commit();
 
         ClosableIterator<? extends Statement> iterator = null;
@@ -291,6 +500,39 @@ public class ModelAccessData implements AccessData {
         }
     }
 
+    private void safelySleep(long ms) {
+        long start = System.currentTimeMillis();
+        long now = System.currentTimeMillis();
+        while (now < start + ms) {
+            try {
+                Thread.sleep(start + ms - now);
+            }
+            catch (InterruptedException e) {
+                // do nothing
+            }
+            now = System.currentTimeMillis();
+        }
+    }
+    
+    public boolean isKnownId(String id) {
+        checkInitialization();
+        if (cache != null) {
+            CachedID cachedID = cache.get(id);
+            if (cachedID == null) {
+                return false;
+            }
+            else if (cachedID.unverified && !hasStatements(id)) {
+                cache.remove(id);
+                return false;
+            }
+            else {
+                cachedID.unverified = false;
+                return true;
+            }
+        }
+        return hasStatements(id);
+    }
+
     public void put(String id, String key, String value) {
         checkInitialization();
         try {
@@ -309,7 +551,14 @@ public class ModelAccessData implements AccessData {
                 Literal object = ModelUtil.createLiteral(model, value, dataType);
                 add(ModelUtil.createStatement(model, subject, predicate, object));
             }
-            add(model.createStatement(subject, timestamp, ModelUtil.createLiteral(model, timestampLong)));
+
+            if (cache != null) {
+                setCachedValue(getCachedID(id), predicate, value);
+                touch(subject);
+            }
+            else {
+                add(model.createStatement(subject, timestamp, createTimestampLiteral(timestampLong)));
+            }
         }
         catch (ModelException e) {
             logger.error("Could not store info for ID " + id, e);
@@ -321,6 +570,9 @@ public class ModelAccessData implements AccessData {
             URI subject = ModelUtil.createURI(model, id);
             URI object = ModelUtil.createURI(model, referredID);
             add(ModelUtil.createStatement(model, subject, linksTo, object));
+            if (cache != null) {
+                getCachedID(id);
+            }
         }
         catch (ModelException e) {
             logger.error("Could not store referred ID for ID " + id, e);
@@ -330,7 +582,12 @@ public class ModelAccessData implements AccessData {
     public void remove(String id, String key) {
         try {
             URI idURI = ModelUtil.createURI(model, id);
-            remove(idURI, toURI(key));
+            URI predicate = toURI(key);
+            remove(idURI, predicate);
+            if (cache != null && cache.containsKey(id)) {
+                setCachedValue(cache.get(id), predicate, null);
+                markUnverified(id);
+            }
         }
         catch (ModelException e) {
             logger.error("Could not remove value for ID " + id, e);
@@ -347,14 +604,13 @@ public class ModelAccessData implements AccessData {
     }
 
     public void removeReferredID(String id, String referredID) {
-        commit();
-
         try {
             URI subject = ModelUtil.createURI(model, id);
             URI object = ModelUtil.createURI(model, referredID);
-            Statement statement = ModelUtil.createStatement(model, subject, linksTo, object);
-
-            model.removeStatement(statement);
+            remove(subject, linksTo, object);
+            if (cache != null) {
+                markUnverified(id);
+            }
         }
         catch (ModelException e) {
             logger.error("Could not remove referred ID for ID " + id, e);
@@ -365,6 +621,9 @@ public class ModelAccessData implements AccessData {
         try {
             URI idURI = ModelUtil.createURI(model, id);
             remove(idURI, linksTo);
+            if (cache != null) {
+                markUnverified(id);
+            }
         }
         catch (ModelException e) {
             logger.error("Could not remove referred IDs for ID " + id, e);
@@ -373,10 +632,75 @@ public class ModelAccessData implements AccessData {
 
     public void store() throws IOException {
         this.timestampLong = -1;
-        commit();
+        try {
+            commit();
+        }
+        catch (ModelRuntimeException e) {
+            IOException ioe = new IOException();
+            ioe.initCause(e);
+            throw ioe;
+        }
     }
 
-    private void commit() {}
+    /**
+     * Writes all buffered modifications to the Model in a single transaction.
+     */
+    private void commit() {
+        if (pendingRemovals.isEmpty() && pendingAdditions.isEmpty()) {
+            return;
+        }
+
+        try {
+            model.setAutocommit(false);
+            for (TriplePattern pattern : pendingRemovals) {
+                model.removeStatements(pattern);
+            }
+            model.addAll(pendingAdditions.iterator());
+            model.commit();
+        }
+        finally {
+            model.setAutocommit(true);
+            pendingRemovals.clear();
+            pendingAdditions.clear();
+        }
+    }
+
+    private void commitIfBatchIsFull() {
+        if (pendingRemovals.size() + pendingAdditions.size() >= batchSize) {
+            commit();
+        }
+    }
+
+    private Literal createTimestampLiteral(long value) {
+        try {
+            // this is crappy, the ModelUtil class shouldn't throw ModelExceptions anymore
+            return ModelUtil.createLiteral(model, value);
+        }
+        catch (ModelException e) {
+            throw new ModelRuntimeException(e);
+        }
+    }
+
+    private long parseTimestamp(Node node) {
+        if (node instanceof Literal) {
+            try {
+                return Long.parseLong(((Literal) node).getValue());
+            }
+            catch (NumberFormatException nfe) {
+                // not a valid timestamp
+            }
+        }
+        return -1;
+    }
+
+    private void setCachedValue(CachedID cachedID, URI predicate, String value) {
+        if (predicate == dateAsNumber) {
+            cachedID.date = value;
+        }
+        else if (predicate == byteSize) {
+            cachedID.byteSize = value;
+        }
+    }
 
     private URI toURI(String key) throws ModelException {
         if (key == AccessData.DATE_KEY) {
@@ -394,6 +718,12 @@ public class ModelAccessData implements AccessData {
     }
 
     private void add(Statement statement) {
+        if (batchSize > 0) {
+            pendingAdditions.add(statement);
+            commitIfBatchIsFull();
+            return;
+        }
+
         try {
             model.addStatement(statement);
         }
@@ -402,25 +732,57 @@ public class ModelAccessData implements AccessData {
         }
     }
 
+    /**
+     * Removes all statements matching the given pattern, null values match anything.
+     */
+    private void remove(Resource subject, URI predicate, Node object) {
+        if (batchSize > 0) {
+            TriplePattern pattern = new TriplePatternImpl(
+                subject == null ? Variable.ANY : (ResourceOrVariable) subject, 
+                predicate == null ? Variable.ANY : predicate, 
+                object == null ? Variable.ANY : (NodeOrVariable) object);
+
+            // buffered additions are written after the removals, those that match must be dropped here
+            Iterator<Statement> iterator = pendingAdditions.iterator();
+            while (iterator.hasNext()) {
+                if (pattern.matches(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+            pendingRemovals.add(pattern);
+            commitIfBatchIsFull();
+            return;
+        }
+
+        model.removeStatement(subject, predicate, object);
+    }
+
     private void remove(URI subject, URI predicate) {
-        commit();
         ClosableIterator<? extends Statement> iter = null;
         try {
             // remove the subtree
             
             if (predicate == null) {
                 // this means that we want to remove everything we know
+                commit();
                 iter = model.findStatements(subject, aggregates, Variable.ANY);
                 while (iter.hasNext()) {
                     URI child = iter.next().getObject().asURI();
                     remove(child,null);
                 }
+                
+                // remove the link from the parent
+                remove(null, aggregates, subject);
+                if (cache != null) {
+                    CachedID cachedID = cache.remove(subject.toString());
+                    if (cachedID != null) {
+                        detachCachedID(cachedID);
+                    }
+                }
             }
             
             // remove the current node
-            model.removeStatement(subject, predicate, (Node)null);
-            // remove the link from the parent
-            model.removeStatement(null, aggregates, subject);
+            remove(subject, predicate, null);
             // note that the incoming referredID links are left alone
         }
         catch (ModelRuntimeException e) {
@@ -434,6 +796,9 @@ public class ModelAccessData implements AccessData {
     }
 
     public Set getAggregatedIDs(String id) {
+        if (cache != null && (!cache.containsKey(id) || cache.get(id).children <= 0)) {
+            return new HashSet<String>();
+        }
         commit();
 
         ClosableIterator<? extends Statement> iterator = null;
@@ -468,9 +833,20 @@ public class ModelAccessData implements AccessData {
         try {
             URI subject = ModelUtil.createURI(model, id);
             URI object = ModelUtil.createURI(model, aggregatedID);
+            if (cache != null) {
+                CachedID cachedID = getCachedID(aggregatedID);
+                if (id.equals(cachedID.parent)) {
+                    // the link already exists
+                    return;
+                }
+                detachCachedID(cachedID);
+                cachedID.parent = id;
+                getCachedID(id).children++;
+            }
+
             // if this aggregateID already had a parent, the previous link must be
             // removed, otherwise cycles in the aggregation graph may occur
-            model.removeStatement(null, aggregates, object);
+            remove(null, aggregates, object);
             
             add(ModelUtil.createStatement(model, subject, aggregates, object));
         }
@@ -480,12 +856,16 @@ public class ModelAccessData implements AccessData {
     }
 
     public void removeAggregatedID(String id, String aggregatedID) {
-        commit();
         try {
             URI subject = ModelUtil.createURI(model, id);
             URI object = ModelUtil.createURI(model, aggregatedID);
-            Statement statement = ModelUtil.createStatement(model, subject, aggregates, object);
-            model.removeStatement(statement);
+            remove(subject, aggregates, object);
+            if (cache != null) {
+                CachedID cachedID = cache.get(aggregatedID);
+                if (cachedID != null && id.equals(cachedID.parent)) {
+                    detachCachedID(cachedID);
+                }
+            }
         }
         catch (ModelException e) {
             logger.error("Could not remove referred ID for ID " + id, e);
@@ -493,6 +873,11 @@ public class ModelAccessData implements AccessData {
     }
     
     public void removeUntouchedIDs() {
+        if (cache != null) {
+            removeUntouchedCachedIDs();
+            return;
+        }
+
         ClosableIterator<? extends Statement> iter = null;
         List<Resource> resourcesToRemove = new LinkedList<Resource>();
         try {
@@ -520,6 +905,36 @@ public class ModelAccessData implements AccessData {
         }
     }
     
+    private void removeUntouchedCachedIDs() {
+        Set<String> removedIDs = new HashSet<String>();
+        List<CachedID> removedCachedIDs = new ArrayList<CachedID>();
+        Iterator<Map.Entry<String, CachedID>> iterator = cache.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CachedID> entry = iterator.next();
+            CachedID cachedID = entry.getValue();
+            if (cachedID.timestamp >= 0 && cachedID.timestamp != timestampLong) {
+                URI resource = model.createURI(entry.getKey());
+                remove(resource, null, null);
+                // in conformance to the remove() method the incoming referredID links are left alone
+                remove(null, aggregates, resource);
+                removedIDs.add(entry.getKey());
+                removedCachedIDs.add(cachedID);
+                iterator.remove();
+            }
+        }
+
+        for (Map.Entry<String, CachedID> entry : cache.entrySet()) {
+            CachedID cachedID = entry.getValue();
+            if (removedIDs.contains(cachedID.parent)) {
+                cachedID.parent = null;
+            }
+        }
+        for (CachedID cachedID : removedCachedIDs) {
+            // parents that have not been removed have lost an aggregates statement
+            detachCachedID(cachedID);
+        }
+    }
+
     // this tries to remove untouched IDs gracefully, without creating a gigantic set
     // I commented this method out, since it caused problems, it seems that the NativeStore
     // doesn't support this kind of statement removal
@@ -559,6 +974,10 @@ public class ModelAccessData implements AccessData {
     }*/
     
     public ClosableIterator getUntouchedIDsIterator() {
+        if (cache != null) {
+            return new CachedUntouchedIterator();
+        }
+        commit();
         return new UntouchedIterator(model.findStatements(Variable.ANY,timestamp,Variable.ANY));
     }
     
@@ -610,6 +1029,45 @@ public class ModelAccessData implements AccessData {
         }
     }
     
+    private class CachedUntouchedIterator implements ClosableIterator {
+
+        private Iterator<Map.Entry<String, CachedID>> wrappedIterator = cache.entrySet().iterator();
+        private String nextValue;
+
+        public boolean hasNext() {
+            getNextUntouched();
+            return nextValue != null;
+        }
+
+        public Object next() {
+            getNextUntouched();
+            if (nextValue == null) {
+                throw new NoSuchElementException();
+            }
+            String result = nextValue;
+            nextValue = null;
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() {
+            // don't do anything
+        }
+
+        private void getNextUntouched() {
+            while (nextValue == null && wrappedIterator.hasNext()) {
+                Map.Entry<String, CachedID> entry = wrappedIterator.next();
+                long value = entry.getValue().timestamp;
+                if (value >= 0 && value != timestampLong) {
+                    nextValue = entry.getKey();
+                }
+            }
+        }
+    }
+
     private boolean checkTouched(Node node) {
         boolean touched = false;
         if (node instanceof Literal) {
@@ -638,6 +1096,11 @@ public class ModelAccessData implements AccessData {
     
     private void touchURIRecursively(URI uri) {
         touch(uri);
+        if (cache != null && cache.get(uri.toString()).children <= 0) {
+            // no need to query the model for the children of a leaf
+            return;
+        }
+        commit();
         ClosableIterator<? extends Statement> iter = null;
         try {
             iter = model.findStatements(uri,aggregates,Variable.ANY);
@@ -653,6 +1116,7 @@ public class ModelAccessData implements AccessData {
     }
     
     public ClosableIterator getAggregatedIDsClosure(String id) {
+        commit();
         URI idURI = model.createURI(id);
         return new AggregatedClosureIterator(model.findStatements(idURI,aggregates,Variable.ANY),id);
     }
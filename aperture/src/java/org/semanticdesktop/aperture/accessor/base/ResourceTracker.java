@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.accessor.base;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Closes the resources (streams, channels) opened on behalf of an object when that object is garbage
+ * collected without having released them. Unlike a finalizer, this only costs something for the objects
+ * that actually opened a resource, and the resource is closed as soon as the collection of its owner is
+ * noticed: every time a resource is tracked, the resources of collected owners are closed.
+ */
+class ResourceTracker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceTracker.class);
+
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<Object>();
+
+    /** Keeps the references reachable until they are released or enqueued */
+    private static final Set<TrackedResource> RESOURCES = new HashSet<TrackedResource>();
+
+    /**
+     * Starts tracking a resource.
+     *
+     * @param owner the object on whose behalf the resource was opened. The resource should not refer to it.
+     * @param resource the resource to close when the owner is collected without releasing it
+     * @param description describes the resource in the log message that reports the leak
+     * @return the handle with which the owner releases the resource
+     */
+    public static TrackedResource track(Object owner, Closeable resource, String description) {
+        closeLeakedResources();
+        TrackedResource result = new TrackedResource(owner, resource, description);
+        synchronized (RESOURCES) {
+            RESOURCES.add(result);
+        }
+        return result;
+    }
+
+    /**
+     * Closes the resources of all owners that have been collected since the last call.
+     */
+    public static void closeLeakedResources() {
+        TrackedResource resource;
+        while ((resource = (TrackedResource) QUEUE.poll()) != null) {
+            LOGGER.error("DataObject has not been disposed, closing " + resource.description);
+            try {
+                resource.close();
+            }
+            catch (IOException e) {
+                LOGGER.error("IOException while closing " + resource.description, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of resources that are tracked.
+     */
+    static int getResourceCount() {
+        synchronized (RESOURCES) {
+            return RESOURCES.size();
+        }
+    }
+
+    /**
+     * A resource that is tracked until it is closed.
+     */
+    public static class TrackedResource extends PhantomReference<Object> {
+
+        private final Closeable resource;
+
+        private final String description;
+
+        private TrackedResource(Object owner, Closeable resource, String description) {
+            super(owner, QUEUE);
+            this.resource = resource;
+            this.description = description;
+        }
+
+        /**
+         * Closes the resource and stops tracking it.
+         */
+        public void close() throws IOException {
+            synchronized (RESOURCES) {
+                RESOURCES.remove(this);
+            }
+            clear();
+            resource.close();
+        }
+    }
+}
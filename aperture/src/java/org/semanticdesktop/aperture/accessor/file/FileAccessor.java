@@ -38,11 +38,21 @@ import org.slf4j.LoggerFactory;
  * FileAccessor can be passed a File instance by putting a File object in the params Map with the String
  * "file" as key. It will then use this File, rather than constructing one based on the specified URL. This
  * can optimize cases where a File instance is already available.
+ * 
+ * <p>
+ * Crawlers that have already read the attributes of the File can pass them as a {@link FileAttributes}
+ * instance with the "fileAttributes" key. The attributes of the children of a folder can be passed as a
+ * FileAttributes array with the "children" key. The accessor will then use these snapshots instead of
+ * querying the file system again.
  */
 public class FileAccessor implements DataAccessor {
 
 	public static final String FILE_KEY = "file";
 
+	public static final String FILE_ATTRIBUTES_KEY = "fileAttributes";
+
+	public static final String CHILDREN_KEY = "children";
+
 	private Logger logger = LoggerFactory.getLogger(getClass());
 
 	/**
@@ -72,17 +82,18 @@ public class FileAccessor implements DataAccessor {
 			throw new IllegalArgumentException("non-file scheme: " + url);
 		}
 
-		// get the File instance
-		File file = getFile(url, params);
+		// get the File instance and its attributes
+		FileAttributes attributes = getFileAttributes(url, params);
+		File file = attributes.getFile();
 
 		// make sure the physical resource exists
-		if (!file.exists()) {
+		if (!attributes.exists()) {
 			throw new UrlNotFoundException(url);
 		}
 
 		// determine what kind of File it is
-		boolean isFile = file.isFile();
-		boolean isFolder = file.isDirectory();
+		boolean isFile = attributes.isFile();
+		boolean isFolder = attributes.isDirectory();
 		
 		// Removed this functionality after Christiaan Fluit complained about it
 		// TODO Return here after resolving the addParent issue
@@ -100,7 +111,7 @@ public class FileAccessor implements DataAccessor {
 		// and is the case on Windows, but the API isn't clear about it.
 		if (accessData != null) {
 			// determine when the file was last modified
-			long lastModified = file.lastModified();
+			long lastModified = attributes.getLastModified();
 
 			// check whether it has been modified
 			String value = accessData.get(url, AccessData.DATE_KEY);
@@ -124,7 +135,7 @@ public class FileAccessor implements DataAccessor {
 		}
 
 		// create the metadata
-		URI id = toURI(file);
+		URI id = URIImpl.createURIWithoutChecking(attributes.getURI());
 		
 		// the default behavior is to add the references to children to each
 		// folder data object, this may be overridden by 
@@ -136,14 +147,15 @@ public class FileAccessor implements DataAccessor {
 		
 		// TODO Return here after resolving the addParent issue
 		//RDFContainer metadata = createMetadata(file, id, isFile, isFolder, addParent, containerFactory);
-		RDFContainer metadata = createMetadata(file, id, isFile, isFolder, addFolderChildren, containerFactory);
+		RDFContainer metadata = createMetadata(attributes, id, addFolderChildren, getChildren(params),
+			containerFactory);
 		
 		// create the DataObject
 		DataObject result = null;
 
 		if (isFile) {
 			//InputStream contentStream = null;
-			if (file.canRead()) {
+			if (attributes.canRead()) {
 			    // 2.12.2007 - commented this line out, so that the file accessor returns
 			    // FileDataObjects backed by real files
 				//contentStream = new BufferedInputStream(new FileInputStream(file));
@@ -166,6 +178,18 @@ public class FileAccessor implements DataAccessor {
 		return result;
 	}
 
+	private FileAttributes getFileAttributes(String url, Map params) throws IOException {
+		// first try to fetch the attributes from the params map
+		if (params != null) {
+			Object value = params.get(FILE_ATTRIBUTES_KEY);
+			if (value instanceof FileAttributes) {
+				return (FileAttributes) value;
+			}
+		}
+
+		return FileAttributes.read(getFile(url, params));
+	}
+
 	private File getFile(String url, Map params) throws IOException {
 		// first try to fetch it from the params map
 		if (params != null) {
@@ -187,15 +211,26 @@ public class FileAccessor implements DataAccessor {
 		}
 	}
 
-	private RDFContainer createMetadata(File file, URI id, boolean isFile, boolean isFolder, 
-			boolean addFolderChildren, RDFContainerFactory containerFactory) {
+	private FileAttributes[] getChildren(Map params) {
+		if (params != null) {
+			Object value = params.get(CHILDREN_KEY);
+			if (value instanceof FileAttributes[]) {
+				return (FileAttributes[]) value;
+			}
+		}
+		return null;
+	}
+
+	private RDFContainer createMetadata(FileAttributes attributes, URI id, boolean addFolderChildren,
+			FileAttributes[] children, RDFContainerFactory containerFactory) {
 		// get the RDFContainer instance
 		RDFContainer metadata = containerFactory.getRDFContainer(id);
 		
 		metadata.add(RDF.type,NFO.FileDataObject);
 		
 		// create regular File metadata first
-		long lastModified = file.lastModified();
+		File file = attributes.getFile();
+		long lastModified = attributes.getLastModified();
 		if (lastModified != 0l) {
 			metadata.add(NFO.fileLastModified, new Date(lastModified));
 		}
@@ -209,13 +244,15 @@ public class FileAccessor implements DataAccessor {
 		// TODO Return here after resolving the addParent issue
 		//if (parent != null && addParent) {
 		if (parent != null) {
-			metadata.add(NFO.belongsToContainer, toURI(parent));
-            metadata.add(metadata.getModel().createStatement(toURI(parent), RDF.type, NFO.Folder));
+			// the parent is a folder by definition, no need to ask the file system
+			URI parentUri = URIImpl.createURIWithoutChecking(FileAttributes.getFolderURI(parent));
+			metadata.add(NFO.belongsToContainer, parentUri);
+            metadata.add(metadata.getModel().createStatement(parentUri, RDF.type, NFO.Folder));
 		}
 
 		// add file-specific metadata
-		if (isFile) {
-			long length = file.length();
+		if (attributes.isFile()) {
+			long length = attributes.getLength();
             // NOTE: The bytesize of 0 is an important information we should generate.
             // When people search for files with size 0, they should be able to do so.
             // Therefore LeoSauermann changed this code to return 0 on 27.06.2007
@@ -224,8 +261,15 @@ public class FileAccessor implements DataAccessor {
 			//}
 		}
 
-		// add folder-specific metadata
-		else if (isFolder && addFolderChildren) {
+		// add folder-specific metadata, reusing the attributes of the children when we got them
+		else if (attributes.isDirectory() && addFolderChildren && children != null) {
+			for (int i = 0; i < children.length; i++) {
+				URI childUri = URIImpl.createURIWithoutChecking(children[i].getURI());
+				metadata.add(NIE.hasPart, childUri);
+				metadata.add(metadata.getModel().createStatement(childUri, RDF.type, NFO.FileDataObject));
+			}
+		}
+		else if (attributes.isDirectory() && addFolderChildren) {
 		    
 		    final RDFContainer finalMetadata = metadata;
 		    file.listFiles(new FileFilter() {
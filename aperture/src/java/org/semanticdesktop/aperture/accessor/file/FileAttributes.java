@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.accessor.file;
+
+import java.io.File;
+import java.net.URISyntaxException;
+
+/**
+ * An immutable snapshot of the attributes of a File. Every attribute is read from the file system exactly
+ * once, when the snapshot is created. Crawlers can pass a snapshot to the {@link FileAccessor} by putting
+ * it in the params Map with the {@link FileAccessor#FILE_ATTRIBUTES_KEY} key, so that the accessor does not
+ * need to query the file system again for the same information.
+ *
+ * <p>
+ * The URI of the file is computed from the path and the directory flag, this avoids the additional stat
+ * call performed by {@link File#toURI()}.
+ */
+public final class FileAttributes {
+
+    private final File file;
+
+    private final String uri;
+
+    private final boolean exists;
+
+    private final boolean isFile;
+
+    private final boolean isDirectory;
+
+    private final boolean canRead;
+
+    private final long length;
+
+    private final long lastModified;
+
+    private FileAttributes(File file, boolean exists, boolean isFile, boolean isDirectory, boolean canRead,
+            long length, long lastModified) {
+        this.file = file;
+        this.uri = toURIString(file, isDirectory);
+        this.exists = exists;
+        this.isFile = isFile;
+        this.isDirectory = isDirectory;
+        this.canRead = canRead;
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Reads the attributes of the given file.
+     *
+     * @param file the file whose attributes are to be read
+     * @return a snapshot of the attributes of the file
+     */
+    public static FileAttributes read(File file) {
+        boolean isDirectory = file.isDirectory();
+        boolean isFile = !isDirectory && file.isFile();
+        boolean exists = isDirectory || isFile || file.exists();
+
+        // the read permission and the length are only relevant for regular files
+        boolean canRead = isFile && file.canRead();
+        long length = isFile ? file.length() : 0l;
+        long lastModified = exists ? file.lastModified() : 0l;
+
+        return new FileAttributes(file, exists, isFile, isDirectory, canRead, length, lastModified);
+    }
+
+    /**
+     * Returns the URI of a folder, without checking whether the given File actually is a folder.
+     *
+     * @param folder a File that is known to be a folder
+     * @return the URI of the folder, as returned by {@link File#toURI()}
+     */
+    public static String getFolderURI(File folder) {
+        return toURIString(folder, true);
+    }
+
+    private static String toURIString(File file, boolean isDirectory) {
+        // this mimics File.toURI without its isDirectory call
+        String path = file.getAbsolutePath();
+        if (File.separatorChar != '/') {
+            path = path.replace(File.separatorChar, '/');
+        }
+        if (!path.startsWith("/")) {
+            path = "/" + path;
+        }
+        if (isDirectory && !path.endsWith("/")) {
+            path = path + "/";
+        }
+        if (path.startsWith("//")) {
+            path = "//" + path;
+        }
+
+        try {
+            return new java.net.URI("file", null, path, null).toString();
+        }
+        catch (URISyntaxException e) {
+            // should not happen, an absolute path is always a valid path component
+            return file.toURI().toString();
+        }
+    }
+
+    /**
+     * @return the file these attributes belong to
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the URI of the file, equal to the one returned by {@link File#toURI()}
+     */
+    public String getURI() {
+        return uri;
+    }
+
+    /**
+     * @return true if the file existed when its attributes were read
+     */
+    public boolean exists() {
+        return exists;
+    }
+
+    /**
+     * @return true if the file is a regular file
+     */
+    public boolean isFile() {
+        return isFile;
+    }
+
+    /**
+     * @return true if the file is a directory
+     */
+    public boolean isDirectory() {
+        return isDirectory;
+    }
+
+    /**
+     * @return true if the file is a regular file that can be read
+     */
+    public boolean canRead() {
+        return canRead;
+    }
+
+    /**
+     * @return the length of a regular file in bytes, 0 for directories
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the last modification time of the file, 0 if it does not exist
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+}
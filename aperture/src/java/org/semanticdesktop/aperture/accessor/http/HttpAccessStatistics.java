@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.accessor.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how often an HttpAccessor could avoid downloading or processing a resource during an incremental
+ * crawl. A crawler passes an instance to the HttpAccessor through the {@link HttpAccessor#STATISTICS_KEY}
+ * parameter. The counters can be updated concurrently.
+ */
+public class HttpAccessStatistics {
+
+    private final AtomicLong notModifiedCount = new AtomicLong();
+
+    private final AtomicLong unchangedContentCount = new AtomicLong();
+
+    private final AtomicLong savedByteCount = new AtomicLong();
+
+    /**
+     * Returns the number of requests that were answered with a 304 (Not Modified) response.
+     */
+    public long getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    /**
+     * Returns the number of resources that were downloaded completely but turned out to have the same
+     * content digest as in the previous crawl, i.e. resources of servers that ignored the conditional
+     * request.
+     */
+    public long getUnchangedContentCount() {
+        return unchangedContentCount.get();
+    }
+
+    /**
+     * Returns the number of bytes that did not have to be downloaded because of 304 responses, plus the
+     * number of bytes that did not have to be processed because their digest was unchanged. The size of a
+     * resource that was not downloaded is the size registered in the previous crawl, if known.
+     */
+    public long getSavedByteCount() {
+        return savedByteCount.get();
+    }
+
+    void notModified(long byteCount) {
+        notModifiedCount.incrementAndGet();
+        if (byteCount > 0L) {
+            savedByteCount.addAndGet(byteCount);
+        }
+    }
+
+    void unchangedContent(long byteCount) {
+        unchangedContentCount.incrementAndGet();
+        savedByteCount.addAndGet(byteCount);
+    }
+
+    public String toString() {
+        return "HttpAccessStatistics[notModifiedCount=" + notModifiedCount + ", unchangedContentCount="
+                + unchangedContentCount + ", savedByteCount=" + savedByteCount + "]";
+    }
+}
@@ -6,12 +6,16 @@
  */
 package org.semanticdesktop.aperture.accessor.http;
 
+import static org.semanticdesktop.aperture.accessor.AccessData.BYTE_SIZE_KEY;
 import static org.semanticdesktop.aperture.accessor.AccessData.DATE_KEY;
 import static org.semanticdesktop.aperture.accessor.AccessData.REDIRECTS_TO_KEY;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.Date;
@@ -28,7 +32,9 @@ import org.semanticdesktop.aperture.accessor.UrlNotFoundException;
 import org.semanticdesktop.aperture.accessor.base.FileDataObjectBase;
 import org.semanticdesktop.aperture.datasource.DataSource;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.util.ExposedByteArrayInputStream;
 import org.semanticdesktop.aperture.util.HttpClientUtil;
+import org.semanticdesktop.aperture.util.StringUtil;
 import org.semanticdesktop.aperture.util.UrlUtil;
 import org.semanticdesktop.aperture.vocabulary.NFO;
 import org.semanticdesktop.aperture.vocabulary.NIE;
@@ -37,6 +43,14 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A DataAccessor implementation for the http and https schemes.
+ * 
+ * <p>
+ * When an AccessData is passed, the HttpAccessor registers the Date, ETag, Last-Modified and Content-Length
+ * headers and a digest of the content of every URL. The next request for that URL is a conditional request
+ * with If-Modified-Since and If-None-Match headers. As not all servers honour conditional requests, the
+ * content of a 200 response is buffered and its digest is compared with the registered digest before the
+ * DataObject is created: the resource is reported as unmodified when the digest is unchanged. Content
+ * larger than the maximum digest size is not buffered and never considered unmodified this way.
  */
 public class HttpAccessor implements DataAccessor {
 
@@ -48,12 +62,43 @@ public class HttpAccessor implements DataAccessor {
 	 */
 	private static final String ACCESSED_KEY = "accessed";
 
+	/**
+	 * Key used to store the ETag of a url.
+	 */
+	public static final String ETAG_KEY = "etag";
+
+	/**
+	 * Key used to store the Last-Modified date of a url, as time in milliseconds.
+	 */
+	public static final String LAST_MODIFIED_KEY = "lastModified";
+
+	/**
+	 * Key used to store the SHA-1 digest of the content of a url.
+	 */
+	public static final String DIGEST_KEY = "digest";
+
+	/**
+	 * Key of the parameter that holds an {@link HttpAccessStatistics} instance, to be updated when a
+	 * resource did not have to be downloaded or processed.
+	 */
+	public static final String STATISTICS_KEY = "httpAccessStatistics";
+
 	private static final int MAX_REDIRECTIONS = 20;
 
+	private static final int DEFAULT_MAX_DIGEST_SIZE = 1024 * 1024;
+
+	/**
+	 * The maximum number of bytes of an unused response body that are read in order to be able to reuse the
+	 * connection. Connections with larger bodies are closed.
+	 */
+	private static final int MAX_DISCARDED_BYTES = 65536;
+
 	private int connectTimeout = 20000;
 
 	private int readTimeout = 20000;
 
+	private int maxDigestSize = DEFAULT_MAX_DIGEST_SIZE;
+
 	/**
 	 * Sets the connection timeout 
 	 * @param timeout timeout in miliseconds
@@ -86,6 +131,23 @@ public class HttpAccessor implements DataAccessor {
 		return readTimeout;
 	}
 
+	/**
+	 * Sets the maximum number of bytes of content that is buffered in order to compute its digest. Content
+	 * that is larger is passed on without a digest.
+	 * @param maxDigestSize the maximum size in bytes, 0 disables the digest
+	 */
+	public void setMaxDigestSize(int maxDigestSize) {
+		this.maxDigestSize = maxDigestSize;
+	}
+
+	/**
+	 * Returns the maximum number of bytes of content that is buffered in order to compute its digest.
+	 * @return the maximum size in bytes
+	 */
+	public int getMaxDigestSize() {
+		return maxDigestSize;
+	}
+
 	/**
 	 * @see DataAccessor#getDataObject(String, DataSource, Map, RDFContainerFactory)
 	 */
@@ -119,6 +181,9 @@ public class HttpAccessor implements DataAccessor {
 		// keep a backup of the originally passed url
 		String originalUrlString = urlString;
 
+		HttpAccessStatistics statistics = params == null ? null : (HttpAccessStatistics) params
+				.get(STATISTICS_KEY);
+
 		HttpURLConnection connection = null;
 		int nrRedirections = 0;
 
@@ -137,12 +202,13 @@ public class HttpAccessor implements DataAccessor {
 			url = UrlUtil.normalizeURL(url);
 			urlString = url.toExternalForm();
 
-			// see if a date was registered for this url
+			// see if a date and an entity tag were registered for this url
 			Date ifModifiedSince = accessData == null ? null : getIfModifiedSince(urlString, accessData);
+			String ifNoneMatch = accessData == null ? null : accessData.get(urlString, ETAG_KEY);
 
 			try {
 				// set up a connection (a HttpAccessor always has HttpURLConnections, else it's a bug)
-				connection = createConnection(url, ifModifiedSince);
+				connection = createConnection(url, ifModifiedSince, ifNoneMatch);
 
 				// send the request to the server
 				connection.connect();
@@ -167,10 +233,11 @@ public class HttpAccessor implements DataAccessor {
 				String lastUrl = urlString;
 				urlString = getRedirectedUrl(url, connection);
 				nrRedirections++;
+				releaseConnection(connection);
 
 				// update access data
 				if (accessData!=null) {
-					accessData.remove(lastUrl, DATE_KEY);
+					removeValidators(accessData, lastUrl);
 					accessData.remove(lastUrl, ACCESSED_KEY);
 					accessData.put(lastUrl, REDIRECTS_TO_KEY, urlString);
 				}
@@ -181,14 +248,20 @@ public class HttpAccessor implements DataAccessor {
 				}
 			}
 			else if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+				releaseConnection(connection);
 				throw new UrlNotFoundException(urlString);
 			}
 			else if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
 				// bail out ASAP
+				releaseConnection(connection);
+				if (statistics != null) {
+					statistics.notModified(getRegisteredByteSize(urlString, accessData));
+				}
 				return null;
 			}
 			else if (responseCode != HttpURLConnection.HTTP_OK) {
 				// this is a communication error, quit with an exception
+				releaseConnection(connection);
 				throw new IOException("Http connection error, response code = " + responseCode + ", url = "
 						+ url);
 			}
@@ -198,21 +271,86 @@ public class HttpAccessor implements DataAccessor {
 			}
 		}
 
+		InputStream stream = HttpClientUtil.getInputStream(connection);
+		String digest = null;
+		long byteSize = connection.getContentLength();
+
+		if (accessData != null && maxDigestSize > 0) {
+			// buffer the content so that its digest can be compared with that of the previous crawl
+			byte[] content = readContent(stream, maxDigestSize);
+			if (content.length <= maxDigestSize) {
+				stream.close();
+				stream = new ExposedByteArrayInputStream(content);
+				digest = StringUtil.sha1Hash(content);
+				if (byteSize < 0L) {
+					byteSize = content.length;
+				}
+
+				if (digest != null && digest.equals(accessData.get(urlString, DIGEST_KEY))) {
+					// the server ignored the conditional request, but the content has not changed
+					updateAccessData(accessData, urlString, connection, byteSize, digest);
+					if (statistics != null) {
+						statistics.unchangedContent(content.length);
+					}
+					return null;
+				}
+			}
+			else {
+				// too large to be buffered, pass it on without a digest
+				stream = new SequenceInputStream(new ByteArrayInputStream(content), stream);
+			}
+		}
+
 		// create the actual data object
-		DataObject result = createDataObject(uri, source, connection, containerFactory);
+		DataObject result = createDataObject(uri, source, connection, stream, containerFactory);
 
 		// register it in the access data
-		updateAccessData(accessData, urlString, connection.getDate());
+		updateAccessData(accessData, urlString, connection, byteSize, digest);
 
 		return result;
 	}
 
+	/**
+	 * Reads at most maxBytes + 1 bytes from the stream.
+	 */
+	private byte[] readContent(InputStream stream, int maxBytes) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.min(maxBytes + 1, 16384));
+		byte[] bytes = new byte[4096];
+		int remaining = maxBytes + 1;
+		while (remaining > 0) {
+			int bytesRead = stream.read(bytes, 0, Math.min(bytes.length, remaining));
+			if (bytesRead < 0) {
+				break;
+			}
+			buffer.write(bytes, 0, bytesRead);
+			remaining -= bytesRead;
+		}
+		return buffer.toByteArray();
+	}
+
+	private long getRegisteredByteSize(String urlString, AccessData accessData) {
+		String value = accessData == null ? null : accessData.get(urlString, BYTE_SIZE_KEY);
+		if (value != null) {
+			try {
+				return Long.parseLong(value);
+			}
+			catch (NumberFormatException e) {
+				logger.error("invalid long: " + value, e);
+			}
+		}
+		return -1L;
+	}
+
 	private Date getIfModifiedSince(String urlString, AccessData accessData) {
 		if (accessData == null) {
 			return null;
 		}
 		else {
-			String value = accessData.get(urlString, DATE_KEY);
+			// prefer the Last-Modified date sent by the server over the date of the response
+			String value = accessData.get(urlString, LAST_MODIFIED_KEY);
+			if (value == null) {
+				value = accessData.get(urlString, DATE_KEY);
+			}
 			if (value == null) {
 				return null;
 			}
@@ -228,7 +366,8 @@ public class HttpAccessor implements DataAccessor {
 		}
 	}
 
-	private HttpURLConnection createConnection(URL url, Date ifModifiedSince) throws IOException {
+	private HttpURLConnection createConnection(URL url, Date ifModifiedSince, String ifNoneMatch)
+			throws IOException {
 		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
 		connection.setConnectTimeout(connectTimeout);
 		connection.setReadTimeout(readTimeout);
@@ -237,10 +376,51 @@ public class HttpAccessor implements DataAccessor {
 		if (ifModifiedSince != null) {
 			connection.setIfModifiedSince(ifModifiedSince.getTime());
 		}
+		if (ifNoneMatch != null) {
+			connection.setRequestProperty("If-None-Match", ifNoneMatch);
+		}
 
 		return connection;
 	}
 
+	/**
+	 * Reads and closes the body of a response that is not going to be used. Only a connection of which the
+	 * body has been read completely is kept alive by HttpURLConnection, to be reused for the next request
+	 * to the same host.
+	 */
+	private void releaseConnection(HttpURLConnection connection) {
+		InputStream stream = connection.getErrorStream();
+		try {
+			if (stream == null) {
+				stream = connection.getInputStream();
+			}
+			byte[] buffer = new byte[4096];
+			int totalBytes = 0;
+			int bytesRead;
+			while ((bytesRead = stream.read(buffer)) >= 0) {
+				totalBytes += bytesRead;
+				if (totalBytes > MAX_DISCARDED_BYTES) {
+					// not worth the trouble, close the connection
+					connection.disconnect();
+					return;
+				}
+			}
+		}
+		catch (IOException e) {
+			// the connection will not be reused, nothing more to do
+		}
+		finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				}
+				catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
 	private boolean isRedirected(int responseCode) {
 		return responseCode == HttpURLConnection.HTTP_MULT_CHOICE
 				|| responseCode == HttpURLConnection.HTTP_MOVED_PERM
@@ -259,12 +439,11 @@ public class HttpAccessor implements DataAccessor {
 	}
 
 	private DataObject createDataObject(URI uri, DataSource source, HttpURLConnection connection,
-			RDFContainerFactory containerFactory) throws IOException {
+			InputStream stream, RDFContainerFactory containerFactory) throws IOException {
 		// create the resulting instance
 		
 		RDFContainer metadata = containerFactory.getRDFContainer(uri);
 
-		InputStream stream = HttpClientUtil.getInputStream(connection);
 		if (!stream.markSupported()) {
 			stream = new BufferedInputStream(stream, 8192);
 		}
@@ -320,30 +499,48 @@ public class HttpAccessor implements DataAccessor {
 		return object;
 	}
 
-	private void updateAccessData(AccessData accessData, String urlString, long date) {
+	private void updateAccessData(AccessData accessData, String urlString, HttpURLConnection connection,
+			long byteSize, String digest) {
 		if (accessData != null) {
 			// clean up old information
 			accessData.remove(urlString, ACCESSED_KEY);
-			accessData.remove(urlString, DATE_KEY);
 			accessData.remove(urlString, REDIRECTS_TO_KEY);
+			removeValidators(accessData, urlString);
 
+			long date = connection.getDate();
 			if (date == 0L) {
-				// remove any invalid information from a previous crawl
-				accessData.remove(urlString, DATE_KEY);
-				accessData.remove(urlString, REDIRECTS_TO_KEY);
-
 				// make sure we always store something about this url, so that accessData.isKnownId will
 				// return true
 				accessData.put(urlString, ACCESSED_KEY, "");
 			}
 			else {
-				// remove any unnecessary or invalid information from a previous crawl
-				accessData.remove(urlString, ACCESSED_KEY);
-				accessData.remove(urlString, REDIRECTS_TO_KEY);
-
 				// store the date with which we can check in the next access whether the object was modified
 				accessData.put(urlString, DATE_KEY, String.valueOf(date));
 			}
+
+			// store the validators for the conditional request of the next access
+			String etag = connection.getHeaderField("ETag");
+			if (etag != null) {
+				accessData.put(urlString, ETAG_KEY, etag);
+			}
+			long lastModified = connection.getLastModified();
+			if (lastModified != 0L) {
+				accessData.put(urlString, LAST_MODIFIED_KEY, String.valueOf(lastModified));
+			}
+			if (byteSize >= 0L) {
+				accessData.put(urlString, BYTE_SIZE_KEY, String.valueOf(byteSize));
+			}
+			if (digest != null) {
+				accessData.put(urlString, DIGEST_KEY, digest);
+			}
 		}
 	}
+
+	private void removeValidators(AccessData accessData, String urlString) {
+		accessData.remove(urlString, DATE_KEY);
+		accessData.remove(urlString, ETAG_KEY);
+		accessData.remove(urlString, LAST_MODIFIED_KEY);
+		accessData.remove(urlString, BYTE_SIZE_KEY);
+		accessData.remove(urlString, DIGEST_KEY);
+	}
 }
@@ -6,6 +6,8 @@
  */
 package org.semanticdesktop.aperture.crawler;
 
+import java.util.Map;
+
 /**
  * A CrawlReport instance contains statistics about the last performed or currently active crawl
  * procedure of a Crawler.
@@ -47,4 +49,10 @@ public interface CrawlReport {
      * Returns the number of unchanged data objects encountered so far.
      */
     public int getUnchangedCount();
+
+    /**
+     * Returns additional, crawler-specific statistics, such as the memory used for administration
+     * purposes, mapped by name. Returns an empty Map when the crawler does not provide such statistics.
+     */
+    public Map<String, String> getStatistics();
 }
@@ -10,8 +10,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.ParseException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.TreeMap;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -67,6 +70,12 @@ public class CrawlReportBase implements CrawlReport {
     /** tag containing the number of unchanged objects */
     public static final String UNCHANGED_COUNT_TAG = "unchangedCount";
 
+    /** tag containing a crawler-specific statistic */
+    public static final String STATISTIC_TAG = "statistic";
+
+    /** statistic name XML attribute */
+    public static final String NAME_ATTR = "name";
+
     private long crawlStarted;
 
     private long crawlStopped;
@@ -81,6 +90,8 @@ public class CrawlReportBase implements CrawlReport {
 
     private int unchangedCount;
 
+    private TreeMap<String, String> statistics;
+
     /** Default constructor */
     public CrawlReportBase() {
         crawlStarted = -1l;
@@ -90,6 +101,7 @@ public class CrawlReportBase implements CrawlReport {
         changedCount = 0;
         removedCount = 0;
         unchangedCount = 0;
+        statistics = new TreeMap<String, String>();
     }
 
     public void setCrawlStarted(long crawlStarted) {
@@ -164,6 +176,32 @@ public class CrawlReportBase implements CrawlReport {
         return unchangedCount;
     }
 
+    /**
+     * Sets a crawler-specific statistic.
+     * 
+     * @param name the name of the statistic
+     * @param value the value of the statistic, or null to remove the statistic
+     */
+    public void setStatistic(String name, String value) {
+        if (value == null) {
+            statistics.remove(name);
+        }
+        else {
+            statistics.put(name, value);
+        }
+    }
+
+    /**
+     * Returns the value of a crawler-specific statistic, or null when it has not been set.
+     */
+    public String getStatistic(String name) {
+        return statistics.get(name);
+    }
+
+    public Map<String, String> getStatistics() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
     /**
      * Gets the total amount of items processed in the last crawl, i.e. the sum of the number of new,
      * changed and unchanged items.
@@ -175,7 +213,8 @@ public class CrawlReportBase implements CrawlReport {
     public String toString() {
         return "CrawlReport[crawlStarted=" + crawlStarted + ", crawlStopped=" + crawlStopped + ", exitCode="
                 + exitCode + ", newCount=" + newCount + ", changedCount=" + changedCount + ", removedCount="
-                + removedCount + ", unchangedCount=" + unchangedCount + "]";
+                + removedCount + ", unchangedCount=" + unchangedCount
+                + (statistics.isEmpty() ? "" : ", statistics=" + statistics) + "]";
     }
 
     public void write(OutputStream stream) throws IOException {
@@ -225,6 +264,13 @@ public class CrawlReportBase implements CrawlReport {
             xmlWriter.textElement(UNCHANGED_COUNT_TAG, String.valueOf(unchangedCount));
         }
 
+        Iterator<Map.Entry<String, String>> iterator = statistics.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            xmlWriter.setAttribute(NAME_ATTR, entry.getKey());
+            xmlWriter.textElement(STATISTIC_TAG, entry.getValue());
+        }
+
         xmlWriter.endTag(CRAWL_REPORT_TAG);
         xmlWriter.endDocument();
     }
@@ -310,6 +356,12 @@ public class CrawlReportBase implements CrawlReport {
             else if (UNCHANGED_COUNT_TAG.equals(tagName)) {
                 unchangedCount = parseInt(text, unchangedCount);
             }
+            else if (STATISTIC_TAG.equals(tagName)) {
+                String name = (String) atts.get(NAME_ATTR);
+                if (name != null) {
+                    statistics.put(name, text);
+                }
+            }
         }
         
         private int parseInt(String text, int oldValue) {
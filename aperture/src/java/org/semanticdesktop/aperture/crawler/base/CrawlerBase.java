@@ -392,6 +392,16 @@ public abstract class CrawlerBase implements Crawler {
 	    }
 	}
 	
+	/**
+	 * Reports a DataObject as unmodified without reporting the objects aggregated in it, for crawlers
+	 * that report those objects themselves.
+	 */
+	protected void reportUnmodifiedDataObjectOnly(String url) {
+	    touchObject(url);
+	    crawlReport.increaseUnchangedCount();
+	    handler.objectNotModified(this, url);
+	}
+	
 	protected void reportDeletedDataObject(String url) {
 	    ClosableIterator iter = accessData.getAggregatedIDsClosure(url);
 	    while (iter.hasNext()) {
@@ -411,6 +421,16 @@ public abstract class CrawlerBase implements Crawler {
 		accessData.removeUntouchedIDs();
 	}
 	
+	/**
+	 * Registers a crawler-specific statistic in the CrawlReport of the current crawl.
+	 * 
+	 * @param name the name of the statistic
+	 * @param value the value of the statistic
+	 */
+	protected void reportStatistic(String name, String value) {
+	    crawlReport.setStatistic(name, value);
+	}
+
 	protected RDFContainerFactory getRDFContainerFactory(String url) {
 	    return handler.getRDFContainerFactory(this, url);
 	}
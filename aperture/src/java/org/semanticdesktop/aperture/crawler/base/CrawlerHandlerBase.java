@@ -9,10 +9,12 @@ package org.semanticdesktop.aperture.crawler.base;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.Set;
 
 import org.ontoware.rdf2go.RDF2Go;
-import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.node.URI;
 import org.semanticdesktop.aperture.accessor.DataObject;
 import org.semanticdesktop.aperture.accessor.FileDataObject;
@@ -26,13 +28,16 @@ import org.semanticdesktop.aperture.extractor.ExtractorFactory;
 import org.semanticdesktop.aperture.extractor.ExtractorRegistry;
 import org.semanticdesktop.aperture.extractor.FileExtractor;
 import org.semanticdesktop.aperture.extractor.FileExtractorFactory;
+import org.semanticdesktop.aperture.extractor.util.ExtractionCache;
 import org.semanticdesktop.aperture.mime.identifier.MimeTypeIdentifier;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
-import org.semanticdesktop.aperture.rdf.impl.RDFContainerImpl;
+import org.semanticdesktop.aperture.rdf.impl.BufferedRDFContainer;
 import org.semanticdesktop.aperture.subcrawler.SubCrawler;
 import org.semanticdesktop.aperture.subcrawler.SubCrawlerException;
 import org.semanticdesktop.aperture.subcrawler.SubCrawlerFactory;
 import org.semanticdesktop.aperture.subcrawler.SubCrawlerRegistry;
+import org.semanticdesktop.aperture.util.ExposedByteArrayInputStream;
+import org.semanticdesktop.aperture.util.ExposedFileInputStream;
 import org.semanticdesktop.aperture.util.IOUtil;
 import org.semanticdesktop.aperture.vocabulary.NIE;
 
@@ -82,6 +87,12 @@ public class CrawlerHandlerBase implements CrawlerHandler {
      */
     protected SubCrawlerRegistry subCrawlerRegistry;
 
+    /**
+     * Cache of extraction results, <b>may</b> be set to avoid extracting
+     * the same contents more than once
+     */
+    protected ExtractionCache extractionCache;
+
     /**
      * Construct and empty BaseCrawlerHandler.
      * set the extractorRegistry, mimeTypeIdentifier, and subCrawlerRegistry yourself.
@@ -110,9 +121,9 @@ public class CrawlerHandlerBase implements CrawlerHandler {
 
 
     /**
-     * Returns an rdf container factory. This method implementation returns a factory which delivers simple
-     * RDFContainers backed by in-memory models obtained from the {@link RDF2Go#getModelFactory()} method.
-     * Each model is separate.
+     * Returns an rdf container factory. This method implementation returns a factory which delivers
+     * {@link BufferedRDFContainer}s. Their statements are buffered until the model is requested, which then is
+     * a separate in-memory model obtained from the {@link RDF2Go#getModelFactory()} method.
      * 
      * @see CrawlerHandler#getRDFContainerFactory(Crawler, String)
      */
@@ -120,9 +131,7 @@ public class CrawlerHandlerBase implements CrawlerHandler {
         return new RDFContainerFactory() {
 
             public RDFContainer getRDFContainer(URI uri) {
-                Model model = RDF2Go.getModelFactory().createModel();
-                model.open();
-                return new RDFContainerImpl(model, uri);
+                return new BufferedRDFContainer(uri);
             }
         };
     }
@@ -254,10 +263,17 @@ public class CrawlerHandlerBase implements CrawlerHandler {
 
             // Create a buffer around the object's stream large enough to be able to reset the stream
             // after MIME type identification has taken place. Add some extra to the minimum array
-            // length required by the MimeTypeIdentifier for safety.
+            // length required by the MimeTypeIdentifier for safety. A stream that holds the entire
+            // content already, e.g. because the WebCrawler extracted links from it, is used as it is: the
+            // extractor may reuse what has been derived from it (see HtmlExtractor). So is a buffered stream
+            // on a file, which extractors and subcrawlers may access randomly (see OpenXmlExtractor).
             int minimumArrayLength = mimeTypeIdentifier.getMinArrayLength();
             int bufferSize = Math.max(minimumArrayLength, 8192);
-            BufferedInputStream bufferedStream = new BufferedInputStream(object.getContent(), bufferSize);
+            InputStream bufferedStream = object.getContent();
+            if (!(bufferedStream instanceof ExposedByteArrayInputStream
+                    || bufferedStream instanceof ExposedFileInputStream)) {
+                bufferedStream = new BufferedInputStream(bufferedStream, bufferSize);
+            }
             bufferedStream.mark(minimumArrayLength + 10); // add some for safety
 
             // apply the MimeTypeIdentifier
@@ -280,7 +296,11 @@ public class CrawlerHandlerBase implements CrawlerHandler {
                     if (!extractors.isEmpty()) {
                         ExtractorFactory factory = (ExtractorFactory) extractors.iterator().next();
                         Extractor extractor = factory.get();
-                        extractor.extract(id, bufferedStream, null, mimeType, metadata);
+                        if (isCaching(metadata)) {
+                            extractCached(id, bufferedStream, null, mimeType, metadata, extractor);
+                        } else {
+                            extractor.extract(id, bufferedStream, null, mimeType, metadata);
+                        }
                         return; // this could be made configurable: allowing multiple extractors to work on one stream
                     }
                     
@@ -290,12 +310,17 @@ public class CrawlerHandlerBase implements CrawlerHandler {
                         FileExtractorFactory factory = (FileExtractorFactory) fileextractors.iterator().next();
                         FileExtractor extractor = factory.get();
                         File originalFile = object.getFile();
-                        if (originalFile != null) {
-                            extractor.extract(id, originalFile, null, mimeType, metadata);
-                        } else {
-                            File tempFile = object.downloadContent();
-                            extractor.extract(id, tempFile, null, mimeType, metadata);
-                            tempFile.delete();
+                        File file = originalFile != null ? originalFile : object.downloadContent();
+                        try {
+                            if (isCaching(metadata)) {
+                                extractCached(id, null, file, mimeType, metadata, extractor);
+                            } else {
+                                extractor.extract(id, file, null, mimeType, metadata);
+                            }
+                        } finally {
+                            if (originalFile == null) {
+                                file.delete();
+                            }
                         }
                         return; // this could be made configurable: allowing multiple extractors to work on one stream
                     }
@@ -317,6 +342,90 @@ public class CrawlerHandlerBase implements CrawlerHandler {
         }
     }
 
+    /**
+     * The cache is bypassed when the text is passed on to a FullTextSink: the cache
+     * only holds statements.
+     */
+    private boolean isCaching(RDFContainer metadata) {
+        return extractionCache != null && metadata.getFullTextSink() == null;
+    }
+
+    /**
+     * Applies an Extractor to the stream or a FileExtractor to the file, unless the
+     * extractionCache already holds the statements it produces for the same contents.
+     * A stream that cannot be hashed in place is spooled to a temporary file while
+     * computing its digest, the extractor then reads the file.
+     */
+    private void extractCached(URI id, InputStream stream, File file, String mimeType,
+            RDFContainer metadata, Object extractor) throws IOException, ExtractorException {
+        File tempFile = null;
+        try {
+            byte[] digest;
+            if (file != null) {
+                digest = ExtractionCache.computeDigest(file);
+            } else if (stream instanceof ExposedByteArrayInputStream) {
+                ExposedByteArrayInputStream bytes = (ExposedByteArrayInputStream) stream;
+                MessageDigest messageDigest = ExtractionCache.createDigest();
+                messageDigest.update(bytes.getBuffer(), bytes.getPosition(), bytes.getCount()
+                        - bytes.getPosition());
+                digest = messageDigest.digest();
+            } else if (ExposedFileInputStream.getEntireFile(stream) != null) {
+                digest = ExtractionCache.computeDigest(ExposedFileInputStream.getEntireFile(stream));
+            } else {
+                tempFile = File.createTempFile("aperture", ".tmp");
+                DigestInputStream digestStream = new DigestInputStream(stream, ExtractionCache.createDigest());
+                IOUtil.writeStream(digestStream, tempFile);
+                digest = digestStream.getMessageDigest().digest();
+                stream = new ExposedFileInputStream(tempFile);
+            }
+
+            String key = ExtractionCache.getKey(digest, mimeType, extractor);
+            if (extractionCache.replay(key, metadata)) {
+                return;
+            }
+
+            // extract into a separate container, so that exactly the extracted statements are cached
+            BufferedRDFContainer extracted = new BufferedRDFContainer(id);
+            boolean completed = false;
+            try {
+                if (file != null) {
+                    ((FileExtractor) extractor).extract(id, file, null, mimeType, extracted);
+                } else {
+                    ((Extractor) extractor).extract(id, stream, null, mimeType, extracted);
+                }
+                completed = true;
+            } finally {
+                // statements of a failed extraction are kept, as they are without a cache, but not cached
+                extractionCache.store(completed ? key : null, extracted, metadata);
+                extracted.dispose();
+            }
+        } finally {
+            if (tempFile != null) {
+                stream.close();
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the cache of extraction results.
+     * @return the ExtractionCache, or null when every object is extracted
+     */
+    public ExtractionCache getExtractionCache() {
+        return extractionCache;
+    }
+
+    /**
+     * Sets a cache of extraction results. When set, {@link #processBinary(Crawler, DataObject)}
+     * computes a digest of the contents of every object and replays the statements extracted
+     * before from the same contents, instead of applying the Extractor or FileExtractor once more.
+     * Subcrawlers are always applied.
+     * @param extractionCache the ExtractionCache, or null to extract every object
+     */
+    public void setExtractionCache(ExtractionCache extractionCache) {
+        this.extractionCache = extractionCache;
+    }
+
     /**
      * should binaries be processed?
      * @return true, when binaries are processed
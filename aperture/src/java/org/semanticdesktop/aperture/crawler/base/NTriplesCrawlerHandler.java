@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.base;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.DatatypeLiteral;
+import org.ontoware.rdf2go.model.node.LanguageTagLiteral;
+import org.ontoware.rdf2go.model.node.Literal;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.DatatypeLiteralImpl;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.ontoware.rdf2go.vocabulary.XSD;
+import org.semanticdesktop.aperture.accessor.DataObject;
+import org.semanticdesktop.aperture.crawler.Crawler;
+import org.semanticdesktop.aperture.crawler.ExitCode;
+import org.semanticdesktop.aperture.extractor.ExtractorRegistry;
+import org.semanticdesktop.aperture.mime.identifier.MimeTypeIdentifier;
+import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.rdf.impl.BufferedRDFContainer;
+import org.semanticdesktop.aperture.subcrawler.SubCrawlerRegistry;
+import org.semanticdesktop.aperture.util.DateUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A CrawlerHandler that writes the statements of every DataObject to N-Triples or N-Quads as soon as the
+ * object is reported, instead of collecting all statements in a single model that is serialized when the
+ * crawl stops. The memory use is therefore independent of the size of the crawl, and downstream loaders can
+ * consume the output while the crawl is still running.
+ *
+ * <p>
+ * In N-Quads mode the statements of a DataObject are written in a graph named after the URI of the object.
+ * When an object is removed, a tombstone statement is written: the object URI as subject, {@link #REMOVED}
+ * as predicate and the time of removal as object (in N-Quads mode also in the graph of the object). A changed
+ * object is written as a tombstone followed by its new statements, so that a loader can replace all data it
+ * has about the object.
+ *
+ * <p>
+ * The output is buffered and, optionally, gzip-compressed. The statements of a single object are always
+ * written as a contiguous block, even when the crawler reports objects from several threads. The output is
+ * flushed when a crawl stops; {@link #close()} must be invoked when the handler is no longer used.
+ *
+ * <p>
+ * The binary contents of the objects are extracted with {@link #processBinary(Crawler, DataObject)} when a
+ * MimeTypeIdentifier has been passed to the constructor and extracting contents is enabled.
+ */
+public class NTriplesCrawlerHandler extends CrawlerHandlerBase {
+
+    /**
+     * The predicate of the tombstone statements that are written for removed and changed objects.
+     */
+    public static final URI REMOVED = new URIImpl(
+            "http://aperture.semanticdesktop.org/ontology/2008/10/18/crawl#removed");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private Writer writer;
+
+    private boolean quads;
+
+    /**
+     * Creates a handler that writes to the specified file. The output is gzip-compressed when the file name
+     * ends with ".gz". The binary contents of the objects are not extracted.
+     *
+     * @param file the file to write to, an existing file is overwritten
+     * @param quads true to write N-Quads, false to write N-Triples
+     * @throws IOException when the file cannot be created
+     */
+    public NTriplesCrawlerHandler(File file, boolean quads) throws IOException {
+        this(new FileOutputStream(file), quads, file.getName().endsWith(".gz"));
+    }
+
+    /**
+     * Creates a handler that writes to the specified stream. The binary contents of the objects are not
+     * extracted.
+     *
+     * @param stream the stream to write to, it is closed by {@link #close()}
+     * @param quads true to write N-Quads, false to write N-Triples
+     * @param gzip true to gzip-compress the output
+     * @throws IOException when the compressed stream cannot be created
+     */
+    public NTriplesCrawlerHandler(OutputStream stream, boolean quads, boolean gzip) throws IOException {
+        this(stream, quads, gzip, null, null, null);
+    }
+
+    /**
+     * Creates a handler that writes to the specified stream and extracts the binary contents of the objects.
+     *
+     * @param stream the stream to write to, it is closed by {@link #close()}
+     * @param quads true to write N-Quads, false to write N-Triples
+     * @param gzip true to gzip-compress the output
+     * @param mimeTypeIdentifier the MimeTypeIdentifier used to extract the binary contents, or null to
+     *            not extract them
+     * @param extractorRegistry the ExtractorRegistry, may be null
+     * @param subCrawlerRegistry the SubCrawlerRegistry, may be null
+     * @throws IOException when the compressed stream cannot be created
+     */
+    public NTriplesCrawlerHandler(OutputStream stream, boolean quads, boolean gzip,
+            MimeTypeIdentifier mimeTypeIdentifier, ExtractorRegistry extractorRegistry,
+            SubCrawlerRegistry subCrawlerRegistry) throws IOException {
+        super(mimeTypeIdentifier, extractorRegistry, subCrawlerRegistry);
+        setExtractingContents(mimeTypeIdentifier != null);
+        this.quads = quads;
+        OutputStream output = gzip ? new GZIPOutputStream(stream, BUFFER_SIZE) : new BufferedOutputStream(
+                stream, BUFFER_SIZE);
+        // N-Triples is 7-bit ASCII, all other characters are escaped
+        this.writer = new BufferedWriter(new OutputStreamWriter(output, "US-ASCII"), BUFFER_SIZE);
+    }
+
+    /**
+     * Returns whether this handler writes N-Quads instead of N-Triples.
+     */
+    public boolean isQuads() {
+        return quads;
+    }
+
+    public void objectNew(Crawler crawler, DataObject object) {
+        process(crawler, object, false);
+    }
+
+    public void objectChanged(Crawler crawler, DataObject object) {
+        process(crawler, object, true);
+    }
+
+    public void objectRemoved(Crawler crawler, String url) {
+        StringBuilder builder = new StringBuilder(256);
+        appendTombstone(builder, new URIImpl(url, false));
+        write(builder);
+    }
+
+    public void crawlStopped(Crawler crawler, ExitCode exitCode) {
+        synchronized (this) {
+            if (writer != null) {
+                try {
+                    writer.flush();
+                }
+                catch (IOException e) {
+                    logger.error("Could not flush the output", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes and closes the output. The handler cannot be used afterwards.
+     *
+     * @throws IOException when the output cannot be written
+     */
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void process(Crawler crawler, DataObject object, boolean replace) {
+        try {
+            processBinary(crawler, object);
+        }
+        catch (Exception e) {
+            logger.warn("Could not process the contents of " + object.getID(), e);
+        }
+
+        try {
+            URI context = object.getID();
+            StringBuilder builder = new StringBuilder(1024);
+            if (replace) {
+                appendTombstone(builder, context);
+            }
+            for (Statement statement : getStatements(object.getMetadata())) {
+                appendStatement(builder, statement.getSubject(), statement.getPredicate(), statement
+                        .getObject(), context);
+            }
+            write(builder);
+        }
+        finally {
+            object.dispose();
+        }
+    }
+
+    private List<Statement> getStatements(RDFContainer metadata) {
+        if (metadata instanceof BufferedRDFContainer) {
+            return ((BufferedRDFContainer) metadata).getStatements();
+        }
+        List<Statement> result = new ArrayList<Statement>();
+        ClosableIterator<? extends Statement> iterator = metadata.getModel().iterator();
+        try {
+            while (iterator.hasNext()) {
+                result.add(iterator.next());
+            }
+        }
+        finally {
+            iterator.close();
+        }
+        return result;
+    }
+
+    private synchronized void write(StringBuilder builder) {
+        if (writer == null) {
+            throw new IllegalStateException("The handler has been closed");
+        }
+        try {
+            writer.append(builder);
+        }
+        catch (IOException e) {
+            logger.error("Could not write the statements", e);
+        }
+    }
+
+    private void appendTombstone(StringBuilder builder, URI uri) {
+        Literal now = new DatatypeLiteralImpl(DateUtil.dateTime2String(new Date()), XSD._dateTime);
+        appendStatement(builder, uri, REMOVED, now, uri);
+    }
+
+    private void appendStatement(StringBuilder builder, Node subject, URI predicate, Node object, URI context) {
+        appendNode(builder, subject);
+        builder.append(' ');
+        appendNode(builder, predicate);
+        builder.append(' ');
+        appendNode(builder, object);
+        if (quads) {
+            builder.append(' ');
+            appendNode(builder, context);
+        }
+        builder.append(" .\n");
+    }
+
+    private void appendNode(StringBuilder builder, Node node) {
+        if (node instanceof URI) {
+            builder.append('<');
+            appendEscaped(builder, node.toString(), true);
+            builder.append('>');
+        }
+        else if (node instanceof BlankNode) {
+            builder.append("_:");
+            appendBlankNodeId(builder, ((BlankNode) node).getInternalID());
+        }
+        else if (node instanceof Literal) {
+            Literal literal = (Literal) node;
+            builder.append('"');
+            appendEscaped(builder, literal.getValue(), false);
+            builder.append('"');
+            if (literal instanceof LanguageTagLiteral) {
+                builder.append('@').append(((LanguageTagLiteral) literal).getLanguageTag());
+            }
+            else if (literal instanceof DatatypeLiteral) {
+                builder.append("^^");
+                appendNode(builder, ((DatatypeLiteral) literal).getDatatype());
+            }
+        }
+        else {
+            throw new IllegalArgumentException("Unsupported node: " + node);
+        }
+    }
+
+    /**
+     * Blank node labels may only contain letters and digits, all other characters are replaced by 'x' and
+     * their hexadecimal code.
+     */
+    private void appendBlankNodeId(StringBuilder builder, String id) {
+        if (id.length() == 0 || !isAsciiLetter(id.charAt(0))) {
+            builder.append('b');
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (isAsciiLetter(c) || (c >= '0' && c <= '9')) {
+                builder.append(c);
+            }
+            else {
+                builder.append('x').append(Integer.toHexString(c));
+            }
+        }
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private void appendEscaped(StringBuilder builder, String string, boolean uri) {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (!uri && c == '\\') {
+                builder.append("\\\\");
+            }
+            else if (!uri && c == '"') {
+                builder.append("\\\"");
+            }
+            else if (!uri && c == '\n') {
+                builder.append("\\n");
+            }
+            else if (!uri && c == '\r') {
+                builder.append("\\r");
+            }
+            else if (!uri && c == '\t') {
+                builder.append("\\t");
+            }
+            else if (c >= 0x20 && c < 0x7f && !(uri && (c == '>' || c == '\\' || c == ' '))) {
+                builder.append(c);
+            }
+            else {
+                // characters outside the BMP are written as two escaped surrogates instead of a single
+                // 8-digit escape, as the Sesame N-Triples parser cannot read the latter
+                appendHex(builder, c);
+            }
+        }
+    }
+
+    private void appendHex(StringBuilder builder, char c) {
+        builder.append("\\u");
+        String hex = Integer.toHexString(c).toUpperCase();
+        for (int i = hex.length(); i < 4; i++) {
+            builder.append('0');
+        }
+        builder.append(hex);
+    }
+}
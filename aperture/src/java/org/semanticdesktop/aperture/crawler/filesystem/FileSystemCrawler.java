@@ -7,16 +7,23 @@
 package org.semanticdesktop.aperture.crawler.filesystem;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.semanticdesktop.aperture.accessor.AccessData;
 import org.semanticdesktop.aperture.accessor.DataAccessor;
 import org.semanticdesktop.aperture.accessor.DataAccessorFactory;
 import org.semanticdesktop.aperture.accessor.DataObject;
 import org.semanticdesktop.aperture.accessor.RDFContainerFactory;
 import org.semanticdesktop.aperture.accessor.UrlNotFoundException;
+import org.semanticdesktop.aperture.accessor.file.FileAccessor;
+import org.semanticdesktop.aperture.accessor.file.FileAttributes;
+import org.semanticdesktop.aperture.accessor.base.SynchronizedAccessData;
 import org.semanticdesktop.aperture.crawler.ExitCode;
 import org.semanticdesktop.aperture.crawler.base.CrawlerBase;
 import org.semanticdesktop.aperture.datasource.DataSource;
@@ -28,6 +35,15 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A Crawler implementation for crawling file system sources modeled by a FileSystemDataSource.
+ * 
+ * <p>
+ * By default the file tree is walked on the thread that invoked {@link #crawl()}. When the thread count is
+ * set to a value larger than one (see {@link #setThreadCount(int)}), the directory walk and the per-file
+ * accessor work are spread over a pool of worker threads. Folders are always reported before their
+ * children. The calls to the CrawlerHandler are made from the worker threads but they are serialized, so
+ * existing CrawlerHandler implementations need not be thread-safe. The RDFContainerFactory returned by the
+ * handler, however, may be asked for containers concurrently. The AccessData is wrapped in a
+ * {@link SynchronizedAccessData} for the duration of a parallel crawl.
  */
 @SuppressWarnings("unchecked")
 public class FileSystemCrawler extends CrawlerBase {
@@ -42,6 +58,8 @@ public class FileSystemCrawler extends CrawlerBase {
 
     private static final long DEFAULT_MAX_SIZE = Long.MAX_VALUE;
 
+    private static final int DEFAULT_THREAD_COUNT = 1;
+
     private Logger logger = LoggerFactory.getLogger(getClass());
 
     private boolean ignoreHiddenFiles;
@@ -52,14 +70,44 @@ public class FileSystemCrawler extends CrawlerBase {
 
     private long maximumSize;
 
+    private int threadCount = DEFAULT_THREAD_COUNT;
+
     private DataAccessorFactory accessorFactory;
 
-    private HashMap params;
+    private DataAccessor accessor;
 
     private File root;
     
     private FileSystemDataSource source;
 
+    /**
+     * Used to serialize the calls to the CrawlerHandler made by the worker threads of a parallel crawl.
+     */
+    private final Object handlerMonitor = new Object();
+
+    /**
+     * Sets the number of threads used to walk the file tree. A value of one (the default) crawls the tree
+     * on the calling thread, larger values crawl it in parallel.
+     * 
+     * @param threadCount the number of threads, must be at least one
+     * @throws IllegalArgumentException if the thread count is smaller than one
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("thread count must be at least 1: " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Returns the number of threads used to walk the file tree.
+     * 
+     * @return the number of threads used to walk the file tree
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
     protected ExitCode crawlObjects() {        
         // fetch the source and its configuration
         DataSource dataSource = getDataSource();
@@ -119,15 +167,21 @@ public class FileSystemCrawler extends CrawlerBase {
         b = source.getSuppressParentChildLinks();
         suppressParentChildLinks = b == null ? DEFAULT_SUPPRESS_PARENT_CHILD_LINKS : b.booleanValue();
         
-        // init some other params
-        params = new HashMap(2);
+        // init the accessor
         getAccessorFactory();
+        accessor = accessorFactory.get();
 
         // crawl the file tree
-        boolean crawlCompleted = crawlFileTree(root, maxDepth);
+        boolean crawlCompleted;
+        if (threadCount > 1) {
+            crawlCompleted = crawlFileTreeInParallel(root, maxDepth);
+        }
+        else {
+            crawlCompleted = crawlFileTree(root, null, maxDepth);
+        }
 
         // clean-up
-        params = null;
+        accessor = null;
 
         // determine the exit code
         return crawlCompleted ? ExitCode.COMPLETED : ExitCode.STOP_REQUESTED;
@@ -155,10 +209,46 @@ public class FileSystemCrawler extends CrawlerBase {
     /**
      * Crawls a File tree.
      * 
+     * @param attributes the attributes of the file, if they have already been read, or null
      * @return true if the path has been crawled completely, false if the crawl was aborted.
      */
-    private boolean crawlFileTree(File file, int depth) {
-        // resolve the file to its canonical form
+    private boolean crawlFileTree(File file, FileAttributes attributes, int depth) {
+        attributes = resolveFile(file, attributes);
+        if (attributes == null) {
+            return true;
+        }
+
+        if (attributes.isFile() && depth >= 0) {
+            crawlRegularFile(attributes);
+
+            // by definition we've completed this subtree
+            return true;
+        }
+        else if (attributes.isDirectory() && depth >= 0) {
+            // report nested Files (if the folder itself is in the domain)
+            FileAttributes[] children = crawlFolder(attributes, depth);
+            if (children != null) {
+                return crawlFolderContent(children, depth);
+            }
+            else {
+                return true;
+            }
+        }
+        else {
+            // Unknown path type (is this possible?) or depth < 0
+            return true;
+        }
+    }
+
+    /**
+     * Resolves a file to its canonical form and returns its attributes.
+     * 
+     * @param attributes the attributes of the (non-canonical) file, if they have already been read, or
+     *            null. They are reused when the file turns out to be canonical already.
+     * @return the attributes of the canonical file, of the original file if it could not be resolved or
+     *         null if the file is a symbolic link that should be skipped
+     */
+    private FileAttributes resolveFile(File file, FileAttributes attributes) {
         try {
             // determine absolute and canonical paths
             String absolutePath = file.getAbsolutePath();
@@ -166,119 +256,166 @@ public class FileSystemCrawler extends CrawlerBase {
 
             // optionally skip symbolic links
             if (!followSymbolicLinks && !absolutePath.equals(canonicalPath)) {
-                return true;
+                return null;
             }
 
+            if (attributes != null && absolutePath.equals(canonicalPath)) {
+                return attributes;
+            }
+            
             // create the canonical File
-            file = new File(canonicalPath);
+            return FileAttributes.read(new File(canonicalPath));
         }
         catch (IOException e) {
             logger.warn("unable to resolve file to its canocical form, continuing with original file: "
                     + file, e);
+            return attributes == null ? FileAttributes.read(file) : attributes;
         }
+    }
 
-        if (file.isFile() && depth >= 0) {
-            boolean inDomain = inDomain(file.toURI().toString());
-            boolean canRead = file.canRead();
-            boolean smallerThanMax = file.length() <= maximumSize;
-            if ( inDomain && canRead && smallerThanMax) {
-                // report the File
-                crawlSingleFile(file);
-            } else if (!inDomain) {
-                logger.info("File " + file.toURI() + " is outside the domain boundaries for this data source. Skipping.");
-            } else if (!canRead) {
-                logger.info("Can't read file " + file.toURI() + ". Skipping.");
-            } else if (!smallerThanMax) {
-                logger.info("File " + file.toURI() + " exceeds the maximum size specified for this data source. Skipping.");
-            }
-
-            // by definition we've completed this subtree
-            return true;
+    /**
+     * Reports a regular file, if it is in the domain, readable and not too large.
+     */
+    private void crawlRegularFile(FileAttributes attributes) {
+        String url = attributes.getURI();
+        boolean inDomain = inDomain(url);
+        boolean canRead = attributes.canRead();
+        boolean smallerThanMax = attributes.getLength() <= maximumSize;
+        if ( inDomain && canRead && smallerThanMax) {
+            // report the File
+            crawlSingleFile(attributes, null);
+        } else if (!inDomain) {
+            logger.info("File " + url + " is outside the domain boundaries for this data source. Skipping.");
+        } else if (!canRead) {
+            logger.info("Can't read file " + url + ". Skipping.");
+        } else if (!smallerThanMax) {
+            logger.info("File " + url + " exceeds the maximum size specified for this data source. Skipping.");
         }
-        else if (file.isDirectory() && depth >= 0) {
-            // report the Folder itself
-            if (inDomain(file.toURI().toString())) {
-                crawlSingleFile(file);
-            }
-            else {
-                logger.info("Directory " + file.toURI() + " is not in domain. Skipping.");
-            }
+    }
 
-            // Dont crawl into MacOSX bundles.
-            if (OSUtils.isMac() && OSUtils.isMacOSXBundle(file))
-                return true;
+    /**
+     * Reports a folder, if it is in the domain. When the contents of the folder are to be crawled as well,
+     * the attributes of its children are read before the folder is reported, so that the accessor can use
+     * them instead of listing the folder once more.
+     * 
+     * @return the attributes of the children of the folder if they should be crawled as well, null
+     *         otherwise
+     */
+    private FileAttributes[] crawlFolder(FileAttributes attributes, int depth) {
+        File file = attributes.getFile();
+        boolean inDomain = inDomain(attributes.getURI());
 
-            // report nested Files (if the folder itself is in the domain)
-            if (depth > 0 && inDomain(file.toURI().toString())) {
-                //return iterateOverFolderContent(file, depth);
-                return filterThroughFolderContent(file, depth);
-            }
-            else {
-                return true;
-            }
+        // Dont crawl into MacOSX bundles.
+        boolean descend = depth > 0 && inDomain && !(OSUtils.isMac() && OSUtils.isMacOSXBundle(file));
+        FileAttributes[] children = descend ? readChildren(file) : null;
+
+        // report the Folder itself
+        if (inDomain) {
+            crawlSingleFile(attributes, children);
         }
         else {
-            // Unknown path type (is this possible?) or depth < 0
-            return true;
+            logger.info("Directory " + attributes.getURI() + " is not in domain. Skipping.");
         }
-    }
-    
-    private boolean filterThroughFolderContent(File file, int depth) {
-        CrawlerFileFilter filter = new CrawlerFileFilter(depth);
-        file.listFiles(filter);
-        return filter.getResult();
+
+        return children;
     }
 
-    private boolean iterateOverFolderContent(File file, int depth) {
-        File[] nestedFiles = file.listFiles();
+    /**
+     * Lists a folder and reads the attributes of all its children.
+     * 
+     * @return the attributes of the children or null if the folder could not be listed
+     */
+    private FileAttributes[] readChildren(File folder) {
+        File[] nestedFiles = folder.listFiles();
 
         if (nestedFiles == null) {
             // This happens on certain "special" directories, although the
             // API documentation doesn't mention it, see java bug #4803836.
-            return true;
+            return null;
         }
 
-        int i = 0;
-        for (; !stopRequested && i < nestedFiles.length; i++) {
-            File nestedFile = nestedFiles[i];
+        FileAttributes[] children = new FileAttributes[nestedFiles.length];
+        for (int i = 0; i < nestedFiles.length; i++) {
+            children[i] = FileAttributes.read(nestedFiles[i]);
+        }
+        return children;
+    }
 
+    private boolean crawlFolderContent(FileAttributes[] children, int depth) {
+        for (int i = 0; i < children.length; i++) {
+            if (stopRequested) {
+                return false;
+            }
+
+            File nestedFile = children[i].getFile();
             if (ignoreHiddenFiles && nestedFile.isHidden()) {
                 continue;
             }
 
-            boolean scanCompleted = crawlFileTree(nestedFile, depth - 1);
-
+            boolean scanCompleted = crawlFileTree(nestedFile, children[i], depth - 1);
             if (!scanCompleted) {
                 return false;
             }
         }
 
-        // scan has been completed when i has reached the end of the array successfully
-        return i == nestedFiles.length;
+        return true;
+    }
+
+    /**
+     * Crawls a File tree using a pool of worker threads.
+     * 
+     * @return true if the path has been crawled completely, false if the crawl was aborted.
+     */
+    private boolean crawlFileTreeInParallel(File file, int depth) {
+        AccessData originalAccessData = accessData;
+        if (accessData != null && !(accessData instanceof SynchronizedAccessData)) {
+            accessData = new SynchronizedAccessData(accessData);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new CrawlerThreadFactory());
+        try {
+            ParallelWalk walk = new ParallelWalk(executor);
+            walk.submit(file, null, depth);
+            return walk.awaitCompletion();
+        }
+        finally {
+            executor.shutdownNow();
+            accessData = originalAccessData;
+        }
     }
 
     /**
      * Crawls a single File and reports it to the registered DataSourceListeners.
+     * 
+     * @param children the attributes of the children of a folder, may be null
      */
-    private void crawlSingleFile(File file) {
+    private void crawlSingleFile(FileAttributes attributes, FileAttributes[] children) {
         // create an identifier for the file
-        String url = file.toURI().toString();
+        File file = attributes.getFile();
+        String url = attributes.getURI();
 
         // register that we're processing this file
         //handler.accessingObject(this, url);
         //deprecatedUrls.remove(url);
-        reportAccessingObject(url);
+        RDFContainerFactory containerFactory;
+        synchronized (handlerMonitor) {
+            reportAccessingObject(url);
+
+            // fetch a RDFContainer from the handler (note: is done for every
+            //RDFContainerFactory containerFactory = handler.getRDFContainerFactory(this, url);
+            containerFactory = getRDFContainerFactory(url);
+        }
         
         // see if this object has been encountered before (we must do this before applying the accessor!)
         boolean knownObject = accessData == null ? false : accessData.isKnownId(url);
-
-        // fetch a RDFContainer from the handler (note: is done for every
-        //RDFContainerFactory containerFactory = handler.getRDFContainerFactory(this, url);
-        RDFContainerFactory containerFactory = getRDFContainerFactory(url);
         
-        // fetch the DataObject
-        DataAccessor accessor = accessorFactory.get();
-        params.put("file", file);
+        // fetch the DataObject, passing the attributes we already know
+        HashMap params = new HashMap(4);
+        params.put(FileAccessor.FILE_KEY, file);
+        params.put(FileAccessor.FILE_ATTRIBUTES_KEY, attributes);
+        if (children != null) {
+            params.put(FileAccessor.CHILDREN_KEY, children);
+        }
         
         // TODO return here after resolving the addParent issue
         //if (file.equals(root)) {
@@ -297,7 +434,9 @@ public class FileSystemCrawler extends CrawlerBase {
                 // the object was not modified
                 //handler.objectNotModified(this, url);
                 //crawlReport.increaseUnchangedCount();
-                reportUnmodifiedDataObject(url);
+                synchronized (handlerMonitor) {
+                    reportUnmodifiedDataObject(url);
+                }
             }
             else {
 
@@ -307,15 +446,17 @@ public class FileSystemCrawler extends CrawlerBase {
                 }
 
                 // we scanned a new or changed object
-                if (knownObject) {
-                    //handler.objectChanged(this, dataObject);
-                    //crawlReport.increaseChangedCount();
-                    reportModifiedDataObject(dataObject);
-                }
-                else {
-                    //handler.objectNew(this, dataObject);
-                    //crawlReport.increaseNewCount();
-                    reportNewDataObject(dataObject);
+                synchronized (handlerMonitor) {
+                    if (knownObject) {
+                        //handler.objectChanged(this, dataObject);
+                        //crawlReport.increaseChangedCount();
+                        reportModifiedDataObject(dataObject);
+                    }
+                    else {
+                        //handler.objectNew(this, dataObject);
+                        //crawlReport.increaseNewCount();
+                        reportNewDataObject(dataObject);
+                    }
                 }
             }
         }
@@ -326,42 +467,155 @@ public class FileSystemCrawler extends CrawlerBase {
             logger.warn("I/O error while processing " + url, e);
         }
     }
-    
-private class CrawlerFileFilter implements FileFilter {
-        
+
+    /**
+     * Keeps track of the tasks of a parallel crawl. Every file or folder that is encountered becomes a task
+     * on the shared executor, so that idle workers pick up the pending entries of whatever folder is being
+     * listed. The walk is finished when the number of pending tasks drops to zero.
+     */
+    private class ParallelWalk {
+
+        private ExecutorService executor;
+
+        private AtomicInteger pendingTasks;
+
+        private volatile boolean completed;
+
+        private volatile RuntimeException failure;
+
+        private final Object doneMonitor = new Object();
+
+        public ParallelWalk(ExecutorService executor) {
+            this.executor = executor;
+            this.pendingTasks = new AtomicInteger();
+            this.completed = true;
+        }
+
+        public void submit(File file, FileAttributes attributes, int depth) {
+            pendingTasks.incrementAndGet();
+            executor.execute(new WalkTask(this, file, attributes, depth));
+        }
+
+        /**
+         * Blocks until all tasks have finished.
+         * 
+         * @return true if the entire tree has been crawled, false if the crawl was aborted
+         * @throws RuntimeException if a task failed with a RuntimeException
+         */
+        public boolean awaitCompletion() {
+            synchronized (doneMonitor) {
+                while (pendingTasks.get() > 0) {
+                    try {
+                        doneMonitor.wait();
+                    }
+                    catch (InterruptedException e) {
+                        logger.warn("interrupted while waiting for the crawler threads, stopping the crawl");
+                        stop();
+                        completed = false;
+                    }
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+            return completed;
+        }
+
+        /**
+         * Crawls a single entry. Nested entries of a folder are submitted as new tasks.
+         */
+        public void walk(File file, FileAttributes attributes, int depth) {
+            if (isStopRequested() || failure != null) {
+                completed = false;
+                return;
+            }
+
+            attributes = resolveFile(file, attributes);
+            if (attributes == null) {
+                return;
+            }
+
+            if (attributes.isFile() && depth >= 0) {
+                crawlRegularFile(attributes);
+            }
+            else if (attributes.isDirectory() && depth >= 0) {
+                FileAttributes[] children = crawlFolder(attributes, depth);
+                if (children == null) {
+                    return;
+                }
+
+                for (int i = 0; i < children.length; i++) {
+                    if (isStopRequested()) {
+                        completed = false;
+                        return;
+                    }
+                    File nestedFile = children[i].getFile();
+                    if (ignoreHiddenFiles && nestedFile.isHidden()) {
+                        continue;
+                    }
+                    submit(nestedFile, children[i], depth - 1);
+                }
+            }
+        }
+
+        public void taskFinished(RuntimeException e) {
+            if (e != null && failure == null) {
+                failure = e;
+            }
+            if (pendingTasks.decrementAndGet() == 0) {
+                synchronized (doneMonitor) {
+                    doneMonitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    private class WalkTask implements Runnable {
+
+        private ParallelWalk walk;
+
+        private File file;
+
+        private FileAttributes attributes;
+
         private int depth;
-        private boolean result;
-        
-        public CrawlerFileFilter(int depth) {
+
+        public WalkTask(ParallelWalk walk, File file, FileAttributes attributes, int depth) {
+            this.walk = walk;
+            this.file = file;
+            this.attributes = attributes;
             this.depth = depth;
-            this.result = true;
         }
-        
-        public boolean accept(File nestedFile) {
-            // there is no way to stop the listFiles method in the middle, so if a stop is
-            // requested so bail out as soon as possible
-            // also if the subtree starting at the given file has not been completed,
-            // we pass that knowledge upwards without crawling anything else
-            if (stopRequested || !result) {
-                result = false; // this means that we have not crawled the nestedFile
-                // which implies that the entire subtree has NOT been completed
-                return false; // note that this false does NOT mean the same as the result=false;
+
+        public void run() {
+            RuntimeException failure = null;
+            try {
+                walk.walk(file, attributes, depth);
             }
-            
-            if (ignoreHiddenFiles && nestedFile.isHidden()) {
-                // this means that we should not crawl the nestedFile, but the entire subtree
-                // may still be considered completed, so we do not modify the result
-                return false; 
+            catch (RuntimeException e) {
+                logger.error("Error while crawling " + file, e);
+                failure = e;
+            }
+            finally {
+                walk.taskFinished(failure);
             }
-
-            result = crawlFileTree(nestedFile, depth - 1);
-            
-            // return false for everything, we're done
-            return false;
         }
-        
-        public boolean getResult() {
-            return result;
+    }
+
+    private static class CrawlerThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger poolCount = new AtomicInteger();
+
+        private final int poolNumber = poolCount.incrementAndGet();
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FileSystemCrawler-" + poolNumber + "-"
+                    + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 }
@@ -12,10 +12,14 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.regex.Pattern;
 
@@ -65,6 +69,7 @@ import org.ontoware.rdf2go.model.node.impl.URIImpl;
 import org.ontoware.rdf2go.vocabulary.RDF;
 import org.ontoware.rdf2go.vocabulary.RDFS;
 import org.ontoware.rdf2go.vocabulary.XSD;
+import org.semanticdesktop.aperture.accessor.AccessData;
 import org.semanticdesktop.aperture.accessor.DataObject;
 import org.semanticdesktop.aperture.accessor.FileDataObject;
 import org.semanticdesktop.aperture.accessor.RDFContainerFactory;
@@ -119,6 +124,24 @@ public class IcalCrawler extends CrawlerBase {
      */
     private String baseuri;
 
+    /**
+     * The hash of the raw text of the top-level component that is being crawled, null when it is not known.
+     * @see IcalFileScanner
+     */
+    private String componentHash;
+
+    /** The attachments of the component that is being crawled, aggregated in it when it is passed on */
+    private final List<String> attachmentIds = new ArrayList<String>();
+
+    /**
+     * Name of the CrawlReport statistic holding the number of components that were reported as unmodified
+     * without being parsed
+     */
+    public static final String SKIPPED_COMPONENT_COUNT_STATISTIC = "skippedComponentCount";
+
+    /** The AccessData key of the SHA-1 hash of the calendar file */
+    private static final String DIGEST_KEY = "digest";
+
     /** Default constructor. */
     public IcalCrawler() {
         // empty... for the time being.
@@ -191,6 +214,12 @@ public class IcalCrawler extends CrawlerBase {
     /**
      * Crawls the ical file. Parses the file, creates the calendar object and proceeds to crawl it.
      * 
+     * <p>
+     * When the crawl is incremental, the file is only parsed when it has changed since the last crawl, as
+     * determined by its modification date, size and SHA-1 hash. Even then, the top-level components whose
+     * raw text has not changed are reported as unmodified and left out before the calendar is parsed, so that
+     * neither ical4j objects nor RDF are built for them.
+     * 
      * @param icalFile The file to be crawled.
      * 
      * @return The exit code. Possible values are:
@@ -201,7 +230,7 @@ public class IcalCrawler extends CrawlerBase {
      */
 
     private ExitCode crawlIcalFile(File icalFile) {
-        FileReader fin = null;
+        Reader fin = null;
         CalendarBuilder builder = null;
         Calendar calendar = null;
         try {
@@ -214,10 +243,34 @@ public class IcalCrawler extends CrawlerBase {
             // before conversion to java.net.URI
             CompatibilityHints.setHintEnabled(CompatibilityHints.KEY_NOTES_COMPATIBILITY, true);
 
-            fin = new FileReader(icalFile);
+            String calendarId = generateCalendarUri().toString();
+            IcalFileScanner scanner = null;
+            if (accessData == null) {
+                fin = new FileReader(icalFile);
+            }
+            else if (isFileUnchanged(icalFile, calendarId)) {
+                reportUnmodifiedDataObject(calendarId);
+                return ExitCode.COMPLETED;
+            }
+            else {
+                scanner = new IcalFileScanner(icalFile);
+                scanner.scan();
+                if (scanner.getDigest().equals(accessData.get(calendarId, DIGEST_KEY))) {
+                    // only the modification date has changed
+                    updateFileAccessData(icalFile, calendarId, scanner.getDigest());
+                    reportUnmodifiedDataObject(calendarId);
+                    return ExitCode.COMPLETED;
+                }
+                skipUnchangedComponents(scanner.getComponents(), calendarId);
+                fin = scanner.openCalendar();
+            }
+
             builder = new CalendarBuilder();
             calendar = builder.build(fin);
-            crawlCalendar(calendar);
+            crawlCalendar(calendar, scanner == null ? null : scanner.getComponents());
+            if (scanner != null) {
+                updateFileAccessData(icalFile, calendarId, scanner.getDigest());
+            }
             return ExitCode.COMPLETED;
         }
         catch (FileNotFoundException fnfe) {
@@ -254,8 +307,11 @@ public class IcalCrawler extends CrawlerBase {
      * crawl the entire component list.
      * 
      * @param calendar The calendar object.
+     * @param scannedComponents the top-level components found by the IcalFileScanner, including those that
+     *            have been left out of the calendar, or null when the file has not been scanned
      */
-    private void crawlCalendar(Calendar calendar) {
+    @SuppressWarnings("unchecked")
+    private void crawlCalendar(Calendar calendar, List<IcalFileScanner.ScannedComponent> scannedComponents) {
         URI uri = generateCalendarUri();
         RDFContainer rdfContainer = prepareDataObjectRDFContainer(uri);
         rdfContainer.add(RDF.type, NCAL.Calendar);
@@ -268,7 +324,33 @@ public class IcalCrawler extends CrawlerBase {
         passComponentToHandler(rdfContainer, null);
 
         ComponentList componentList = calendar.getComponents();
-        crawlComponentList(componentList, rdfContainer);
+        List<String> hashes = null;
+        if (scannedComponents != null) {
+            hashes = new ArrayList<String>(componentList.size());
+            for (IcalFileScanner.ScannedComponent scannedComponent : scannedComponents) {
+                if (!scannedComponent.skipped) {
+                    hashes.add(scannedComponent.hash);
+                }
+            }
+            if (hashes.size() != componentList.size()) {
+                // the scanner and ical4j disagree about the components, hash the parsed components instead
+                logger.warn("Unexpected number of components in " + baseuri);
+                hashes = null;
+            }
+        }
+
+        Iterator it = componentList.iterator();
+        for (int i = 0; it.hasNext(); i++) {
+            Component component = (Component) it.next();
+            componentHash = (hashes == null) ? null : hashes.get(i);
+            try {
+                crawlSingleComponent(component, rdfContainer.getDescribedUri(), rdfContainer);
+            }
+            catch (ModelException e) {
+                logger.warn("ModelException while processing single component, skipping component", e);
+            }
+        }
+        componentHash = null;
     }
 
     /**
@@ -3388,11 +3470,26 @@ public class IcalCrawler extends CrawlerBase {
             //handler.objectChanged(this, dataObject);
             reportModifiedDataObject(dataObject);
         }
+        else if (component == null) {
+            // the components aggregated in the calendar are reported one by one
+            reportUnmodifiedDataObjectOnly(id);
+            dataObject.dispose();
+        }
         else {
             //handler.objectNotModified(this, id);
             reportUnmodifiedDataObject(id);
             dataObject.dispose();
         }
+
+        if (accessData != null && component != null) {
+            // aggregate the component in the calendar and its attachments in the component, so that an
+            // unchanged file or component can be reported as a whole
+            accessData.putAggregatedID(generateCalendarUri().toString(), id);
+            for (String attachmentId : attachmentIds) {
+                accessData.putAggregatedID(id, attachmentId);
+            }
+        }
+        attachmentIds.clear();
     }
     
     private void passAttachmentToHandler(RDFContainer metadata, byte[] bytes) {
@@ -3401,7 +3498,6 @@ public class IcalCrawler extends CrawlerBase {
         FileDataObject dataObject = new FileDataObjectBase(metadata.getDescribedUri(), source, metadata,
                 stream);
         String id = metadata.getDescribedUri().toString();
-
         if (accessData == null) {
             //handler.objectNew(this, dataObject);
             reportNewDataObject(dataObject);
@@ -3421,6 +3517,8 @@ public class IcalCrawler extends CrawlerBase {
             reportUnmodifiedDataObject(id);
             dataObject.dispose();
         }
+        // the component is aggregated once it has been passed to the handler itself
+        attachmentIds.add(id);
     }    
 
     /**
@@ -3429,7 +3527,69 @@ public class IcalCrawler extends CrawlerBase {
      * @param metadata The RDFContainer with metadata about the object to be updated.
      */
     private void updateAccessData(RDFContainer metadata, Component component) {
-        updateAccessData(metadata, StringUtil.sha1Hash(component.toString()));
+        updateAccessData(metadata, hashOfComponent(component));
+    }
+
+    /**
+     * Returns the hash of the given top-level component: the hash of its raw text when the file has been
+     * scanned, the hash of its ical4j representation otherwise.
+     */
+    private String hashOfComponent(Component component) {
+        return (componentHash == null) ? StringUtil.sha1Hash(component.toString()) : componentHash;
+    }
+
+    /**
+     * Determines whether the file has not changed since the last crawl, judging from its modification date
+     * and size.
+     */
+    private boolean isFileUnchanged(File icalFile, String calendarId) {
+        String lastModified = String.valueOf(icalFile.lastModified());
+        String size = String.valueOf(icalFile.length());
+        return accessData.get(calendarId, DIGEST_KEY) != null
+                && lastModified.equals(accessData.get(calendarId, AccessData.DATE_KEY))
+                && size.equals(accessData.get(calendarId, AccessData.BYTE_SIZE_KEY));
+    }
+
+    private void updateFileAccessData(File icalFile, String calendarId, String digest) {
+        accessData.put(calendarId, AccessData.DATE_KEY, String.valueOf(icalFile.lastModified()));
+        accessData.put(calendarId, AccessData.BYTE_SIZE_KEY, String.valueOf(icalFile.length()));
+        accessData.put(calendarId, DIGEST_KEY, digest);
+    }
+
+    /**
+     * Marks the top-level components whose raw text has not changed since the last crawl as skipped, and
+     * reports them, together with their attachments, as unmodified. Only components whose URI follows from
+     * their UID are considered: the URI of the other components is derived from the parsed component.
+     */
+    private void skipUnchangedComponents(List<IcalFileScanner.ScannedComponent> components,
+            String calendarId) {
+        // components that share their UID (e.g. the instances of a recurring event) share their URI as well,
+        // they are always crawled
+        Set<String> uids = new HashSet<String>();
+        Set<String> sharedUids = new HashSet<String>();
+        for (IcalFileScanner.ScannedComponent component : components) {
+            if (component.uid != null && !uids.add(component.uid)) {
+                sharedUids.add(component.uid);
+            }
+        }
+
+        int skippedCount = 0;
+        for (IcalFileScanner.ScannedComponent component : components) {
+            // escaped characters would make the UID differ from the one parsed by ical4j
+            if (component.uid == null || component.uid.indexOf('\\') >= 0
+                    || sharedUids.contains(component.uid) || Component.VTIMEZONE.equals(component.name)) {
+                // timezones are always parsed, as the other components may refer to them
+                continue;
+            }
+            String id = baseuri + component.uid;
+            if (accessData.isKnownId(id) && component.hash.equals(accessData.get(id, "hash"))) {
+                component.skipped = true;
+                accessData.putAggregatedID(calendarId, id);
+                reportUnmodifiedDataObject(id);
+                skippedCount++;
+            }
+        }
+        reportStatistic(SKIPPED_COMPONENT_COUNT_STATISTIC, String.valueOf(skippedCount));
     }
     
     private void updateAccessData(RDFContainer metadata, String hash) {
@@ -3494,7 +3654,7 @@ public class IcalCrawler extends CrawlerBase {
      */
     private boolean isChanged(RDFContainer metadata, Component component) {
         String id = metadata.getDescribedUri().toString();
-        String newHash = ((component == null) ? hashOfProperties(metadata) : StringUtil.sha1Hash(component.toString()));
+        String newHash = ((component == null) ? hashOfProperties(metadata) : hashOfComponent(component));
         String oldHash = accessData.get(id, "hash");
         if (oldHash == null) {
             return true;
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.ical;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.semanticdesktop.aperture.util.StringUtil;
+
+/**
+ * Splits an iCalendar file into its top-level components (events, todos, timezones etc.) without parsing
+ * them. The IcalCrawler uses this to determine which components have changed before any ical4j objects or
+ * RDF are built: the raw text of every component is hashed, and the calendar can be read again with the
+ * unchanged components left out.
+ *
+ * <p>
+ * The file is read with the platform's default encoding, like the FileReader the calendar used to be
+ * parsed from.
+ */
+class IcalFileScanner {
+
+    /**
+     * A top-level component of the calendar, in the order in which it occurs in the file.
+     */
+    static class ScannedComponent {
+
+        /** The name of the component in upper case, e.g. VEVENT */
+        final String name;
+
+        /** The value of the UID property, null when the component has none */
+        String uid;
+
+        /** The SHA-1 hash of the raw text of the component */
+        String hash;
+
+        /** Whether the component is left out when the calendar is read again */
+        boolean skipped;
+
+        ScannedComponent(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final String BEGIN = "BEGIN:";
+
+    private static final String END = "END:";
+
+    private static final String UID = "UID";
+
+    private final File file;
+
+    private final List<ScannedComponent> components = new ArrayList<ScannedComponent>();
+
+    private String digest;
+
+    IcalFileScanner(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the file, hashing the file as a whole and every top-level component.
+     *
+     * @throws IOException when the file could not be read
+     */
+    void scan() throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-1
+            throw new RuntimeException(e);
+        }
+
+        components.clear();
+        ContentLineReader reader = new ContentLineReader(new InputStreamReader(new DigestInputStream(
+                new FileInputStream(file), messageDigest)));
+        try {
+            StringBuilder text = new StringBuilder();
+            ScannedComponent component = null;
+            int depth = 0;
+            String line;
+            while ((line = reader.read(component == null ? null : text)) != null) {
+                if (startsWithIgnoreCase(line, BEGIN)) {
+                    if (depth == 1) {
+                        component = new ScannedComponent(line.substring(BEGIN.length()).trim().toUpperCase());
+                        text.setLength(0);
+                        text.append(line).append("\r\n");
+                    }
+                    depth++;
+                }
+                else if (startsWithIgnoreCase(line, END)) {
+                    depth--;
+                    if (depth == 1 && component != null) {
+                        component.hash = StringUtil.sha1Hash(text.toString());
+                        components.add(component);
+                        component = null;
+                    }
+                }
+                else if (depth == 2 && component != null && component.uid == null
+                        && UID.equalsIgnoreCase(getPropertyName(line))) {
+                    component.uid = getPropertyValue(line);
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+
+        // the same format as the hashes computed by StringUtil
+        digest = new BigInteger(1, messageDigest.digest()).toString(16);
+    }
+
+    /**
+     * Returns the SHA-1 hash of the bytes of the file, as read by {@link #scan()}.
+     */
+    String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Returns the top-level components found by {@link #scan()}.
+     */
+    List<ScannedComponent> getComponents() {
+        return components;
+    }
+
+    /**
+     * Opens a Reader on the file that leaves out the components that have been marked as skipped.
+     *
+     * @return the Reader, the caller is responsible for closing it
+     * @throws IOException when the file could not be opened
+     */
+    Reader openCalendar() throws IOException {
+        return new FilteringReader(new ContentLineReader(new InputStreamReader(new FileInputStream(file))),
+                components.iterator());
+    }
+
+    private static boolean startsWithIgnoreCase(String line, String prefix) {
+        return line.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    private static String getPropertyName(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ';' || c == ':') {
+                return line.substring(0, i);
+            }
+        }
+        return line;
+    }
+
+    private static String getPropertyValue(String line) {
+        // the value starts after the first colon that is not part of a quoted parameter value
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            }
+            else if (c == ':' && !quoted) {
+                return line.substring(i + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the content lines of a calendar, unfolding the lines that have been split over several
+     * physical lines.
+     */
+    private static class ContentLineReader {
+
+        private final BufferedReader reader;
+
+        /** The physical line that has been read ahead to see whether it continues the previous one */
+        private String nextLine;
+
+        private boolean started;
+
+        public ContentLineReader(Reader reader) {
+            this.reader = new BufferedReader(reader);
+        }
+
+        /**
+         * Reads the next content line.
+         *
+         * @param text the StringBuilder to which the physical lines of the content line are appended, with
+         *            CRLF line terminators, may be null
+         * @return the unfolded content line, or null when the end of the file has been reached
+         */
+        public String read(StringBuilder text) throws IOException {
+            if (!started) {
+                nextLine = reader.readLine();
+                started = true;
+            }
+            String line = nextLine;
+            if (line == null) {
+                return null;
+            }
+            if (text != null) {
+                text.append(line).append("\r\n");
+            }
+
+            nextLine = reader.readLine();
+            if (nextLine != null && isContinuation(nextLine)) {
+                StringBuilder buffer = new StringBuilder(line);
+                do {
+                    if (text != null) {
+                        text.append(nextLine).append("\r\n");
+                    }
+                    buffer.append(nextLine, 1, nextLine.length());
+                    nextLine = reader.readLine();
+                }
+                while (nextLine != null && isContinuation(nextLine));
+                line = buffer.toString();
+            }
+            return line;
+        }
+
+        private boolean isContinuation(String line) {
+            return line.length() > 0 && (line.charAt(0) == ' ' || line.charAt(0) == '\t');
+        }
+
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Passes on the physical lines of a calendar, except for those of the components that are skipped.
+     */
+    private static class FilteringReader extends Reader {
+
+        private final ContentLineReader reader;
+
+        private final Iterator<ScannedComponent> components;
+
+        private final StringBuilder buffer = new StringBuilder();
+
+        private int position;
+
+        private int depth;
+
+        private boolean skipping;
+
+        public FilteringReader(ContentLineReader reader, Iterator<ScannedComponent> components) {
+            this.reader = reader;
+            this.components = components;
+        }
+
+        public int read(char[] chars, int offset, int length) throws IOException {
+            while (position == buffer.length()) {
+                if (!fill()) {
+                    return -1;
+                }
+            }
+            int result = Math.min(length, buffer.length() - position);
+            buffer.getChars(position, position + result, chars, offset);
+            position += result;
+            return result;
+        }
+
+        private boolean fill() throws IOException {
+            buffer.setLength(0);
+            position = 0;
+            String line = reader.read(buffer);
+            if (line == null) {
+                return false;
+            }
+
+            boolean skipLine = skipping;
+            if (startsWithIgnoreCase(line, BEGIN)) {
+                if (depth == 1 && components.hasNext()) {
+                    skipping = components.next().skipped;
+                    skipLine = skipping;
+                }
+                depth++;
+            }
+            else if (startsWithIgnoreCase(line, END)) {
+                depth--;
+                if (depth == 1) {
+                    skipping = false;
+                }
+            }
+
+            if (skipLine) {
+                buffer.setLength(0);
+            }
+            return true;
+        }
+
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -20,9 +20,19 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.mail.FetchProfile;
 import javax.mail.Flags;
@@ -50,6 +60,7 @@ import org.semanticdesktop.aperture.accessor.DataObject;
 import org.semanticdesktop.aperture.accessor.MessageDataObject;
 import org.semanticdesktop.aperture.accessor.RDFContainerFactory;
 import org.semanticdesktop.aperture.accessor.UrlNotFoundException;
+import org.semanticdesktop.aperture.accessor.base.SynchronizedAccessData;
 import org.semanticdesktop.aperture.crawler.ExitCode;
 import org.semanticdesktop.aperture.crawler.mail.AbstractJavaMailCrawler;
 import org.semanticdesktop.aperture.crawler.mail.DataObjectFactory;
@@ -85,6 +96,13 @@ import org.slf4j.LoggerFactory;
  * {@link ImapDataSource#setIgnoreUidValidity(Boolean)} method, to tell the crawler to ignore the UID
  * validity, and treat the UIDs as if they were persistent.
  * </p>
+ * 
+ * <p>
+ * When the data source specifies a connection pool size larger than one (see
+ * {@link ImapDataSource#setConnectionPoolSize(Integer)}), the folders are crawled concurrently, each folder
+ * over one of that many connections to the server. The CrawlerHandler is still notified by one thread at a
+ * time.
+ * </p>
  */
 @SuppressWarnings("unchecked")
 public class ImapCrawler extends AbstractJavaMailCrawler implements DataAccessor {
@@ -98,6 +116,14 @@ public class ImapCrawler extends AbstractJavaMailCrawler implements DataAccessor
     private static final String SUBFOLDERS_KEY = "subfolders";
     
     private static final String UID_VALIDITY = "uidValidity";
+    
+    /**
+     * The maximum number of messages whose content info is prefetched with a single FETCH command. The
+     * messages that remain after an incremental crawl has left out the unmodified ones do not form a
+     * contiguous range, the command for all of them at once could exceed the command length a server
+     * accepts.
+     */
+    private static final int PREFETCH_BATCH_SIZE = 1000;
 
     private Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -145,6 +171,8 @@ public class ImapCrawler extends AbstractJavaMailCrawler implements DataAccessor
     private String SSLCertificatePassword;
 
     private boolean includeInbox;
+    
+    private int connectionPoolSize;
 
     private Store store;
     private ImapStreamPool streamPool;
@@ -154,6 +182,21 @@ public class ImapCrawler extends AbstractJavaMailCrawler implements DataAccessor
     private Message [] currentMessages;
     /** Flag set by the {@link #setCurrentFolder(Folder)} method if the current folder has been changed */
     private boolean currentFolderChanged;
+    
+    /* ---------------------------- Fields used by parallel crawls ---------------------------- */
+    
+    /**
+     * The crawler that reports the folders crawled by this crawler, null unless this crawler crawls some of
+     * the folders of another crawler over a connection of its own
+     */
+    private ImapCrawler parentCrawler;
+    
+    /**
+     * Serializes the notifications of the CrawlerHandler. During a parallel crawl this is the synchronized
+     * AccessData, as the objects aggregated in an unmodified object are read from the AccessData while
+     * that object is reported.
+     */
+    private Object reportLock = new Object();
 
     /* ----------------------------- Crawler implementation ----------------------------- */
 
@@ -175,23 +218,27 @@ public class ImapCrawler extends AbstractJavaMailCrawler implements DataAccessor
             boolean fatalError = false;
     
             try {
-                
-                // crawl all specified base folders
-                int nrFolders = baseFolders.size();
-                if (nrFolders == 0) {
-                    crawlFolder(store.getDefaultFolder(), 0);
+                if (connectionPoolSize > 1) {
+                    crawlFoldersInParallel();
                 }
                 else {
-                    for (int i = 0; i < nrFolders; i++) {
-                        String baseFolderName = (String) baseFolders.get(i);
-                        Folder baseFolder = store.getFolder(baseFolderName);
-                        crawlFolder(baseFolder, 0);
+                    // crawl all specified base folders
+                    int nrFolders = baseFolders.size();
+                    if (nrFolders == 0) {
+                        crawlFolder(store.getDefaultFolder(), 0);
+                    }
+                    else {
+                        for (int i = 0; i < nrFolders; i++) {
+                            String baseFolderName = (String) baseFolders.get(i);
+                            Folder baseFolder = store.getFolder(baseFolderName);
+                            crawlFolder(baseFolder, 0);
+                        }
+                    }
+        
+                    // The inbox is a magic folder - include it if config option set.
+                    if (includeInbox) {
+                        crawlFolder(store.getFolder("INBOX"), 0);
                     }
-                }
-    
-                // The inbox is a magic folder - include it if config option set.
-                if (includeInbox) {
-                    crawlFolder(store.getFolder("INBOX"), 0);
                 }
             }
             catch (MessagingException e) {
@@ -214,6 +261,168 @@ public class ImapCrawler extends AbstractJavaMailCrawler implements DataAccessor
             closeConnection();
         }
     }
+    
+    /**
+     * Crawls the folders over several connections at the same time. The folders are listed first, after
+     * which every connection repeatedly takes the next folder that has not been taken yet, until all of them
+     * have been crawled. The folders can be crawled independently, the messages of a folder are registered in
+     * the AccessData by the connection that crawls the folder.
+     */
+    private void crawlFoldersInParallel() throws MessagingException {
+        // the same folders that are crawled over a single connection, but every folder only once
+        Set<String> folderNames = new LinkedHashSet<String>();
+        int nrFolders = baseFolders.size();
+        if (nrFolders == 0) {
+            listFolders(store.getDefaultFolder(), 0, folderNames);
+        }
+        else {
+            for (int i = 0; i < nrFolders; i++) {
+                listFolders(store.getFolder((String) baseFolders.get(i)), 0, folderNames);
+            }
+        }
+        if (includeInbox) {
+            listFolders(store.getFolder("INBOX"), 0, folderNames);
+        }
+        Queue<String> folderQueue = new ConcurrentLinkedQueue<String>(folderNames);
+        logger.debug("Crawling " + folderQueue.size() + " folders over " + connectionPoolSize + " connections");
+
+        AccessData originalAccessData = accessData;
+        int originalMaxDepth = maxDepth;
+        if (accessData != null) {
+            accessData = new SynchronizedAccessData(accessData);
+            reportLock = accessData;
+        }
+        // the subfolders are in the queue, every folder is crawled on its own
+        maxDepth = 0;
+        
+        // this crawler uses its own connection, the other connections are opened by workers
+        int nrWorkers = Math.max(Math.min(connectionPoolSize, folderQueue.size()) - 1, 0);
+        ExecutorService executor = nrWorkers > 0 ? Executors.newFixedThreadPool(nrWorkers) : null;
+        boolean interrupted = false;
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>(nrWorkers);
+            for (int i = 0; i < nrWorkers; i++) {
+                futures.add(executor.submit(new FolderCrawlTask(createWorker(), folderQueue)));
+            }
+            crawlQueuedFolders(folderQueue);
+
+            for (Future<Object> future : futures) {
+                try {
+                    future.get();
+                }
+                catch (ExecutionException e) {
+                    // the folders the worker did not get to have been crawled by the others
+                    logger.warn("Exception while crawling over an additional connection", e.getCause());
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            logger.warn("Interrupted while waiting for the folders to be crawled, stopping the crawl");
+            stop();
+            interrupted = true;
+        }
+        finally {
+            if (executor != null) {
+                // the workers see the stop request after their current folder, they still write through the
+                // synchronized AccessData until then
+                executor.shutdown();
+                boolean terminated = false;
+                while (!terminated) {
+                    try {
+                        terminated = executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                    }
+                    catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            accessData = originalAccessData;
+            reportLock = new Object();
+            maxDepth = originalMaxDepth;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Adds the full names of the given folder and its subfolders up until the given depth to the set, in
+     * the order in which {@link #crawlFolder(Folder, int)} crawls them.
+     */
+    private void listFolders(Folder folder, int depth, Set<String> folderNames) throws MessagingException {
+        if (isStopRequested() || folder == null || !folder.exists()) {
+            return;
+        }
+        folderNames.add(folder.getFullName());
+        if (holdsFolders(folder) && (depth + 1 <= maxDepth || maxDepth < 0)) {
+            Folder[] subFolders = folder.list();
+            for (int i = 0; i < subFolders.length; i++) {
+                try {
+                    listFolders(subFolders[i], depth + 1, folderNames);
+                }
+                catch (MessagingException e) {
+                    logger.debug("Error listing subfolder \"" + subFolders[i].getFullName() + "\"");
+                    // but continue..
+                }
+            }
+        }
+    }
+    
+    /**
+     * Crawls the folders taken from the queue until the queue is empty or the crawl is stopped.
+     */
+    private void crawlQueuedFolders(Queue<String> folderQueue) {
+        String folderName;
+        while (!isStopRequested() && (folderName = folderQueue.poll()) != null) {
+            try {
+                // the default folder is the only one with an empty name
+                crawlFolder(folderName.length() == 0 ? store.getDefaultFolder() : store.getFolder(folderName), 0);
+            }
+            catch (MessagingException e) {
+                logger.warn("Exception while crawling folder \"" + folderName + "\"", e);
+            }
+        }
+    }
+    
+    /**
+     * Creates a crawler that crawls folders for this crawler over a connection of its own.
+     */
+    private ImapCrawler createWorker() {
+        ImapCrawler worker = new ImapCrawler();
+        worker.parentCrawler = this;
+        worker.sessionProperties = sessionProperties;
+        worker.setDataSource(source);
+        worker.retrieveConfigurationData(source);
+        worker.accessData = accessData;
+        worker.maxDepth = 0;
+        return worker;
+    }
+    
+    /**
+     * Connects a worker to the server and lets it crawl the queued folders.
+     */
+    private static class FolderCrawlTask implements Callable<Object> {
+
+        private final ImapCrawler worker;
+
+        private final Queue<String> folderQueue;
+
+        public FolderCrawlTask(ImapCrawler worker, Queue<String> folderQueue) {
+            this.worker = worker;
+            this.folderQueue = folderQueue;
+        }
+
+        public Object call() throws MessagingException {
+            try {
+                worker.ensureConnectedStore();
+                worker.crawlQueuedFolders(folderQueue);
+            }
+            finally {
+                worker.closeConnection();
+            }
+            return null;
+        }
+    }
 
     /**
      * Prepare for accessing the specified DataSource by fetching all properties from it that are required to
@@ -290,6 +499,14 @@ public class ImapCrawler extends AbstractJavaMailCrawler implements DataAccessor
             SSLCertificatePassword = configuredDataSource.getSslFilePassword();
         }
 
+        Integer connectionPoolSizeI = configuredDataSource.getConnectionPoolSize();
+        if (connectionPoolSizeI == null) {
+            connectionPoolSize = 1;
+        }
+        else {
+            connectionPoolSize = connectionPoolSizeI.intValue();
+        }
+
         // determine the maximum byte size
         Long maximumSize = configuredDataSource.getMaximumSize();
         if (maximumSize == null) {
@@ -566,7 +783,12 @@ public class ImapCrawler extends AbstractJavaMailCrawler implements DataAccessor
             profile.add("Message-ID");
             profile.add("In-Reply-To");
             profile.add("References");
-            currentFolder.fetch(currentMessages, profile);
+            for (int start = 0; start < currentMessages.length && !isStopRequested(); start += PREFETCH_BATCH_SIZE) {
+                // the messages are ordered by UID, every batch is a range of UIDs
+                Message[] batch = new Message[Math.min(PREFETCH_BATCH_SIZE, currentMessages.length - start)];
+                System.arraycopy(currentMessages, start, batch, 0, batch.length);
+                currentFolder.fetch(batch, profile);
+            }
             if (logger.isDebugEnabled()) { logger.debug("Prefetching content info completed"); }
             
             /*
@@ -593,6 +815,83 @@ public class ImapCrawler extends AbstractJavaMailCrawler implements DataAccessor
         return arrayList.toArray(new Message[arrayList.size()]);
     }
 
+    /* ------------------------- Reporting on behalf of a parallel crawl ------------------------- */
+    
+    @Override
+    public boolean isStopRequested() {
+        return parentCrawler == null ? super.isStopRequested() : parentCrawler.isStopRequested();
+    }
+    
+    @Override
+    protected boolean inDomain(String uri) {
+        return parentCrawler == null ? super.inDomain(uri) : parentCrawler.inDomain(uri);
+    }
+    
+    @Override
+    protected RDFContainerFactory getRDFContainerFactory(String url) {
+        if (parentCrawler != null) {
+            return parentCrawler.getRDFContainerFactory(url);
+        }
+        synchronized (reportLock) {
+            return super.getRDFContainerFactory(url);
+        }
+    }
+    
+    @Override
+    protected void reportAccessingObject(String url) {
+        if (parentCrawler != null) {
+            parentCrawler.reportAccessingObject(url);
+            return;
+        }
+        synchronized (reportLock) {
+            super.reportAccessingObject(url);
+        }
+    }
+    
+    @Override
+    protected void reportNewDataObject(DataObject object) {
+        if (parentCrawler != null) {
+            parentCrawler.reportNewDataObject(object);
+            return;
+        }
+        synchronized (reportLock) {
+            super.reportNewDataObject(object);
+        }
+    }
+    
+    @Override
+    protected void reportModifiedDataObject(DataObject object) {
+        if (parentCrawler != null) {
+            parentCrawler.reportModifiedDataObject(object);
+            return;
+        }
+        synchronized (reportLock) {
+            super.reportModifiedDataObject(object);
+        }
+    }
+    
+    @Override
+    protected void reportUnmodifiedDataObject(String url) {
+        if (parentCrawler != null) {
+            parentCrawler.reportUnmodifiedDataObject(url);
+            return;
+        }
+        synchronized (reportLock) {
+            super.reportUnmodifiedDataObject(url);
+        }
+    }
+    
+    @Override
+    protected void reportDeletedDataObject(String url) {
+        if (parentCrawler != null) {
+            parentCrawler.reportDeletedDataObject(url);
+            return;
+        }
+        synchronized (reportLock) {
+            super.reportDeletedDataObject(url);
+        }
+    }
+
     @Override
     protected int getCurrentFolderMessageCount() throws MessagingException {
         return currentMessages.length;
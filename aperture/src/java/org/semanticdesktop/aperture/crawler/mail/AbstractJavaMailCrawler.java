@@ -359,6 +359,14 @@ public abstract class AbstractJavaMailCrawler extends CrawlerBase implements Dat
             return;
         }
 
+        // messages are immutable, a message that has been accessed before is reported as unmodified together
+        // with its attachments without parsing it again
+        if (accessData != null && accessData.get(uri, ACCESSED_KEY) != null) {
+            reportAccessingObject(uri);
+            reportNotModified(uri);
+            return;
+        }
+
         DataObjectFactory dataObjectFactory = null;
         try {
             // construct a data object factory for this message, it will parse the message and prepare a list
@@ -42,6 +42,7 @@ import org.semanticdesktop.aperture.accessor.base.FileDataObjectBase;
 import org.semanticdesktop.aperture.accessor.base.MessageDataObjectBase;
 import org.semanticdesktop.aperture.datasource.DataSource;
 import org.semanticdesktop.aperture.extractor.ExtractorException;
+import org.semanticdesktop.aperture.extractor.util.FullTextWriter;
 import org.semanticdesktop.aperture.extractor.util.HtmlParserUtil;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 import org.semanticdesktop.aperture.subcrawler.SubCrawlerUtil;
@@ -1195,7 +1196,7 @@ public class DataObjectFactory {
         
         String messageContent = (String) dataObjectHashMap.get(NMO.plainTextMessageContent);
         if (messageContent != null) {
-            metadata.add(NMO.plainTextMessageContent, messageContent);
+            FullTextWriter.add(metadata, NMO.plainTextMessageContent, messageContent);
             // this is necessary to appease the validator,
             metadata.add(RDF.type, NMO.Email);
         }
@@ -6,6 +6,7 @@
  */
 package org.semanticdesktop.aperture.crawler.mbox;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
@@ -48,6 +49,9 @@ public class MboxCrawler extends AbstractJavaMailCrawler {
     private static final String SIZE_KEY = "size";
 
     private static final String SUBFOLDERS_KEY = "subfolders";
+
+    /** The AccessData key of the index of the messages in the mbox file of a folder */
+    private static final String INDEX_KEY = "messageIndex";
     
     //private static final String FOLDER_LAST_MODIFIED = "folderLastModified";
 
@@ -63,6 +67,9 @@ public class MboxCrawler extends AbstractJavaMailCrawler {
     
     private String mboxStoreUri;
 
+    /** The index of the messages of the current folder, created when its messages are needed */
+    private MboxIndex currentIndex;
+
     /* ----------------------------- Crawler implementation ----------------------------- */
 
     @Override
@@ -98,6 +105,7 @@ public class MboxCrawler extends AbstractJavaMailCrawler {
                     crawlFolder(baseFolder, 0);
                 }
             }
+            closeCurrentIndex();
         }
         catch (MessagingException e) {
             logger.warn("MessagingException while crawling", e);
@@ -193,6 +201,7 @@ public class MboxCrawler extends AbstractJavaMailCrawler {
      * Closes the store()
      */
     private void closeConnection() {
+        closeCurrentIndex();
         if (store != null && store.isConnected()) {
             try {
                 store.close();
@@ -203,12 +212,80 @@ public class MboxCrawler extends AbstractJavaMailCrawler {
         }
     }
         
+    /* ----------------------------- Message access through the MboxIndex ----------------------------- */
+
+    @Override
+    protected void setCurrentFolder(Folder folder) throws MessagingException {
+        closeCurrentIndex();
+        super.setCurrentFolder(folder);
+    }
+
+    @Override
+    protected int getCurrentFolderMessageCount() throws MessagingException {
+        return getCurrentIndex().getMessageCount();
+    }
+
+    @Override
+    protected Message getMessageFromCurrentFolder(int index) throws MessagingException {
+        return getCurrentIndex().getMessage(index - 1, currentFolder);
+    }
+
+    /**
+     * Returns the index of the messages of the current folder, indexing the folder's mbox file when this has
+     * not happened yet. The index stored in the AccessData is used to avoid scanning the parts of the file
+     * that are still the same.
+     */
+    private MboxIndex getCurrentIndex() throws MessagingException {
+        if (currentIndex == null) {
+            // mstor uses the path of the mbox file as the full name of a folder
+            MboxIndex index = new MboxIndex(new File(currentFolder.getFullName()));
+            try {
+                index.open(accessData == null ? null : accessData.get(currentFolderURI.toString(), INDEX_KEY));
+            }
+            catch (IOException e) {
+                throw new MessagingException("Couldn't index " + currentFolder.getFullName(), e);
+            }
+            logger.debug("Indexed " + index.getMessageCount() + " messages in " + currentFolder.getFullName()
+                    + ", " + index.getReusedMessageCount() + " of them from the stored index");
+            currentIndex = index;
+        }
+        return currentIndex;
+    }
+
+    /**
+     * Closes the index of the current folder. Unless the crawl has been stopped, all its messages have been
+     * crawled by now, so the modification date and the size of the file are recorded: when they are the same
+     * on the next crawl, the folder is reported as unmodified without even opening the file.
+     */
+    private void closeCurrentIndex() {
+        if (currentIndex == null) {
+            return;
+        }
+        if (accessData != null && !isStopRequested()) {
+            String folderUri = currentFolderURI.toString();
+            accessData.put(folderUri, AccessData.DATE_KEY, String.valueOf(currentIndex.getLastModified()));
+            accessData.put(folderUri, AccessData.BYTE_SIZE_KEY, String.valueOf(currentIndex.getFileLength()));
+        }
+        try {
+            currentIndex.close();
+        }
+        catch (IOException e) {
+            logger.warn("Unable to close " + currentFolder.getFullName(), e);
+        }
+        currentIndex = null;
+    }
+
     @Override
     protected void recordCurrentFolderInAccessData(AccessData newAccessData) throws MessagingException {        
         if (newAccessData != null) {
             if (holdsMessages(currentFolder)) {
-                int messageCount = currentFolder.getMessageCount() - currentFolder.getDeletedMessageCount();
-                newAccessData.put(currentFolderURI.toString(), SIZE_KEY, String.valueOf(messageCount));
+                MboxIndex index = getCurrentIndex();
+                String folderUri = currentFolderURI.toString();
+                newAccessData.put(folderUri, SIZE_KEY, String.valueOf(index.getMessageCount()));
+                newAccessData.put(folderUri, INDEX_KEY, index.toString());
+                // recorded when all messages have been crawled
+                newAccessData.remove(folderUri, AccessData.DATE_KEY);
+                newAccessData.remove(folderUri, AccessData.BYTE_SIZE_KEY);
             }
             if (holdsFolders(currentFolder)) {
                 String subFoldersString = getSubFoldersString(currentFolder);
@@ -231,6 +308,23 @@ public class MboxCrawler extends AbstractJavaMailCrawler {
             // been reported as changed
             return false;
         }
+
+        if (newAccessData != null && holdsMessages(currentFolder)) {
+            // the folder has not changed when its mbox file has the same modification date and size as when
+            // all its messages were crawled, and it has the same subfolders
+            String folderUri = currentFolderURI.toString();
+            File file = new File(currentFolder.getFullName());
+            boolean fileChanged = !String.valueOf(file.lastModified()).equals(
+                newAccessData.get(folderUri, AccessData.DATE_KEY))
+                    || !String.valueOf(file.length()).equals(newAccessData.get(folderUri, AccessData.BYTE_SIZE_KEY));
+            boolean foldersChanged = holdsFolders(currentFolder)
+                    && !String.valueOf(getSubFoldersString(currentFolder)).equals(
+                        String.valueOf(newAccessData.get(folderUri, SUBFOLDERS_KEY)));
+            if (!fileChanged && !foldersChanged) {
+                logger.debug("Folder \"" + currentFolder.getFullName() + "\" has not changed.");
+                return false;
+            }
+        }
         //messages = folder.getMessages();
         
 //        IMAPFolder imapFolder = (IMAPFolder)folder;
@@ -365,11 +459,17 @@ public class MboxCrawler extends AbstractJavaMailCrawler {
         String [] messageIds = message.getHeader("Message-ID");
         String id = null;
         String hash = null;
-        try {
-            hash = IOUtil.rollingHash(message.getInputStream());
+        if (message instanceof MboxIndex.IndexedMessage && currentIndex != null) {
+            // the digest of the body of the message, computed when the message was indexed
+            hash = currentIndex.getDigest(message.getMessageNumber() - 1);
         }
-        catch (IOException e1) {
-            throw new MessagingException("Couldn't obtain a hash of the message",e1);
+        else {
+            try {
+                hash = IOUtil.rollingHash(message.getInputStream());
+            }
+            catch (IOException e1) {
+                throw new MessagingException("Couldn't obtain a hash of the message",e1);
+            }
         }
         
         if (messageIds != null && messageIds.length > 0) {
@@ -0,0 +1,433 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.mbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.InvalidMarkException;
+import java.nio.channels.FileChannel;
+import java.util.StringTokenizer;
+import java.util.zip.Adler32;
+
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.SharedInputStream;
+
+/**
+ * An index of the messages in an mbox file: the byte offset, length and digest of every message. The file is
+ * scanned for "From " separator lines through memory-mapped windows, and the messages are parsed from
+ * memory-mapped slices of the file, so neither the mbox nor a message is ever copied into the heap as a
+ * whole.
+ *
+ * <p>
+ * The index can be stored as a string and passed to {@link #open(String)} on a later crawl. The stored
+ * entries are reused as long as the file still has separators at both their ends, only the rest of the file
+ * is scanned again. This makes indexing an mbox that has only been appended to proportional to the size of
+ * the new messages. Messages that have been rewritten in place without changing their size (e.g. to update
+ * status headers) keep their stored digest.
+ *
+ * <p>
+ * Separators are recognized the way mstor recognizes them: a line starting with "From " at the start of the
+ * file or after an empty line.
+ */
+class MboxIndex {
+
+    /** The size of the windows in which the file is mapped while it is scanned for separators */
+    private static final long WINDOW_SIZE = 32L * 1024 * 1024;
+
+    /** The last two bytes before a separator, as kept by the scan */
+    private static final int LF_LF = 0x0A0A;
+
+    /** The last four bytes before a separator in a file with CRLF line terminators */
+    private static final int CRLF_CRLF = 0x0D0A0D0A;
+
+    private static final byte[] FROM_ = { 'F', 'r', 'o', 'm', ' ' };
+
+    private final File file;
+
+    private RandomAccessFile randomAccessFile;
+
+    private FileChannel channel;
+
+    private long fileLength;
+
+    private long lastModified;
+
+    private long[] offsets = new long[16];
+
+    private long[] lengths = new long[16];
+
+    private String[] digests = new String[16];
+
+    private int messageCount;
+
+    private int reusedMessageCount;
+
+    MboxIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the file and indexes its messages.
+     *
+     * @param storedIndex an index of an earlier version of the file as returned by {@link #toString()}, or
+     *            null to index the entire file
+     * @throws IOException when the file could not be read
+     */
+    void open(String storedIndex) throws IOException {
+        close();
+        lastModified = file.lastModified();
+        randomAccessFile = new RandomAccessFile(file, "r");
+        channel = randomAccessFile.getChannel();
+        fileLength = channel.size();
+
+        messageCount = 0;
+        long scanStart = storedIndex == null ? 0 : reuse(storedIndex);
+        reusedMessageCount = messageCount;
+        scan(scanStart);
+    }
+
+    /**
+     * Closes the file. The messages that have been returned remain readable.
+     */
+    void close() throws IOException {
+        if (randomAccessFile != null) {
+            randomAccessFile.close();
+            randomAccessFile = null;
+            channel = null;
+        }
+    }
+
+    /**
+     * Returns the length of the file when it was indexed.
+     */
+    long getFileLength() {
+        return fileLength;
+    }
+
+    /**
+     * Returns the modification date of the file when it was indexed.
+     */
+    long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Returns the number of messages in the file.
+     */
+    int getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * Returns the number of messages whose entries have been taken from the stored index rather than from
+     * scanning the file.
+     */
+    int getReusedMessageCount() {
+        return reusedMessageCount;
+    }
+
+    /**
+     * Returns the digest of the body of a message. Headers are left out so that rewriting the status
+     * headers of a message does not change its digest.
+     *
+     * @param index the zero-based index of the message
+     */
+    String getDigest(int index) {
+        return digests[index];
+    }
+
+    /**
+     * Returns a message of the file. The content of the message is read from the mapped file when needed.
+     *
+     * @param index the zero-based index of the message
+     * @param folder the folder the message belongs to
+     * @return the message, its message number is index + 1
+     * @throws MessagingException when the message could not be read or parsed
+     */
+    MimeMessage getMessage(int index, Folder folder) throws MessagingException {
+        ByteBuffer buffer;
+        try {
+            buffer = getContent(index);
+        }
+        catch (IOException e) {
+            throw new MessagingException("Couldn't read message " + (index + 1) + " of " + file, e);
+        }
+        return new IndexedMessage(folder, new BufferInputStream(buffer), index + 1);
+    }
+
+    /**
+     * Returns the index as a string that can be stored and passed to {@link #open(String)} later.
+     */
+    public String toString() {
+        StringBuilder buffer = new StringBuilder(messageCount * 32);
+        for (int i = 0; i < messageCount; i++) {
+            if (i > 0) {
+                buffer.append(' ');
+            }
+            buffer.append(offsets[i]).append(':').append(lengths[i]).append(':').append(digests[i]);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Adds the stored entries that still match the file, returns the position from which the file is to be
+     * scanned.
+     */
+    private long reuse(String storedIndex) throws IOException {
+        long end = 0;
+        StringTokenizer tokenizer = new StringTokenizer(storedIndex, " ");
+        try {
+            while (tokenizer.hasMoreTokens()) {
+                String entry = tokenizer.nextToken();
+                int first = entry.indexOf(':');
+                int second = entry.indexOf(':', first + 1);
+                long offset = Long.parseLong(entry.substring(0, first));
+                long length = Long.parseLong(entry.substring(first + 1, second));
+                if (offset != end && messageCount > 0 || offset + length > fileLength || !isSeparator(offset)
+                        || offset + length < fileLength && !isSeparator(offset + length)) {
+                    break;
+                }
+                add(offset, length, entry.substring(second + 1));
+                end = offset + length;
+            }
+        }
+        catch (RuntimeException e) {
+            // a malformed index, scan the entire file
+            messageCount = 0;
+            end = 0;
+        }
+        return end;
+    }
+
+    /**
+     * Determines whether a separator line starts at the given position.
+     */
+    private boolean isSeparator(long position) throws IOException {
+        long start = Math.max(0, position - 4);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (position - start) + FROM_.length);
+        while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+            // read until the buffer is full or the end of the file has been reached
+        }
+        if (buffer.hasRemaining()) {
+            return false;
+        }
+        int previous = position == 0 ? LF_LF : 0;
+        for (int i = 0; i < position - start; i++) {
+            previous = (previous << 8) | (buffer.get(i) & 0xFF);
+        }
+        return isSeparator(buffer, (int) (position - start), previous);
+    }
+
+    private static boolean isSeparator(ByteBuffer buffer, int index, int previous) {
+        if ((previous & 0xFFFF) != LF_LF && previous != CRLF_CRLF) {
+            return false;
+        }
+        if (index + FROM_.length > buffer.limit()) {
+            return false;
+        }
+        for (int i = 0; i < FROM_.length; i++) {
+            if (buffer.get(index + i) != FROM_[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the messages from the given position, which is the start of the file or of a separator line, to
+     * the end of the file.
+     */
+    private void scan(long start) throws IOException {
+        // the start is known to be a message boundary
+        int previous = LF_LF;
+        long messageStart = -1;
+        long windowStart = start;
+        while (windowStart < fileLength) {
+            long windowEnd = Math.min(windowStart + WINDOW_SIZE, fileLength);
+            // the window overlaps the next one, so that separators at its end are recognized
+            long mappedEnd = Math.min(windowEnd + FROM_.length, fileLength);
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, mappedEnd - windowStart);
+            int end = (int) (windowEnd - windowStart);
+            for (int i = 0; i < end; i++) {
+                byte b = window.get(i);
+                if (b == 'F' && isSeparator(window, i, previous)) {
+                    long position = windowStart + i;
+                    if (messageStart >= 0) {
+                        addScanned(messageStart, position - messageStart);
+                    }
+                    messageStart = position;
+                }
+                previous = (previous << 8) | (b & 0xFF);
+            }
+            windowStart = windowEnd;
+        }
+        if (messageStart >= 0) {
+            addScanned(messageStart, fileLength - messageStart);
+        }
+    }
+
+    private void addScanned(long offset, long length) throws IOException {
+        add(offset, length, null);
+        digests[messageCount - 1] = computeDigest(messageCount - 1);
+    }
+
+    private void add(long offset, long length, String digest) {
+        if (messageCount == offsets.length) {
+            int newLength = messageCount * 2;
+            long[] newOffsets = new long[newLength];
+            long[] newLengths = new long[newLength];
+            String[] newDigests = new String[newLength];
+            System.arraycopy(offsets, 0, newOffsets, 0, messageCount);
+            System.arraycopy(lengths, 0, newLengths, 0, messageCount);
+            System.arraycopy(digests, 0, newDigests, 0, messageCount);
+            offsets = newOffsets;
+            lengths = newLengths;
+            digests = newDigests;
+        }
+        offsets[messageCount] = offset;
+        lengths[messageCount] = length;
+        digests[messageCount] = digest;
+        messageCount++;
+    }
+
+    private String computeDigest(int index) throws IOException {
+        ByteBuffer content = getContent(index);
+
+        // skip the headers, they end with the first empty line
+        int previous = LF_LF;
+        int bodyStart = content.limit();
+        for (int i = 0; i < content.limit(); i++) {
+            byte b = content.get(i);
+            if (b == '\n' && ((previous & 0xFF) == '\n' || (previous & 0xFFFF) == 0x0A0D)) {
+                bodyStart = i + 1;
+                break;
+            }
+            previous = (previous << 8) | (b & 0xFF);
+        }
+
+        Adler32 adler = new Adler32();
+        byte[] bytes = new byte[8192];
+        content.position(bodyStart);
+        while (content.hasRemaining()) {
+            int count = Math.min(bytes.length, content.remaining());
+            content.get(bytes, 0, count);
+            adler.update(bytes, 0, count);
+        }
+        return String.valueOf(adler.getValue());
+    }
+
+    /**
+     * Maps a message, leaving out the separator line and the line terminator of the empty line that
+     * separates it from the next message.
+     */
+    private ByteBuffer getContent(int index) throws IOException {
+        if (lengths[index] > Integer.MAX_VALUE) {
+            throw new IOException("Message " + (index + 1) + " of " + file + " is too large to be mapped");
+        }
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offsets[index], lengths[index]);
+
+        int start = 0;
+        while (start < buffer.limit() && buffer.get(start) != '\n') {
+            start++;
+        }
+        start = Math.min(start + 1, buffer.limit());
+
+        int end = buffer.limit();
+        if (end > start && buffer.get(end - 1) == '\n') {
+            end--;
+            if (end > start && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+        }
+
+        buffer.limit(end);
+        buffer.position(start);
+        return buffer.slice();
+    }
+
+    /**
+     * A message that is parsed from a slice of the mapped file.
+     */
+    static class IndexedMessage extends MimeMessage {
+
+        IndexedMessage(Folder folder, InputStream stream, int messageNumber) throws MessagingException {
+            super(folder, stream, messageNumber);
+        }
+    }
+
+    /**
+     * Reads a ByteBuffer. The streams for the parts of a message share the buffer rather than copying it.
+     */
+    private static class BufferInputStream extends InputStream implements SharedInputStream {
+
+        private final ByteBuffer buffer;
+
+        public BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        public int available() {
+            return buffer.remaining();
+        }
+
+        public boolean markSupported() {
+            return true;
+        }
+
+        public synchronized void mark(int readLimit) {
+            buffer.mark();
+        }
+
+        public synchronized void reset() throws IOException {
+            try {
+                buffer.reset();
+            }
+            catch (InvalidMarkException e) {
+                throw new IOException("Stream has not been marked");
+            }
+        }
+
+        public long getPosition() {
+            return buffer.position();
+        }
+
+        public InputStream newStream(long start, long end) {
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.clear();
+            duplicate.limit(end < 0 ? buffer.limit() : (int) end);
+            duplicate.position((int) start);
+            return new BufferInputStream(duplicate.slice());
+        }
+    }
+}
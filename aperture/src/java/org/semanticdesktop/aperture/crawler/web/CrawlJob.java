@@ -20,6 +20,8 @@ public class CrawlJob {
 
     private int depth;
 
+    private long sequenceNumber;
+
     /**
      * Schedule a URL for crawling. The depth indicates how deep the hypertext graph needs to be crawler.
      * A depth of 0 indicates that only this url needs to be crawled, 1 indicates that all directly
@@ -47,6 +49,17 @@ public class CrawlJob {
         this.depth = depth;
     }
     
+    /**
+     * Returns the number that orders this job among the queued jobs with the same depth.
+     */
+    long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    void setSequenceNumber(long sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
+
     public String toString() {
     	return "{" + url + "," + depth + "}";
     }
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.web;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+
+/**
+ * The queue of CrawlJobs of a WebCrawler. The jobs are kept in a separate queue per host, so that the
+ * WebCrawler can limit the number of concurrent connections to a host and wait a configurable amount of time
+ * between two requests to the same host.
+ *
+ * <p>
+ * Apart from these per-host restrictions, the jobs are handed out in the same order as a single queue in
+ * which the jobs with the largest depths come first and jobs with equal depths are ordered by the time they
+ * were (re)scheduled. This keeps the crawl breadth-first.
+ *
+ * <p>
+ * The queue of a host consists of an array of FIFO queues, one for every depth, so that adding a job takes
+ * constant time. The queued jobs are also registered by URL. Jobs are never removed from the FIFO queues
+ * directly: a job that has been removed, or that has been replaced by a job for the same URL with a larger
+ * depth, is no longer registered by its URL and is skipped when it reaches the head of its FIFO queue.
+ *
+ * <p>
+ * The hosts are scheduled with two priority queues, so that handing out a job takes logarithmic time in the
+ * number of hosts. A host whose first job may be fetched right away is in the ready queue, which is ordered
+ * like the jobs themselves. A host that has to wait for its politeness delay first is in the delayed queue,
+ * ordered by the time it may be accessed again. A host that has reached its maximum number of connections
+ * is in neither queue until one of its jobs has finished. Entries are not removed from the priority queues
+ * when the host is rescheduled or its first job changes; such entries are recognized and skipped when they
+ * reach the head of their queue.
+ *
+ * <p>
+ * A CrawlJobQueue is not thread-safe.
+ */
+class CrawlJobQueue {
+
+    private final int maxDepth;
+
+    private final int maxConnectionsPerHost;
+
+    private final long politenessDelay;
+
+    /**
+     * The queued jobs, indexed by URL. Jobs in the FIFO queues that are not in this map are stale.
+     */
+    private final HashMap<String, CrawlJob> jobsMap = new HashMap<String, CrawlJob>(1024);
+
+    private final HashMap<String, HostQueue> hostQueues = new HashMap<String, HostQueue>();
+
+    /**
+     * Hosts whose first job may be fetched now, the host of the job that comes first is at the head.
+     */
+    private final PriorityQueue<HostEntry> readyHosts = new PriorityQueue<HostEntry>(64, new JobOrder());
+
+    /**
+     * Hosts with jobs that wait for their politeness delay, the host that can be accessed first is at the
+     * head.
+     */
+    private final PriorityQueue<HostEntry> delayedHosts = new PriorityQueue<HostEntry>(64, new TimeOrder());
+
+    /**
+     * Hosts without queued or active jobs, which are forgotten once their politeness delay has elapsed.
+     */
+    private final PriorityQueue<HostEntry> idleHosts = new PriorityQueue<HostEntry>(64, new TimeOrder());
+
+    private long sequenceCounter;
+
+    /**
+     * Creates a new CrawlJobQueue.
+     *
+     * @param maxDepth the largest depth a job can have, i.e. the depth of the start URL
+     * @param maxConnectionsPerHost the maximum number of jobs per host that may be fetched at the same time
+     * @param politenessDelay the minimum number of milliseconds between handing out two jobs for the same host
+     */
+    public CrawlJobQueue(int maxDepth, int maxConnectionsPerHost, long politenessDelay) {
+        this.maxDepth = maxDepth;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.politenessDelay = politenessDelay;
+    }
+
+    /**
+     * Adds a job to the queue. The job is inserted after all jobs with a larger or equal depth. A job that
+     * is queued for the same URL is replaced.
+     *
+     * @throws IllegalArgumentException when the depth of the job is larger than the maximum depth
+     */
+    public void add(CrawlJob job) {
+        int depth = job.getDepth();
+        if (depth > maxDepth) {
+            throw new IllegalArgumentException("depth exceeds the maximum depth: " + depth);
+        }
+
+        String host = getHost(job.getURL());
+        HostQueue hostQueue = hostQueues.get(host);
+        if (hostQueue == null) {
+            hostQueue = new HostQueue(host);
+            hostQueues.put(host, hostQueue);
+        }
+
+        job.setSequenceNumber(sequenceCounter++);
+        jobsMap.put(job.getURL(), job);
+
+        // the bucket index is the distance to the maximum depth, this keeps the indices small even when the
+        // crawl depth is unlimited
+        hostQueue.add(job, maxDepth - depth);
+
+        // reschedule the host when the job has become its first one
+        HostEntry entry = hostQueue.entry;
+        if (entry == null || entry.job == job || hostQueue.peek() != entry.job) {
+            schedule(hostQueue, Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Returns the queued job for the specified URL.
+     *
+     * @return the queued job, or null when no job is queued for this URL
+     */
+    public CrawlJob get(String url) {
+        return jobsMap.get(url);
+    }
+
+    /**
+     * Removes the job for the specified URL from the queue.
+     *
+     * @return the removed job, or null when no job was queued for this URL
+     */
+    public CrawlJob remove(String url) {
+        return jobsMap.remove(url);
+    }
+
+    public boolean isEmpty() {
+        return jobsMap.isEmpty();
+    }
+
+    public int size() {
+        return jobsMap.size();
+    }
+
+    /**
+     * Removes and returns the first job of a host that may be accessed at the specified time. The host is
+     * registered as being accessed until {@link #jobFinished(CrawlJob)} is invoked for the returned job.
+     *
+     * @param now the current time
+     * @return the first job that may be fetched, or null when there is none
+     */
+    public CrawlJob poll(long now) {
+        HostEntry entry = nextReadyHost(now);
+        if (entry == null) {
+            return null;
+        }
+
+        readyHosts.poll();
+        HostQueue hostQueue = entry.hostQueue;
+        CrawlJob job = entry.job;
+        hostQueue.removeFirst();
+        hostQueue.activeJobs++;
+        hostQueue.lastAccessTime = now;
+        jobsMap.remove(job.getURL());
+        schedule(hostQueue, now);
+        return job;
+    }
+
+    /**
+     * Registers that a job returned by {@link #poll(long)} has been processed, so that its host can be
+     * accessed again.
+     */
+    public void jobFinished(CrawlJob job) {
+        HostQueue hostQueue = hostQueues.get(getHost(job.getURL()));
+        if (hostQueue != null) {
+            hostQueue.activeJobs--;
+            if (hostQueue.entry == null) {
+                schedule(hostQueue, Long.MIN_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of milliseconds after which a job will become available because the politeness
+     * delay of its host has elapsed.
+     *
+     * @param now the current time
+     * @return the time to wait, or -1 when no job is waiting for the politeness delay only
+     */
+    public long getWaitTime(long now) {
+        if (nextReadyHost(now) != null) {
+            return 0L;
+        }
+        HostEntry entry = delayedHosts.peek();
+        return entry == null ? -1L : entry.time - now;
+    }
+
+    /**
+     * Returns the entry of the host with the first job that may be fetched at the specified time, without
+     * removing it from the ready queue. Hosts whose politeness delay has elapsed are moved to the ready
+     * queue first, and idle hosts are forgotten.
+     */
+    private HostEntry nextReadyHost(long now) {
+        HostEntry entry;
+        while ((entry = idleHosts.peek()) != null && entry.time <= now) {
+            idleHosts.poll();
+            if (entry.isCurrent() && hostQueues.get(entry.hostQueue.host) == entry.hostQueue) {
+                hostQueues.remove(entry.hostQueue.host);
+            }
+        }
+        while ((entry = delayedHosts.peek()) != null && (entry.time <= now || !entry.isCurrent())) {
+            delayedHosts.poll();
+            if (entry.isCurrent()) {
+                readyHosts.add(entry);
+            }
+        }
+        while ((entry = readyHosts.peek()) != null) {
+            if (entry.isCurrent()) {
+                if (entry.hostQueue.peek() == entry.job) {
+                    return entry;
+                }
+                // the job has been removed or replaced
+                readyHosts.poll();
+                schedule(entry.hostQueue, now);
+            }
+            else {
+                readyHosts.poll();
+            }
+        }
+        // remove stale entries, so that the head of the delayed queue is valid for getWaitTime
+        while ((entry = delayedHosts.peek()) != null && !entry.isCurrent()) {
+            delayedHosts.poll();
+        }
+        return null;
+    }
+
+    /**
+     * Puts a host in the queue that matches its state, invalidating its previous entry.
+     *
+     * @param now the current time, or Long.MIN_VALUE when the host should only be moved to the ready queue
+     *            by {@link #nextReadyHost(long)}
+     */
+    private void schedule(HostQueue hostQueue, long now) {
+        hostQueue.entry = null;
+        if (hostQueue.activeJobs >= maxConnectionsPerHost) {
+            // rescheduled when a job has finished
+            return;
+        }
+
+        CrawlJob job = hostQueue.peek();
+        if (job == null && hostQueue.activeJobs > 0) {
+            // rescheduled when a job is added or has finished
+            return;
+        }
+
+        long time = hostQueue.getNextAccessTime(politenessDelay);
+        HostEntry entry = new HostEntry(hostQueue, job, time);
+        hostQueue.entry = entry;
+        if (job == null) {
+            idleHosts.add(entry);
+        }
+        else if (time <= now) {
+            readyHosts.add(entry);
+        }
+        else {
+            delayedHosts.add(entry);
+        }
+    }
+
+    /**
+     * Returns the part of a URL that identifies the host, i.e. the scheme and the authority.
+     */
+    static String getHost(String url) {
+        int start = url.indexOf("://");
+        if (start < 0) {
+            int colon = url.indexOf(':');
+            return colon < 0 ? url : url.substring(0, colon + 1);
+        }
+
+        start += 3;
+        int end = start;
+        int length = url.length();
+        while (end < length) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            end++;
+        }
+        return url.substring(0, end).toLowerCase();
+    }
+
+    private class HostQueue {
+
+        private final String host;
+
+        /** FIFO queues of jobs, indexed by the distance of their depth to the maximum depth */
+        private final ArrayList<LinkedList<CrawlJob>> buckets = new ArrayList<LinkedList<CrawlJob>>();
+
+        /** The index of the first bucket that may contain jobs */
+        private int firstBucket;
+
+        private int activeJobs;
+
+        private long lastAccessTime = Long.MIN_VALUE;
+
+        /** The entry of this host in one of the priority queues, or null */
+        private HostEntry entry;
+
+        private HostQueue(String host) {
+            this.host = host;
+        }
+
+        private void add(CrawlJob job, int bucketIndex) {
+            while (buckets.size() <= bucketIndex) {
+                buckets.add(new LinkedList<CrawlJob>());
+            }
+            buckets.get(bucketIndex).addLast(job);
+            if (bucketIndex < firstBucket) {
+                firstBucket = bucketIndex;
+            }
+        }
+
+        /**
+         * Returns the first job that has not been removed or replaced, discarding all stale jobs before it.
+         */
+        private CrawlJob peek() {
+            while (firstBucket < buckets.size()) {
+                LinkedList<CrawlJob> bucket = buckets.get(firstBucket);
+                while (!bucket.isEmpty()) {
+                    CrawlJob job = bucket.getFirst();
+                    if (jobsMap.get(job.getURL()) == job) {
+                        return job;
+                    }
+                    bucket.removeFirst();
+                }
+                firstBucket++;
+            }
+            return null;
+        }
+
+        private void removeFirst() {
+            buckets.get(firstBucket).removeFirst();
+        }
+
+        private long getNextAccessTime(long politenessDelay) {
+            return lastAccessTime == Long.MIN_VALUE ? Long.MIN_VALUE : lastAccessTime + politenessDelay;
+        }
+    }
+
+    /**
+     * The entry of a host in one of the priority queues. The job and the time are fixed when the entry is
+     * created, as the order of a priority queue must not change while an entry is in it.
+     */
+    private static class HostEntry {
+
+        private final HostQueue hostQueue;
+
+        private final CrawlJob job;
+
+        private final int depth;
+
+        private final long sequenceNumber;
+
+        private final long time;
+
+        private HostEntry(HostQueue hostQueue, CrawlJob job, long time) {
+            this.hostQueue = hostQueue;
+            this.job = job;
+            this.depth = job == null ? 0 : job.getDepth();
+            this.sequenceNumber = job == null ? 0L : job.getSequenceNumber();
+            this.time = time;
+        }
+
+        /**
+         * Returns whether the host has not been rescheduled since this entry was created.
+         */
+        private boolean isCurrent() {
+            return hostQueue.entry == this;
+        }
+    }
+
+    /**
+     * Orders entries like the jobs: larger depths first, equal depths by sequence number.
+     */
+    private static class JobOrder implements Comparator<HostEntry> {
+
+        public int compare(HostEntry entry1, HostEntry entry2) {
+            if (entry1.depth != entry2.depth) {
+                return entry1.depth > entry2.depth ? -1 : 1;
+            }
+            return entry1.sequenceNumber < entry2.sequenceNumber ? -1
+                    : (entry1.sequenceNumber == entry2.sequenceNumber ? 0 : 1);
+        }
+    }
+
+    /**
+     * Orders entries by the time their host may be accessed, then like the jobs.
+     */
+    private static class TimeOrder extends JobOrder {
+
+        public int compare(HostEntry entry1, HostEntry entry2) {
+            if (entry1.time != entry2.time) {
+                return entry1.time < entry2.time ? -1 : 1;
+            }
+            return super.compare(entry1, entry2);
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A VisitedUrlStore for crawls with millions of URLs that uses a fixed amount of main memory.
+ *
+ * <p>
+ * Every URL is reduced to a 64-bit fingerprint. The fingerprints are registered in a Bloom filter, which is
+ * the only part of the store that is kept on the heap, and in an exact hash table of fingerprints in a
+ * memory-mapped temporary file. A URL of which the Bloom filter says that it has not been added is known to
+ * be new; only the (rare) positive answers of the Bloom filter are confirmed using the hash table. Two
+ * different URLs are only confused when they have the same fingerprint, the probability of which is
+ * negligible.
+ *
+ * <p>
+ * The Bloom filter is sized for an expected number of URLs. When more URLs are added, the store keeps
+ * giving exact answers, but the hash table has to be consulted more often. The hash table is limited to
+ * 2^27 fingerprints (a 1 GB file). Once it is full, further URLs are only registered in the Bloom filter and
+ * every positive answer of the filter is trusted, so that a new URL is taken for a visited one with the
+ * false positive rate of the filter.
+ */
+public class FingerprintVisitedUrlStore implements VisitedUrlStore {
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    /** The largest table whose size in bytes fits in a single memory-mapped buffer */
+    private static final int MAX_CAPACITY = 1 << 27;
+
+    private static final double MAX_LOAD_FACTOR = 0.6;
+
+    /** The number of distinct 64-bit fingerprints */
+    private static final double FINGERPRINT_RANGE = 18446744073709551616.0;
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final File directory;
+
+    private final long[] filter;
+
+    private final long filterBitCount;
+
+    private final int hashCount;
+
+    private final int maxCapacity;
+
+    private FingerprintTable table;
+
+    /**
+     * Set when the hash table has reached its maximum capacity and new URLs are only added to the Bloom
+     * filter.
+     */
+    private boolean tableFull;
+
+    /**
+     * The number of URLs that were only added to the Bloom filter.
+     */
+    private long filterOnlyCount;
+
+    private long filterPositiveCount;
+
+    private long filterFalsePositiveCount;
+
+    /**
+     * Creates a FingerprintVisitedUrlStore that stores its hash table in the default temporary-file
+     * directory.
+     *
+     * @param expectedUrlCount the expected number of URLs
+     * @param filterFalsePositiveRate the desired probability that the Bloom filter reports a new URL as
+     *            possibly added, e.g. 0.01. This determines the size of the filter, not the probability that
+     *            {@link #contains(String)} gives a wrong answer.
+     */
+    public FingerprintVisitedUrlStore(long expectedUrlCount, double filterFalsePositiveRate) {
+        this(expectedUrlCount, filterFalsePositiveRate, null);
+    }
+
+    /**
+     * Creates a FingerprintVisitedUrlStore.
+     *
+     * @param expectedUrlCount the expected number of URLs
+     * @param filterFalsePositiveRate the desired probability that the Bloom filter reports a new URL as
+     *            possibly added, e.g. 0.01
+     * @param directory the directory in which the hash table file is created, or null to use the default
+     *            temporary-file directory
+     * @throws IllegalArgumentException when the expected number of URLs is not positive or the false
+     *             positive rate is not between 0 and 1
+     */
+    public FingerprintVisitedUrlStore(long expectedUrlCount, double filterFalsePositiveRate, File directory) {
+        this(expectedUrlCount, filterFalsePositiveRate, directory, MAX_CAPACITY);
+    }
+
+    /**
+     * Creates a FingerprintVisitedUrlStore with a hash table that holds at most the specified number of
+     * slots, used by the tests to fill the table.
+     */
+    FingerprintVisitedUrlStore(long expectedUrlCount, double filterFalsePositiveRate, File directory,
+            int maxCapacity) {
+        if (expectedUrlCount <= 0L) {
+            throw new IllegalArgumentException("expected number of URLs must be positive: " + expectedUrlCount);
+        }
+        if (filterFalsePositiveRate <= 0.0 || filterFalsePositiveRate >= 1.0) {
+            throw new IllegalArgumentException("false positive rate must be between 0 and 1: "
+                    + filterFalsePositiveRate);
+        }
+        this.directory = directory;
+        this.maxCapacity = maxCapacity;
+
+        // the optimal number of bits and hash functions of a Bloom filter
+        double ln2 = Math.log(2.0);
+        double bits = -expectedUrlCount * Math.log(filterFalsePositiveRate) / (ln2 * ln2);
+        int longCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.ceil(bits / 64.0));
+        filter = new long[Math.max(1, longCount)];
+        filterBitCount = filter.length * 64L;
+        hashCount = (int) Math.max(1L, Math.round(filterBitCount * ln2 / expectedUrlCount));
+    }
+
+    public boolean contains(String url) {
+        long fingerprint = fingerprint(url);
+        if (!filterContains(fingerprint)) {
+            return false;
+        }
+
+        // confirm the positive answer of the filter
+        filterPositiveCount++;
+        if (table != null && table.contains(fingerprint)) {
+            return true;
+        }
+        else if (tableFull) {
+            // the URL may have been added after the table was full
+            return true;
+        }
+        else {
+            filterFalsePositiveCount++;
+            return false;
+        }
+    }
+
+    public void add(String url) {
+        long fingerprint = fingerprint(url);
+        try {
+            if (table == null) {
+                table = new FingerprintTable(directory, Math.min(INITIAL_CAPACITY, maxCapacity));
+            }
+            else if (table.getCount() + 1 > table.getCapacity() * MAX_LOAD_FACTOR) {
+                if (table.getCapacity() < maxCapacity) {
+                    table = table.grow();
+                }
+                else if (!table.contains(fingerprint)) {
+                    addToFilterOnly(fingerprint);
+                    return;
+                }
+            }
+            table.add(fingerprint);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("unable to store URL fingerprint", e);
+        }
+
+        // bits are only set after the fingerprint has been stored, so that the filter and the table agree
+        filterAdd(fingerprint);
+    }
+
+    private void addToFilterOnly(long fingerprint) {
+        if (!tableFull) {
+            tableFull = true;
+            logger.warn("the hash table of the visited URL store is full, new URLs are only added to the "
+                    + "Bloom filter");
+        }
+        if (!filterContains(fingerprint)) {
+            filterOnlyCount++;
+            filterAdd(fingerprint);
+        }
+    }
+
+    public long size() {
+        return (table == null ? 0L : table.getCount()) + filterOnlyCount;
+    }
+
+    public void clear() {
+        close();
+        for (int i = 0; i < filter.length; i++) {
+            filter[i] = 0L;
+        }
+        filterPositiveCount = 0L;
+        filterFalsePositiveCount = 0L;
+        tableFull = false;
+        filterOnlyCount = 0L;
+    }
+
+    public void close() {
+        if (table != null) {
+            table.close();
+            table = null;
+        }
+    }
+
+    public long getMemoryUsage() {
+        return filter.length * 8L;
+    }
+
+    /**
+     * Returns the false positive rate of the Bloom filter, see {@link #getFilterFalsePositiveRate()}.
+     */
+    public double getFalsePositiveRate() {
+        return getFilterFalsePositiveRate();
+    }
+
+    /**
+     * Returns the probability that a new URL is confused with an added URL because their fingerprints are
+     * equal, given the current number of URLs.
+     */
+    public double getFingerprintCollisionRate() {
+        return size() / FINGERPRINT_RANGE;
+    }
+
+    /**
+     * Returns the number of bytes used on disk by the hash table of fingerprints.
+     */
+    public long getDiskUsage() {
+        return table == null ? 0L : table.getCapacity() * 8L;
+    }
+
+    /**
+     * Returns the theoretical probability that the Bloom filter reports a new URL as possibly added, given
+     * the current number of URLs.
+     */
+    public double getFilterFalsePositiveRate() {
+        double fillRatio = 1.0 - Math.exp(-hashCount * (double) size() / filterBitCount);
+        return Math.pow(fillRatio, hashCount);
+    }
+
+    /**
+     * Returns the number of times that the hash table had to be consulted because the Bloom filter gave a
+     * positive answer.
+     */
+    public long getFilterPositiveCount() {
+        return filterPositiveCount;
+    }
+
+    /**
+     * Returns the number of positive answers of the Bloom filter that turned out to be wrong. Once the hash
+     * table is full, positive answers are no longer checked.
+     */
+    public long getFilterFalsePositiveCount() {
+        return filterFalsePositiveCount;
+    }
+
+    private boolean filterContains(long fingerprint) {
+        long hash2 = mix(fingerprint + 0x9e3779b97f4a7c15L) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((fingerprint + i * hash2) & Long.MAX_VALUE) % filterBitCount;
+            if ((filter[(int) (bit >>> 6)] & (1L << bit)) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void filterAdd(long fingerprint) {
+        long hash2 = mix(fingerprint + 0x9e3779b97f4a7c15L) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((fingerprint + i * hash2) & Long.MAX_VALUE) % filterBitCount;
+            filter[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Returns the 64-bit fingerprint of a URL: a FNV-1a hash of its chars with a final bit mix. The value 0
+     * is never returned, as it marks an empty slot in the hash table.
+     */
+    static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        int length = url.length();
+        for (int i = 0; i < length; i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        long result = mix(hash ^ length);
+        return result == 0L ? 1L : result;
+    }
+
+    /**
+     * The finalization step of MurmurHash3, spreads every input bit over all output bits.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * An open-addressing hash table of fingerprints in a memory-mapped file.
+     */
+    private class FingerprintTable {
+
+        private File file;
+
+        private RandomAccessFile randomAccessFile;
+
+        private FileChannel channel;
+
+        private LongBuffer slots;
+
+        private int capacity;
+
+        private int count;
+
+        public FingerprintTable(File directory, int capacity) throws IOException {
+            this.capacity = capacity;
+            file = File.createTempFile("visited-urls-", ".tmp", directory);
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                // the new file is filled with zeros, i.e. empty slots
+                randomAccessFile.setLength(capacity * 8L);
+                channel = randomAccessFile.getChannel();
+                slots = channel.map(FileChannel.MapMode.READ_WRITE, 0L, capacity * 8L).asLongBuffer();
+            }
+            catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public boolean contains(long fingerprint) {
+            int mask = capacity - 1;
+            for (int slot = (int) fingerprint & mask;; slot = (slot + 1) & mask) {
+                long value = slots.get(slot);
+                if (value == fingerprint) {
+                    return true;
+                }
+                else if (value == 0L) {
+                    return false;
+                }
+            }
+        }
+
+        public void add(long fingerprint) {
+            if (count >= capacity - 1) {
+                throw new IllegalStateException("visited URL store is full");
+            }
+
+            int mask = capacity - 1;
+            for (int slot = (int) fingerprint & mask;; slot = (slot + 1) & mask) {
+                long value = slots.get(slot);
+                if (value == fingerprint) {
+                    return;
+                }
+                else if (value == 0L) {
+                    slots.put(slot, fingerprint);
+                    count++;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Copies all fingerprints to a table with twice the capacity and closes this table.
+         */
+        public FingerprintTable grow() throws IOException {
+            FingerprintTable result = new FingerprintTable(directory, capacity * 2);
+            for (int slot = 0; slot < capacity; slot++) {
+                long value = slots.get(slot);
+                if (value != 0L) {
+                    result.add(value);
+                }
+            }
+            close();
+            return result;
+        }
+
+        public void close() {
+            slots = null;
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+                randomAccessFile.close();
+            }
+            catch (IOException e) {
+                logger.warn("unable to close " + file, e);
+            }
+
+            // the file may still be mapped on some platforms
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+}
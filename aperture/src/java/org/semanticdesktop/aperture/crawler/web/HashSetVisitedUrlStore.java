@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.web;
+
+import java.util.HashSet;
+
+/**
+ * An exact VisitedUrlStore that keeps all URLs in a HashSet. This is the store used by a WebCrawler that
+ * has not been given a VisitedUrlStore of its own. Its memory usage grows with the number and the length of
+ * the URLs: 100,000 URLs of 100 chars on average take about 25 MB. Large crawls should use a
+ * {@link FingerprintVisitedUrlStore} instead.
+ */
+public class HashSetVisitedUrlStore implements VisitedUrlStore {
+
+    /**
+     * The estimated number of bytes used by a URL String, apart from its chars, and by its HashSet entry.
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private HashSet<String> urls = new HashSet<String>(1024);
+
+    private long memoryUsage;
+
+    public boolean contains(String url) {
+        return urls.contains(url);
+    }
+
+    public void add(String url) {
+        if (urls.add(url)) {
+            memoryUsage += ENTRY_OVERHEAD + 2L * url.length();
+        }
+    }
+
+    public long size() {
+        return urls.size();
+    }
+
+    public void clear() {
+        urls = new HashSet<String>(1024);
+        memoryUsage = 0L;
+    }
+
+    public void close() {
+        clear();
+    }
+
+    public long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    public double getFalsePositiveRate() {
+        return 0.0;
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.web;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.semanticdesktop.aperture.util.DateUtil;
+import org.semanticdesktop.aperture.util.HttpClientUtil;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the URLs listed in sitemaps (see http://www.sitemaps.org/), sitemap index files and RSS and Atom
+ * feeds, and the sitemaps listed in a robots.txt file. The entries are passed to a Listener as they are
+ * parsed, so that sitemaps of any size can be processed in constant memory.
+ */
+class SitemapReader {
+
+    /**
+     * Receives the entries of the sitemaps and feeds read by a SitemapReader.
+     */
+    public static interface Listener {
+
+        /**
+         * Invoked for every page listed in a sitemap or feed.
+         *
+         * @param url the URL of the page
+         * @param lastModified the time the page was last modified in milliseconds, or -1 when unknown. For
+         *            a date without a time this is the end of that day.
+         * @param changeInterval the expected time between two changes of the page in milliseconds, or -1
+         *            when unknown. Long.MAX_VALUE indicates a page that never changes.
+         */
+        public void urlFound(String url, long lastModified, long changeInterval);
+
+        /**
+         * Invoked for every sitemap listed in a sitemap index file.
+         */
+        public void sitemapFound(String url);
+    }
+
+    private static final long HOUR = 60L * 60L * 1000L;
+
+    private static final long DAY = 24L * HOUR;
+
+    /** A W3C date that includes the day of the month */
+    private static final Pattern DATE_PATTERN = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+
+    private static final int TIMEOUT = 20000;
+
+    private Listener listener;
+
+    public SitemapReader(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the sitemaps listed in the robots.txt file of the host of the specified URL.
+     *
+     * @param url an http or https URL
+     * @return the sitemap URLs, an empty list when there is no robots.txt file
+     * @throws IOException when the robots.txt file exists but could not be read
+     */
+    public List<String> readRobotsTxt(String url) throws IOException {
+        InputStream stream = openStream(new URL(new URL(url), "/robots.txt"));
+        if (stream == null) {
+            return new ArrayList<String>(0);
+        }
+        try {
+            return parseRobotsTxt(stream);
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Reads a sitemap, sitemap index file or feed and reports its entries to the Listener. Nothing is
+     * reported when the URL cannot be found.
+     *
+     * @param url the URL of the sitemap
+     * @throws IOException when the sitemap could not be read or parsed
+     */
+    public void read(String url) throws IOException {
+        InputStream stream = openStream(new URL(url));
+        if (stream == null) {
+            return;
+        }
+        try {
+            parse(stream, url);
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Returns the values of the "Sitemap:" lines in a robots.txt file. These lines do not belong to a
+     * User-agent section.
+     */
+    static List<String> parseRobotsTxt(InputStream stream) throws IOException {
+        ArrayList<String> result = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int index = line.indexOf('#');
+            if (index >= 0) {
+                line = line.substring(0, index);
+            }
+            index = line.indexOf(':');
+            if (index > 0 && line.substring(0, index).trim().equalsIgnoreCase("sitemap")) {
+                String url = line.substring(index + 1).trim();
+                if (url.length() > 0) {
+                    result.add(url);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses a sitemap, sitemap index file or feed and reports its entries to the Listener. The relative
+     * links of a feed are resolved against the specified URL.
+     */
+    void parse(InputStream stream, String url) throws IOException {
+        XMLReader reader;
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            reader = factory.newSAXParser().getXMLReader();
+        }
+        catch (ParserConfigurationException e) {
+            throw new RuntimeException("unable to instantiate SAXParser", e);
+        }
+        catch (SAXException e) {
+            throw new RuntimeException("unable to instantiate SAXParser", e);
+        }
+
+        // sitemaps have no use for external entities, don't let them point the crawler elsewhere
+        disableFeature(reader, "http://apache.org/xml/features/nonvalidating/load-external-dtd");
+        disableFeature(reader, "http://xml.org/sax/features/external-general-entities");
+        disableFeature(reader, "http://xml.org/sax/features/external-parameter-entities");
+
+        InputSource source = new InputSource(stream);
+        source.setSystemId(url);
+        SitemapHandler handler = new SitemapHandler(url);
+        reader.setContentHandler(handler);
+        reader.setErrorHandler(handler);
+
+        try {
+            reader.parse(source);
+        }
+        catch (SAXException e) {
+            IOException ioe = new IOException("unable to parse sitemap " + url + ": " + e.getMessage());
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    private void disableFeature(XMLReader reader, String feature) {
+        try {
+            reader.setFeature(feature, false);
+        }
+        catch (SAXException e) {
+            // not supported by this parser
+        }
+    }
+
+    /**
+     * Opens a stream on the specified URL, decompressing gzipped sitemaps.
+     *
+     * @return the stream, or null when the server did not return the resource
+     */
+    private InputStream openStream(URL url) throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        HttpClientUtil.setAcceptGZIPEncoding(connection);
+
+        InputStream stream;
+        if (connection instanceof HttpURLConnection) {
+            HttpURLConnection httpConnection = (HttpURLConnection) connection;
+            if (httpConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                httpConnection.disconnect();
+                return null;
+            }
+            stream = HttpClientUtil.getInputStream(connection);
+        }
+        else {
+            try {
+                stream = connection.getInputStream();
+            }
+            catch (IOException e) {
+                // typically a FileNotFoundException
+                return null;
+            }
+        }
+
+        // sitemaps are often served as .gz files without a Content-Encoding
+        stream = new BufferedInputStream(stream);
+        stream.mark(2);
+        int b1 = stream.read();
+        int b2 = stream.read();
+        stream.reset();
+        if (b1 == 0x1f && b2 == 0x8b) {
+            stream = new GZIPInputStream(stream);
+        }
+        return stream;
+    }
+
+    /**
+     * Returns the time in milliseconds of a W3C datetime (as used by sitemaps and Atom) or an RFC 822 date
+     * (as used by RSS), or -1 when the date cannot be parsed. A W3C date without a time stands for the whole
+     * day (or month), its last millisecond is returned, so that a page that was modified later on the same
+     * day is not considered unchanged.
+     */
+    static long parseDate(String date) {
+        date = date.trim();
+        if (date.length() == 0) {
+            return -1L;
+        }
+        if (Character.isDigit(date.charAt(0)) && date.indexOf('-') > 0) {
+            try {
+                long time = DateUtil.string2DateTime(date).getTime();
+                if (date.indexOf('T') >= 0) {
+                    return time;
+                }
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTimeInMillis(time);
+                int period = DATE_PATTERN.matcher(date).lookingAt() ? Calendar.DAY_OF_MONTH : Calendar.MONTH;
+                calendar.add(period, 1);
+                return calendar.getTimeInMillis() - 1L;
+            }
+            catch (ParseException e) {
+                return -1L;
+            }
+            catch (RuntimeException e) {
+                return -1L;
+            }
+        }
+        else {
+            // strip the optional day of the week
+            int index = date.indexOf(',');
+            if (index >= 0) {
+                date = date.substring(index + 1).trim();
+            }
+            DateFormat format = new SimpleDateFormat("d MMM yyyy HH:mm:ss z", Locale.US);
+            try {
+                return format.parse(date).getTime();
+            }
+            catch (ParseException e) {
+                format = new SimpleDateFormat("d MMM yyyy HH:mm z", Locale.US);
+                try {
+                    return format.parse(date).getTime();
+                }
+                catch (ParseException pe) {
+                    return -1L;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the change interval of a sitemap changefreq value, or -1 when the value is unknown.
+     */
+    static long parseChangeFrequency(String changeFrequency) {
+        changeFrequency = changeFrequency.trim().toLowerCase();
+        if ("always".equals(changeFrequency)) {
+            return 0L;
+        }
+        else if ("hourly".equals(changeFrequency)) {
+            return HOUR;
+        }
+        else if ("daily".equals(changeFrequency)) {
+            return DAY;
+        }
+        else if ("weekly".equals(changeFrequency)) {
+            return 7L * DAY;
+        }
+        else if ("monthly".equals(changeFrequency)) {
+            return 30L * DAY;
+        }
+        else if ("yearly".equals(changeFrequency)) {
+            return 365L * DAY;
+        }
+        else if ("never".equals(changeFrequency)) {
+            return Long.MAX_VALUE;
+        }
+        else {
+            return -1L;
+        }
+    }
+
+    /**
+     * Collects the properties of the entries of a sitemap (url and sitemap elements), an RSS feed (item
+     * elements) or an Atom feed (entry elements). Elements are recognized by their local name, as feeds
+     * come in several namespaces.
+     */
+    private class SitemapHandler extends DefaultHandler {
+
+        private String baseUrl;
+
+        private int depth;
+
+        /** The depth of the entry element being parsed, or -1 when outside an entry */
+        private int entryDepth = -1;
+
+        private String entryName;
+
+        private String location;
+
+        private long lastModified;
+
+        private long changeInterval;
+
+        private StringBuilder text = new StringBuilder();
+
+        public SitemapHandler(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public void startElement(String namespaceURI, String localName, String qName, Attributes attributes) {
+            String name = getName(localName, qName);
+            depth++;
+            text.setLength(0);
+
+            if (entryDepth < 0) {
+                if ("url".equals(name) || "sitemap".equals(name) || "item".equals(name)
+                        || "entry".equals(name)) {
+                    entryDepth = depth;
+                    entryName = name;
+                    location = null;
+                    lastModified = -1L;
+                    changeInterval = -1L;
+                }
+            }
+            else if (depth == entryDepth + 1 && "link".equals(name) && location == null) {
+                // an Atom link, only the alternate representation is the page itself
+                String href = attributes.getValue("href");
+                String rel = attributes.getValue("rel");
+                if (href != null && (rel == null || "alternate".equals(rel))) {
+                    location = resolve(href.trim());
+                }
+            }
+        }
+
+        public void endElement(String namespaceURI, String localName, String qName) {
+            String name = getName(localName, qName);
+
+            if (depth == entryDepth) {
+                if (location != null) {
+                    if ("sitemap".equals(entryName)) {
+                        listener.sitemapFound(location);
+                    }
+                    else {
+                        listener.urlFound(location, lastModified, changeInterval);
+                    }
+                }
+                entryDepth = -1;
+            }
+            else if (depth == entryDepth + 1) {
+                String value = text.toString().trim();
+                if (("loc".equals(name) || "link".equals(name)) && value.length() > 0 && location == null) {
+                    location = resolve(value);
+                }
+                else if ("lastmod".equals(name) || "updated".equals(name) || "pubDate".equals(name)
+                        || "date".equals(name) || ("published".equals(name) && lastModified < 0L)) {
+                    lastModified = parseDate(value);
+                }
+                else if ("changefreq".equals(name)) {
+                    changeInterval = parseChangeFrequency(value);
+                }
+            }
+
+            text.setLength(0);
+            depth--;
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            if (entryDepth >= 0) {
+                text.append(ch, start, length);
+            }
+        }
+
+        private String getName(String localName, String qName) {
+            if (localName != null && localName.length() > 0) {
+                return localName;
+            }
+            int index = qName.indexOf(':');
+            return index < 0 ? qName : qName.substring(index + 1);
+        }
+
+        private String resolve(String url) {
+            try {
+                return new URL(new URL(baseUrl), url).toExternalForm();
+            }
+            catch (MalformedURLException e) {
+                return url;
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.web;
+
+/**
+ * A VisitedUrlStore registers the URLs that a WebCrawler has crawled during the current crawl. It is only
+ * used when the WebCrawler has no AccessData, in which case the AccessData is used for this purpose.
+ *
+ * <p>
+ * Implementations may trade exactness for memory: {@link #contains(String)} may occasionally return true
+ * for a URL that has never been added, causing the WebCrawler to skip that URL. It must never return false
+ * for a URL that has been added. The WebCrawler invokes the methods of a VisitedUrlStore from one thread at
+ * a time, so implementations need not be thread-safe.
+ */
+public interface VisitedUrlStore {
+
+    /**
+     * Returns whether the specified URL has been added to this store since the last call to
+     * {@link #clear()}.
+     */
+    public boolean contains(String url);
+
+    /**
+     * Adds a URL to this store.
+     */
+    public void add(String url);
+
+    /**
+     * Returns the number of URLs that have been added to this store. URLs that have been added more than
+     * once may be counted more than once.
+     */
+    public long size();
+
+    /**
+     * Removes all URLs from this store. The WebCrawler invokes this method at the start of every crawl.
+     */
+    public void clear();
+
+    /**
+     * Releases all resources held by this store. The WebCrawler invokes this method at the end of every
+     * crawl. The store can be used again after a call to {@link #clear()}.
+     */
+    public void close();
+
+    /**
+     * Returns an estimate of the number of bytes of main memory used by this store.
+     */
+    public long getMemoryUsage();
+
+    /**
+     * Returns an estimate of the probability that the in-memory part of this store reports a URL that has
+     * not been added as possibly added, given the current contents of this store. Such a URL then has to be
+     * looked up in the slower part of the store. Implementations that keep all URLs in memory return 0.
+     */
+    public double getFalsePositiveRate();
+}
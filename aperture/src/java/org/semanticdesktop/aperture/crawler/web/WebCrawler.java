@@ -13,13 +13,19 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
 import org.ontoware.rdf2go.model.Model;
@@ -34,6 +40,9 @@ import org.semanticdesktop.aperture.accessor.FileDataObject;
 import org.semanticdesktop.aperture.accessor.RDFContainerFactory;
 import org.semanticdesktop.aperture.accessor.UrlNotFoundException;
 import org.semanticdesktop.aperture.accessor.base.FilterAccessData;
+import org.semanticdesktop.aperture.accessor.base.SynchronizedAccessData;
+import org.semanticdesktop.aperture.accessor.http.HttpAccessStatistics;
+import org.semanticdesktop.aperture.accessor.http.HttpAccessor;
 import org.semanticdesktop.aperture.crawler.ExitCode;
 import org.semanticdesktop.aperture.crawler.base.CrawlerBase;
 import org.semanticdesktop.aperture.datasource.config.DomainBoundaries;
@@ -42,6 +51,7 @@ import org.semanticdesktop.aperture.hypertext.linkextractor.LinkExtractor;
 import org.semanticdesktop.aperture.hypertext.linkextractor.LinkExtractorFactory;
 import org.semanticdesktop.aperture.hypertext.linkextractor.LinkExtractorRegistry;
 import org.semanticdesktop.aperture.mime.identifier.MimeTypeIdentifier;
+import org.semanticdesktop.aperture.util.ExposedByteArrayInputStream;
 import org.semanticdesktop.aperture.util.IOUtil;
 import org.semanticdesktop.aperture.util.UrlUtil;
 import org.semanticdesktop.aperture.vocabulary.NIE;
@@ -57,24 +67,95 @@ import org.slf4j.LoggerFactory;
  * stored in this AccessData.
  * 
  * <p>
- * Implementation note: this WebCrawler fetches URLs one-by-one in a single-threaded manner. Previous
- * implementations used a configurable number of threads to fetch the URLs. However, it turned out that even
- * when running with a single thread, the bandwidth was by far the biggest bottle-neck for crawling websites,
- * rather than processing of documents or network latency. In other words: there was no performance gain in
- * using multiple fetch threads but the implementation was a lot more complicated, especially because the
- * listeners handling the results assumed to be running in a single thread. Therefore we've decided to keep
- * this implementation simple and single-threaded.
+ * By default this WebCrawler fetches URLs one-by-one on the thread that invoked {@link #crawl()}. When
+ * bandwidth is not the bottle-neck, e.g. when crawling an intranet, network latency dominates and the
+ * thread count can be raised (see {@link #setThreadCount(int)}) to fetch several URLs in parallel. The
+ * number of concurrent connections to a single host is limited by {@link #setMaxConnectionsPerHost(int)}
+ * and a minimum delay between two requests to the same host can be set with
+ * {@link #setPolitenessDelay(long)}. Within these limits the URLs are still fetched in breadth-first order.
+ * 
+ * <p>
+ * The calls to the CrawlerHandler are made from the fetcher threads but they are serialized, so existing
+ * CrawlerHandler implementations need not be thread-safe. The RDFContainerFactory returned by the handler,
+ * however, may be asked for containers concurrently. The AccessData is wrapped in a
+ * {@link SynchronizedAccessData} for the duration of a parallel crawl.
+ * 
+ * <p>
+ * HTTP connections are reused through the keep-alive support of the JRE. Note that the JRE keeps at most
+ * "http.maxConnections" (a system property, 5 by default) idle connections per host, so this property
+ * should not be set lower than the maximum number of connections per host.
+ * 
+ * <p>
+ * An incremental crawl normally has to send a (conditional) request for every URL of the site. When
+ * sitemap discovery is enabled (see {@link #setSitemapDiscovery(boolean)}) the crawler first reads the
+ * sitemaps listed in the robots.txt file of the root URL's host, or the /sitemap.xml of that host when there
+ * are none, and any sitemaps and RSS or Atom feeds set with {@link #setSitemapUrls(List)}. A known URL that
+ * according to its lastmod or changefreq has not changed since the previous crawl is reported as unmodified
+ * without being accessed, its links stored in the AccessData are followed as usual. All other listed URLs
+ * are scheduled, so that new pages are found even when they are not linked.
  */
 public class WebCrawler extends CrawlerBase {
 
-    // TODO: replace crawledUrls with a lookup on the AccessData (using the start time of crawling as a key),
-    // as this administration requires a lot of main memory. For example:
-    // 100,000 URLs x 100 chars average length x 2 bytes per char = 19+ MB, assuming the arrays do not contain
-    // emptry trailing parts and not counting the object overhead of the char array, String object and HashSet
-    // overhead.
+    /** Name of the CrawlReport statistic holding the number of URLs in the VisitedUrlStore */
+    public static final String VISITED_URL_COUNT_STATISTIC = "visitedUrlCount";
+
+    /** Name of the CrawlReport statistic holding the memory used by the VisitedUrlStore, in bytes */
+    public static final String VISITED_URL_MEMORY_STATISTIC = "visitedUrlMemoryUsage";
+
+    /** Name of the CrawlReport statistic holding the false positive rate of the VisitedUrlStore */
+    public static final String VISITED_URL_FALSE_POSITIVE_RATE_STATISTIC = "visitedUrlFalsePositiveRate";
+
+    /**
+     * Name of the CrawlReport statistic holding the number of URLs the Bloom filter of a
+     * FingerprintVisitedUrlStore reported as possibly visited
+     */
+    public static final String VISITED_URL_FILTER_POSITIVE_STATISTIC = "visitedUrlFilterPositiveCount";
+
+    /**
+     * Name of the CrawlReport statistic holding the number of URLs the Bloom filter of a
+     * FingerprintVisitedUrlStore wrongly reported as possibly visited
+     */
+    public static final String VISITED_URL_FILTER_FALSE_POSITIVE_STATISTIC = "visitedUrlFilterFalsePositiveCount";
+
+    /** Name of the CrawlReport statistic holding the number of 304 (Not Modified) responses */
+    public static final String HTTP_NOT_MODIFIED_STATISTIC = "httpNotModifiedCount";
+
+    /** Name of the CrawlReport statistic holding the number of downloaded URLs with an unchanged digest */
+    public static final String HTTP_UNCHANGED_CONTENT_STATISTIC = "httpUnchangedContentCount";
+
+    /** Name of the CrawlReport statistic holding the number of bytes saved by conditional requests */
+    public static final String HTTP_SAVED_BYTES_STATISTIC = "httpSavedByteCount";
+
+    /** Name of the CrawlReport statistic holding the number of URLs found in sitemaps and feeds */
+    public static final String SITEMAP_URL_COUNT_STATISTIC = "sitemapUrlCount";
+
+    /** Name of the CrawlReport statistic holding the number of URLs skipped because of their sitemap entry */
+    public static final String SITEMAP_UNCHANGED_STATISTIC = "sitemapUnchangedCount";
+
+    private static final int DEFAULT_THREAD_COUNT = 1;
+
+    /**
+     * The maximum number of sitemaps read during a crawl, protects against sitemap index files referring
+     * to each other.
+     */
+    private static final int MAX_SITEMAP_COUNT = 1000;
+
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 2;
+
+    private static final long DEFAULT_POLITENESS_DELAY = 0L;
 
     private Logger logger = LoggerFactory.getLogger(getClass());
 
+    private int threadCount = DEFAULT_THREAD_COUNT;
+
+    private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+    private long politenessDelay = DEFAULT_POLITENESS_DELAY;
+
+    private boolean sitemapDiscovery;
+
+    private List<String> sitemapUrls = new ArrayList<String>(0);
+
     /**
      * The MimeTypeIdentifier used to determine the mime type of a DataObject.
      */
@@ -102,29 +183,165 @@ public class WebCrawler extends CrawlerBase {
     private DomainBoundaries domainBoundaries;
 
     /**
-     * A sorted list of CrawlJobs. The jobs are ordered so that jobs with the largest depths come first.
+     * The queue of CrawlJobs, indexed by URL. The jobs are ordered so that jobs with the largest depths
+     * come first.
      */
-    private LinkedList<CrawlJob> jobsQueue;
+    private CrawlJobQueue jobsQueue;
 
     /**
-     * Additional registration of CrawlJobs, indexed by URL, for fast retrieval.
+     * The VisitedUrlStore set by the user, if any.
      */
-    private HashMap<String, CrawlJob> jobsMap;
+    private VisitedUrlStore visitedUrlStore;
 
     /**
      * The set of URLs that have been crawled so far during this scan. This set is used
      * only if there is no access data for this crawler.
      */
-    private HashSet<String> crawledUrls;
+    private VisitedUrlStore crawledUrls;
 
     private int initialDepth;
 
     private WebAccessData wad;
 
+    /**
+     * Counts the URLs that the HttpAccessor did not have to download or process during this crawl.
+     */
+    private HttpAccessStatistics httpAccessStatistics;
+
+    /**
+     * The parameters passed to the DataAccessors.
+     */
+    private Map<Object, Object> accessorParams;
+
+    /**
+     * Guards the queue and the registries of crawled URLs and serializes the calls to the CrawlerHandler
+     * made by the fetcher threads of a parallel crawl.
+     */
+    private final Object crawlMonitor = new Object();
+
+    /**
+     * The number of jobs that are being processed by the fetcher threads of a parallel crawl.
+     */
+    private int activeJobs;
+
+    private int sitemapUrlCount;
+
+    private int sitemapUnchangedCount;
+
     public WebCrawler() {
         wad = null;
     }
 
+    /**
+     * Sets the number of threads used to fetch URLs. A value of one (the default) fetches the URLs one by
+     * one on the calling thread, larger values fetch them in parallel.
+     * 
+     * @param threadCount the number of threads, must be at least one
+     * @throws IllegalArgumentException if the thread count is smaller than one
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("thread count must be at least 1: " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Returns the number of threads used to fetch URLs.
+     * 
+     * @return the number of threads used to fetch URLs
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the maximum number of URLs of a single host that are fetched at the same time. This only has
+     * effect when the thread count is larger than one. The default is 2.
+     * 
+     * @param maxConnectionsPerHost the maximum number of connections per host, must be at least one
+     * @throws IllegalArgumentException if the maximum is smaller than one
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("maximum number of connections per host must be at least 1: "
+                    + maxConnectionsPerHost);
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * Returns the maximum number of URLs of a single host that are fetched at the same time.
+     * 
+     * @return the maximum number of connections per host
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Sets the minimum number of milliseconds between the start of two requests to the same host. The
+     * default is 0, i.e. no delay.
+     * 
+     * @param politenessDelay the delay in milliseconds, must not be negative
+     * @throws IllegalArgumentException if the delay is negative
+     */
+    public void setPolitenessDelay(long politenessDelay) {
+        if (politenessDelay < 0L) {
+            throw new IllegalArgumentException("politeness delay must not be negative: " + politenessDelay);
+        }
+        this.politenessDelay = politenessDelay;
+    }
+
+    /**
+     * Returns the minimum number of milliseconds between the start of two requests to the same host.
+     * 
+     * @return the politeness delay in milliseconds
+     */
+    public long getPolitenessDelay() {
+        return politenessDelay;
+    }
+
+    /**
+     * Sets whether sitemaps and feeds are used to find the URLs that have changed since the previous crawl
+     * and URLs that are not linked. The default is false.
+     * 
+     * @param sitemapDiscovery whether sitemaps and feeds are read at the start of a crawl
+     */
+    public void setSitemapDiscovery(boolean sitemapDiscovery) {
+        this.sitemapDiscovery = sitemapDiscovery;
+    }
+
+    /**
+     * Returns whether sitemaps and feeds are read at the start of a crawl.
+     * 
+     * @return whether sitemap discovery is enabled
+     */
+    public boolean isSitemapDiscovery() {
+        return sitemapDiscovery;
+    }
+
+    /**
+     * Sets the URLs of sitemaps, sitemap index files and RSS or Atom feeds that are read in addition to the
+     * sitemaps listed in robots.txt when sitemap discovery is enabled. When URLs are set, the /sitemap.xml
+     * of the root URL's host is no longer tried.
+     * 
+     * @param sitemapUrls the URLs of sitemaps and feeds, or null to use only those listed in robots.txt
+     */
+    public void setSitemapUrls(List<String> sitemapUrls) {
+        this.sitemapUrls = sitemapUrls == null ? new ArrayList<String>(0)
+                : new ArrayList<String>(sitemapUrls);
+    }
+
+    /**
+     * Returns the URLs of sitemaps and feeds that are read when sitemap discovery is enabled.
+     * 
+     * @return the URLs of sitemaps and feeds
+     */
+    public List<String> getSitemapUrls() {
+        return sitemapUrls;
+    }
+
     public void setMimeTypeIdentifier(MimeTypeIdentifier mimeTypeIdentifier) {
         this.mimeTypeIdentifier = mimeTypeIdentifier;
     }
@@ -141,14 +358,54 @@ public class WebCrawler extends CrawlerBase {
         return linkExtractorRegistry;
     }
 
+    /**
+     * Sets the VisitedUrlStore that registers the URLs crawled during a crawl. The store is only used when
+     * the crawler has no AccessData. When no store has been set, a {@link HashSetVisitedUrlStore} is used,
+     * which keeps all URLs in main memory. Crawls of millions of URLs without an AccessData should use a
+     * {@link FingerprintVisitedUrlStore}.
+     * 
+     * @param visitedUrlStore the store to use, or null to use a HashSetVisitedUrlStore
+     */
+    public void setVisitedUrlStore(VisitedUrlStore visitedUrlStore) {
+        this.visitedUrlStore = visitedUrlStore;
+    }
+
+    /**
+     * Returns the VisitedUrlStore that has been set on this crawler.
+     * 
+     * @return the VisitedUrlStore, or null when none has been set
+     */
+    public VisitedUrlStore getVisitedUrlStore() {
+        return visitedUrlStore;
+    }
+
     protected ExitCode crawlObjects() {
-        initialize();
-        processQueue();
-        removeDeprecatedRedirections();
-        boolean completed = jobsQueue.isEmpty();
-        cleanUp();
+        AccessData originalAccessData = accessData;
+        if (threadCount > 1 && accessData != null && !(accessData instanceof SynchronizedAccessData)) {
+            accessData = new SynchronizedAccessData(accessData);
+        }
+
+        try {
+            initialize();
+            if (threadCount > 1) {
+                processQueueInParallel();
+            }
+            else {
+                processQueue();
+            }
+            removeDeprecatedRedirections();
+            boolean completed = jobsQueue.isEmpty();
+            cleanUp();
 
-        return completed ? ExitCode.COMPLETED : ExitCode.STOP_REQUESTED;
+            return completed ? ExitCode.COMPLETED : ExitCode.STOP_REQUESTED;
+        }
+        finally {
+            if (crawledUrls != null) {
+                crawledUrls.close();
+                crawledUrls = null;
+            }
+            accessData = originalAccessData;
+        }
     }
 
     private void initialize() {
@@ -161,10 +418,14 @@ public class WebCrawler extends CrawlerBase {
         }
         
         // initialize variables
-        jobsQueue = new LinkedList<CrawlJob>();
-        jobsMap = new HashMap<String, CrawlJob>(1024);
+        activeJobs = 0;
+        httpAccessStatistics = new HttpAccessStatistics();
+        accessorParams = new HashMap<Object, Object>();
+        accessorParams.put(HttpAccessor.STATISTICS_KEY, httpAccessStatistics);
         if (accessData == null) {
-            crawledUrls = new HashSet<String>(1024);
+            crawledUrls = visitedUrlStore == null ? new HashSetVisitedUrlStore() : visitedUrlStore;
+            crawledUrls.clear();
+            wad = null;
         } else {
             wad = new WebAccessData(accessData);
         }
@@ -180,11 +441,119 @@ public class WebCrawler extends CrawlerBase {
 
         initialDepth = crawlDepth;
 
+        // a sequential crawl never has more than one connection to a host
+        jobsQueue = new CrawlJobQueue(crawlDepth, threadCount > 1 ? maxConnectionsPerHost : 1,
+            politenessDelay);
+
         Long l = source.getMaximumSize();
         maxByteSize = l == null ? Long.MAX_VALUE : l.longValue();
 
         // schedule the start URL
         schedule(startUrl, crawlDepth, false);
+
+        sitemapUrlCount = 0;
+        sitemapUnchangedCount = 0;
+        if (sitemapDiscovery && crawlDepth > 0) {
+            processSitemaps(startUrl, crawlDepth - 1);
+        }
+    }
+
+    /**
+     * Reads the sitemaps and feeds of the site and schedules or skips the URLs listed in them. The listed
+     * URLs are treated as links of the start URL.
+     */
+    private void processSitemaps(String startUrl, final int depth) {
+        final LinkedList<String> sitemaps = new LinkedList<String>(sitemapUrls);
+        SitemapReader reader = new SitemapReader(new SitemapReader.Listener() {
+
+            public void urlFound(String url, long lastModified, long changeInterval) {
+                processSitemapEntry(url, lastModified, changeInterval, depth);
+            }
+
+            public void sitemapFound(String url) {
+                sitemaps.add(url);
+            }
+        });
+
+        if (startUrl.startsWith("http:") || startUrl.startsWith("https:")) {
+            try {
+                List<String> listedSitemaps = reader.readRobotsTxt(startUrl);
+                if (listedSitemaps.isEmpty() && sitemaps.isEmpty()) {
+                    sitemaps.add(new URL(new URL(startUrl), "/sitemap.xml").toExternalForm());
+                }
+                else {
+                    sitemaps.addAll(listedSitemaps);
+                }
+            }
+            catch (IOException e) {
+                logger.info("I/O error while reading robots.txt of " + startUrl, e);
+            }
+        }
+
+        HashSet<String> readSitemaps = new HashSet<String>();
+        while (!sitemaps.isEmpty() && readSitemaps.size() < MAX_SITEMAP_COUNT && !isStopRequested()) {
+            String sitemap = sitemaps.removeFirst();
+            if (readSitemaps.add(sitemap)) {
+                try {
+                    reader.read(sitemap);
+                }
+                catch (IOException e) {
+                    logger.info("I/O error while reading sitemap " + sitemap, e);
+                }
+            }
+        }
+    }
+
+    private void processSitemapEntry(String url, long lastModified, long changeInterval, int depth) {
+        url = normalizeAndFixURL(url, null).string;
+        if (url == null || !domainBoundaries.inDomain(url) || isCrawled(url)) {
+            return;
+        }
+        sitemapUrlCount++;
+
+        if (accessData != null && accessData.isKnownId(url)
+                && isUnchanged(url, lastModified, changeInterval)) {
+            // report the URL as unmodified without accessing it and follow its stored links
+            jobsQueue.remove(url);
+            reportAccessingObject(url);
+            addCrawled(url);
+            reportUnmodifiedDataObject(url);
+            if (depth > 0) {
+                scheduleCachedLinks(url, depth - 1);
+            }
+            sitemapUnchangedCount++;
+        }
+        else {
+            schedule(url, depth, false);
+        }
+    }
+
+    /**
+     * Determines whether a URL has not changed since it was accessed in a previous crawl, based on the last
+     * modification date or the change frequency in a sitemap.
+     */
+    private boolean isUnchanged(String url, long lastModified, long changeInterval) {
+        String value = accessData.get(url, AccessData.DATE_KEY);
+        if (value == null) {
+            return false;
+        }
+        long accessDate;
+        try {
+            accessDate = Long.parseLong(value);
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+
+        if (lastModified >= 0L) {
+            return lastModified <= accessDate;
+        }
+        else if (changeInterval >= 0L) {
+            return changeInterval > System.currentTimeMillis() - accessDate;
+        }
+        else {
+            return false;
+        }
     }
 
     private void schedule(String url, int crawlDepth, boolean checkDomain) {
@@ -208,45 +577,16 @@ public class WebCrawler extends CrawlerBase {
             return;
         }
 
-        // check if it is already in the queue
-        CrawlJob job = jobsMap.get(url);
-        if (job == null) {
-            // the url has not been queued yet: schedule it now
-            // note that it will be inserted in the jobsQueue later in this method
-            job = new CrawlJob(url, crawlDepth);
-            jobsMap.put(url, job);
-        }
-        else {
-            // there is an existing job for this url: maximize its depth
-            if (job.getDepth() >= crawlDepth) {
-                // no further scheduling actions necessary
-                return;
-            }
-            else {
-                job.setDepth(crawlDepth);
-
-                // remove it from the jobsQueue as it will be re-inserted below at the appropriate
-                // location
-                jobsQueue.remove(job);
-            }
-        }
-
-        // Insert the new or updated CrawlJob just after the last job with a
-        // higher or equal depth, if any. It is assumed that most of these jobs
-        // should be inserted at or near the end of the jobsQueue so we iterate
-        // through the jobsQueue backwards to find the place to insert the job.
-        ListIterator<CrawlJob> iterator = jobsQueue.listIterator(jobsQueue.size());
-        while (iterator.hasPrevious()) {
-            CrawlJob scheduledJob = iterator.previous();
-
-            if (scheduledJob.getDepth() >= crawlDepth) {
-                // The new job needs to be inserted after this job
-                iterator.next();
-                break;
-            }
+        // check if it is already in the queue: if so, maximize its depth
+        CrawlJob job = jobsQueue.get(url);
+        if (job != null && job.getDepth() >= crawlDepth) {
+            // no further scheduling actions necessary
+            return;
         }
 
-        iterator.add(job);
+        // Insert a new CrawlJob after all jobs with a higher or equal depth. An existing job with a smaller
+        // depth is replaced by the new job.
+        jobsQueue.add(new CrawlJob(url, crawlDepth));
     }
 
     private boolean isCrawled(String url) {
@@ -267,50 +607,148 @@ public class WebCrawler extends CrawlerBase {
 
     private void processQueue() {
         // loop over all queued jobs
-        loop: while (!jobsQueue.isEmpty() && !isStopRequested()) {
-            // fetch the job and its properties
-            CrawlJob job = jobsQueue.removeFirst();
-            String url = job.getURL();
-            int depth = job.getDepth();
-            
-            if(logger.isDebugEnabled()) {
+        while (!jobsQueue.isEmpty() && !isStopRequested()) {
+            // fetch the job, this only fails when we have to wait for the politeness delay
+            long now = System.currentTimeMillis();
+            CrawlJob job = jobsQueue.poll(now);
+            if (job == null) {
                 try {
-                    java.net.URI uri = new java.net.URI(url);
-                } catch (URISyntaxException use) {
-                    logger.debug("Faulty url: " + url);
+                    Thread.sleep(jobsQueue.getWaitTime(now));
                 }
-            } 
-            
-            
-            // notify that we're processing this URL
-            //handler.accessingObject(this, url);
-            reportAccessingObject(url);
+                catch (InterruptedException e) {
+                    logger.warn("interrupted while waiting for the politeness delay", e);
+                    return;
+                }
+                continue;
+            }
 
-            // see if we've ever accessed this url before
-            boolean knownUrl = accessData == null ? false : accessData.isKnownId(url);
-            
-            // adjust some registries
-            addCrawled(url);
-            //crawledUrls.add(url);
-            jobsMap.remove(url);
+            try {
+                processJob(job, startJob(job));
+            }
+            finally {
+                jobsQueue.jobFinished(job);
+            }
+        }
+    }
+
+    /**
+     * Hands the queued jobs to a pool of fetcher threads. The jobs are handed out by the calling thread, in
+     * the order of the queue, as soon as a thread is available and the job's host may be accessed.
+     */
+    private void processQueueInParallel() {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new CrawlerThreadFactory());
+        boolean interrupted = false;
+        try {
+            synchronized (crawlMonitor) {
+                while (!isStopRequested()) {
+                    long now = System.currentTimeMillis();
+                    CrawlJob job = activeJobs < threadCount ? jobsQueue.poll(now) : null;
+                    if (job != null) {
+                        activeJobs++;
+                        executor.execute(new FetchTask(job, startJob(job)));
+                    }
+                    else if (jobsQueue.isEmpty() && activeJobs == 0) {
+                        break;
+                    }
+                    else {
+                        // wait until a job has been processed or the politeness delay of a host has elapsed
+                        long waitTime = activeJobs < threadCount ? jobsQueue.getWaitTime(now) : -1L;
+                        crawlMonitor.wait(waitTime < 0L ? 0L : Math.max(1L, waitTime));
+                    }
+                }
 
-            // fetch a DataAccessor for this id
-            DataAccessor accessor = getDataAccessor(url);
-            if (accessor != null) {
+                // let the fetcher threads finish their current jobs
+                while (activeJobs > 0) {
+                    crawlMonitor.wait();
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            logger.warn("interrupted while waiting for the fetcher threads, stopping the crawl", e);
+            stop();
+            interrupted = true;
+        }
+        finally {
+            executor.shutdownNow();
+
+            // the fetcher threads use the queue and the AccessData, which are released after this method
+            boolean terminated = false;
+            while (!terminated) {
                 try {
-                    // Fetch the data object. Wrap the AccessData in a WebAccessData to get notified when a
-                    // URL redirects to another URL.
-                    //RDFContainerFactory containerFactory = handler.getRDFContainerFactory(this, url);
-                    RDFContainerFactory containerFactory = getRDFContainerFactory(url);
+                    terminated = executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
-                    DataObject dataObject = accessor.getDataObjectIfModified(url, source, wad, null,
-                        containerFactory);
+    /**
+     * Registers that the URL of a job that has just been removed from the queue is being crawled, so that it
+     * is not scheduled again. In a parallel crawl this method is invoked by the thread that hands out the
+     * jobs, while holding the crawlMonitor.
+     * 
+     * @return whether the URL has been accessed before
+     */
+    private boolean startJob(CrawlJob job) {
+        String url = job.getURL();
 
-                    // register that this data object has successfully been processed
-                    //deprecatedUrls.remove(url);
+        // notify that we're processing this URL
+        //handler.accessingObject(this, url);
+        reportAccessingObject(url);
 
-                    // check if the object is unmodified
-                    if (dataObject == null) {
+        // see if we've ever accessed this url before
+        boolean knownUrl = accessData == null ? false : accessData.isKnownId(url);
+
+        // adjust some registries
+        addCrawled(url);
+        //crawledUrls.add(url);
+
+        return knownUrl;
+    }
+
+    /**
+     * Fetches and reports the URL of a job that has been started. In a parallel crawl this method is
+     * invoked by the fetcher threads, so all access to the queue, the registries of crawled URLs and the
+     * CrawlerHandler is synchronized on the crawlMonitor.
+     */
+    private void processJob(CrawlJob job, boolean knownUrl) {
+        String url = job.getURL();
+        int depth = job.getDepth();
+
+        if(logger.isDebugEnabled()) {
+            try {
+                java.net.URI uri = new java.net.URI(url);
+            } catch (URISyntaxException use) {
+                logger.debug("Faulty url: " + url);
+            }
+        }
+
+        RDFContainerFactory containerFactory;
+        synchronized (crawlMonitor) {
+            //RDFContainerFactory containerFactory = handler.getRDFContainerFactory(this, url);
+            containerFactory = getRDFContainerFactory(url);
+        }
+
+        // fetch a DataAccessor for this id
+        DataAccessor accessor = getDataAccessor(url);
+        if (accessor != null) {
+            try {
+                // Fetch the data object. Wrap the AccessData in a WebAccessData to get notified when a
+                // URL redirects to another URL.
+                DataObject dataObject = accessor.getDataObjectIfModified(url, source, wad, accessorParams,
+                    containerFactory);
+
+                // register that this data object has successfully been processed
+                //deprecatedUrls.remove(url);
+
+                // check if the object is unmodified
+                if (dataObject == null) {
+                    synchronized (crawlMonitor) {
                         // report the object as unmodified
                         //handler.objectNotModified(this, url);
                         //crawlReport.increaseUnchangedCount();
@@ -321,46 +759,47 @@ public class WebCrawler extends CrawlerBase {
                             scheduleCachedLinks(url, depth - 1);
                         }
                     }
-                    // we have a new or changed object
-                    else {
-                        // if this is the root URI, add that metadata
-                        if (depth == initialDepth) {
-                            dataObject.getMetadata().add(NIE.rootElementOf, source.getID());
-                        }
+                }
+                // we have a new or changed object
+                else {
+                    // if this is the root URI, add that metadata
+                    if (depth == initialDepth) {
+                        dataObject.getMetadata().add(NIE.rootElementOf, source.getID());
+                    }
 
-                        // As the URL may have lead to redirections, the ID of the resulting DataObject may be
-                        // different. Make sure this URL is never scheduled or reported during this crawl.
-                        String finalUrl = dataObject.getID().toString();
-                        if (!finalUrl.equals(url)) {
+                    // As the URL may have lead to redirections, the ID of the resulting DataObject may be
+                    // different. Make sure this URL is never scheduled or reported during this crawl.
+                    String finalUrl = dataObject.getID().toString();
+                    if (!finalUrl.equals(url)) {
+                        synchronized (crawlMonitor) {
                             //deprecatedUrls.remove(finalUrl);
 
-                            CrawlJob redundantJob = jobsMap.remove(finalUrl);
-                            if (redundantJob != null) {
-                                jobsQueue.remove(redundantJob);
-                            }
+                            jobsQueue.remove(finalUrl);
 
                             // If this is the case, the resulting DataObject may have been reported already.
                             // In that case the DataObject should be ignored, rather than reporting it
                             // multiple times.
                             if (isCrawled(finalUrl)) {
                                 dataObject.dispose();
-                                continue loop;
+                                return;
                             }
                             else {
                                 addCrawled(finalUrl);
                             }
                         }
+                    }
 
-                        // only report the object when it does not exceed the size limit
-                        if (hasAcceptableByteSize(dataObject)) {
-                            // extract and schedule links
-                            // do this before reporting: you never know what the handler will do to the
-                            // DataObject's stream (e.g. reading it without resetting it, closing it)
-                            if (dataObject instanceof FileDataObject) {
-                                processLinks((FileDataObject) dataObject, depth - 1);
-                            }
+                    // only report the object when it does not exceed the size limit
+                    if (hasAcceptableByteSize(dataObject)) {
+                        // extract and schedule links
+                        // do this before reporting: you never know what the handler will do to the
+                        // DataObject's stream (e.g. reading it without resetting it, closing it)
+                        if (dataObject instanceof FileDataObject) {
+                            processLinks((FileDataObject) dataObject, depth - 1);
+                        }
 
-                            // report the object
+                        // report the object
+                        synchronized (crawlMonitor) {
                             if (knownUrl) {
                                 //handler.objectChanged(this, dataObject);
                                 //crawlReport.increaseChangedCount();
@@ -372,25 +811,26 @@ public class WebCrawler extends CrawlerBase {
                                 reportNewDataObject(dataObject);
                             }
                         }
-                        else {
-                            unregisterUrl(url, knownUrl);
-                        }
+                    }
+                    else {
+                        dataObject.dispose();
+                        unregisterUrl(url, knownUrl);
                     }
                 }
-                catch (UrlNotFoundException e) {
-                    unregisterUrl(url, knownUrl);
-                }
-                catch (IOException e) {
-                    logger.info("I/O error while accessing " + url, e);
-                }
-                catch (Exception e) {
-                    // this will catch RuntimeErrors thrown by the accessor
-                    // problems have been reported, if the crawler tries to access a URL that is faulty
-                    // the accessor will try to create a URI out of it, the URI constructor will throw
-                    // an IllegalArgumentException, which will get past here and propagate upwards killing
-                    // the entire crawler - this catch should prevent it
-                    logger.info("Error while accessing " + url, e);
-                }
+            }
+            catch (UrlNotFoundException e) {
+                unregisterUrl(url, knownUrl);
+            }
+            catch (IOException e) {
+                logger.info("I/O error while accessing " + url, e);
+            }
+            catch (Exception e) {
+                // this will catch RuntimeErrors thrown by the accessor
+                // problems have been reported, if the crawler tries to access a URL that is faulty
+                // the accessor will try to create a URI out of it, the URI constructor will throw
+                // an IllegalArgumentException, which will get past here and propagate upwards killing
+                // the entire crawler - this catch should prevent it
+                logger.info("Error while accessing " + url, e);
             }
         }
     }
@@ -409,14 +849,16 @@ public class WebCrawler extends CrawlerBase {
     }
 
     private void unregisterUrl(String url, boolean knownUrl) {
-        // if we've accessed this object in the past, report it as removed
-        if (knownUrl) {
-            reportDeletedDataObject(url);
-        } else {
-            // furthermore we should not list this object as accessed any longer; when it can be accessed normally
-            // in the next crawl, it should be reported as a new object
-            if (accessData != null) {
-                accessData.remove(url);
+        synchronized (crawlMonitor) {
+            // if we've accessed this object in the past, report it as removed
+            if (knownUrl) {
+                reportDeletedDataObject(url);
+            } else {
+                // furthermore we should not list this object as accessed any longer; when it can be accessed
+                // normally in the next crawl, it should be reported as a new object
+                if (accessData != null) {
+                    accessData.remove(url);
+                }
             }
         }
     }
@@ -490,7 +932,8 @@ public class WebCrawler extends CrawlerBase {
         if (content == null) { return ; }
 
         // extract the links
-        List<String> links = getLinks(content,extractor, url);
+        List<String> links = getLinks(content, extractor, url,
+            object.getMetadata().getString(NIE.characterSet));
         // bail out if no links were produced
         if (links == null) { return ; }
 
@@ -498,47 +941,49 @@ public class WebCrawler extends CrawlerBase {
         
         // Keep a local set of scheduled links to prevent duplicate scheduling ASAP (the schedule
         // method will take care of normalization and reconsider the issue afterwards). We don't use
-        // crawledUrls or jobsMap for this purpose as, regardless of whether the crawling status of
+        // crawledUrls or jobsQueue for this purpose as, regardless of whether the crawling status of
         // the link, we must register it in accessData.
         HashSet<String> scheduledLinks = new HashSet<String>(links.size());
 
-        for (String link : links) {
-            StringUriPair pair = normalizeAndFixURL(link, object.getMetadata().getModel());
-            link = pair.string;
-            URI linkedResourceUri = pair.uri;
-            if (link == null) {
-                // this means that after all the efforts, the link could not be converted to
-                // a correct URI and crawling it will be impossible
-                continue;
-            }
-            if (!url.equals(link) && !scheduledLinks.contains(link)) {
-                if (depth >= 0) {
-                    // if creating the link failed, don't crash out with an exception, just skip it
-                    if(link != null) {
-                        // now we can schedule the link (which might have been encoded)
-                        schedule(link, depth, true);
+        synchronized (crawlMonitor) {
+            for (String link : links) {
+                StringUriPair pair = normalizeAndFixURL(link, object.getMetadata().getModel());
+                link = pair.string;
+                URI linkedResourceUri = pair.uri;
+                if (link == null) {
+                    // this means that after all the efforts, the link could not be converted to
+                    // a correct URI and crawling it will be impossible
+                    continue;
+                }
+                if (!url.equals(link) && !scheduledLinks.contains(link)) {
+                    if (depth >= 0) {
+                        // if creating the link failed, don't crash out with an exception, just skip it
+                        if(link != null) {
+                            // now we can schedule the link (which might have been encoded)
+                            schedule(link, depth, true);
                         
-                        if(linkedResourceUri != null) {
-                            object.getMetadata().add(NIE.links,linkedResourceUri);
+                            if(linkedResourceUri != null) {
+                                object.getMetadata().add(NIE.links,linkedResourceUri);
                             
-                            // The following triple needs to be added to satiate the validator complaining
-                            // about links to resources that are outside the crawling domain and don't have
-                            // their types set properly
-                            object.getMetadata().getModel().addStatement(linkedResourceUri,RDF.type,NIE.DataObject);
-                            scheduledLinks.add(link);
+                                // The following triple needs to be added to satiate the validator complaining
+                                // about links to resources that are outside the crawling domain and don't have
+                                // their types set properly
+                                object.getMetadata().getModel().addStatement(linkedResourceUri,RDF.type,NIE.DataObject);
+                                scheduledLinks.add(link);
+                            }
+                        }
+                        else {
+                            logger.warn("WebCrawler is skipping link {}", link);
+                            // don't allow it to get into AccessData
+                            continue;
                         }
                     }
-                    else {
-                        logger.warn("WebCrawler is skipping link {}", link);
-                        // don't allow it to get into AccessData
-                        continue;
+                    // this is here, because we want to include an entry about a link, even if it
+                    // already does contain
+                    if (accessData != null) {
+                        accessData.putReferredID(url, link);
                     }
                 }
-                // this is here, because we want to include an entry about a link, even if it
-                // already does contain
-                if (accessData != null) {
-                    accessData.putReferredID(url, link);
-                }
             }
         }
     }
@@ -552,7 +997,7 @@ public class WebCrawler extends CrawlerBase {
         }
     }
 
-    private List<String> getLinks(InputStream content, LinkExtractor extractor, String url) {
+    private List<String> getLinks(InputStream content, LinkExtractor extractor, String url, String charset) {
         try {
             // as it's a ByteArrayInputStream, its read limit actually has no effect
             content.mark(Integer.MAX_VALUE);
@@ -563,6 +1008,9 @@ public class WebCrawler extends CrawlerBase {
             if (includeEmbeddedResources != null) {
                 params.put(LinkExtractor.INCLUDE_EMBEDDED_RESOURCES_KEY, includeEmbeddedResources);
             }
+            if (charset != null) {
+                params.put(LinkExtractor.CHARSET_KEY, charset);
+            }
 
             // extract all links
             return extractor.extractLinks(content, params);
@@ -602,13 +1050,15 @@ public class WebCrawler extends CrawlerBase {
     private InputStream getByteArrayContent(InputStream content, FileDataObject object) {
         // Read the stream fully in a ByteArrayInputStream as we will process it entirely (so mark/reset
         // is a bit inappropriate) and it is likely that a CrawlerHandler implementation will do so too.
-        // FIXME: there are some optimization possibilities here: IOUtil.readBytes uses a
-        // ByteArrayOutputStream that internally uses a growing array, each time copying the old array
-        // into the new array. Finally, its toArray method returns a copy of the internal array.
-        // Optimization possibility: minimize the number of array allocations and copies.
+        // The bytes are read into a buffer that is sized after the byte size reported by the accessor and
+        // that is passed on without copying it. The HtmlLinkExtractor scans this buffer in place and attaches
+        // the text and metadata it collects to the stream, for the HtmlExtractor to reuse.
         if (!(content instanceof ByteArrayInputStream)) {
             try {
-                content = new ByteArrayInputStream(IOUtil.readBytes(content));
+                Long byteSize = object.getMetadata().getLong(NIE.byteSize);
+                int sizeHint = byteSize == null || byteSize.longValue() > Integer.MAX_VALUE ? 0 : byteSize
+                        .intValue();
+                content = ExposedByteArrayInputStream.readFully(content, sizeHint);
             }
             catch (IOException e) {
                 logger.warn("IOException while buffering document", e);
@@ -780,11 +1230,37 @@ public class WebCrawler extends CrawlerBase {
     }
 
     private void cleanUp() {
+        if (crawledUrls != null) {
+            reportStatistic(VISITED_URL_COUNT_STATISTIC, String.valueOf(crawledUrls.size()));
+            reportStatistic(VISITED_URL_MEMORY_STATISTIC, String.valueOf(crawledUrls.getMemoryUsage()));
+            reportStatistic(VISITED_URL_FALSE_POSITIVE_RATE_STATISTIC, String.valueOf(crawledUrls
+                    .getFalsePositiveRate()));
+            if (crawledUrls instanceof FingerprintVisitedUrlStore) {
+                FingerprintVisitedUrlStore store = (FingerprintVisitedUrlStore) crawledUrls;
+                reportStatistic(VISITED_URL_FILTER_POSITIVE_STATISTIC, String.valueOf(store
+                        .getFilterPositiveCount()));
+                reportStatistic(VISITED_URL_FILTER_FALSE_POSITIVE_STATISTIC, String.valueOf(store
+                        .getFilterFalsePositiveCount()));
+            }
+        }
+        if (sitemapDiscovery) {
+            reportStatistic(SITEMAP_URL_COUNT_STATISTIC, String.valueOf(sitemapUrlCount));
+            reportStatistic(SITEMAP_UNCHANGED_STATISTIC, String.valueOf(sitemapUnchangedCount));
+        }
+        if (accessData != null) {
+            reportStatistic(HTTP_NOT_MODIFIED_STATISTIC, String.valueOf(httpAccessStatistics
+                    .getNotModifiedCount()));
+            reportStatistic(HTTP_UNCHANGED_CONTENT_STATISTIC, String.valueOf(httpAccessStatistics
+                    .getUnchangedContentCount()));
+            reportStatistic(HTTP_SAVED_BYTES_STATISTIC, String.valueOf(httpAccessStatistics
+                    .getSavedByteCount()));
+        }
+
         domainBoundaries = null;
         jobsQueue = null;
-        jobsMap = null;
-        crawledUrls = null;
         includeEmbeddedResources = null;
+        httpAccessStatistics = null;
+        accessorParams = null;
     }
 
     private class WebAccessData extends FilterAccessData {
@@ -798,19 +1274,61 @@ public class WebCrawler extends CrawlerBase {
             // approach (using a wrapped AccessData instance) because there may be several redirection steps
             // between the URL passed to the DataAccessor and the URL of the final DataObject.
             if (REDIRECTS_TO_KEY.equals(key)) {
-                // do this with the id rather than the value: processingQueue depends on this in order to be
-                // able to do a crawledUrls.contains on the last URL in the redirection chain
-                //crawledUrls.add(id); // this is obviously not needed, if we use AccessData, then crawledUrls is null
-                //deprecatedUrls.remove(id);
-                touch(id);
-
-                CrawlJob job = jobsMap.remove(id);
-                if (job != null) {
-                    jobsQueue.remove(job);
+                synchronized (crawlMonitor) {
+                    // do this with the id rather than the value: processingQueue depends on this in order to
+                    // be able to do a crawledUrls.contains on the last URL in the redirection chain
+                    //crawledUrls.add(id); // this is obviously not needed, if we use AccessData, then crawledUrls is null
+                    //deprecatedUrls.remove(id);
+                    touch(id);
+
+                    jobsQueue.remove(id);
                 }
             }
 
             super.put(id, key, value);
         }
     }
+
+    /**
+     * Processes a single CrawlJob on a fetcher thread of a parallel crawl.
+     */
+    private class FetchTask implements Runnable {
+
+        private CrawlJob job;
+
+        private boolean knownUrl;
+
+        public FetchTask(CrawlJob job, boolean knownUrl) {
+            this.job = job;
+            this.knownUrl = knownUrl;
+        }
+
+        public void run() {
+            try {
+                processJob(job, knownUrl);
+            }
+            finally {
+                synchronized (crawlMonitor) {
+                    jobsQueue.jobFinished(job);
+                    activeJobs--;
+                    crawlMonitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    private static class CrawlerThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger poolCount = new AtomicInteger();
+
+        private final int poolNumber = poolCount.incrementAndGet();
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "WebCrawler-" + poolNumber + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
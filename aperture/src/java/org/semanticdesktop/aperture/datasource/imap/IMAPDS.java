@@ -122,6 +122,14 @@ public class IMAPDS {
      * Range: http://www.w3.org/2001/XMLSchema#boolean  <br/>
      */
     public static final URI ignoreUidValidity = new URIImpl("http://aperture.semanticdesktop.org/ontology/2007/08/12/imapds#ignoreUidValidity");
+    /**
+     * Type: Property <br/>
+     * Label: Connection Pool Size  <br/>
+     * Comment: The number of connections to the IMAP server over which the folders are crawled concurrently  <br/>
+     * Domain: http://aperture.semanticdesktop.org/ontology/2007/08/12/imapds#IMAPDataSource  <br/>
+     * Range: http://www.w3.org/2001/XMLSchema#integer  <br/>
+     */
+    public static final URI connectionPoolSize = new URIImpl("http://aperture.semanticdesktop.org/ontology/2007/08/12/imapds#connectionPoolSize");
     /**
      * Type: Property <br/>
      * Label: Connection security  <br/>
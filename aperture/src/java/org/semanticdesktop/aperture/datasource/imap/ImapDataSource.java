@@ -292,6 +292,32 @@ public class ImapDataSource extends DomainBoundableDataSource {
          }
      }
 
+    /**
+     * Returns the The number of connections to the IMAP server over which the folders are crawled concurrently
+     * 
+     * @return the The number of connections to the IMAP server over which the folders are crawled concurrently or null if no value has been set
+     * @throws NullPointerException if no configuration has been set, use
+     *             {@link #setConfiguration(RDFContainer)} before calling this method
+     */
+     public Integer getConnectionPoolSize() {
+          return getConfiguration().getInteger(IMAPDS.connectionPoolSize);
+     }
+
+    /**
+     * Sets the The number of connections to the IMAP server over which the folders are crawled concurrently
+     * 
+     * @param connectionPoolSize The number of connections to the IMAP server over which the folders are crawled concurrently, can be null in which case any previous setting will be removed
+     * @throws NullPointerException if no configuration has been set, use
+     *             {@link #setConfiguration(RDFContainer)} before calling this method
+     */
+     public void setConnectionPoolSize(Integer connectionPoolSize) {
+         if ( connectionPoolSize == null) {
+             getConfiguration().remove(IMAPDS.connectionPoolSize);
+         } else {
+             getConfiguration().put(IMAPDS.connectionPoolSize,connectionPoolSize);
+         }
+     }
+
     /**
      * Enum of possible values of the connectionSecurity property
      */
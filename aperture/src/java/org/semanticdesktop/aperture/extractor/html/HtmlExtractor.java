@@ -6,9 +6,9 @@
  */
 package org.semanticdesktop.aperture.extractor.html;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
-import java.util.Iterator;
 
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.node.Resource;
@@ -16,8 +16,10 @@ import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.vocabulary.RDF;
 import org.semanticdesktop.aperture.extractor.Extractor;
 import org.semanticdesktop.aperture.extractor.ExtractorException;
-import org.semanticdesktop.aperture.extractor.util.HtmlParserUtil;
+import org.semanticdesktop.aperture.extractor.util.FullTextWriter;
+import org.semanticdesktop.aperture.hypertext.linkextractor.html.HtmlAnalysis;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.util.ExposedByteArrayInputStream;
 import org.semanticdesktop.aperture.util.UriUtil;
 import org.semanticdesktop.aperture.vocabulary.NCO;
 import org.semanticdesktop.aperture.vocabulary.NFO;
@@ -25,59 +27,65 @@ import org.semanticdesktop.aperture.vocabulary.NIE;
 
 /**
  * HtmlExtractor extracts full-text and metadata from HTML and XHTML documents.
+ * 
+ * <p>
+ * The document is analyzed in a single pass by an {@link HtmlAnalysis}. When the stream is an
+ * {@link ExposedByteArrayInputStream} that has already been analyzed, e.g. by the HtmlLinkExtractor of a
+ * WebCrawler, that analysis is reused and the document is not scanned again.
  */
 public class HtmlExtractor implements Extractor {
 
     public void extract(URI id, InputStream stream, Charset charset, String mimeType, RDFContainer result)
             throws ExtractorException {
-    	HtmlParserUtil.parse(stream, charset, new TextAndMetadataExtractor(result));
-    }
-
-    private static class TextAndMetadataExtractor extends HtmlParserUtil.ContentExtractor {
+        HtmlAnalysis analysis;
+        try {
+            analysis = HtmlAnalysis.analyze(stream, charset);
+        }
+        catch (IOException e) {
+            throw new ExtractorException(e);
+        }
 
-        private RDFContainer container;
+        // add an appropriate InformationElement type
+        result.add(RDF.type, NFO.HtmlDocument);
 
-        public TextAndMetadataExtractor(RDFContainer container) {
-            this.container = container;
+        // store extracted text
+        FullTextWriter writer = new FullTextWriter(result);
+        try {
+            analysis.writeText(writer);
+            writer.close();
+        }
+        catch (IOException e) {
+            throw new ExtractorException(e);
         }
 
-        public void finishedParsing() {
-            // add an appropriate InformationElement type
-            container.add(RDF.type,NFO.HtmlDocument);
-            
-            // store extracted text
-            container.add(NIE.plainTextContent, getText());
+        // store keywords
+        for (String keyword : analysis.getKeywords()) {
+            addProperty(NIE.keyword, keyword, result);
+        }
 
-            // store keywords
-            Iterator keywords = getKeywords();
-            while (keywords.hasNext()) {
-            	addProperty(NIE.keyword, (String) keywords.next());
-            }
+        // store other metadata
+        addProperty(NIE.title, analysis.getTitle(), result);
+        addContactProperty(NCO.creator, analysis.getAuthor(), result);
+        addProperty(NIE.description, analysis.getDescription(), result);
+    }
 
-            // store other metadata
-            addProperty(NIE.title, getTitle());
-            addContactProperty(NCO.creator, getAuthor());
-            addProperty(NIE.description, getDescription());
-        }
-        
-        private void addContactProperty(URI property, String fullname) {
-            if (fullname != null) {
-                fullname = fullname.trim();
-                Model model = container.getModel();
-                Resource contactResource = UriUtil.generateRandomResource(model);
-                model.addStatement(contactResource,RDF.type,NCO.Contact);
-                model.addStatement(contactResource,NCO.fullname,fullname);
-                container.add(property, contactResource);
-            }
+    private void addContactProperty(URI property, String fullname, RDFContainer container) {
+        if (fullname != null) {
+            fullname = fullname.trim();
+            Model model = container.getModel();
+            Resource contactResource = UriUtil.generateRandomResource(model);
+            model.addStatement(contactResource, RDF.type, NCO.Contact);
+            model.addStatement(contactResource, NCO.fullname, fullname);
+            container.add(property, contactResource);
         }
+    }
 
-        private void addProperty(URI property, String value) {
-        	if (value != null) {
-        		value = value.trim();
-        		if (value.length() > 0) {
-        			container.add(property, value);
-        		}
-        	}
+    private void addProperty(URI property, String value, RDFContainer container) {
+        if (value != null) {
+            value = value.trim();
+            if (value.length() > 0) {
+                container.add(property, value);
+            }
         }
     }
 }
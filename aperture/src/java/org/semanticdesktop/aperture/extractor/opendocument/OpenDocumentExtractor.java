@@ -7,6 +7,7 @@
 package org.semanticdesktop.aperture.extractor.opendocument;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
@@ -14,6 +15,7 @@ import java.text.ParseException;
 import java.util.Date;
 import java.util.Map;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -27,8 +29,10 @@ import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.vocabulary.RDF;
 import org.semanticdesktop.aperture.extractor.Extractor;
 import org.semanticdesktop.aperture.extractor.ExtractorException;
+import org.semanticdesktop.aperture.extractor.util.FullTextWriter;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 import org.semanticdesktop.aperture.util.DateUtil;
+import org.semanticdesktop.aperture.util.ExposedFileInputStream;
 import org.semanticdesktop.aperture.util.IOUtil;
 import org.semanticdesktop.aperture.util.ResourceUtil;
 import org.semanticdesktop.aperture.util.SimpleSAXAdapter;
@@ -75,25 +79,50 @@ public class OpenDocumentExtractor implements Extractor {
         byte[] contentBytes = null;
         byte[] metadataBytes = null;
 
-        // fetch the byte arrays from the zip file that contain the document content and metadata
-        try {
-            ZipInputStream zipStream = new ZipInputStream(stream);
-            ZipEntry entry = null;
-            while ((entry = zipStream.getNextEntry()) != null) {
-                String entryName = entry.getName();
-                if ("content.xml".equals(entryName)) {
-                    contentBytes = IOUtil.readBytes(zipStream);
-                }
-                else if ("meta.xml".equals(entryName)) {
-                    metadataBytes = IOUtil.readBytes(zipStream);
+        // fetch the byte arrays from the zip file that contain the document content and metadata. When the
+        // document is a file, they are looked up in the central directory of the zip file.
+        File file = ExposedFileInputStream.getEntireFile(stream);
+        if (file != null) {
+            ZipFile zipFile = null;
+            try {
+                zipFile = new ZipFile(file);
+                contentBytes = readEntry(zipFile, "content.xml");
+                metadataBytes = readEntry(zipFile, "meta.xml");
+            }
+            catch (IOException e) {
+                throw new ExtractorException(e);
+            }
+            finally {
+                if (zipFile != null) {
+                    try {
+                        zipFile.close();
+                    }
+                    catch (IOException e) {
+                        logger.warn("IOException while closing zip file", e);
+                    }
                 }
-
-                zipStream.closeEntry();
             }
-            zipStream.close();
         }
-        catch (IOException e) {
-            throw new ExtractorException(e);
+        else {
+            try {
+                ZipInputStream zipStream = new ZipInputStream(stream);
+                ZipEntry entry = null;
+                while ((entry = zipStream.getNextEntry()) != null) {
+                    String entryName = entry.getName();
+                    if ("content.xml".equals(entryName)) {
+                        contentBytes = IOUtil.readBytes(zipStream);
+                    }
+                    else if ("meta.xml".equals(entryName)) {
+                        metadataBytes = IOUtil.readBytes(zipStream);
+                    }
+
+                    zipStream.closeEntry();
+                }
+                zipStream.close();
+            }
+            catch (IOException e) {
+                throw new ExtractorException(e);
+            }
         }
 
         // determine the type of the document
@@ -113,6 +142,20 @@ public class OpenDocumentExtractor implements Extractor {
         }
     }
 
+    private byte[] readEntry(ZipFile zipFile, String name) throws IOException {
+        ZipEntry entry = zipFile.getEntry(name);
+        if (entry == null) {
+            return null;
+        }
+        InputStream stream = zipFile.getInputStream(entry);
+        try {
+            return IOUtil.readBytes(stream);
+        }
+        finally {
+            stream.close();
+        }
+    }
+
     private void extractFullText(byte[] bytes, RDFContainer result) throws ExtractorException {
         // create a SAXPparser
         javax.xml.parsers.SAXParser parser = null;
@@ -141,9 +184,7 @@ public class OpenDocumentExtractor implements Extractor {
 
         // put the extracted full-text in the RDF container
         String contents = contentExtractor.getContents();
-        if (contents != null && !contents.equals("")) {
-            result.add(NIE.plainTextContent, contents);
-        }
+        FullTextWriter.add(result, NIE.plainTextContent, contents);
     }
 
     /**
@@ -7,6 +7,7 @@
 package org.semanticdesktop.aperture.extractor.openxml;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -15,11 +16,13 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -33,7 +36,9 @@ import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.vocabulary.RDF;
 import org.semanticdesktop.aperture.extractor.Extractor;
 import org.semanticdesktop.aperture.extractor.ExtractorException;
+import org.semanticdesktop.aperture.extractor.util.FullTextWriter;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.util.ExposedFileInputStream;
 import org.semanticdesktop.aperture.util.SimpleSAXAdapter;
 import org.semanticdesktop.aperture.util.SimpleSAXListener;
 import org.semanticdesktop.aperture.util.SimpleSAXParser;
@@ -162,14 +167,73 @@ public class OpenXmlExtractor implements Extractor {
         TEXT_ATTRIBUTE_TYPES.put("application/vnd.openxmlformats-officedocument.presentationml.notesSlide+xml", "p:cSld");
     }
 
-    private Logger logger = LoggerFactory.getLogger(getClass());
+    private static final String CORE_PROPERTIES_TYPE = "application/vnd.openxmlformats-package.core-properties+xml";
 
-    private ContentTypes contentTypes;
+    private static final String EXTENDED_PROPERTIES_TYPE = "application/vnd.openxmlformats-officedocument.extended-properties+xml";
 
-    private StringBuilder fullText = new StringBuilder(256 * 1024);
+    private Logger logger = LoggerFactory.getLogger(getClass());
 
     public void extract(URI id, InputStream stream, Charset charset, String mimeType, RDFContainer result)
             throws ExtractorException {
+        // when the package is a file, its parts are looked up in the central directory of the zip file,
+        // rather than reading the entire stream twice
+        File file = ExposedFileInputStream.getEntireFile(stream);
+        if (file == null) {
+            extract(stream, result);
+        }
+        else {
+            extract(file, result);
+        }
+    }
+
+    private void extract(File file, RDFContainer result) throws ExtractorException {
+        ZipFile zipFile = null;
+        try {
+            zipFile = new ZipFile(file);
+
+            // parse the content types
+            ZipEntry contentTypesEntry = zipFile.getEntry(CONTENT_TYPES_FILE);
+            if (contentTypesEntry == null) {
+                throw new ExtractorException("missing " + CONTENT_TYPES_FILE + " file");
+            }
+            ContentTypes contentTypes = parseContentTypes(zipFile.getInputStream(contentTypesEntry));
+
+            // loop over all entries in the central directory, only the parts we're interested in are read
+            FullTextWriter fullText = new FullTextWriter(result);
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String type = contentTypes.getType(toAbsoluteName(entry.getName()));
+                if (isProcessed(type)) {
+                    InputStream partStream = zipFile.getInputStream(entry);
+                    try {
+                        processPart(partStream, type, fullText, result);
+                    }
+                    finally {
+                        partStream.close();
+                    }
+                }
+            }
+
+            // signal the end of the text
+            fullText.close();
+        }
+        catch (IOException e) {
+            throw new ExtractorException(e);
+        }
+        finally {
+            if (zipFile != null) {
+                try {
+                    zipFile.close();
+                }
+                catch (IOException e) {
+                    logger.warn("IOException while closing zip file", e);
+                }
+            }
+        }
+    }
+
+    private void extract(InputStream stream, RDFContainer result) throws ExtractorException {
         // wrap the stream in a mark-supported stream so that we can reset it after we've processes the
         // content types file
         if (!stream.markSupported()) {
@@ -178,6 +242,7 @@ public class OpenXmlExtractor implements Extractor {
         stream.mark(BUFFER_SIZE);
 
         // create a ZipStream around the InputStream
+        ContentTypes contentTypes = null;
         ZipInputStream zipStream = null;
         try {
             zipStream = new ZipInputStream(stream);
@@ -190,7 +255,7 @@ public class OpenXmlExtractor implements Extractor {
                 // see if this is the Content Types component
                 if (CONTENT_TYPES_FILE.equals(name)) {
                     // parse the contents of this XML document
-                    parseContentTypes(zipStream);
+                    contentTypes = parseContentTypes(zipStream);
                     break;
                 }
 
@@ -214,7 +279,8 @@ public class OpenXmlExtractor implements Extractor {
             throw new ExtractorException("Unable to reset stream", e);
         }
 
-        // loop over all entries in the zip file again
+        // loop over all entries in the zip file again, the text is passed on as it is being parsed
+        FullTextWriter fullText = new FullTextWriter(result);
         try {
             zipStream = new ZipInputStream(stream);
             ZipEntry entry = null;
@@ -222,41 +288,48 @@ public class OpenXmlExtractor implements Extractor {
             // loop over all entries in the package
             while ((entry = zipStream.getNextEntry()) != null) {
                 // determine the type of this entry
-                String name = entry.getName();
-                name = toAbsoluteName(name);
-                String type = contentTypes.getType(name);
-
-                if (type != null) {
-                    if (TEXT_ELEMENT_TYPES.contains(type)) {
-                        process(zipStream, new TextCollector());
-                    }
-                    else if (TEXT_ATTRIBUTE_TYPES.containsKey(type)) {
-                        process(zipStream, new AttributeTextCollector(TEXT_ATTRIBUTE_TYPES.get(type)));
-                    }
-                    else if ("application/vnd.openxmlformats-package.core-properties+xml".equals(type)
-                            || "application/vnd.openxmlformats-officedocument.extended-properties+xml"
-                                    .equals(type)) {
-                        extractMetadata(zipStream, result);
-                    }
+                String type = contentTypes.getType(toAbsoluteName(entry.getName()));
+                if (isProcessed(type)) {
+                    processPart(zipStream, type, fullText, result);
                 }
 
                 zipStream.closeEntry();
             }
+
+            // signal the end of the text
+            fullText.close();
         }
         catch (IOException e) {
             throw new ExtractorException(e);
         }
+    }
+
+    private boolean isProcessed(String type) {
+        return type != null
+                && (TEXT_ELEMENT_TYPES.contains(type) || TEXT_ATTRIBUTE_TYPES.containsKey(type)
+                        || CORE_PROPERTIES_TYPE.equals(type) || EXTENDED_PROPERTIES_TYPE.equals(type));
+    }
 
-        // add the extracted text to the metadata
-        String text = fullText.toString();
-        if (text.length() > 0) {
-            result.add(NIE.plainTextContent, text);
+    private void processPart(InputStream stream, String type, FullTextWriter fullText, RDFContainer result)
+            throws ExtractorException {
+        if (TEXT_ELEMENT_TYPES.contains(type)) {
+            if (!fullText.isFull()) {
+                process(stream, new TextCollector(fullText));
+            }
+        }
+        else if (TEXT_ATTRIBUTE_TYPES.containsKey(type)) {
+            if (!fullText.isFull()) {
+                process(stream, new AttributeTextCollector(fullText, TEXT_ATTRIBUTE_TYPES.get(type)));
+            }
+        }
+        else {
+            extractMetadata(stream, result);
         }
     }
 
-    private void parseContentTypes(InputStream stream) throws ExtractorException {
+    private ContentTypes parseContentTypes(InputStream stream) throws ExtractorException {
         Document doc = getDocument(stream, false);
-        contentTypes = new ContentTypes();
+        ContentTypes contentTypes = new ContentTypes();
 
         // traverse the document structure and add the encountered defaults and overrides to contentTypes
         Element rootElement = doc.getDocumentElement();
@@ -284,6 +357,8 @@ public class OpenXmlExtractor implements Extractor {
                 }
             }
         }
+
+        return contentTypes;
     }
 
     private Document getDocument(InputStream stream, boolean namespaceAware) throws ExtractorException {
@@ -538,55 +613,79 @@ public class OpenXmlExtractor implements Extractor {
         }
     }
 
-    private class TextCollector extends SimpleSAXAdapter {
+    private static class TextCollector extends SimpleSAXAdapter {
+
+        private FullTextWriter fullText;
 
-        private int initialLength;
+        private long initialLength;
 
         private boolean insideTabs = false;
 
+        public TextCollector(FullTextWriter fullText) {
+            this.fullText = fullText;
+        }
+
         public void startDocument() throws SAXException {
-            initialLength = fullText.length();
+            initialLength = fullText.getCharCount();
         }
 
         @SuppressWarnings("unchecked")
         public void startTag(String tagName, Map atts, String text) throws SAXException {
-            if ("w:t".equals(tagName)) {
-                fullText.append(text);
-            }
-            else if ("t".equals(tagName) || "p:text".equals(tagName) || "a:t".equals(tagName)
-                    || "st:t".equals(tagName) || "v".equals(tagName)) {
-                fullText.append(text);
-                fullText.append(' ');
-            }
-            else if ("w:tab".equals(tagName) && !insideTabs) {
-                fullText.append('\t');
+            try {
+                if ("w:t".equals(tagName)) {
+                    fullText.write(text);
+                }
+                else if ("t".equals(tagName) || "p:text".equals(tagName) || "a:t".equals(tagName)
+                        || "st:t".equals(tagName) || "v".equals(tagName)) {
+                    fullText.write(text);
+                    fullText.write(' ');
+                }
+                else if ("w:tab".equals(tagName) && !insideTabs) {
+                    fullText.write('\t');
+                }
+                else if ("w:tabs".equals(tagName)) {
+                    insideTabs = true;
+                }
             }
-            else if ("w:tabs".equals(tagName)) {
-                insideTabs = true;
+            catch (IOException e) {
+                throw new SAXException(e);
             }
         }
 
         public void endTag(String tagName) throws SAXException {
-            if ("w:p".equals(tagName)) {
-                fullText.append(END_OF_LINE);
+            try {
+                if ("w:p".equals(tagName)) {
+                    fullText.write(END_OF_LINE);
+                }
+                else if ("w:tabs".equals(tagName)) {
+                    insideTabs = false;
+                }
             }
-            else if ("w:tabs".equals(tagName)) {
-                insideTabs = false;
+            catch (IOException e) {
+                throw new SAXException(e);
             }
         }
 
         public void endDocument() throws SAXException {
-            if (fullText.length() > initialLength) {
-                fullText.append(END_OF_LINE);
+            try {
+                if (fullText.getCharCount() > initialLength) {
+                    fullText.write(END_OF_LINE);
+                }
+            }
+            catch (IOException e) {
+                throw new SAXException(e);
             }
         }
     }
 
-    private class AttributeTextCollector extends SimpleSAXAdapter {
+    private static class AttributeTextCollector extends SimpleSAXAdapter {
+
+        private FullTextWriter fullText;
 
         private String fullTextTag;
 
-        public AttributeTextCollector(String fullTextTag) {
+        public AttributeTextCollector(FullTextWriter fullText, String fullTextTag) {
+            this.fullText = fullText;
             this.fullTextTag = fullTextTag;
         }
 
@@ -595,8 +694,13 @@ public class OpenXmlExtractor implements Extractor {
             if (fullTextTag.equals(tagName)) {
                 Object value = atts.get("name");
                 if (value instanceof String) {
-                    fullText.append(value);
-                    fullText.append(END_OF_LINE);
+                    try {
+                        fullText.write((String) value);
+                        fullText.write(END_OF_LINE);
+                    }
+                    catch (IOException e) {
+                        throw new SAXException(e);
+                    }
                 }
             }
         }
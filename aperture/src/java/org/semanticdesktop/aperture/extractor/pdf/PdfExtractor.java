@@ -28,6 +28,7 @@ import org.pdfbox.pdmodel.common.PDMetadata;
 import org.pdfbox.util.PDFTextStripper;
 import org.semanticdesktop.aperture.extractor.Extractor;
 import org.semanticdesktop.aperture.extractor.ExtractorException;
+import org.semanticdesktop.aperture.extractor.util.FullTextWriter;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 import org.semanticdesktop.aperture.util.UriUtil;
 import org.semanticdesktop.aperture.vocabulary.NCO;
@@ -108,10 +109,14 @@ public class PdfExtractor implements Extractor {
 
     private void extractFullText(URI id, PDDocument document, RDFContainer result) {
         try {
+            // write the text page by page instead of collecting it in a single String
             PDFTextStripper stripper = new PDFTextStripper();
-            String text = stripper.getText(document);
-            if (text != null) {
-                result.add(NIE.plainTextContent, text);
+            FullTextWriter writer = new FullTextWriter(result);
+            try {
+                stripper.writeText(document, writer);
+            }
+            finally {
+                writer.close();
             }
         }
         catch (IOException e) {
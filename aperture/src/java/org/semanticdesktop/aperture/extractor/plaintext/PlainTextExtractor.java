@@ -19,11 +19,11 @@ import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.vocabulary.RDF;
 import org.semanticdesktop.aperture.extractor.Extractor;
 import org.semanticdesktop.aperture.extractor.ExtractorException;
+import org.semanticdesktop.aperture.extractor.util.FullTextWriter;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 import org.semanticdesktop.aperture.util.IOUtil;
 import org.semanticdesktop.aperture.util.UtfUtil;
 import org.semanticdesktop.aperture.vocabulary.NFO;
-import org.semanticdesktop.aperture.vocabulary.NIE;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -86,13 +86,13 @@ public class PlainTextExtractor implements Extractor {
 				}
 			}
 
-			// everything is ok, read the full document
-			reader.unread(firstChars.toCharArray());
-			String text = IOUtil.readString(reader);
-
-			if (text.length() > 0) {
+			// everything is ok, pass the full document on in chunks, without holding it in memory
+			if (nrChars > 0) {
                 result.add(RDF.type,NFO.PlainTextDocument);
-				result.add(NIE.plainTextContent, text);
+				reader.unread(firstChars.toCharArray());
+				FullTextWriter writer = new FullTextWriter(result);
+				writer.write(reader);
+				writer.close();
 			}
 		}
 		catch (IOException e) {
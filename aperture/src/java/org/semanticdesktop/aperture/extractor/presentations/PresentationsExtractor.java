@@ -15,12 +15,12 @@ import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.vocabulary.RDF;
 import org.semanticdesktop.aperture.extractor.Extractor;
 import org.semanticdesktop.aperture.extractor.ExtractorException;
+import org.semanticdesktop.aperture.extractor.util.FullTextWriter;
 import org.semanticdesktop.aperture.extractor.util.PoiUtil;
 import org.semanticdesktop.aperture.extractor.util.WPStringExtractor;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 import org.semanticdesktop.aperture.util.IOUtil;
 import org.semanticdesktop.aperture.vocabulary.NFO;
-import org.semanticdesktop.aperture.vocabulary.NIE;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,10 +61,9 @@ public class PresentationsExtractor implements Extractor {
 			}
 			else if (hasMagicNumber(bytes, WORDPERFECT_MAGIC_BYTES)) {
 				PresentationsWPStringExtractor extractor = new PresentationsWPStringExtractor();
-				String text = extractor.extract(stream).trim();
-				if (text.length() > 0) {
-					result.add(NIE.plainTextContent, text);
-				}
+				FullTextWriter writer = new FullTextWriter(result);
+				extractor.extract(stream, writer);
+				writer.close();
 			}
             result.add(RDF.type,NFO.Presentation);
 		}
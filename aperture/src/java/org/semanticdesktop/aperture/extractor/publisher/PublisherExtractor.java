@@ -14,11 +14,11 @@ import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.vocabulary.RDF;
 import org.semanticdesktop.aperture.extractor.Extractor;
 import org.semanticdesktop.aperture.extractor.ExtractorException;
+import org.semanticdesktop.aperture.extractor.util.FullTextWriter;
 import org.semanticdesktop.aperture.extractor.util.PoiUtil;
 import org.semanticdesktop.aperture.extractor.util.StringExtractor;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 import org.semanticdesktop.aperture.vocabulary.NFO;
-import org.semanticdesktop.aperture.vocabulary.NIE;
 
 /**
  * An Extractor implementation for MS Publisher documents. This implementation uses heuristic string
@@ -42,10 +42,9 @@ public class PublisherExtractor implements Extractor {
 		// perform full text extraction
 		FullTextExtractor extractor = new FullTextExtractor();
 		try {
-			String text = extractor.extract(stream).trim();
-			if (text.length() > 0) {
-				result.add(NIE.plainTextContent, text);
-			}
+			FullTextWriter writer = new FullTextWriter(result);
+			extractor.extract(stream, writer);
+			writer.close();
             result.add(RDF.type,NFO.TextDocument);
 		}
 		catch (IOException e) {
@@ -18,6 +18,7 @@ import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.vocabulary.RDF;
 import org.semanticdesktop.aperture.extractor.Extractor;
 import org.semanticdesktop.aperture.extractor.ExtractorException;
+import org.semanticdesktop.aperture.extractor.util.FullTextWriter;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 import org.semanticdesktop.aperture.vocabulary.NFO;
 import org.semanticdesktop.aperture.vocabulary.NIE;
@@ -42,7 +43,7 @@ public class RtfExtractor implements Extractor {
 		try {
 			rtfParser.read(stream, document, 0);
 			String text = document.getText(0, document.getLength());
-			result.add(NIE.plainTextContent, text);
+			FullTextWriter.add(result, NIE.plainTextContent, text);
             result.add(RDF.type,NFO.TextDocument);
 		}
 		catch (BadLocationException e) {
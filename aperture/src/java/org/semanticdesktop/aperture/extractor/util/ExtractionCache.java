@@ -0,0 +1,730 @@
+/*
+ * Copyright (c) 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.extractor.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.impl.StatementImpl;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.DatatypeLiteral;
+import org.ontoware.rdf2go.model.node.LanguageTagLiteral;
+import org.ontoware.rdf2go.model.node.Literal;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.DatatypeLiteralImpl;
+import org.ontoware.rdf2go.model.node.impl.LanguageTagLiteralImpl;
+import org.ontoware.rdf2go.model.node.impl.PlainLiteralImpl;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.rdf.impl.BufferedRDFContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An ExtractionCache stores the statements an extractor produced for a document, keyed by a digest of the
+ * contents of the document, the MIME type and the class and version of the extractor. When the same contents are found
+ * again, e.g. the same PDF attached to many mails or copied to many folders, the cached statements are
+ * replayed into the RDFContainer of the new DataObject instead of parsing the document once more.
+ *
+ * <p>
+ * The statements are stored in a compact, gzip-compressed binary form, one file per entry. The URI of the
+ * described resource, and URIs that extend it with a fragment or a path (i.e. with '#' or '/'), are stored
+ * relative to it, so that replayed statements describe the new DataObject. Blank nodes and the random "urn:uuid:" resources that extractors generate (e.g. for
+ * contacts) are replaced by fresh ones on every replay, so that DataObjects never share such resources.
+ *
+ * <p>
+ * The total size of the entries is bounded: when it exceeds the maximum size, the least recently used
+ * entries are deleted. The cache directory can be reused across crawls; the entries that are found in it are
+ * ordered by the last modification time of their files, which is updated on every hit.
+ *
+ * <p>
+ * Extractors are assumed to add statements only, and to derive them from the contents of the document
+ * alone. An ExtractionCache is thread-safe.
+ */
+public class ExtractionCache {
+
+    /**
+     * The name of the algorithm used to compute content digests.
+     */
+    public static final String DIGEST_ALGORITHM = "SHA-1";
+
+    private static final int MAGIC = 0x41454301;
+
+    private static final String SUFFIX = ".aec";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String RANDOM_URI_PREFIX = "urn:uuid:";
+
+    private static final byte DESCRIBED_URI = 0;
+
+    private static final byte RELATIVE_URI = 1;
+
+    private static final byte URI_NODE = 2;
+
+    private static final byte RANDOM_URI = 3;
+
+    private static final byte BLANK_NODE = 4;
+
+    private static final byte PLAIN_LITERAL = 5;
+
+    private static final byte LANGUAGE_LITERAL = 6;
+
+    private static final byte DATATYPE_LITERAL = 7;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final File directory;
+
+    private final long maxSize;
+
+    /**
+     * Maps the keys of all entries to the sizes of their files, in the order of their last use.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(256, 0.75f, true);
+
+    private long size;
+
+    private long hitCount;
+
+    private long missCount;
+
+    /**
+     * Creates an ExtractionCache that stores its entries in the specified directory. The directory is
+     * created when it does not exist yet; the entries it already contains are reused.
+     *
+     * @param directory the directory to store the entries in
+     * @param maxSize the maximum total size in bytes of all entries
+     * @throws IOException when the directory cannot be created or read
+     * @throws IllegalArgumentException if the maximum size is not positive
+     */
+    public ExtractionCache(File directory, long maxSize) throws IOException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize should be positive: " + maxSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        loadEntries();
+    }
+
+    /**
+     * Returns the directory the entries are stored in.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the maximum total size in bytes of all entries.
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the current total size in bytes of all entries.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of entries in this cache.
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of successful invocations of {@link #replay(String, RDFContainer)}.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of invocations of {@link #replay(String, RDFContainer)} that did not find an entry.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Creates a MessageDigest for computing the digest of the contents of a document.
+     */
+    public static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-1
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Computes the digest of the remaining bytes of the specified stream. The stream is not closed.
+     *
+     * @param stream the stream to read
+     * @return the digest of the bytes read
+     * @throws IOException when the stream cannot be read
+     */
+    public static byte[] computeDigest(InputStream stream) throws IOException {
+        MessageDigest digest = createDigest();
+        byte[] buffer = new byte[8192];
+        int bytesRead;
+        while ((bytesRead = stream.read(buffer)) != -1) {
+            digest.update(buffer, 0, bytesRead);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Computes the digest of the contents of the specified file.
+     *
+     * @param file the file to read
+     * @return the digest of the contents of the file
+     * @throws IOException when the file cannot be read
+     */
+    public static byte[] computeDigest(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            return computeDigest(stream);
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Returns the key of the statements that the specified extractor produces for contents with the
+     * specified digest and MIME type. The key depends on the class of the extractor and the implementation
+     * version of its package, so that entries become stale when a different version of the extractor is
+     * deployed.
+     *
+     * @param contentDigest the digest of the contents, see {@link #computeDigest(InputStream)}
+     * @param mimeType the MIME type that is passed to the extractor, may be null
+     * @param extractor the Extractor or FileExtractor that is applied to the contents
+     * @return the key, a String of hexadecimal digits
+     */
+    public static String getKey(byte[] contentDigest, String mimeType, Object extractor) {
+        Class<?> extractorClass = extractor.getClass();
+        Package extractorPackage = extractorClass.getPackage();
+        String version = extractorPackage == null ? null : extractorPackage.getImplementationVersion();
+
+        MessageDigest digest = createDigest();
+        digest.update(contentDigest);
+        try {
+            if (mimeType != null) {
+                digest.update(mimeType.getBytes("UTF-8"));
+            }
+            digest.update((byte) 0);
+            digest.update(extractorClass.getName().getBytes("UTF-8"));
+            digest.update((byte) 0);
+            if (version != null) {
+                digest.update(version.getBytes("UTF-8"));
+            }
+        }
+        catch (IOException e) {
+            // every Java platform has to support UTF-8
+            throw new RuntimeException(e);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Adds the statements stored under the specified key to the specified container. Statements about the
+     * resource the entry was created for are added about the resource described by the container.
+     *
+     * @param key the key of the entry
+     * @param container the container to add the statements to
+     * @return true when the entry was found and its statements have been added, false otherwise
+     */
+    public boolean replay(String key, RDFContainer container) {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                missCount++;
+                return false;
+            }
+        }
+
+        File file = getFile(key);
+        List<Statement> statements;
+        try {
+            statements = decode(readFile(file), container);
+        }
+        catch (IOException e) {
+            // the entry has been evicted meanwhile, or it is corrupt
+            logger.debug("Could not read the extraction cache entry " + file, e);
+            synchronized (this) {
+                removeEntry(key);
+                missCount++;
+            }
+            return false;
+        }
+
+        for (Statement statement : statements) {
+            container.add(statement);
+        }
+        file.setLastModified(System.currentTimeMillis());
+        synchronized (this) {
+            hitCount++;
+        }
+        return true;
+    }
+
+    /**
+     * Copies the statements of a container an extractor has written to, to the container of the DataObject,
+     * and stores them in this cache. The statements are copied exactly as they would be replayed from the
+     * cache.
+     *
+     * @param key the key to store the statements under, or null to copy them without storing them
+     * @param extracted the container the extractor has written to
+     * @param container the container to copy the statements to
+     * @throws IOException when the statements cannot be encoded, failing to write the entry is only logged
+     */
+    public void store(String key, RDFContainer extracted, RDFContainer container) throws IOException {
+        byte[] data = encode(extracted);
+        for (Statement statement : decode(data, container)) {
+            container.add(statement);
+        }
+        if (key != null) {
+            try {
+                writeEntry(key, data);
+            }
+            catch (IOException e) {
+                logger.warn("Could not write the extraction cache entry " + key, e);
+            }
+        }
+    }
+
+    /**
+     * Deletes all entries of this cache.
+     */
+    public synchronized void clear() {
+        Iterator<String> keys = new ArrayList<String>(entries.keySet()).iterator();
+        while (keys.hasNext()) {
+            removeEntry(keys.next());
+        }
+    }
+
+    private void writeEntry(String key, byte[] data) throws IOException {
+        if (data.length > maxSize) {
+            return;
+        }
+        File file = getFile(key);
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+
+        // write to a temporary file first, so that a concurrent replay never reads a partial entry
+        File tempFile = new File(parent, key + "-" + UUID.randomUUID() + TEMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(tempFile);
+        try {
+            out.write(data);
+        }
+        finally {
+            out.close();
+        }
+
+        synchronized (this) {
+            if (entries.containsKey(key)) {
+                // another thread has extracted the same contents
+                tempFile.delete();
+                return;
+            }
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                throw new IOException("Cannot create " + file);
+            }
+            entries.put(key, Long.valueOf(data.length));
+            size += data.length;
+            evict();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            iterator.remove();
+            size -= entry.getValue().longValue();
+            getFile(entry.getKey()).delete();
+        }
+    }
+
+    private void removeEntry(String key) {
+        Long entrySize = entries.remove(key);
+        if (entrySize != null) {
+            size -= entrySize.longValue();
+            getFile(key).delete();
+        }
+    }
+
+    private void loadEntries() {
+        ArrayList<File> files = new ArrayList<File>();
+        File[] subdirectories = directory.listFiles();
+        for (int i = 0; subdirectories != null && i < subdirectories.length; i++) {
+            File[] children = subdirectories[i].listFiles();
+            for (int j = 0; children != null && j < children.length; j++) {
+                String name = children[j].getName();
+                if (name.endsWith(SUFFIX)) {
+                    files.add(children[j]);
+                }
+                else if (name.endsWith(TEMP_SUFFIX)) {
+                    // left behind by a crashed crawl
+                    children[j].delete();
+                }
+            }
+        }
+
+        final HashMap<File, Long> lastModified = new HashMap<File, Long>();
+        for (File file : files) {
+            lastModified.put(file, Long.valueOf(file.lastModified()));
+        }
+        File[] sorted = files.toArray(new File[files.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+
+            public int compare(File file1, File file2) {
+                return lastModified.get(file1).compareTo(lastModified.get(file2));
+            }
+        });
+
+        for (File file : sorted) {
+            String name = file.getName();
+            long length = file.length();
+            entries.put(name.substring(0, name.length() - SUFFIX.length()), Long.valueOf(length));
+            size += length;
+        }
+        evict();
+    }
+
+    private File getFile(String key) {
+        // spread the entries over 256 subdirectories to keep the directories small
+        return new File(new File(directory, key.substring(0, 2)), key + SUFFIX);
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                int bytesRead = in.read(data, offset, data.length - offset);
+                if (bytesRead < 0) {
+                    throw new IOException("Unexpected end of file " + file);
+                }
+                offset += bytesRead;
+            }
+            return data;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    /* ----------------------------- Encoding ----------------------------- */
+
+    private static List<Statement> getStatements(RDFContainer container) {
+        if (container instanceof BufferedRDFContainer) {
+            return ((BufferedRDFContainer) container).getStatements();
+        }
+        List<Statement> result = new ArrayList<Statement>();
+        ClosableIterator<? extends Statement> iterator = container.getModel().iterator();
+        try {
+            while (iterator.hasNext()) {
+                result.add(iterator.next());
+            }
+        }
+        finally {
+            iterator.close();
+        }
+        return result;
+    }
+
+    private static byte[] encode(RDFContainer extracted) throws IOException {
+        List<Statement> statements = getStatements(extracted);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes));
+        Encoder encoder = new Encoder(out, extracted.getDescribedUri().toString());
+        out.writeInt(MAGIC);
+        out.writeInt(statements.size());
+        for (Statement statement : statements) {
+            encoder.writeNode(statement.getSubject());
+            encoder.writeNode(statement.getPredicate());
+            encoder.writeNode(statement.getObject());
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static List<Statement> decode(byte[] data, RDFContainer container) throws IOException {
+        DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an extraction cache entry");
+            }
+            Decoder decoder = new Decoder(in, container);
+            int count = in.readInt();
+            ArrayList<Statement> result = new ArrayList<Statement>(count);
+            for (int i = 0; i < count; i++) {
+                Resource subject = (Resource) decoder.readNode();
+                URI predicate = (URI) decoder.readNode();
+                Node object = decoder.readNode();
+                result.add(new StatementImpl(null, subject, predicate, object));
+            }
+            return result;
+        }
+        catch (ClassCastException e) {
+            IOException exception = new IOException("Corrupt extraction cache entry");
+            exception.initCause(e);
+            throw exception;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes nodes, replacing URIs, datatypes and blank nodes that occurred before by their index.
+     */
+    private static class Encoder {
+
+        private final DataOutputStream out;
+
+        private final String describedUri;
+
+        private final HashMap<String, Integer> strings = new HashMap<String, Integer>();
+
+        private final HashMap<Object, Integer> resources = new HashMap<Object, Integer>();
+
+        public Encoder(DataOutputStream out, String describedUri) {
+            this.out = out;
+            this.describedUri = describedUri;
+        }
+
+        public void writeNode(Node node) throws IOException {
+            if (node instanceof URI) {
+                String uri = node.toString();
+                if (uri.equals(describedUri)) {
+                    out.writeByte(DESCRIBED_URI);
+                }
+                else if (isRelative(uri)) {
+                    out.writeByte(RELATIVE_URI);
+                    writeString(uri.substring(describedUri.length()));
+                }
+                else if (uri.startsWith(RANDOM_URI_PREFIX)) {
+                    out.writeByte(RANDOM_URI);
+                    writeResource(uri);
+                }
+                else {
+                    out.writeByte(URI_NODE);
+                    writeSharedString(uri);
+                }
+            }
+            else if (node instanceof BlankNode) {
+                out.writeByte(BLANK_NODE);
+                writeResource(node);
+            }
+            else if (node instanceof LanguageTagLiteral) {
+                out.writeByte(LANGUAGE_LITERAL);
+                writeString(((Literal) node).getValue());
+                writeSharedString(((LanguageTagLiteral) node).getLanguageTag());
+            }
+            else if (node instanceof DatatypeLiteral) {
+                out.writeByte(DATATYPE_LITERAL);
+                writeString(((Literal) node).getValue());
+                writeSharedString(((DatatypeLiteral) node).getDatatype().toString());
+            }
+            else if (node instanceof Literal) {
+                out.writeByte(PLAIN_LITERAL);
+                writeString(((Literal) node).getValue());
+            }
+            else {
+                throw new IllegalArgumentException("Unsupported node: " + node);
+            }
+        }
+
+        /**
+         * Only URIs that continue the described URI with a fragment or a path are relative, not every URI
+         * that starts with the same characters (e.g. "file:/a/foo.txt.bak" for "file:/a/foo.txt").
+         */
+        private boolean isRelative(String uri) {
+            if (!uri.startsWith(describedUri)) {
+                return false;
+            }
+            char next = uri.charAt(describedUri.length());
+            return next == '#' || next == '/';
+        }
+
+        private void writeResource(Object resource) throws IOException {
+            Integer index = resources.get(resource);
+            if (index == null) {
+                index = Integer.valueOf(resources.size());
+                resources.put(resource, index);
+            }
+            out.writeInt(index.intValue());
+        }
+
+        private void writeSharedString(String string) throws IOException {
+            Integer index = strings.get(string);
+            if (index != null) {
+                out.writeInt(index.intValue());
+            }
+            else {
+                out.writeInt(strings.size());
+                strings.put(string, Integer.valueOf(strings.size()));
+                writeString(string);
+            }
+        }
+
+        private void writeString(String string) throws IOException {
+            // writeUTF cannot write strings longer than 64 KB, which full-texts often are
+            byte[] bytes = string.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads the nodes written by an Encoder, creating fresh random URIs and blank nodes for the container.
+     */
+    private static class Decoder {
+
+        private final DataInputStream in;
+
+        private final RDFContainer container;
+
+        private final URI describedUri;
+
+        private final ArrayList<String> strings = new ArrayList<String>();
+
+        private final HashMap<Integer, Node> resources = new HashMap<Integer, Node>();
+
+        private final HashMap<String, URI> uris = new HashMap<String, URI>();
+
+        public Decoder(DataInputStream in, RDFContainer container) {
+            this.in = in;
+            this.container = container;
+            this.describedUri = container.getDescribedUri();
+        }
+
+        public Node readNode() throws IOException {
+            byte type = in.readByte();
+            switch (type) {
+            case DESCRIBED_URI:
+                return describedUri;
+            case RELATIVE_URI:
+                return new URIImpl(describedUri.toString() + readString(), false);
+            case URI_NODE:
+                return getURI(readSharedString());
+            case RANDOM_URI:
+                return readResource(false);
+            case BLANK_NODE:
+                return readResource(true);
+            case PLAIN_LITERAL:
+                return new PlainLiteralImpl(readString());
+            case LANGUAGE_LITERAL: {
+                String value = readString();
+                return new LanguageTagLiteralImpl(value, readSharedString());
+            }
+            case DATATYPE_LITERAL: {
+                String value = readString();
+                return new DatatypeLiteralImpl(value, getURI(readSharedString()));
+            }
+            default:
+                throw new IOException("Unknown node type: " + type);
+            }
+        }
+
+        private URI getURI(String uri) {
+            URI result = uris.get(uri);
+            if (result == null) {
+                result = new URIImpl(uri, false);
+                uris.put(uri, result);
+            }
+            return result;
+        }
+
+        private Node readResource(boolean blank) throws IOException {
+            Integer index = Integer.valueOf(in.readInt());
+            Node result = resources.get(index);
+            if (result == null) {
+                if (blank) {
+                    result = container.getValueFactory().createBlankNode();
+                }
+                else {
+                    result = new URIImpl(RANDOM_URI_PREFIX + UUID.randomUUID(), false);
+                }
+                resources.put(index, result);
+            }
+            return result;
+        }
+
+        private String readSharedString() throws IOException {
+            int index = in.readInt();
+            if (index < strings.size()) {
+                return strings.get(index);
+            }
+            if (index != strings.size()) {
+                throw new IOException("Corrupt extraction cache entry");
+            }
+            String result = readString();
+            strings.add(result);
+            return result;
+        }
+
+        private String readString() throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("Corrupt extraction cache entry");
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, "UTF-8");
+        }
+    }
+}
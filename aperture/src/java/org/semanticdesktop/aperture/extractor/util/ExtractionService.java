@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.extractor.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An ExtractionService executes the extraction tasks of {@link ThreadedExtractorWrapper}s on a bounded pool
+ * of daemon threads, instead of starting a new Thread for every document.
+ *
+ * <p>
+ * An extraction task that is considered to be hanging is interrupted, but many extractors (PDFBox and POI
+ * most notably) ignore interrupts and keep running. The thread running such a task is quarantined: it is no
+ * longer counted as part of the pool, and the pool is temporarily grown by one thread, so that a hanging
+ * extractor can never use up the capacity for the other documents. As soon as the abandoned task finally
+ * ends, the pool shrinks back to its configured size.
+ *
+ * <p>
+ * The service keeps a number of metrics: the number of active and queued tasks, the number of timeouts, the
+ * number of abandoned threads that are still running and the extraction latency per MIME type.
+ */
+public class ExtractionService {
+
+    private static ExtractionService defaultService;
+
+    private final ThreadPoolExecutor executor;
+
+    private final int poolSize;
+
+    private final AtomicInteger activeTaskCount = new AtomicInteger();
+
+    private final AtomicInteger abandonedThreadCount = new AtomicInteger();
+
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private final AtomicLong abandonedTaskCount = new AtomicLong();
+
+    /**
+     * Latency statistics per MIME type. A null key contains the statistics of the tasks without a MIME type.
+     */
+    private final HashMap<String, LatencyStatistics> latencies = new HashMap<String, LatencyStatistics>();
+
+    /**
+     * Returns the ExtractionService that is shared by all ThreadedExtractorWrappers that have not been given
+     * a service of their own. Its pool contains two threads per available processor.
+     *
+     * @return the shared ExtractionService
+     */
+    public static synchronized ExtractionService getDefaultService() {
+        if (defaultService == null) {
+            defaultService = new ExtractionService(Runtime.getRuntime().availableProcessors() * 2);
+        }
+        return defaultService;
+    }
+
+    /**
+     * Creates a new ExtractionService.
+     *
+     * @param poolSize the number of extraction tasks that can run concurrently, tasks that are submitted
+     *            when all threads are busy are queued
+     * @throws IllegalArgumentException if the pool size is smaller than 1
+     */
+    public ExtractionService(int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize should be at least 1: " + poolSize);
+        }
+        this.poolSize = poolSize;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ExtractionThreadFactory());
+    }
+
+    /**
+     * Returns the configured number of concurrently running extraction tasks. Threads that have been
+     * quarantined are not included.
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Returns the number of extraction tasks that are currently being executed, including abandoned ones.
+     */
+    public int getActiveTaskCount() {
+        return activeTaskCount.get();
+    }
+
+    /**
+     * Returns the number of extraction tasks that are waiting for a free thread.
+     */
+    public int getQueuedTaskCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of extraction tasks that have been aborted because they appeared to be hanging.
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Returns the number of threads that are still running an extraction task that has been aborted, i.e.
+     * threads with an extractor that did not respond to being interrupted.
+     */
+    public int getAbandonedThreadCount() {
+        return abandonedThreadCount.get();
+    }
+
+    /**
+     * Returns the total number of aborted extraction tasks that did not end when they were interrupted.
+     */
+    public long getAbandonedTaskCount() {
+        return abandonedTaskCount.get();
+    }
+
+    /**
+     * Returns a snapshot of the latency statistics of all finished extraction tasks, mapped by MIME type.
+     * Tasks without a MIME type are mapped to the null key.
+     */
+    public Map<String, LatencyStatistics> getLatencyStatistics() {
+        synchronized (latencies) {
+            HashMap<String, LatencyStatistics> result = new HashMap<String, LatencyStatistics>();
+            Iterator<Map.Entry<String, LatencyStatistics>> iterator = latencies.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, LatencyStatistics> entry = iterator.next();
+                result.put(entry.getKey(), new LatencyStatistics(entry.getValue()));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Stops all threads of this service as soon as they have finished their current task. Queued tasks are
+     * still executed. This method must not be invoked on the default service.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Schedules a task for execution.
+     */
+    void submit(Task task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Registers that a running task has been abandoned, its thread is replaced by a new one.
+     */
+    void taskAbandoned() {
+        abandonedTaskCount.incrementAndGet();
+        abandonedThreadCount.incrementAndGet();
+        resizePool(1);
+    }
+
+    void taskTimedOut() {
+        timeoutCount.incrementAndGet();
+    }
+
+    private synchronized void resizePool(int delta) {
+        int newSize = executor.getCorePoolSize() + delta;
+        // the maximum pool size may never be smaller than the core pool size
+        if (delta > 0) {
+            executor.setMaximumPoolSize(newSize);
+            executor.setCorePoolSize(newSize);
+        }
+        else {
+            executor.setCorePoolSize(newSize);
+            executor.setMaximumPoolSize(newSize);
+        }
+    }
+
+    private void taskFinished(String mimeType, long duration) {
+        synchronized (latencies) {
+            LatencyStatistics statistics = latencies.get(mimeType);
+            if (statistics == null) {
+                statistics = new LatencyStatistics();
+                latencies.put(mimeType, statistics);
+            }
+            statistics.add(duration);
+        }
+    }
+
+    /**
+     * The latency statistics of the extraction tasks for a single MIME type.
+     */
+    public static class LatencyStatistics {
+
+        private long count;
+
+        private long totalTime;
+
+        private long maximumTime;
+
+        LatencyStatistics() {}
+
+        LatencyStatistics(LatencyStatistics other) {
+            this.count = other.count;
+            this.totalTime = other.totalTime;
+            this.maximumTime = other.maximumTime;
+        }
+
+        void add(long time) {
+            count++;
+            totalTime += time;
+            maximumTime = Math.max(maximumTime, time);
+        }
+
+        /** Returns the number of finished extraction tasks. */
+        public long getCount() {
+            return count;
+        }
+
+        /** Returns the sum of the durations of all finished extraction tasks, in milliseconds. */
+        public long getTotalTime() {
+            return totalTime;
+        }
+
+        /** Returns the duration of the slowest extraction task, in milliseconds. */
+        public long getMaximumTime() {
+            return maximumTime;
+        }
+
+        /** Returns the average duration of the finished extraction tasks, in milliseconds. */
+        public double getAverageTime() {
+            return count == 0 ? 0.0 : (double) totalTime / count;
+        }
+
+        public String toString() {
+            return "count=" + count + ", average=" + getAverageTime() + "ms, maximum=" + maximumTime + "ms";
+        }
+    }
+
+    /**
+     * The base class of the tasks executed by an ExtractionService. A Task can be waited for and can be
+     * abandoned by the thread that submitted it.
+     */
+    abstract static class Task implements Runnable {
+
+        private static final int QUEUED = 0;
+
+        private static final int RUNNING = 1;
+
+        private static final int FINISHED = 2;
+
+        private static final int ABANDONED = 3;
+
+        private final ExtractionService service;
+
+        private final String mimeType;
+
+        private int state = QUEUED;
+
+        private Thread runner;
+
+        protected Task(ExtractionService service, String mimeType) {
+            this.service = service;
+            this.mimeType = mimeType;
+        }
+
+        /**
+         * Performs the actual work of this task.
+         */
+        protected abstract void execute();
+
+        /**
+         * Invoked on the executing thread right before {@link #execute()}.
+         */
+        protected void started() {}
+
+        public final void run() {
+            synchronized (this) {
+                if (state != QUEUED) {
+                    // abandoned before it could start
+                    return;
+                }
+                state = RUNNING;
+                runner = Thread.currentThread();
+            }
+
+            service.activeTaskCount.incrementAndGet();
+            long startTime = System.currentTimeMillis();
+            boolean abandoned;
+            try {
+                started();
+                execute();
+            }
+            finally {
+                service.activeTaskCount.decrementAndGet();
+                synchronized (this) {
+                    abandoned = state == ABANDONED;
+                    if (!abandoned) {
+                        // record the latency before the waiting thread is notified
+                        service.taskFinished(mimeType, System.currentTimeMillis() - startTime);
+                    }
+                    state = FINISHED;
+                    runner = null;
+                    notifyAll();
+                }
+            }
+
+            if (abandoned) {
+                // the thread is available again, shrink the pool back to its configured size
+                service.abandonedThreadCount.decrementAndGet();
+                service.resizePool(-1);
+                // do not carry the interrupt into the next task
+                Thread.interrupted();
+            }
+        }
+
+        /**
+         * Returns whether the task has started executing.
+         */
+        public synchronized boolean isStarted() {
+            return state != QUEUED;
+        }
+
+        /**
+         * Returns whether the task has finished executing.
+         */
+        public synchronized boolean isFinished() {
+            return state == FINISHED;
+        }
+
+        /**
+         * Waits until the task has started or finished, or until the timeout has elapsed.
+         */
+        public synchronized void waitForStateChange(long timeout) throws InterruptedException {
+            int oldState = state;
+            long end = System.currentTimeMillis() + timeout;
+            while (state == oldState && state != FINISHED) {
+                long remaining = end - System.currentTimeMillis();
+                if (remaining <= 0L) {
+                    break;
+                }
+                wait(remaining);
+            }
+        }
+
+        /**
+         * Interrupts the task and quarantines its thread.
+         *
+         * @return false if the task had already finished, true otherwise
+         */
+        public synchronized boolean abandon() {
+            if (state == FINISHED) {
+                return false;
+            }
+            service.taskTimedOut();
+            if (state == QUEUED) {
+                // it will never run
+                state = FINISHED;
+            }
+            else {
+                state = ABANDONED;
+                service.taskAbandoned();
+                runner.interrupt();
+            }
+            return true;
+        }
+    }
+
+    private static class ExtractionThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger poolCount = new AtomicInteger();
+
+        private final int poolNumber = poolCount.incrementAndGet();
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ExtractionService-" + poolNumber + "-"
+                    + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.extractor.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import org.ontoware.rdf2go.model.node.URI;
+import org.semanticdesktop.aperture.rdf.FullTextSink;
+import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.rdf.UpdateException;
+import org.semanticdesktop.aperture.rdf.impl.ModelFullTextSink;
+import org.semanticdesktop.aperture.vocabulary.NIE;
+
+/**
+ * A Writer for the full-text of the resource described by an RDFContainer. Extractors write the text they
+ * extract to a FullTextWriter instead of building a single String, so that the text can be passed on in
+ * chunks to the {@link FullTextSink} of the RDFContainer. When the RDFContainer has no FullTextSink, the text
+ * is collected and stored as a single literal, as it has always been.
+ *
+ * <p>
+ * A FullTextWriter enforces the maximum number of chars of the FullTextSink: any text beyond this limit is
+ * silently discarded. Extractors can use {@link #isFull()} to stop extracting as soon as the limit has been
+ * reached. The text only reaches the sink when something is written, so that resources without text do not
+ * get an empty literal. Closing a FullTextWriter signals the sink that the text is complete.
+ */
+public class FullTextWriter extends Writer {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private RDFContainer container;
+
+    private URI property;
+
+    private FullTextSink sink;
+
+    private Writer out;
+
+    private int maxChars;
+
+    private long charCount;
+
+    private boolean truncated;
+
+    private boolean closed;
+
+    /**
+     * Creates a FullTextWriter for the NIE.plainTextContent of the resource described by the specified
+     * RDFContainer.
+     *
+     * @param container the RDFContainer describing the resource.
+     */
+    public FullTextWriter(RDFContainer container) {
+        this(container, NIE.plainTextContent);
+    }
+
+    /**
+     * Creates a FullTextWriter for the text of the specified property of the resource described by the
+     * specified RDFContainer.
+     *
+     * @param container the RDFContainer describing the resource.
+     * @param property the property that relates the resource to the text.
+     */
+    public FullTextWriter(RDFContainer container, URI property) {
+        this.container = container;
+        this.property = property;
+        this.sink = container.getFullTextSink();
+        if (sink == null) {
+            sink = new ModelFullTextSink();
+        }
+        this.maxChars = sink.getMaxChars();
+    }
+
+    /**
+     * Stores the specified text in the specified RDFContainer, using its FullTextSink when it has one. This
+     * is a shortcut for extractors that obtain the text as a String from a third-party library.
+     *
+     * @param container the RDFContainer describing the resource.
+     * @param property the property that relates the resource to the text.
+     * @param text the text to store, nothing is stored when it is null or empty.
+     * @throws UpdateException when the FullTextSink throws an IOException.
+     */
+    public static void add(RDFContainer container, URI property, String text) throws UpdateException {
+        if (text == null || text.length() == 0) {
+            return;
+        }
+
+        FullTextWriter writer = new FullTextWriter(container, property);
+        try {
+            writer.write(text);
+            writer.close();
+        }
+        catch (IOException e) {
+            throw new UpdateException(e);
+        }
+    }
+
+    /**
+     * Returns whether the maximum number of chars has been reached. Any text written from now on will be
+     * discarded.
+     */
+    public boolean isFull() {
+        return maxChars >= 0 && charCount >= maxChars;
+    }
+
+    /**
+     * Returns whether text has been discarded because the maximum number of chars has been reached.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Returns the number of chars that have been passed on to the FullTextSink.
+     */
+    public long getCharCount() {
+        return charCount;
+    }
+
+    /**
+     * Copies all chars from the specified Reader to this writer. The copying stops as soon as the maximum
+     * number of chars has been reached. The Reader is not closed.
+     *
+     * @param reader the Reader to copy the chars from.
+     * @throws IOException when reading or writing fails.
+     */
+    public void write(Reader reader) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        int length;
+        while (!isFull() && (length = reader.read(buffer)) >= 0) {
+            write(buffer, 0, length);
+        }
+    }
+
+    public void write(char[] chars, int offset, int length) throws IOException {
+        int accepted = accept(length);
+        if (accepted > 0) {
+            out.write(chars, offset, accepted);
+        }
+    }
+
+    public void write(String string, int offset, int length) throws IOException {
+        int accepted = accept(length);
+        if (accepted > 0) {
+            out.write(string, offset, accepted);
+        }
+    }
+
+    public void write(int c) throws IOException {
+        if (accept(1) > 0) {
+            out.write(c);
+        }
+    }
+
+    /**
+     * Determines how many of the specified number of chars may be passed on to the sink and opens the sink
+     * when necessary.
+     */
+    private int accept(int length) throws IOException {
+        if (closed) {
+            throw new IOException("FullTextWriter has been closed");
+        }
+
+        int result = length;
+        if (maxChars >= 0 && charCount + length > maxChars) {
+            result = (int) (maxChars - charCount);
+            truncated = true;
+        }
+
+        if (result > 0) {
+            if (out == null) {
+                out = sink.openText(container, property);
+            }
+            charCount += result;
+        }
+        return result;
+    }
+
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+}
@@ -255,22 +255,21 @@ public class PoiUtil {
                                 + container.getDescribedUri());
             }
 
+            // the heuristically extracted text is passed on line by line
             try {
                 stream.reset();
                 StringExtractor extractor = new StringExtractor();
-                text = extractor.extract(stream);
+                FullTextWriter writer = new FullTextWriter(container);
+                extractor.extract(stream, writer);
+                writer.close();
             }
             catch (IOException e) {
                 logger.warn("IOException while processing " + container.getDescribedUri(), e);
             }
         }
-
-        // store the full-text, if any
-        if (text != null) {
-            text = text.trim();
-            if (!text.equals("")) {
-                container.add(NIE.plainTextContent, text);
-            }
+        else if (text != null) {
+            // store the full-text, if any
+            FullTextWriter.add(container, NIE.plainTextContent, text.trim());
         }
 
         try {
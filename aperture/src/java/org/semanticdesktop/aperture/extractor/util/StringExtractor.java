@@ -8,6 +8,8 @@ package org.semanticdesktop.aperture.extractor.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -47,9 +49,35 @@ public class StringExtractor {
 	 * @throws IOException When reading characters from the InputStream caused an IOException.
 	 */
 	public String extract(InputStream stream) throws IOException {
+		StringWriter writer = new StringWriter(64 * 1024);
+		extract(stream, writer);
+		if (writer.getBuffer().length() > 0) {
+			writer.write(END_OF_LINE);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Extract all human-readable text from an InputStream and write it to a Writer, line by line. The lines
+	 * are separated by line separators, there is no line separator at the end of the text. Unless this
+	 * StringExtractor {@link #usesStartLines() uses start lines}, the text is never held in memory as a
+	 * whole. When the Writer is a {@link FullTextWriter}, extraction stops as soon as it is full.
+	 * 
+	 * @param stream The InputStream to read the bytes from. The stream will be consumed but not closed.
+	 * @param writer The Writer to write the resulting, heuristically determined text to. It is not closed.
+	 * @throws IOException When reading characters from the InputStream or writing to the Writer caused an
+	 *             IOException.
+	 */
+	public void extract(InputStream stream, Writer writer) throws IOException {
 		// read all bytes and extract readable characters
 		StringBuilder lineBuffer = new StringBuilder(512);
-		StringBuilder textBuffer = new StringBuilder(64 * 1024);
+
+		// when start lines are used, the text has to be buffered as it may still be scrapped
+		boolean buffered = usesStartLines();
+		StringBuilder textBuffer = buffered ? new StringBuilder(64 * 1024) : null;
+		boolean firstLine = true;
+
+		FullTextWriter fullTextWriter = writer instanceof FullTextWriter ? (FullTextWriter) writer : null;
 
 		int b = -1;
 		while ((b = stream.read()) != -1) {
@@ -72,19 +100,47 @@ public class StringExtractor {
 
 					if (isStartLine(lineLowerCase)) {
 						// scrap everything until this start line and continue with the next
-						textBuffer.setLength(0);
+						if (buffered) {
+							textBuffer.setLength(0);
+							firstLine = true;
+						}
 					}
 					else if (isValidLine(lineLowerCase)) {
 						// append the original, non-lowercased line to the end result and continue processing
 						// the stream
-						textBuffer.append(line);
-						textBuffer.append(END_OF_LINE);
+						if (buffered) {
+							if (!firstLine) {
+								textBuffer.append(END_OF_LINE);
+							}
+							textBuffer.append(line);
+						}
+						else {
+							if (!firstLine) {
+								writer.write(END_OF_LINE);
+							}
+							writer.write(line);
+							if (fullTextWriter != null && fullTextWriter.isFull()) {
+								return;
+							}
+						}
+						firstLine = false;
 					}
 				}
 			}
 		}
 
-		return textBuffer.toString();
+		if (buffered) {
+			writer.write(textBuffer.toString());
+		}
+	}
+
+	/**
+	 * Determines whether {@link #isStartLine(String)} can ever return true. If so, the extracted text is
+	 * buffered until the end of the stream has been reached. This default implementation returns 'false',
+	 * subclasses that override isStartLine should also override this method.
+	 */
+	protected boolean usesStartLines() {
+		return false;
 	}
 
 	/**
@@ -17,10 +17,10 @@ import org.semanticdesktop.aperture.extractor.ExtractorException;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 
 /**
- * A ThreadedExtractorWrapper wraps an Extractor and executes it on a separate thread, bailing out if the
- * wrapped Extractor appears to be hanging. The heuristic for determining whether the Extractor is hanging is
- * by looking at whether the InputStream is regularly accessed. Any Exceptions thrown by the wrapped Extractor
- * are eventually thrown by the ThreadedExtractorWrapper.
+ * A ThreadedExtractorWrapper wraps an Extractor and executes it on a thread of an {@link ExtractionService},
+ * bailing out if the wrapped Extractor appears to be hanging. The heuristic for determining whether the
+ * Extractor is hanging is by looking at whether the InputStream is regularly accessed. Any Exceptions thrown
+ * by the wrapped Extractor are eventually thrown by the ThreadedExtractorWrapper.
  * 
  * <p>
  * Furthermore, a ThreadedExtractorWrapper can be requested to stop processing, causing it to throw an
@@ -28,6 +28,11 @@ import org.semanticdesktop.aperture.rdf.RDFContainer;
  * interrupting an extraction process upon user request, for example because it has been processing a single
  * file for a very long time (especially large PDF documents are notorious). This implementation strategy is
  * preferred over interrupting the Thread as that should only be used as a last resort to stop a thread.
+ * 
+ * <p>
+ * Unless specified otherwise, all ThreadedExtractorWrappers share the default ExtractionService. A task that
+ * is hanging is interrupted and its thread is quarantined by the service, see {@link ExtractionService} for
+ * details and for the available metrics.
  */
 public class ThreadedExtractorWrapper implements Extractor {
 
@@ -57,7 +62,7 @@ public class ThreadedExtractorWrapper implements Extractor {
     /**
      * Flag that indicates that a request to stop extracting has been issued.
      */
-    private boolean stopRequested;
+    private volatile boolean stopRequested;
     
     /**
      * The actual max processing time per MB for this ThreadedExtractorWrapper instance
@@ -73,6 +78,11 @@ public class ThreadedExtractorWrapper implements Extractor {
      * The actual max idle read time.
      */
     private long maxIdleReadTime = DEFAULT_MAX_IDLE_READ_TIME;
+
+    /**
+     * The service that executes the extraction tasks.
+     */
+    private ExtractionService service;
     
     /**
      * Creates a new wrapper for the specified Extractor. It uses default timeout values. It is equivalent to
@@ -88,7 +98,19 @@ public class ThreadedExtractorWrapper implements Extractor {
      * @see #DEFAULT_MAX_IDLE_READ_TIME
      */
     public ThreadedExtractorWrapper(Extractor extractor) {
+        this(extractor, ExtractionService.getDefaultService());
+    }
+
+    /**
+     * Creates a new wrapper for the specified Extractor that executes the extraction tasks with the
+     * specified ExtractionService. It uses default timeout values.
+     * 
+     * @param extractor The Extractor to wrap.
+     * @param service The ExtractionService that executes the wrapped Extractor.
+     */
+    public ThreadedExtractorWrapper(Extractor extractor, ExtractionService service) {
         this.extractor = extractor;
+        this.service = service;
         stopRequested = false;
     }
     
@@ -102,7 +124,23 @@ public class ThreadedExtractorWrapper implements Extractor {
      */
     public ThreadedExtractorWrapper(Extractor extractor, long maxProcessingTimePerMb,
             long minimumMaxProcessingTime, long maxIdleReadTime) {
+        this(extractor, maxProcessingTimePerMb, minimumMaxProcessingTime, maxIdleReadTime, ExtractionService
+                .getDefaultService());
+    }
+
+    /**
+     * Creates a new wrapper for the specified Extractor that executes the extraction tasks with the
+     * specified ExtractionService. It allows the user to customize the timeout values.
+     * @param extractor The Extractor to wrap.
+     * @param maxProcessingTimePerMb  see {@link #DEFAULT_MAX_PROCESSING_TIME_PER_MB}
+     * @param minimumMaxProcessingTime see {@link #DEFAULT_MINIMUM_MAX_PROCESSING_TIME}
+     * @param maxIdleReadTime see {@link #DEFAULT_MAX_IDLE_READ_TIME}
+     * @param service The ExtractionService that executes the wrapped Extractor.
+     */
+    public ThreadedExtractorWrapper(Extractor extractor, long maxProcessingTimePerMb,
+            long minimumMaxProcessingTime, long maxIdleReadTime, ExtractionService service) {
         this.extractor = extractor;
+        this.service = service;
         this.stopRequested = false;
         this.maxProcessingTimePerMb = maxProcessingTimePerMb;
         this.minimumMaxProcessingTime = minimumMaxProcessingTime;
@@ -117,9 +155,17 @@ public class ThreadedExtractorWrapper implements Extractor {
     }
 
     /**
-     * Starts the extraction process using the wrapped Extractor on a separate thread. This Thread is
-     * interrupted as soon as no progress is reported. In this case an {@link ExtractionAbortedException} will
-     * be thrown.l
+     * Returns the ExtractionService that executes the wrapped Extractor.
+     */
+    public ExtractionService getExtractionService() {
+        return service;
+    }
+
+    /**
+     * Starts the extraction process using the wrapped Extractor on a thread of the ExtractionService. The
+     * extraction is abandoned as soon as no progress is reported. In this case an
+     * {@link ExtractionAbortedException} will be thrown. The time that the task spends waiting for a free
+     * thread is not taken into account.
      * 
      * @throws ExtractorException if any problem with the extractor occurs, this is exactly the same Exception
      *             instance as the one thrown by the extractor.
@@ -130,8 +176,22 @@ public class ThreadedExtractorWrapper implements Extractor {
             throws ExtractorException {
         ExtractionStream monitoredStream = new ExtractionStream(input);
 
-        ExtractionThread thread = new ExtractionThread(id, monitoredStream, charset, mimeType, result);
-        thread.start();
+        ExtractionTask task = new ExtractionTask(id, monitoredStream, charset, mimeType, result);
+        service.submit(task);
+
+        try {
+            /*
+             * The task may have to wait for a free thread in the pool. The timeouts only apply once the
+             * extractor is actually running.
+             */
+            while (!task.isStarted()) {
+                task.waitForStateChange(maxIdleReadTime);
+            }
+        }
+        catch (InterruptedException e) {
+            task.abandon();
+            throw new ExtractorException(e);
+        }
 
         while (true) {
             long waitTime;
@@ -167,7 +227,7 @@ public class ThreadedExtractorWrapper implements Extractor {
              * This indicates that the extraction thread has stopped, which in turn means that the extractor
              * has finished extracting data. This is OK, we may safely bail out from this loop. 
              */
-            if (!thread.isAlive()) {
+            if (task.isFinished()) {
                 break;
             }
             
@@ -183,24 +243,24 @@ public class ThreadedExtractorWrapper implements Extractor {
 
             try {
                 /*
-                 * Now we wait for the computed amount of miliseconds. We use the join method, so if the
-                 * extractor finishes earlier, the join method will also finish and the isAlive() check will
-                 * make this loop end gracefully. On the other hand, if the extractor doesn't finish within
-                 * the prescribed time, we'll get to decide later what to do with it.
+                 * Now we wait for the computed amount of miliseconds. If the extractor finishes earlier,
+                 * the wait will also finish and the isFinished() check will make this loop end gracefully.
+                 * On the other hand, if the extractor doesn't finish within the prescribed time, we'll get
+                 * to decide later what to do with it.
                  */
-                thread.join(waitTime);
+                task.waitForStateChange(waitTime);
             }
             catch (InterruptedException e) {
+                task.abandon();
                 throw new ExtractorException(e);
             }
         }
 
-        if (thread.isAlive()) {
-            /*
-             * This indicates that the previous loop ended with a decision that the extractor has hanged. We
-             * must abort the extraction and throw an appropriate exception.
-             */
-            thread.abortExtraction();
+        /*
+         * If the previous loop ended with a decision that the extractor has hanged, we must abort the
+         * extraction and throw an appropriate exception. The task may still have finished in the meantime.
+         */
+        if (task.abandon()) {
             throw new ExtractionAbortedException();
         }
         else {
@@ -209,7 +269,7 @@ public class ThreadedExtractorWrapper implements Extractor {
              * process has ended with a success, or the extractor has thrown some exception, if there are any
              * exceptions we need to propagate them further to the user.
              */
-            Exception e = thread.getException();
+            Exception e = task.getException();
             if (e != null) {
                 if (e instanceof ExtractorException) {
                     throw (ExtractorException) e;
@@ -246,11 +306,11 @@ public class ThreadedExtractorWrapper implements Extractor {
         }
     }
 
-    private class ExtractionThread extends Thread {
+    private class ExtractionTask extends ExtractionService.Task {
 
         private URI id;
 
-        private InputStream input;
+        private ExtractionStream input;
 
         private Charset charset;
 
@@ -260,8 +320,9 @@ public class ThreadedExtractorWrapper implements Extractor {
 
         private Exception exception;
 
-        public ExtractionThread(URI id, InputStream input, Charset charset, String mimeType,
+        public ExtractionTask(URI id, ExtractionStream input, Charset charset, String mimeType,
                 RDFContainer result) {
+            super(service, mimeType);
             this.id = id;
             this.input = input;
             this.charset = charset;
@@ -269,7 +330,12 @@ public class ThreadedExtractorWrapper implements Extractor {
             this.result = result;
         }
 
-        public void run() {
+        protected void started() {
+            // the time spent in the queue does not count as idle time
+            input.resetLastAccessTime();
+        }
+
+        protected void execute() {
             try {
                 extractor.extract(id, input, charset, mimeType, result);
             }
@@ -278,22 +344,18 @@ public class ThreadedExtractorWrapper implements Extractor {
             }
         }
 
-        public void abortExtraction() {
-            interrupt();
-        }
-
-        public Exception getException() {
+        public synchronized Exception getException() {
             return exception;
         }
     }
 
     private class ExtractionStream extends FilterInputStream {
 
-        private long lastAccessTime;
+        private volatile long lastAccessTime;
 
-        private boolean allBytesRead;
+        private volatile boolean allBytesRead;
 
-        private int totalBytesRead;
+        private volatile int totalBytesRead;
 
         public ExtractionStream(InputStream in) {
             super(in);
@@ -303,6 +365,10 @@ public class ThreadedExtractorWrapper implements Extractor {
             totalBytesRead = 0;
         }
 
+        public void resetLastAccessTime() {
+            lastAccessTime = System.currentTimeMillis();
+        }
+
         public long getLastAccessTime() {
             return lastAccessTime;
         }
@@ -8,6 +8,7 @@ package org.semanticdesktop.aperture.extractor.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 
 
 /**
@@ -41,8 +42,13 @@ public class WPStringExtractor extends StringExtractor {
 	/**
 	 * Wraps the specified InputStream in a WPFilterInputStream and passes it to the super class.
 	 */
-	public String extract(InputStream stream) throws IOException {
-		return super.extract(new WPFilterInputStream(stream));
+	public void extract(InputStream stream, Writer writer) throws IOException {
+		super.extract(new WPFilterInputStream(stream), writer);
+	}
+
+	// overrides StringExtractor.usesStartLines
+	protected boolean usesStartLines() {
+		return true;
 	}
 	
 	// overrides StringExtractor.isTextCharacter
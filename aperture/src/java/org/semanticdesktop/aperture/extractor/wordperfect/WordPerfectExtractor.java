@@ -14,10 +14,10 @@ import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.vocabulary.RDF;
 import org.semanticdesktop.aperture.extractor.Extractor;
 import org.semanticdesktop.aperture.extractor.ExtractorException;
+import org.semanticdesktop.aperture.extractor.util.FullTextWriter;
 import org.semanticdesktop.aperture.extractor.util.WPStringExtractor;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 import org.semanticdesktop.aperture.vocabulary.NFO;
-import org.semanticdesktop.aperture.vocabulary.NIE;
 
 /**
  * An Extractor implementation for WordPerfect documents.
@@ -41,9 +41,10 @@ public class WordPerfectExtractor implements Extractor {
 			throws ExtractorException {
 		try {
 			WPStringExtractor extractor = new WPStringExtractor();
-			String text = extractor.extract(stream).trim();
-			if (text.length() > 0) {
-				result.add(NIE.plainTextContent, text);
+			FullTextWriter writer = new FullTextWriter(result);
+			extractor.extract(stream, writer);
+			writer.close();
+			if (writer.getCharCount() > 0) {
                 result.add(RDF.type,NFO.PaginatedTextDocument);
 			}
 		}
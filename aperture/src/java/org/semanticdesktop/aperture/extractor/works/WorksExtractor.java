@@ -14,10 +14,10 @@ import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.vocabulary.RDF;
 import org.semanticdesktop.aperture.extractor.Extractor;
 import org.semanticdesktop.aperture.extractor.ExtractorException;
+import org.semanticdesktop.aperture.extractor.util.FullTextWriter;
 import org.semanticdesktop.aperture.extractor.util.StringExtractor;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 import org.semanticdesktop.aperture.vocabulary.NFO;
-import org.semanticdesktop.aperture.vocabulary.NIE;
 
 /**
  * An Extractor implementation for MS Works files.
@@ -36,9 +36,10 @@ public class WorksExtractor implements Extractor {
 			throws ExtractorException {
 		try {
 			WorksStringExtractor extractor = new WorksStringExtractor();
-			String text = extractor.extract(stream).trim();
-			if (text.length() > 0) {
-				result.add(NIE.plainTextContent, text);
+			FullTextWriter writer = new FullTextWriter(result);
+			extractor.extract(stream, writer);
+			writer.close();
+			if (writer.getCharCount() > 0) {
                 result.add(RDF.type,NFO.PaginatedTextDocument);
 			}
 		}
@@ -66,6 +67,10 @@ public class WorksExtractor implements Extractor {
 			return super.isTextCharacter(charNumber) || charNumber == 0;
 		}
 
+		protected boolean usesStartLines() {
+			return true;
+		}
+
 		protected boolean isStartLine(String lineLowerCase) {
 			if ("gtt".equals(lineLowerCase)) {
 				return true;
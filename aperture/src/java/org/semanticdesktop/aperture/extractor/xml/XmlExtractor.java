@@ -22,6 +22,7 @@ import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.vocabulary.RDF;
 import org.semanticdesktop.aperture.extractor.Extractor;
 import org.semanticdesktop.aperture.extractor.ExtractorException;
+import org.semanticdesktop.aperture.extractor.util.FullTextWriter;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 import org.semanticdesktop.aperture.vocabulary.NFO;
 import org.semanticdesktop.aperture.vocabulary.NIE;
@@ -115,7 +116,7 @@ public class XmlExtractor implements Extractor {
             // store the extracted text
             String text = listener.getText();
             if (!text.equals("")) {
-                result.add(NIE.plainTextContent, text);
+                FullTextWriter.add(result, NIE.plainTextContent, text);
                 result.add(RDF.type,NFO.PlainTextDocument);
             }
         }
@@ -33,6 +33,12 @@ public interface LinkExtractor {
      */
     public static final Object INCLUDE_EMBEDDED_RESOURCES_KEY = "includeEmbeddedResources";
 
+    /**
+     * Suggested key to use in the params map to indicate the character set of the document as reported by
+     * its source, e.g. in an HTTP header. The corresponding value should be a String or a Charset.
+     */
+    public static final Object CHARSET_KEY = "charset";
+
     /**
      * Extracts all links occurring in the specified stream.
      * 
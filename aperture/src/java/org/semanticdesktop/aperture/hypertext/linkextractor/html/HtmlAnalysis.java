@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.hypertext.linkextractor.html;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+import org.semanticdesktop.aperture.util.ExposedByteArrayInputStream;
+
+/**
+ * The links, text and metadata of an HTML document, as collected by a single pass of the
+ * {@link HtmlLinkScanner}. The links and metadata are turned into Strings right away, the text is only
+ * decoded when it is asked for: until then it is a list of regions of the byte array holding the document.
+ *
+ * <p>
+ * The analysis of a document held in an {@link ExposedByteArrayInputStream} is attached to that stream.
+ * This lets the components that process the same stream one after another share a single scan, e.g. the
+ * HtmlLinkExtractor invoked by the WebCrawler and the HtmlExtractor invoked by a CrawlerHandler.
+ */
+public class HtmlAnalysis {
+
+    // the kinds of regions collected by the scanner
+
+    static final int TEXT = 0, RAW_TEXT = 1, TITLE = 2, AUTHOR = 3, DESCRIPTION = 4, KEYWORDS = 5;
+
+    /** The array and the region in it that were analyzed */
+    private final byte[] source;
+
+    private final int sourceOffset;
+
+    private final int sourceLength;
+
+    /** The bytes the regions refer to, the source unless the document had to be transcoded */
+    private final byte[] bytes;
+
+    /** The kind, start and end index of every text and metadata region */
+    private final int[] regions;
+
+    private final List<String> links;
+
+    private final Charset charset;
+
+    private final String baseURL;
+
+    private final boolean includeEmbeddedResources;
+
+    private final Charset suppliedCharset;
+
+    private String title;
+
+    private String author;
+
+    private String description;
+
+    private final Set<String> keywords = new LinkedHashSet<String>();
+
+    private String text;
+
+    HtmlAnalysis(byte[] source, int sourceOffset, int sourceLength, byte[] bytes, int[] regions,
+            List<String> links, Charset charset, URL baseURL, boolean includeEmbeddedResources,
+            Charset suppliedCharset) {
+        this.source = source;
+        this.sourceOffset = sourceOffset;
+        this.sourceLength = sourceLength;
+        this.bytes = bytes;
+        this.regions = regions;
+        this.links = Collections.unmodifiableList(links);
+        this.charset = charset;
+        this.baseURL = baseURL == null ? null : baseURL.toExternalForm();
+        this.includeEmbeddedResources = includeEmbeddedResources;
+        this.suppliedCharset = suppliedCharset;
+
+        // decode the metadata, the last occurrence of a title, author or description wins
+        for (int i = 0; i < regions.length; i += 3) {
+            int kind = regions[i];
+            if (kind == TITLE) {
+                title = decode(regions[i + 1], regions[i + 2], true).trim();
+            }
+            else if (kind == AUTHOR) {
+                author = decode(regions[i + 1], regions[i + 2], true);
+            }
+            else if (kind == DESCRIPTION) {
+                description = decode(regions[i + 1], regions[i + 2], true);
+            }
+            else if (kind == KEYWORDS) {
+                String value = decode(regions[i + 1], regions[i + 2], true);
+                StringTokenizer tokenizer = new StringTokenizer(value, " ,\t", false);
+                while (tokenizer.hasMoreTokens()) {
+                    keywords.add(tokenizer.nextToken());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the links of the document, in the order in which they occur in the document.
+     */
+    public List<String> getLinks() {
+        return links;
+    }
+
+    /**
+     * Returns the charset in which the text and metadata have been decoded.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Returns the content of the TITLE element, or null when the document has none.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Returns the content of the "author" META tag, or null when the document has none.
+     */
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * Returns the content of the "description" META tag, or null when the document has none.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Returns the keywords in the "keywords" META tags, in the order in which they occur.
+     */
+    public Set<String> getKeywords() {
+        return Collections.unmodifiableSet(keywords);
+    }
+
+    /**
+     * Returns the text of the document: the text outside tags, except for the content of SCRIPT and STYLE
+     * elements. Entities are resolved, except in XMP and PLAINTEXT elements.
+     */
+    public synchronized String getText() {
+        if (text == null) {
+            StringWriter writer = new StringWriter(Math.max(16, bytes.length / 4));
+            try {
+                writeText(writer);
+            }
+            catch (IOException e) {
+                // a StringWriter does not throw IOExceptions
+                throw new RuntimeException(e);
+            }
+            text = writer.toString();
+        }
+        return text;
+    }
+
+    /**
+     * Writes the text of the document (see {@link #getText()}) to the specified Writer, without building
+     * it as a single String first.
+     *
+     * @param writer the Writer to write to, it is not closed
+     * @throws IOException when writing failed
+     */
+    public void writeText(Writer writer) throws IOException {
+        for (int i = 0; i < regions.length; i += 3) {
+            int kind = regions[i];
+            if (kind == TEXT || kind == RAW_TEXT) {
+                writer.write(decode(regions[i + 1], regions[i + 2], kind == TEXT));
+
+                // we don't include knowledge about HTML block elements, so we separate all text regions
+                writer.write(' ');
+            }
+        }
+    }
+
+    private String decode(int start, int end, boolean resolveEntities) {
+        String result;
+        try {
+            result = new String(bytes, start, end - start, charset.name());
+        }
+        catch (UnsupportedEncodingException e) {
+            // the Charset exists, so this should not happen
+            result = charset.decode(ByteBuffer.wrap(bytes, start, end - start)).toString();
+        }
+        if (resolveEntities && result.indexOf('&') >= 0) {
+            result = EntityResolver.resolveEntities(result);
+        }
+        // &nbsp; entities are decoded to \u00a0, we replace them with regular spaces
+        return result.replace('\u00a0', ' ');
+    }
+
+    /**
+     * Analyzes the remaining bytes of the specified stream, or returns the analysis attached to it when it
+     * was made with the same parameters. The bytes are consumed, like reading the stream would.
+     *
+     * @param stream the stream holding the document. The bytes of an ExposedByteArrayInputStream are
+     *            analyzed in place and the result is attached to it, other streams are read fully first.
+     * @param baseURL the URL against which relative links are resolved, may be null
+     * @param includeEmbeddedResources whether the links of embedded resources are included as well
+     * @param charset the charset reported by the source of the document, may be null
+     * @return the analysis of the document
+     * @throws IOException when reading the stream failed
+     */
+    public static HtmlAnalysis analyze(InputStream stream, URL baseURL, boolean includeEmbeddedResources,
+            Charset charset) throws IOException {
+        return analyze(stream, baseURL, includeEmbeddedResources, charset, true);
+    }
+
+    /**
+     * Analyzes the remaining bytes of the specified stream when it is needed for its text and metadata only.
+     * An analysis attached to the stream is returned whatever its links are based on, unless it was made
+     * with a different charset. The bytes are consumed, like reading the stream would.
+     *
+     * @param stream the stream holding the document
+     * @param charset the charset reported by the source of the document, may be null
+     * @return the analysis of the document
+     * @throws IOException when reading the stream failed
+     */
+    public static HtmlAnalysis analyze(InputStream stream, Charset charset) throws IOException {
+        return analyze(stream, null, false, charset, false);
+    }
+
+    private static HtmlAnalysis analyze(InputStream inputStream, URL baseURL,
+            boolean includeEmbeddedResources, Charset charset, boolean linksRequired) throws IOException {
+        ExposedByteArrayInputStream stream;
+        if (inputStream instanceof ExposedByteArrayInputStream) {
+            stream = (ExposedByteArrayInputStream) inputStream;
+        }
+        else {
+            stream = ExposedByteArrayInputStream.readFully(inputStream, 0);
+        }
+
+        int position = stream.getPosition();
+        int length = stream.getCount() - position;
+
+        HtmlAnalysis result = null;
+        Object attachment = stream.getAttachment();
+        if (attachment instanceof HtmlAnalysis) {
+            HtmlAnalysis analysis = (HtmlAnalysis) attachment;
+            if (analysis.source == stream.getBuffer() && analysis.sourceOffset == position
+                    && analysis.sourceLength == length
+                    && (charset == null || charset.equals(analysis.suppliedCharset))
+                    && (!linksRequired || analysis.hasLinksFor(baseURL, includeEmbeddedResources))) {
+                result = analysis;
+            }
+        }
+
+        if (result == null) {
+            result = HtmlLinkScanner.analyze(stream.getBuffer(), position, length, baseURL,
+                includeEmbeddedResources, charset);
+            stream.setAttachment(result);
+        }
+
+        stream.skip(length);
+        return result;
+    }
+
+    private boolean hasLinksFor(URL baseURL, boolean includeEmbeddedResources) {
+        String url = baseURL == null ? null : baseURL.toExternalForm();
+        return this.includeEmbeddedResources == includeEmbeddedResources
+                && (url == null ? this.baseURL == null : url.equals(this.baseURL));
+    }
+}
@@ -0,0 +1,860 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.hypertext.linkextractor.html;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * HtmlLinkScanner extracts links from HTML documents that are held in a byte array or ByteBuffer. The
+ * document is scanned in place: tag and attribute names are looked up in a precomputed dispatch table
+ * and only the values of link attributes are turned into Strings.
+ *
+ * <p>
+ * The scanner tokenizes documents exactly like the {@link Tokenizer} does and recognizes the same tags and
+ * attributes as earlier versions of HtmlLinkExtractor, so it returns the same links. Like the Tokenizer
+ * it treats every byte as an ISO-8859-1 character. The scanner is thread-safe: the bookkeeping of a scan is
+ * kept in a per-thread object that is reused by the next scan on the same thread.
+ *
+ * <p>
+ * The {@link #analyze(byte[], int, int, URL, boolean, Charset)} methods collect the text and metadata of a
+ * document in the same pass that extracts its links, see {@link HtmlAnalysis}.
+ */
+public class HtmlLinkScanner {
+
+    private static final byte LESS_THAN = '<';
+
+    private static final byte GREATER_THAN = '>';
+
+    private static final byte EQUALS = '=';
+
+    private static final byte EXCLAMATION = '!';
+
+    private static final byte MINUS = '-';
+
+    private static final byte DOUBLE_QUOTE = '"';
+
+    private static final byte QUOTE = '\'';
+
+    private static final byte SLASH = '/';
+
+    private static final byte[] DOCTYPE = { 'D', 'O', 'C', 'T', 'Y', 'P', 'E' };
+
+    // the tags that can contain links, a tag's code is its index in TAG_NAMES
+
+    private static final int BASE = 0, META = 1, A = 2, FRAME = 3, IFRAME = 4, HEAD = 5, AREA = 6, Q = 7,
+            BLOCKQUOTE = 8, INS = 9, DEL = 10, LINK = 11, LAYER = 12, ILAYER = 13, BODY = 14, TABLE = 15,
+            TR = 16, TH = 17, TD = 18, IMG = 19, INPUT = 20, TITLE = 21, SCRIPT = 22, STYLE = 23, XMP = 24,
+            PLAINTEXT = 25;
+
+    private static final String[] TAG_NAMES = { "BASE", "META", "A", "FRAME", "IFRAME", "HEAD", "AREA", "Q",
+            "BLOCKQUOTE", "INS", "DEL", "LINK", "LAYER", "ILAYER", "BODY", "TABLE", "TR", "TH", "TD", "IMG",
+            "INPUT", "TITLE", "SCRIPT", "STYLE", "XMP", "PLAINTEXT" };
+
+    // the attributes that can contain links, an attribute's code is its index in ATTRIBUTE_NAMES
+
+    private static final int HREF = 0, CONTENT = 1, HTTP_EQUIV = 2, SRC = 3, LONGDESC = 4, PROFILE = 5,
+            CITE = 6, BACKGROUND = 7, LOWSRC = 8, USEMAP = 9, NAME = 10, CHARSET = 11;
+
+    private static final String[] ATTRIBUTE_NAMES = { "HREF", "CONTENT", "HTTP-EQUIV", "SRC", "LONGDESC",
+            "PROFILE", "CITE", "BACKGROUND", "LOWSRC", "USEMAP", "NAME", "CHARSET" };
+
+    /** The link attributes of every tag, in the order in which their links are returned */
+    private static final int[][] NAVIGATION_ATTRIBUTES = new int[TAG_NAMES.length][];
+
+    /** The link attributes of every tag when embedded resources are included */
+    private static final int[][] EMBEDDED_ATTRIBUTES = new int[TAG_NAMES.length][];
+
+    private static final int[] NONE = {};
+
+    static {
+        setAttributes(BASE, NONE, NONE);
+        setAttributes(META, NONE, NONE);
+        setAttributes(A, new int[] { HREF }, null);
+        setAttributes(FRAME, new int[] { SRC, LONGDESC }, null);
+        setAttributes(IFRAME, new int[] { SRC, LONGDESC }, null);
+        setAttributes(HEAD, new int[] { PROFILE }, null);
+        setAttributes(AREA, new int[] { HREF }, null);
+        setAttributes(Q, new int[] { CITE }, null);
+        setAttributes(BLOCKQUOTE, new int[] { CITE }, null);
+        setAttributes(INS, new int[] { CITE }, null);
+        setAttributes(DEL, new int[] { CITE }, null);
+        setAttributes(LINK, NONE, new int[] { HREF, SRC });
+        setAttributes(LAYER, new int[] { SRC }, new int[] { SRC, BACKGROUND });
+        setAttributes(ILAYER, new int[] { SRC }, new int[] { SRC, BACKGROUND });
+        setAttributes(BODY, NONE, new int[] { BACKGROUND });
+        setAttributes(TABLE, NONE, new int[] { BACKGROUND });
+        setAttributes(TR, NONE, new int[] { BACKGROUND });
+        setAttributes(TH, NONE, new int[] { BACKGROUND });
+        setAttributes(TD, NONE, new int[] { BACKGROUND });
+        setAttributes(IMG, new int[] { LONGDESC, USEMAP }, new int[] { SRC, LOWSRC, LONGDESC, USEMAP });
+        setAttributes(INPUT, new int[] { USEMAP }, new int[] { SRC, USEMAP });
+        setAttributes(TITLE, NONE, NONE);
+        setAttributes(SCRIPT, NONE, NONE);
+        setAttributes(STYLE, NONE, NONE);
+        setAttributes(XMP, NONE, NONE);
+        setAttributes(PLAINTEXT, NONE, NONE);
+    }
+
+    private static void setAttributes(int tag, int[] navigationAttributes, int[] embeddedAttributes) {
+        NAVIGATION_ATTRIBUTES[tag] = navigationAttributes;
+        EMBEDDED_ATTRIBUTES[tag] = embeddedAttributes == null ? navigationAttributes : embeddedAttributes;
+    }
+
+    /** Maps bytes to their ASCII upper case */
+    private static final byte[] UPPER_CASE = new byte[256];
+
+    /** Marks the bytes that are whitespace according to Character.isWhitespace */
+    private static final boolean[] WHITESPACE = new boolean[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            UPPER_CASE[i] = (byte) (i >= 'a' && i <= 'z' ? i - 'a' + 'A' : i);
+            WHITESPACE[i] = Character.isWhitespace((char) i);
+        }
+    }
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The characters the scanner looks for, plus some letters */
+    private static final String ASCII_PROBE = "<a\"'=\t/>-!z;&#";
+
+    private static final NameTable TAG_TABLE = new NameTable(TAG_NAMES);
+
+    private static final NameTable ATTRIBUTE_TABLE = new NameTable(ATTRIBUTE_NAMES);
+
+    private static final ThreadLocal<Scan> SCANS = new ThreadLocal<Scan>() {
+
+        protected Scan initialValue() {
+            return new Scan();
+        }
+    };
+
+    /**
+     * Extracts all links from the specified region of a byte array.
+     *
+     * @param bytes the array holding the document
+     * @param offset the index of the first byte of the document
+     * @param length the length of the document
+     * @param baseURL the URL against which relative links are resolved, may be null. A BASE tag in the
+     *            document overrules this URL.
+     * @param includeEmbeddedResources whether the links of embedded resources such as images and
+     *            backgrounds are returned as well
+     * @return the links, in the order in which they occur in the document
+     */
+    public static ArrayList<String> extractLinks(byte[] bytes, int offset, int length, URL baseURL,
+            boolean includeEmbeddedResources) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("invalid region: " + offset + ", " + length);
+        }
+        Scan scan = SCANS.get();
+        try {
+            return scan.scan(bytes, offset, offset + length, baseURL, includeEmbeddedResources, false,
+                ISO_8859_1);
+        }
+        finally {
+            scan.reset();
+        }
+    }
+
+    /**
+     * Extracts the links, text and metadata of the document in the specified region of a byte array in a
+     * single pass. The links are the ones returned by
+     * {@link #extractLinks(byte[], int, int, URL, boolean)}.
+     *
+     * <p>
+     * The charset of the document is determined by its byte order mark, a META tag declaring the charset,
+     * the specified charset and ISO-8859-1, in that order. As only the text and metadata are decoded, and
+     * only after the scan, a charset declared halfway the document never requires a second pass. Documents
+     * in a charset that is not a superset of ASCII, such as UTF-16, are transcoded to UTF-8 before they are
+     * scanned.
+     *
+     * @param bytes the array holding the document. The resulting HtmlAnalysis refers to it.
+     * @param offset the index of the first byte of the document
+     * @param length the length of the document
+     * @param baseURL the URL against which relative links are resolved, may be null
+     * @param includeEmbeddedResources whether the links of embedded resources are returned as well
+     * @param charset the charset reported by the source of the document, e.g. an HTTP header, may be null
+     * @return the analysis of the document
+     */
+    public static HtmlAnalysis analyze(byte[] bytes, int offset, int length, URL baseURL,
+            boolean includeEmbeddedResources, Charset charset) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("invalid region: " + offset + ", " + length);
+        }
+
+        // a byte order mark determines the charset
+        int start = offset;
+        int end = offset + length;
+        Charset declaredCharset = null;
+        Charset transcodedCharset = null;
+        if (length >= 3 && (bytes[start] & 0xff) == 0xef && (bytes[start + 1] & 0xff) == 0xbb
+                && (bytes[start + 2] & 0xff) == 0xbf) {
+            declaredCharset = UTF_8;
+            start += 3;
+        }
+        else if (length >= 2 && (bytes[start] & 0xff) == 0xfe && (bytes[start + 1] & 0xff) == 0xff) {
+            transcodedCharset = Charset.forName("UTF-16BE");
+            start += 2;
+        }
+        else if (length >= 2 && (bytes[start] & 0xff) == 0xff && (bytes[start + 1] & 0xff) == 0xfe) {
+            transcodedCharset = Charset.forName("UTF-16LE");
+            start += 2;
+        }
+        else if (charset != null && !isAsciiCompatible(charset)) {
+            transcodedCharset = charset;
+        }
+
+        byte[] scannedBytes = bytes;
+        Charset linkCharset = ISO_8859_1;
+        if (transcodedCharset != null) {
+            CharBuffer chars = transcodedCharset.decode(ByteBuffer.wrap(bytes, start, end - start));
+            ByteBuffer buffer = UTF_8.encode(chars);
+            scannedBytes = buffer.array();
+            start = buffer.arrayOffset() + buffer.position();
+            end = start + buffer.remaining();
+            declaredCharset = UTF_8;
+            linkCharset = UTF_8;
+        }
+
+        Scan scan = SCANS.get();
+        try {
+            ArrayList<String> links = scan.scan(scannedBytes, start, end, baseURL, includeEmbeddedResources,
+                true, linkCharset);
+            if (declaredCharset == null) {
+                declaredCharset = scan.getMetaCharset();
+            }
+            Charset effectiveCharset = declaredCharset;
+            if (effectiveCharset == null) {
+                effectiveCharset = charset == null ? ISO_8859_1 : charset;
+            }
+            return new HtmlAnalysis(bytes, offset, length, scannedBytes, scan.getRegions(), links,
+                    effectiveCharset, baseURL, includeEmbeddedResources, charset);
+        }
+        finally {
+            scan.reset();
+        }
+    }
+
+    /**
+     * Returns whether the specified charset encodes ASCII characters as single ASCII bytes, which is what
+     * the scanner relies on.
+     */
+    private static boolean isAsciiCompatible(Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+        ByteBuffer encoded = charset.encode(ASCII_PROBE);
+        if (encoded.remaining() != ASCII_PROBE.length()) {
+            return false;
+        }
+        for (int i = 0; i < ASCII_PROBE.length(); i++) {
+            if (encoded.get(i) != ASCII_PROBE.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Charset toCharset(String name) {
+        try {
+            Charset charset = Charset.forName(name);
+            // a document that can be read as ASCII cannot be in e.g. UTF-16, whatever it claims
+            return isAsciiCompatible(charset) ? charset : UTF_8;
+        }
+        catch (IllegalArgumentException e) {
+            // an illegal or unsupported charset name
+            return null;
+        }
+    }
+
+    /**
+     * Extracts all links from the remaining bytes of a ByteBuffer. The position of the buffer is not
+     * changed. The bytes of a buffer that is backed by an array are scanned in place.
+     *
+     * @param buffer the buffer holding the document
+     * @param baseURL the URL against which relative links are resolved, may be null
+     * @param includeEmbeddedResources whether the links of embedded resources are returned as well
+     * @return the links, in the order in which they occur in the document
+     */
+    public static ArrayList<String> extractLinks(ByteBuffer buffer, URL baseURL,
+            boolean includeEmbeddedResources) {
+        if (buffer.hasArray()) {
+            return extractLinks(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(),
+                baseURL, includeEmbeddedResources);
+        }
+        else {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            return extractLinks(bytes, 0, bytes.length, baseURL, includeEmbeddedResources);
+        }
+    }
+
+    /**
+     * A hash table from case-insensitive names to their codes. The names are matched against byte regions
+     * without creating Strings.
+     */
+    private static class NameTable {
+
+        private final byte[][] names;
+
+        private final int[] slots;
+
+        private final int maxLength;
+
+        public NameTable(String[] names) {
+            this.names = new byte[names.length][];
+            slots = new int[64];
+            java.util.Arrays.fill(slots, -1);
+
+            int max = 0;
+            for (int code = 0; code < names.length; code++) {
+                byte[] name = toBytes(names[code]);
+                this.names[code] = name;
+                max = Math.max(max, name.length);
+
+                int slot = hash(name, 0, name.length) & (slots.length - 1);
+                while (slots[slot] >= 0) {
+                    slot = (slot + 1) & (slots.length - 1);
+                }
+                slots[slot] = code;
+            }
+            maxLength = max;
+        }
+
+        /**
+         * Returns the code of the name in the specified region, or -1 when it is not in the table.
+         */
+        public int lookup(byte[] bytes, int start, int end) {
+            int length = end - start;
+            if (length > maxLength || length == 0) {
+                return -1;
+            }
+            int slot = hash(bytes, start, end) & (slots.length - 1);
+            while (true) {
+                int code = slots[slot];
+                if (code < 0) {
+                    return -1;
+                }
+                byte[] name = names[code];
+                if (name.length == length) {
+                    int i = 0;
+                    while (i < length && UPPER_CASE[bytes[start + i] & 0xff] == name[i]) {
+                        i++;
+                    }
+                    if (i == length) {
+                        return code;
+                    }
+                }
+                slot = (slot + 1) & (slots.length - 1);
+            }
+        }
+
+        private static int hash(byte[] bytes, int start, int end) {
+            int hash = end - start;
+            for (int i = start; i < end; i++) {
+                hash = hash * 31 + UPPER_CASE[bytes[i] & 0xff];
+            }
+            return hash ^ (hash >>> 7);
+        }
+
+        private static byte[] toBytes(String name) {
+            try {
+                return name.getBytes("ISO-8859-1");
+            }
+            catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * The state of a single scan. The methods mirror those of the Tokenizer: they take the index of the
+     * next byte to process and return the index of the first byte after the processed token, where the end
+     * index means the end of the document.
+     */
+    private static class Scan {
+
+        private byte[] bytes;
+
+        private int end;
+
+        private URL baseURL;
+
+        private boolean includeEmbeddedResources;
+
+        private ArrayList<String> links;
+
+        /** The charset in which link values are decoded */
+        private String linkCharset;
+
+        /** Whether the regions of the text and metadata are collected as well */
+        private boolean analyzing;
+
+        /** The kind, start and end index of every text and metadata region, see HtmlAnalysis */
+        private int[] regions = new int[3 * 256];
+
+        private int regionsSize;
+
+        private boolean inTitle;
+
+        private boolean inScriptOrStyle;
+
+        private boolean inPreformattedText;
+
+        private String metaCharset;
+
+        /** The start and end indices of the last value of every link attribute of the current tag */
+        private final int[] valueStarts = new int[ATTRIBUTE_NAMES.length];
+
+        private final int[] valueEnds = new int[ATTRIBUTE_NAMES.length];
+
+        public ArrayList<String> scan(byte[] bytes, int start, int end, URL baseURL,
+                boolean includeEmbeddedResources, boolean analyzing, Charset linkCharset) {
+            this.bytes = bytes;
+            this.end = end;
+            this.baseURL = baseURL;
+            this.includeEmbeddedResources = includeEmbeddedResources;
+            this.analyzing = analyzing;
+            this.linkCharset = linkCharset.name();
+            links = new ArrayList<String>();
+
+            int i = start;
+            while (i < end) {
+                if (bytes[i] == LESS_THAN) {
+                    i = scanTag(i + 1);
+                }
+                else {
+                    // skip text
+                    int textStart = i;
+                    while (i < end && bytes[i] != LESS_THAN) {
+                        i++;
+                    }
+                    if (analyzing) {
+                        processText(textStart, i);
+                    }
+                }
+            }
+
+            return links;
+        }
+
+        public void reset() {
+            // don't keep the document reachable
+            bytes = null;
+            baseURL = null;
+            links = null;
+            regionsSize = 0;
+            inTitle = false;
+            inScriptOrStyle = false;
+            inPreformattedText = false;
+            metaCharset = null;
+            if (regions.length > 3 * 16384) {
+                // don't hold on to the regions of an exceptionally large document
+                regions = new int[3 * 256];
+            }
+        }
+
+        /**
+         * Returns a copy of the regions collected by the last scan.
+         */
+        public int[] getRegions() {
+            int[] result = new int[regionsSize];
+            System.arraycopy(regions, 0, result, 0, regionsSize);
+            return result;
+        }
+
+        /**
+         * Returns the charset declared by a META tag during the last scan, or null.
+         */
+        public Charset getMetaCharset() {
+            return metaCharset == null ? null : toCharset(metaCharset);
+        }
+
+        private int scanTag(int i) {
+            inTitle = false;
+            if (i < end && bytes[i] == SLASH) {
+                // an end tag
+                int nameStart = i + 1;
+                if (analyzing) {
+                    i = nameStart;
+                    while (i < end && bytes[i] != GREATER_THAN && !WHITESPACE[bytes[i] & 0xff]) {
+                        i++;
+                    }
+                    processEndTag(TAG_TABLE.lookup(bytes, nameStart, i));
+                }
+                int index = indexOf(GREATER_THAN, nameStart);
+                return index < 0 ? end : index + 1;
+            }
+            else if (i < end && bytes[i] == EXCLAMATION) {
+                return scanDocTypeOrComment(i + 1);
+            }
+            else {
+                return scanStartTag(i);
+            }
+        }
+
+        private int scanStartTag(int i) {
+            int nameStart = i;
+            while (i < end && bytes[i] != GREATER_THAN && !WHITESPACE[bytes[i] & 0xff]) {
+                i++;
+            }
+            if (i == end) {
+                return end;
+            }
+
+            int tag = TAG_TABLE.lookup(bytes, nameStart, i);
+            if (tag >= 0) {
+                for (int a = 0; a < valueStarts.length; a++) {
+                    valueStarts[a] = -1;
+                }
+            }
+
+            i = scanAttributes(i, tag);
+
+            if (tag >= 0) {
+                processTag(tag);
+            }
+            return i;
+        }
+
+        private int scanAttributes(int i, int tag) {
+            while (i < end && bytes[i] != GREATER_THAN) {
+                // the name, which is ended by an equals sign
+                i = skipWhitespace(i);
+                int nameStart;
+                int nameEnd;
+                if (i < end && (bytes[i] == DOUBLE_QUOTE || bytes[i] == QUOTE)) {
+                    nameStart = i + 1;
+                    nameEnd = indexOf(bytes[i], nameStart);
+                    if (nameEnd < 0) {
+                        nameEnd = end;
+                        i = end;
+                    }
+                    else {
+                        i = nameEnd + 1;
+                    }
+                }
+                else {
+                    nameStart = i;
+                    while (i < end && bytes[i] != EQUALS && bytes[i] != GREATER_THAN
+                            && !WHITESPACE[bytes[i] & 0xff]) {
+                        i++;
+                    }
+                    nameEnd = i;
+                }
+
+                if (nameEnd > nameStart) {
+                    i = skipWhitespace(i);
+                    if (i < end && bytes[i] == EQUALS) {
+                        // the value, which is not ended by an equals sign
+                        i = skipWhitespace(i + 1);
+                        int valueStart;
+                        int valueEnd;
+                        if (i < end && (bytes[i] == DOUBLE_QUOTE || bytes[i] == QUOTE)) {
+                            valueStart = i + 1;
+                            valueEnd = indexOf(bytes[i], valueStart);
+                            if (valueEnd < 0) {
+                                valueEnd = end;
+                                i = end;
+                            }
+                            else {
+                                i = valueEnd + 1;
+                            }
+                        }
+                        else {
+                            valueStart = i;
+                            while (i < end && bytes[i] != GREATER_THAN && !WHITESPACE[bytes[i] & 0xff]) {
+                                i++;
+                            }
+                            valueEnd = i;
+                        }
+
+                        if (tag >= 0) {
+                            // a later value of the same attribute overrules an earlier one
+                            int attribute = ATTRIBUTE_TABLE.lookup(bytes, nameStart, nameEnd);
+                            if (attribute >= 0) {
+                                valueStarts[attribute] = valueStart;
+                                valueEnds[attribute] = valueEnd;
+                            }
+                        }
+                    }
+                }
+                else if (i < end && bytes[i] == EQUALS) {
+                    // an attribute without name, skip the equals sign
+                    i++;
+                }
+            }
+
+            return i < end ? i + 1 : end;
+        }
+
+        private int scanDocTypeOrComment(int i) {
+            // see whether this is a document type definition
+            int k = 0;
+            while (k < DOCTYPE.length && i + k < end && UPPER_CASE[bytes[i + k] & 0xff] == DOCTYPE[k]) {
+                k++;
+            }
+
+            int p;
+            if (k == DOCTYPE.length) {
+                // skip the name, system id, FPI and URI
+                p = i + k;
+                for (int word = 0; word < 4; word++) {
+                    p = skipWord(p);
+                }
+            }
+            else if (i + k == end) {
+                return end;
+            }
+            else {
+                int first = i + k;
+                if (bytes[first] == GREATER_THAN) {
+                    // the Tokenizer stops reading the document in this case
+                    return end;
+                }
+
+                p = first + 1;
+                if (bytes[first] == MINUS && p < end && bytes[p] == MINUS) {
+                    // a comment, ended by the first two consecutive minus signs
+                    p++;
+                    boolean minusRead = false;
+                    while (p < end) {
+                        if (bytes[p++] == MINUS) {
+                            if (minusRead) {
+                                break;
+                            }
+                            minusRead = true;
+                        }
+                        else {
+                            minusRead = false;
+                        }
+                    }
+                }
+            }
+
+            // skip until '>'
+            int index = indexOf(GREATER_THAN, p);
+            return index < 0 ? end : index + 1;
+        }
+
+        /**
+         * Skips a word of a document type definition: a quoted string or a sequence of characters that are
+         * not whitespace or a '&gt;'.
+         */
+        private int skipWord(int i) {
+            i = skipWhitespace(i);
+            if (i < end && (bytes[i] == DOUBLE_QUOTE || bytes[i] == QUOTE)) {
+                int index = indexOf(bytes[i], i + 1);
+                return index < 0 ? end : index + 1;
+            }
+            else {
+                while (i < end && bytes[i] != GREATER_THAN && !WHITESPACE[bytes[i] & 0xff]) {
+                    i++;
+                }
+                return i;
+            }
+        }
+
+        private int skipWhitespace(int i) {
+            while (i < end && WHITESPACE[bytes[i] & 0xff]) {
+                i++;
+            }
+            return i;
+        }
+
+        private int indexOf(byte b, int i) {
+            while (i < end) {
+                if (bytes[i] == b) {
+                    return i;
+                }
+                i++;
+            }
+            return -1;
+        }
+
+        private String getValue(int attribute) {
+            int start = valueStarts[attribute];
+            if (start < 0) {
+                return null;
+            }
+            try {
+                return new String(bytes, start, valueEnds[attribute] - start, linkCharset);
+            }
+            catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void processTag(int tag) {
+            if (tag == BASE) {
+                String href = getValue(HREF);
+                if (href != null) {
+                    try {
+                        baseURL = new URL(href);
+                    }
+                    catch (MalformedURLException e) {
+                        // ignore
+                    }
+                }
+            }
+            else if (tag == META) {
+                String content = getValue(CONTENT);
+                String httpEquiv = getValue(HTTP_EQUIV);
+                if (content != null && httpEquiv != null && httpEquiv.trim().equalsIgnoreCase("REFRESH")) {
+                    addLink(getRefreshUrl(content));
+                }
+                if (analyzing) {
+                    processMetaTag(content, httpEquiv);
+                }
+            }
+            else if (analyzing && tag >= TITLE) {
+                inTitle = tag == TITLE;
+                inScriptOrStyle |= tag == SCRIPT || tag == STYLE;
+                inPreformattedText |= tag == XMP || tag == PLAINTEXT;
+            }
+            else {
+                int[] attributes = includeEmbeddedResources ? EMBEDDED_ATTRIBUTES[tag]
+                        : NAVIGATION_ATTRIBUTES[tag];
+                for (int a = 0; a < attributes.length; a++) {
+                    String link = getValue(attributes[a]);
+                    if (link != null) {
+                        addLink(link);
+                    }
+                }
+            }
+        }
+
+        private void processEndTag(int tag) {
+            if (tag == SCRIPT || tag == STYLE) {
+                inScriptOrStyle = false;
+            }
+            else if (tag == XMP || tag == PLAINTEXT) {
+                inPreformattedText = false;
+            }
+        }
+
+        private void processText(int start, int end) {
+            if (inTitle) {
+                addRegion(HtmlAnalysis.TITLE, start, end);
+            }
+            if (!inScriptOrStyle) {
+                // whitespace between tags adds nothing to the text
+                int i = start;
+                while (i < end && WHITESPACE[bytes[i] & 0xff]) {
+                    i++;
+                }
+                if (i < end) {
+                    addRegion(inPreformattedText ? HtmlAnalysis.RAW_TEXT : HtmlAnalysis.TEXT, start, end);
+                }
+            }
+        }
+
+        private void processMetaTag(String content, String httpEquiv) {
+            String charset = getValue(CHARSET);
+            if (charset != null) {
+                metaCharset = charset.trim();
+            }
+            else if (content != null && httpEquiv != null
+                    && httpEquiv.trim().equalsIgnoreCase("CONTENT-TYPE")) {
+                // e.g. "text/html; charset=UTF-8"
+                int index = content.toLowerCase().indexOf("charset=");
+                if (index >= 0) {
+                    charset = content.substring(index + 8).trim();
+                    int endIndex = 0;
+                    while (endIndex < charset.length() && charset.charAt(endIndex) != ';'
+                            && charset.charAt(endIndex) != '"' && charset.charAt(endIndex) != '\''
+                            && !Character.isWhitespace(charset.charAt(endIndex))) {
+                        endIndex++;
+                    }
+                    if (endIndex > 0) {
+                        metaCharset = charset.substring(0, endIndex);
+                    }
+                }
+            }
+
+            String name = getValue(NAME);
+            if (name != null && content != null) {
+                name = name.trim();
+                int kind = -1;
+                if (name.equalsIgnoreCase("author")) {
+                    kind = HtmlAnalysis.AUTHOR;
+                }
+                else if (name.equalsIgnoreCase("description")) {
+                    kind = HtmlAnalysis.DESCRIPTION;
+                }
+                else if (name.equalsIgnoreCase("keywords")) {
+                    kind = HtmlAnalysis.KEYWORDS;
+                }
+                if (kind >= 0) {
+                    addRegion(kind, valueStarts[CONTENT], valueEnds[CONTENT]);
+                }
+            }
+        }
+
+        private void addRegion(int kind, int start, int end) {
+            if (regionsSize + 3 > regions.length) {
+                int[] newRegions = new int[regions.length * 2];
+                System.arraycopy(regions, 0, newRegions, 0, regionsSize);
+                regions = newRegions;
+            }
+            regions[regionsSize++] = kind;
+            regions[regionsSize++] = start;
+            regions[regionsSize++] = end;
+        }
+
+        /**
+         * Returns the URL in the content of a META refresh tag, e.g. "5; url=http://example.com/".
+         */
+        private String getRefreshUrl(String content) {
+            String contentInLC = content.toLowerCase();
+
+            int urlIndex = contentInLC.indexOf("url");
+            if (urlIndex != -1) {
+                // URL starts after "url="
+                urlIndex += 3;
+            }
+            int commaIndex = contentInLC.indexOf(',');
+            int semiColonIndex = contentInLC.indexOf(';');
+
+            int maxIndex = Math.max(urlIndex, commaIndex);
+            maxIndex = Math.max(maxIndex, semiColonIndex);
+
+            if (maxIndex != -1) {
+                content = content.substring(maxIndex + 1);
+            }
+            return content;
+        }
+
+        private void addLink(String link) {
+            // resolve entities
+            if (link.indexOf('&') >= 0) {
+                link = EntityResolver.resolveEntities(link);
+            }
+
+            // resolve against base URL (only works for schemes for which a URLStreamHandler is registered)
+            if (baseURL != null) {
+                try {
+                    URL url = new URL(baseURL, link);
+                    link = url.toExternalForm();
+                }
+                catch (MalformedURLException e) {
+                    // ignore
+                }
+            }
+
+            links.add(link);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.mime.identifier.magic;
+
+import org.semanticdesktop.aperture.util.UtfUtil;
+
+/**
+ * The first bytes of a resource, prepared for magic number and magic string matching. The bytes are decoded
+ * into chars on the fly, using the charset indicated by the Byte Order Mark or UTF-8 when there is none, so
+ * that magic strings can be matched without creating a String or a char array.
+ */
+class MagicInput {
+
+    private static final int UTF_8 = 0;
+
+    private static final int UTF_16BE = 1;
+
+    private static final int UTF_16LE = 2;
+
+    private static final int UTF_32BE = 3;
+
+    private static final int UTF_32LE = 4;
+
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+    private final byte[] bytes;
+
+    private final boolean hasBOM;
+
+    private final int encoding;
+
+    /** The position of the first content byte, after the Byte Order Mark */
+    private final int contentStart;
+
+    /** The end of the decoded content, the content length is always even */
+    private final int contentEnd;
+
+    private final int byteWhiteSpaceLength;
+
+    private final int charWhiteSpaceEnd;
+
+    /** The current decoding position */
+    private int position;
+
+    /** The low surrogate that is to be returned by the next call to nextChar, or -1 */
+    private int pendingLowSurrogate;
+
+    MagicInput(byte[] bytes) {
+        this.bytes = bytes;
+
+        byte[] bom = UtfUtil.findMatchingBOM(bytes);
+        hasBOM = bom != null;
+        if (bom == UtfUtil.UTF16BE_BOM) {
+            encoding = UTF_16BE;
+        }
+        else if (bom == UtfUtil.UTF16LE_BOM) {
+            encoding = UTF_16LE;
+        }
+        else if (bom == UtfUtil.UTF32BE_BOM) {
+            encoding = UTF_32BE;
+        }
+        else if (bom == UtfUtil.UTF32LE_BOM) {
+            encoding = UTF_32LE;
+        }
+        else {
+            encoding = UTF_8;
+        }
+
+        // each char consists of two bytes, ignore a trailing odd byte
+        contentStart = hasBOM ? bom.length : 0;
+        contentEnd = contentStart + ((bytes.length - contentStart) & ~1);
+
+        byteWhiteSpaceLength = determineByteWhiteSpaceLength();
+        charWhiteSpaceEnd = determineCharWhiteSpaceEnd();
+    }
+
+    private int determineByteWhiteSpaceLength() {
+        // see MimeTypeDescription.matches(byte[]) for the rationale behind the skipped bytes
+        int result = 0;
+        while (result < bytes.length) {
+            char c = (char) bytes[result];
+            if (Character.isWhitespace(c) || c == '\u0000' || c == '\u00ff' || c == '\u00fe' || c == '\u00ef'
+                    || c == '\u00bb' || c == '\u00bf') {
+                result++;
+            }
+            else {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private int determineCharWhiteSpaceEnd() {
+        reset(contentStart);
+        int end = position;
+        int c;
+        while ((c = nextChar()) >= 0 && Character.isWhitespace((char) c)) {
+            // white space chars are never encoded as surrogate pairs
+            end = position;
+        }
+        return end;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return true if the bytes start with a UTF Byte Order Mark
+     */
+    boolean hasBOM() {
+        return hasBOM;
+    }
+
+    /**
+     * @return the number of leading bytes that are skipped by descriptions that allow leading white space
+     */
+    int getByteWhiteSpaceLength() {
+        return byteWhiteSpaceLength;
+    }
+
+    /**
+     * @return the byte position of the first char
+     */
+    int getCharStart() {
+        return contentStart;
+    }
+
+    /**
+     * @return the byte position of the first char that is not white space
+     */
+    int getCharWhiteSpaceEnd() {
+        return charWhiteSpaceEnd;
+    }
+
+    /**
+     * Continues decoding at the given byte position.
+     */
+    void reset(int position) {
+        this.position = position;
+        this.pendingLowSurrogate = -1;
+    }
+
+    /**
+     * Returns the next decoded char, or -1 when all bytes have been decoded.
+     */
+    int nextChar() {
+        if (pendingLowSurrogate >= 0) {
+            int result = pendingLowSurrogate;
+            pendingLowSurrogate = -1;
+            return result;
+        }
+        if (position >= contentEnd) {
+            return -1;
+        }
+
+        switch (encoding) {
+        case UTF_16BE:
+            position += 2;
+            return ((bytes[position - 2] & 0xff) << 8) | (bytes[position - 1] & 0xff);
+        case UTF_16LE:
+            position += 2;
+            return ((bytes[position - 1] & 0xff) << 8) | (bytes[position - 2] & 0xff);
+        case UTF_32BE:
+        case UTF_32LE:
+            return nextUtf32Char();
+        default:
+            return nextUtf8Char();
+        }
+    }
+
+    private int nextUtf8Char() {
+        int b0 = bytes[position++] & 0xff;
+        if (b0 < 0x80) {
+            return b0;
+        }
+
+        int length;
+        int codePoint;
+        int minimum;
+        if (b0 >= 0xc2 && b0 <= 0xdf) {
+            length = 1;
+            codePoint = b0 & 0x1f;
+            minimum = 0x80;
+        }
+        else if (b0 >= 0xe0 && b0 <= 0xef) {
+            length = 2;
+            codePoint = b0 & 0x0f;
+            minimum = 0x800;
+        }
+        else if (b0 >= 0xf0 && b0 <= 0xf4) {
+            length = 3;
+            codePoint = b0 & 0x07;
+            minimum = 0x10000;
+        }
+        else {
+            return REPLACEMENT_CHAR;
+        }
+
+        if (position + length > contentEnd) {
+            return REPLACEMENT_CHAR;
+        }
+        for (int i = 0; i < length; i++) {
+            int b = bytes[position + i] & 0xff;
+            if ((b & 0xc0) != 0x80) {
+                return REPLACEMENT_CHAR;
+            }
+            codePoint = (codePoint << 6) | (b & 0x3f);
+        }
+        if (codePoint < minimum || codePoint > 0x10ffff || (codePoint >= 0xd800 && codePoint <= 0xdfff)) {
+            return REPLACEMENT_CHAR;
+        }
+
+        position += length;
+        return toChar(codePoint);
+    }
+
+    private int nextUtf32Char() {
+        if (position + 4 > contentEnd) {
+            position = contentEnd;
+            return REPLACEMENT_CHAR;
+        }
+
+        int b0 = bytes[position] & 0xff;
+        int b1 = bytes[position + 1] & 0xff;
+        int b2 = bytes[position + 2] & 0xff;
+        int b3 = bytes[position + 3] & 0xff;
+        position += 4;
+
+        int codePoint;
+        if (encoding == UTF_32BE) {
+            codePoint = (b0 << 24) | (b1 << 16) | (b2 << 8) | b3;
+        }
+        else {
+            codePoint = (b3 << 24) | (b2 << 16) | (b1 << 8) | b0;
+        }
+
+        if (codePoint < 0 || codePoint > 0x10ffff || (codePoint >= 0xd800 && codePoint <= 0xdfff)) {
+            return REPLACEMENT_CHAR;
+        }
+        return toChar(codePoint);
+    }
+
+    private int toChar(int codePoint) {
+        if (codePoint < 0x10000) {
+            return codePoint;
+        }
+        codePoint -= 0x10000;
+        pendingLowSurrogate = 0xdc00 + (codePoint & 0x3ff);
+        return 0xd800 + (codePoint >>> 10);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.mime.identifier.magic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A compiled form of a list of MimeTypeDescriptions. All magic strings and magic numbers are merged into
+ * tries, so that the first matching description can be found in a single pass over the input instead of
+ * testing all descriptions one by one. The result is the same as that of testing the descriptions in list
+ * order: magic strings first, then magic numbers and finally the file extension.
+ */
+class MagicMatcher {
+
+    private MimeTypeDescription[] descriptions;
+
+    /** The matchers for the requiring types of each description, null when there are none */
+    private MagicMatcher[] requiringMatchers;
+
+    /**
+     * Tries of magic strings, indexed by {@link #getStringTrieIndex(boolean, boolean)}.
+     */
+    private MagicTrie[] stringTries = new MagicTrie[4];
+
+    /**
+     * Tries of magic numbers, one for each combination of offset and leading white space handling that occurs.
+     */
+    private MagicTrie[] numberTries;
+
+    private int[] numberOffsets;
+
+    private boolean[] numberSkipsWhiteSpace;
+
+    /** Maps file extensions to the first description that contains it */
+    private HashMap<String, MimeTypeDescription> extensionMap = new HashMap<String, MimeTypeDescription>();
+
+    MagicMatcher(List descriptionList) {
+        int nrDescriptions = descriptionList.size();
+        descriptions = new MimeTypeDescription[nrDescriptions];
+        requiringMatchers = new MagicMatcher[nrDescriptions];
+        for (int i = 0; i < stringTries.length; i++) {
+            stringTries[i] = new MagicTrie();
+        }
+
+        ArrayList<MagicTrie> tries = new ArrayList<MagicTrie>();
+        ArrayList<Integer> offsets = new ArrayList<Integer>();
+        ArrayList<Boolean> skips = new ArrayList<Boolean>();
+
+        for (int i = 0; i < nrDescriptions; i++) {
+            MimeTypeDescription description = (MimeTypeDescription) descriptionList.get(i);
+            descriptions[i] = description;
+            boolean skipWhiteSpace = description.getAllowsLeadingWhiteSpace();
+
+            ArrayList strings = description.getMagicStrings();
+            for (int j = 0; j < strings.size(); j++) {
+                MagicString string = (MagicString) strings.get(j);
+                stringTries[getStringTrieIndex(skipWhiteSpace, string.isCaseSensitive())].add(
+                    string.getMagicChars(), i);
+            }
+
+            ArrayList numbers = description.getMagicNumbers();
+            for (int j = 0; j < numbers.size(); j++) {
+                MagicNumber number = (MagicNumber) numbers.get(j);
+                int trieIndex = 0;
+                while (trieIndex < tries.size()
+                        && (offsets.get(trieIndex).intValue() != number.getOffset() || skips.get(trieIndex)
+                                .booleanValue() != skipWhiteSpace)) {
+                    trieIndex++;
+                }
+                if (trieIndex == tries.size()) {
+                    tries.add(new MagicTrie());
+                    offsets.add(Integer.valueOf(number.getOffset()));
+                    skips.add(Boolean.valueOf(skipWhiteSpace));
+                }
+                tries.get(trieIndex).add(number.getMagicBytes(), i);
+            }
+
+            ArrayList extensions = description.getExtensions();
+            for (int j = 0; j < extensions.size(); j++) {
+                String extension = (String) extensions.get(j);
+                if (!extensionMap.containsKey(extension)) {
+                    extensionMap.put(extension, description);
+                }
+            }
+
+            ArrayList requiringTypes = description.getRequiringTypes();
+            if (!requiringTypes.isEmpty()) {
+                requiringMatchers[i] = new MagicMatcher(requiringTypes);
+            }
+        }
+
+        numberTries = tries.toArray(new MagicTrie[tries.size()]);
+        numberOffsets = new int[offsets.size()];
+        numberSkipsWhiteSpace = new boolean[skips.size()];
+        for (int i = 0; i < numberOffsets.length; i++) {
+            numberOffsets[i] = offsets.get(i).intValue();
+            numberSkipsWhiteSpace[i] = skips.get(i).booleanValue();
+        }
+    }
+
+    private static int getStringTrieIndex(boolean skipWhiteSpace, boolean caseSensitive) {
+        return (skipWhiteSpace ? 2 : 0) + (caseSensitive ? 1 : 0);
+    }
+
+    /**
+     * Returns the MIME type of the first description (or of one of its requiring types) that matches the
+     * specified input or extension.
+     *
+     * @param input the first bytes of the resource, or null when they are not available
+     * @param extension the lower case file extension, or null when it is not known
+     * @return the matching MIME type, or null when no description matches
+     */
+    String identify(MagicInput input, String extension) {
+        if (input != null) {
+            // see if there is a description with a matching magic string
+            int match = MagicTrie.NO_MATCH;
+            for (int i = 0; i < stringTries.length; i++) {
+                MagicTrie trie = stringTries[i];
+                if (!trie.isEmpty()) {
+                    boolean skipWhiteSpace = i >= 2;
+                    boolean caseSensitive = (i & 1) == 1;
+                    int position = skipWhiteSpace ? input.getCharWhiteSpaceEnd() : input.getCharStart();
+                    match = Math.min(match, trie.match(input, position, !caseSensitive));
+                }
+            }
+            if (match != MagicTrie.NO_MATCH) {
+                return getMimeType(match, input, extension);
+            }
+
+            // see if there is a description with a matching magic number
+            byte[] bytes = input.getBytes();
+            int skippedBytes = input.getByteWhiteSpaceLength();
+            for (int i = 0; i < numberTries.length; i++) {
+                int position = numberOffsets[i] + (numberSkipsWhiteSpace[i] ? skippedBytes : 0);
+                match = Math.min(match, numberTries[i].match(bytes, position));
+            }
+            if (match != MagicTrie.NO_MATCH) {
+                return getMimeType(match, input, extension);
+            }
+        }
+
+        // no match based on magic number could be found, now try on file extension
+        if (extension != null) {
+            MimeTypeDescription description = extensionMap.get(extension);
+            if (description != null) {
+                return description.getMimeType();
+            }
+        }
+
+        // we couldn't find any matching mime types
+        return null;
+    }
+
+    private String getMimeType(int match, MagicInput input, String extension) {
+        // see if the matching type is overruled by any of its requiring types
+        String overrulingResult = null;
+        if (requiringMatchers[match] != null) {
+            overrulingResult = requiringMatchers[match].identify(input, extension);
+        }
+        return overrulingResult == null ? descriptions[match].getMimeType() : overrulingResult;
+    }
+}
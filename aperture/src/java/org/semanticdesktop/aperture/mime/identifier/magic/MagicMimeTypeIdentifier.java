@@ -44,6 +44,11 @@ public class MagicMimeTypeIdentifier implements MimeTypeIdentifier {
 
     private ArrayList mimeTypeDescriptions;
 
+    /**
+     * The compiled form of the MimeTypeDescriptions, used for the actual identification.
+     */
+    private MagicMatcher matcher;
+
     private int minArrayLength;
 
     public MagicMimeTypeIdentifier() {
@@ -54,6 +59,7 @@ public class MagicMimeTypeIdentifier implements MimeTypeIdentifier {
         readDescriptions(definitionsResource);
         setRequiringTypes();
         determineMinArrayLength();
+        matcher = new MagicMatcher(mimeTypeDescriptions);
     }
 
     private void readDescriptions(String definitionsResource) {
@@ -379,50 +385,8 @@ public class MagicMimeTypeIdentifier implements MimeTypeIdentifier {
             return null;
         }
         
-        // see if the file is some kind of UTF file
-        char[] firstChars = null;
-        byte[] realBom = null;
-
-        if (firstBytes != null) {
-            realBom = UtfUtil.findMatchingBOM(firstBytes);
-
-            // for the sake of trying to create a String out of chars, we assume UTF-8 when no BOM is found.
-            // Still, we need the actual BOM later on.
-            byte[] tmpBom;
-            int bomLength;
-
-            if (realBom == null) {
-                tmpBom = UtfUtil.UTF8_BOM;
-                bomLength = 0;
-            }
-            else {
-                tmpBom = realBom;
-                bomLength = tmpBom.length;
-            }
-
-            // remove the Byte Order Mark from firstBytes: improves String.toCharArray output and also
-            // improved magic number testing later on, when magic string testing fails. Make sure that
-            // contentLength is an even number (each char consists of two bytes).
-            int contentLength = firstBytes.length - bomLength;
-            if ((contentLength & 1) == 1) {
-                contentLength--;
-            }
-            byte[] contentBytes = new byte[contentLength];
-            System.arraycopy(firstBytes, bomLength, contentBytes, 0, contentLength);
-
-            // create a character representation of the bytes
-            String charset = UtfUtil.getCharsetName(tmpBom);
-            if (charset != null) {
-                try {
-                    String string = new String(contentBytes, charset);
-                    firstChars = string.toCharArray();
-
-                }
-                catch (UnsupportedEncodingException e) {
-                    // ignore, just continue
-                }
-            }
-        }
+        // prepare the bytes for magic string and magic number matching, this decodes chars on demand
+        MagicInput input = firstBytes == null ? null : new MagicInput(firstBytes);
 
         // determine a file name extension that we can use as a fallback if type detection based on
         // content cannot be performed or is incomplete (most notably the MS Office file types)
@@ -448,11 +412,11 @@ public class MagicMimeTypeIdentifier implements MimeTypeIdentifier {
         }
 
         // now traverse the MimeTypeDescription tree to find a matching MIME type
-        String mimeType = identify(firstChars, firstBytes, extension, mimeTypeDescriptions);
+        String mimeType = matcher.identify(input, extension);
 
         // if we could not find a matching description but a UTF BOM was found, the least we know is that it's
         // a textual format
-        if (mimeType == null && realBom != null) {
+        if (mimeType == null && input != null && input.hasBOM()) {
             return "text/plain";
         }
         // if we didn't find a BOM but the first bytes look like readable characters (no control characters),
@@ -479,56 +443,6 @@ public class MagicMimeTypeIdentifier implements MimeTypeIdentifier {
         return result;
     }
 
-    private String identify(char[] firstChars, byte[] firstBytes, String extension, ArrayList descriptions) {
-        if (firstChars != null) {
-            // loop over the specified list of descriptions
-            int nrDescriptions = descriptions.size();
-            for (int i = 0; i < nrDescriptions; i++) {
-                MimeTypeDescription description = (MimeTypeDescription) descriptions.get(i);
-
-                // see if this description has a matching magic string
-                if (description.matches(firstChars)) {
-                    // we found at least one matching mime type.
-                    // see if it is overrules by any of the requiring mime type descriptions
-                    ArrayList requiringTypes = description.getRequiringTypes();
-                    String overrulingResult = identify(firstChars, firstBytes, extension, requiringTypes);
-                    return overrulingResult == null ? description.getMimeType() : overrulingResult;
-                }
-            }
-        }
-
-        // loop over the specified list of descriptions
-        if (firstBytes != null) {
-            int nrDescriptions = descriptions.size();
-            for (int i = 0; i < nrDescriptions; i++) {
-                MimeTypeDescription description = (MimeTypeDescription) descriptions.get(i);
-
-                // see if this description has a matching magic number
-                if (description.matches(firstBytes)) {
-                    // we found at least one matching mime type.
-                    // see if it is overrules by any of the requiring mime type descriptions
-                    ArrayList requiringTypes = description.getRequiringTypes();
-                    String overrulingResult = identify(firstChars, firstBytes, extension, requiringTypes);
-                    return overrulingResult == null ? description.getMimeType() : overrulingResult;
-                }
-            }
-        }
-
-        // no match based on magic number could be found, now try on file extension
-        if (extension != null) {
-            int nrDescriptions = descriptions.size();
-            for (int i = 0; i < nrDescriptions; i++) {
-                MimeTypeDescription description = (MimeTypeDescription) descriptions.get(i);
-                if (description.containsExtension(extension)) {
-                    return description.getMimeType();
-                }
-            }
-        }
-
-        // we couldn't find any matching mime types
-        return null;
-    }
-
     public int getMinArrayLength() {
         return minArrayLength;
     }
@@ -31,6 +31,10 @@ public class MagicString {
         return magicChars;
     }
     
+    public boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+    
     public int getMinimumLength() {
         return magicChars.length;
     }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.mime.identifier.magic;
+
+/**
+ * A trie of magic byte or char sequences. Every sequence is associated with the index of the
+ * MimeTypeDescription it belongs to. Matching walks the input once and returns the lowest index of all
+ * sequences that are a prefix of the input.
+ */
+class MagicTrie {
+
+    /** Returned when none of the sequences matches */
+    static final int NO_MATCH = Integer.MAX_VALUE;
+
+    private Node root = new Node();
+
+    private static class Node {
+
+        private int[] keys = new int[0];
+
+        private Node[] children = new Node[0];
+
+        private int match = NO_MATCH;
+
+        private Node getChild(int key) {
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int middleKey = keys[middle];
+                if (middleKey < key) {
+                    low = middle + 1;
+                }
+                else if (middleKey > key) {
+                    high = middle - 1;
+                }
+                else {
+                    return children[middle];
+                }
+            }
+            return null;
+        }
+
+        private Node addChild(int key) {
+            Node child = getChild(key);
+            if (child != null) {
+                return child;
+            }
+
+            // keep the keys sorted, the trie is only built once
+            int position = 0;
+            while (position < keys.length && keys[position] < key) {
+                position++;
+            }
+
+            int[] newKeys = new int[keys.length + 1];
+            Node[] newChildren = new Node[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, position);
+            System.arraycopy(children, 0, newChildren, 0, position);
+            System.arraycopy(keys, position, newKeys, position + 1, keys.length - position);
+            System.arraycopy(children, position, newChildren, position + 1, keys.length - position);
+
+            child = new Node();
+            newKeys[position] = key;
+            newChildren[position] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+
+    void add(byte[] sequence, int index) {
+        Node node = root;
+        for (int i = 0; i < sequence.length; i++) {
+            node = node.addChild(sequence[i]);
+        }
+        node.match = Math.min(node.match, index);
+    }
+
+    void add(char[] sequence, int index) {
+        Node node = root;
+        for (int i = 0; i < sequence.length; i++) {
+            node = node.addChild(sequence[i]);
+        }
+        node.match = Math.min(node.match, index);
+    }
+
+    boolean isEmpty() {
+        return root.keys.length == 0 && root.match == NO_MATCH;
+    }
+
+    /**
+     * Returns the lowest index of all byte sequences that occur in the given array at the given position.
+     */
+    int match(byte[] bytes, int position) {
+        if (position > bytes.length) {
+            return NO_MATCH;
+        }
+
+        Node node = root;
+        int result = node.match;
+        while (position < bytes.length) {
+            node = node.getChild(bytes[position++]);
+            if (node == null) {
+                break;
+            }
+            result = Math.min(result, node.match);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the lowest index of all char sequences that occur in the given input at the given byte
+     * position.
+     */
+    int match(MagicInput input, int position, boolean lowerCase) {
+        input.reset(position);
+        Node node = root;
+        int result = node.match;
+        int c;
+        while ((c = input.nextChar()) >= 0) {
+            if (lowerCase) {
+                c = Character.toLowerCase((char) c);
+            }
+            node = node.getChild(c);
+            if (node == null) {
+                break;
+            }
+            result = Math.min(result, node.match);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ * 
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.rdf;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.ontoware.rdf2go.model.node.URI;
+
+/**
+ * A FullTextSink receives the full-text of the resource described by an RDFContainer in chunks, as it is
+ * produced by an Extractor. This lets applications such as full-text indexers consume large documents
+ * incrementally, instead of receiving the entire text as a single literal in the RDF model.
+ * 
+ * <p>
+ * A FullTextSink is attached to an RDFContainer with {@link RDFContainer#setFullTextSink(FullTextSink)}.
+ * When an RDFContainer has no FullTextSink, the full-text is stored as a literal in its model.
+ */
+public interface FullTextSink {
+
+    /**
+     * Returns the maximum number of chars that the sink accepts per property of a resource. Any text beyond
+     * this limit is discarded before it reaches the sink.
+     * 
+     * @return the maximum number of chars, or a negative number when there is no limit.
+     */
+    public int getMaxChars();
+
+    /**
+     * Opens a Writer for the full-text of the resource described by the specified RDFContainer. The text is
+     * written in chunks to the returned Writer, which is closed when all text has been written.
+     * 
+     * @param container the RDFContainer describing the resource the text belongs to.
+     * @param property the property that relates the resource to the text, e.g. NIE.plainTextContent.
+     * @return a Writer that accepts the text.
+     * @throws IOException when the sink cannot accept the text.
+     */
+    public Writer openText(RDFContainer container, URI property) throws IOException;
+}
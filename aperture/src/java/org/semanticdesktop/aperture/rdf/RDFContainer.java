@@ -60,6 +60,21 @@ public interface RDFContainer {
      */
     public void dispose();
 
+    /**
+     * Get the FullTextSink that receives the full-text of the described resource.
+     * 
+     * @return The FullTextSink, or null when the full-text is to be stored as a literal in the model.
+     */
+    public FullTextSink getFullTextSink();
+
+    /**
+     * Set the FullTextSink that receives the full-text of the described resource, see
+     * {@link org.semanticdesktop.aperture.extractor.util.FullTextWriter}.
+     * 
+     * @param sink The FullTextSink, or null to store the full-text as a literal in the model.
+     */
+    public void setFullTextSink(FullTextSink sink);
+
     /* Map-oriented methods that automatically take the described URI as subject */
 
     public void put(URI property, String value) throws UpdateException;
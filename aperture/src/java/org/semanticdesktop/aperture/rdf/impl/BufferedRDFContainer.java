@@ -0,0 +1,650 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.rdf.impl;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.ModelFactory;
+import org.ontoware.rdf2go.RDF2Go;
+import org.ontoware.rdf2go.exception.ModelException;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.impl.StatementImpl;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.Literal;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.DatatypeLiteralImpl;
+import org.ontoware.rdf2go.model.node.impl.PlainLiteralImpl;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.ontoware.rdf2go.vocabulary.XSD;
+import org.semanticdesktop.aperture.rdf.FullTextSink;
+import org.semanticdesktop.aperture.rdf.MultipleValuesException;
+import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.rdf.UpdateException;
+import org.semanticdesktop.aperture.rdf.ValueFactory;
+import org.semanticdesktop.aperture.util.DateUtil;
+
+/**
+ * An RDFContainer that keeps its statements in a compact statement buffer instead of a RDF2Go Model.
+ *
+ * <p>
+ * Most DataObjects are described by a dozen or so statements. Creating, opening and indexing a full
+ * in-memory Model for each of them is much more expensive than the statements themselves. A
+ * BufferedRDFContainer stores the subject, predicate and object of each statement in three parallel arrays.
+ * Predicates are interned, so that equal predicates usually share a single URI instance and can mostly
+ * be compared by identity. Literals and URIs are created by a ValueFactory that does not need a Model.
+ *
+ * <p>
+ * A real Model is only created when {@link #getModel()} is invoked, or when a blank node is requested from
+ * the ValueFactory. All buffered statements are then copied to that Model, and from then on this container
+ * behaves exactly like an {@link RDFContainerImpl} wrapping a dedicated Model. A container that grows beyond
+ * a thousand statements is moved to a Model in the same way, as the buffer is searched linearly.
+ *
+ * <p>
+ * The put, add and get methods have the same semantics as those of RDFContainerImpl: the buffer holds a set
+ * of statements, and a MultipleValuesException is thrown by put and get when the described URI has more than
+ * one value for the property.
+ *
+ * <p>
+ * BufferedRDFContainers are not thread-safe.
+ */
+public class BufferedRDFContainer implements RDFContainer {
+
+    /**
+     * The number of statements after which the buffer is replaced by a Model.
+     */
+    private static final int MAX_BUFFERED_STATEMENTS = 1024;
+
+    /**
+     * The number of distinct predicates that are interned. Predicates beyond this number are stored as they
+     * are, so that the table does not grow without bounds when predicates are generated.
+     */
+    private static final int MAX_INTERNED_PREDICATES = 4096;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final ConcurrentHashMap<URI, URI> PREDICATES = new ConcurrentHashMap<URI, URI>();
+
+    /**
+     * The URI that is described in the contents of this BufferedRDFContainer.
+     */
+    private URI describedUri;
+
+    /**
+     * The ModelFactory used to create the Model when it is needed.
+     */
+    private ModelFactory modelFactory;
+
+    private ValueFactory valueFactory;
+
+    /**
+     * The subjects, predicates and objects of the buffered statements. The arrays are null once a Model has
+     * been materialized.
+     */
+    private Resource[] subjects;
+
+    private URI[] predicates;
+
+    private Node[] objects;
+
+    private int size;
+
+    /**
+     * The container wrapping the materialized Model, or null as long as the statements are buffered.
+     */
+    private RDFContainerImpl delegate;
+
+    private boolean disposed;
+
+    private FullTextSink fullTextSink;
+
+    /**
+     * Create a new BufferedRDFContainer that will manage statements concerning the specified URI. A Model
+     * is created by the ModelFactory returned by RDF2Go.getModelFactory when it is needed.
+     *
+     * @param describedUri The URI that typically will serve as subject in most statements.
+     */
+    public BufferedRDFContainer(String describedUri) {
+        this(new URIImpl(describedUri), RDF2Go.getModelFactory());
+    }
+
+    /**
+     * Create a new BufferedRDFContainer that will manage statements concerning the specified URI. A Model
+     * is created by the ModelFactory returned by RDF2Go.getModelFactory when it is needed.
+     *
+     * @param describedUri The URI that typically will serve as subject in most statements.
+     */
+    public BufferedRDFContainer(URI describedUri) {
+        this(describedUri, RDF2Go.getModelFactory());
+    }
+
+    /**
+     * Create a new BufferedRDFContainer that will manage statements concerning the specified URI.
+     *
+     * @param describedUri The URI that typically will serve as subject in most statements.
+     * @param modelFactory The ModelFactory that creates the Model when it is needed.
+     */
+    public BufferedRDFContainer(URI describedUri, ModelFactory modelFactory) {
+        this.describedUri = describedUri;
+        this.modelFactory = modelFactory;
+        this.valueFactory = new BufferedValueFactory();
+        this.subjects = new Resource[INITIAL_CAPACITY];
+        this.predicates = new URI[INITIAL_CAPACITY];
+        this.objects = new Node[INITIAL_CAPACITY];
+    }
+
+    public URI getDescribedUri() {
+        return describedUri;
+    }
+
+    /**
+     * Returns the Model holding the statements of this container. The first invocation of this method
+     * creates and opens the Model and copies all buffered statements into it.
+     */
+    public Model getModel() {
+        checkState();
+        return materialize().getModel();
+    }
+
+    /**
+     * Returns whether the statements of this container have been copied to a Model.
+     */
+    public boolean isMaterialized() {
+        return delegate != null;
+    }
+
+    /**
+     * Returns the number of statements held by this container.
+     */
+    public int size() {
+        checkState();
+        if (delegate != null) {
+            return (int) delegate.getModel().size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns a copy of all statements held by this container. Unlike iterating over the statements of
+     * {@link #getModel()}, this does not create a Model when the statements are still buffered.
+     *
+     * @return a List of Statements.
+     */
+    public List<Statement> getStatements() {
+        checkState();
+        ArrayList<Statement> result;
+        if (delegate != null) {
+            result = new ArrayList<Statement>();
+            ClosableIterator<? extends Statement> iterator = delegate.getModel().iterator();
+            try {
+                while (iterator.hasNext()) {
+                    result.add(iterator.next());
+                }
+            }
+            finally {
+                iterator.close();
+            }
+        }
+        else {
+            result = new ArrayList<Statement>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(new StatementImpl(null, subjects[i], predicates[i], objects[i]));
+            }
+        }
+        return result;
+    }
+
+    public void put(URI property, String value) {
+        put(property, (Node) new PlainLiteralImpl(value));
+    }
+
+    public void put(URI property, Date value) {
+        put(property, (Node) new DatatypeLiteralImpl(DateUtil.dateTime2String(value), XSD._dateTime));
+    }
+
+    public void put(URI property, Calendar value) {
+        put(property, value.getTime());
+    }
+
+    public void put(URI property, boolean value) {
+        put(property, (Node) new DatatypeLiteralImpl(String.valueOf(value), XSD._boolean));
+    }
+
+    public void put(URI property, int value) {
+        put(property, (Node) new DatatypeLiteralImpl(String.valueOf(value), XSD._integer));
+    }
+
+    public void put(URI property, long value) {
+        put(property, (Node) new DatatypeLiteralImpl(String.valueOf(value), XSD._long));
+    }
+
+    public void put(URI property, Node value) {
+        checkState();
+        if (delegate != null) {
+            delegate.put(property, value);
+            return;
+        }
+
+        URI predicate = intern(property);
+        int index = findSingle(describedUri, predicate);
+        if (index >= 0) {
+            removeAt(index);
+        }
+        addInternal(describedUri, predicate, value);
+    }
+
+    public void add(URI property, String value) {
+        add(property, (Node) new PlainLiteralImpl(value));
+    }
+
+    public void add(URI property, Date value) {
+        add(property, (Node) new DatatypeLiteralImpl(DateUtil.dateTime2String(value), XSD._dateTime));
+    }
+
+    public void add(URI property, Calendar value) {
+        add(property, value.getTime());
+    }
+
+    public void add(URI property, boolean value) {
+        add(property, (Node) new DatatypeLiteralImpl(String.valueOf(value), XSD._boolean));
+    }
+
+    public void add(URI property, int value) {
+        add(property, (Node) new DatatypeLiteralImpl(String.valueOf(value), XSD._integer));
+    }
+
+    public void add(URI property, long value) {
+        add(property, (Node) new DatatypeLiteralImpl(String.valueOf(value), XSD._long));
+    }
+
+    public void add(URI property, Node value) {
+        checkState();
+        if (delegate != null) {
+            delegate.add(property, value);
+        }
+        else {
+            addInternal(describedUri, intern(property), value);
+        }
+    }
+
+    public String getString(URI property) {
+        Node node = getNode(property);
+        if (node instanceof Literal) {
+            return ((Literal) node).getValue();
+        }
+        else {
+            return null;
+        }
+    }
+
+    public Date getDate(URI property) {
+        String value = getString(property);
+        if (value == null) {
+            return null;
+        }
+        else {
+            try {
+                return DateUtil.string2DateTime(value);
+            }
+            catch (ParseException e) {
+                // illegal date: interpret as no date available
+                return null;
+            }
+        }
+    }
+
+    public Calendar getCalendar(URI property) {
+        Date date = getDate(property);
+        if (date == null) {
+            return null;
+        }
+        else {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTime(date);
+            return calendar;
+        }
+    }
+
+    public Boolean getBoolean(URI property) {
+        String value = getString(property);
+        if (value == null) {
+            return null;
+        }
+        else {
+            return Boolean.valueOf(value);
+        }
+    }
+
+    public Integer getInteger(URI property) {
+        String value = getString(property);
+        if (value == null) {
+            return null;
+        }
+        else {
+            try {
+                return Integer.valueOf(value);
+            }
+            catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    public Long getLong(URI property) {
+        String value = getString(property);
+        if (value == null) {
+            return null;
+        }
+        else {
+            try {
+                return Long.valueOf(value);
+            }
+            catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    public URI getURI(URI property) {
+        Node node = getNode(property);
+        if (node instanceof URI) {
+            return node.asURI();
+        }
+        else {
+            return null;
+        }
+    }
+
+    public Node getNode(URI property) {
+        checkState();
+        if (delegate != null) {
+            return delegate.getNode(property);
+        }
+        int index = findSingle(describedUri, intern(property));
+        return index < 0 ? null : objects[index];
+    }
+
+    public void remove(URI property) {
+        checkState();
+        if (delegate != null) {
+            delegate.remove(property);
+            return;
+        }
+        // note: this also throws a MultipleValueException when there are multiple values
+        int index = findSingle(describedUri, intern(property));
+        if (index >= 0) {
+            removeAt(index);
+        }
+    }
+
+    public Collection getAll(URI property) {
+        checkState();
+        if (delegate != null) {
+            return delegate.getAll(property);
+        }
+        URI predicate = intern(property);
+        ArrayList<Node> result = new ArrayList<Node>();
+        for (int i = 0; i < size; i++) {
+            if (samePredicate(predicates[i], predicate) && describedUri.equals(subjects[i])) {
+                result.add(objects[i]);
+            }
+        }
+        return result;
+    }
+
+    public void add(Statement statement) {
+        checkState();
+        if (delegate != null) {
+            delegate.add(statement);
+        }
+        else {
+            addInternal(statement.getSubject(), intern(statement.getPredicate()), statement.getObject());
+        }
+    }
+
+    public void remove(Statement statement) {
+        checkState();
+        if (delegate != null) {
+            delegate.remove(statement);
+            return;
+        }
+        int index = indexOf(statement.getSubject(), intern(statement.getPredicate()), statement.getObject());
+        if (index >= 0) {
+            removeAt(index);
+        }
+    }
+
+    public ValueFactory getValueFactory() {
+        checkState();
+        return valueFactory;
+    }
+
+    /**
+     * Disposes this BufferedRDFContainer. When a Model has been created, it is closed. Results of invoking
+     * any methods after disposal is undefined.
+     */
+    public void dispose() {
+        disposed = true;
+        if (delegate != null) {
+            delegate.dispose();
+        }
+        subjects = null;
+        predicates = null;
+        objects = null;
+        size = 0;
+    }
+
+    /**
+     * Returns whether this BufferedRDFContainer has been disposed.
+     */
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    public FullTextSink getFullTextSink() {
+        return fullTextSink;
+    }
+
+    public void setFullTextSink(FullTextSink sink) {
+        this.fullTextSink = sink;
+        if (delegate != null) {
+            delegate.setFullTextSink(sink);
+        }
+    }
+
+    private void addInternal(Resource subject, URI predicate, Node object) {
+        if (indexOf(subject, predicate, object) >= 0) {
+            // the buffer holds a set of statements, just like a Model
+            return;
+        }
+
+        if (size == MAX_BUFFERED_STATEMENTS) {
+            materialize().add(new StatementImpl(null, subject, predicate, object));
+            return;
+        }
+
+        if (size == subjects.length) {
+            int capacity = Math.min(size * 2, MAX_BUFFERED_STATEMENTS);
+            Resource[] newSubjects = new Resource[capacity];
+            URI[] newPredicates = new URI[capacity];
+            Node[] newObjects = new Node[capacity];
+            System.arraycopy(subjects, 0, newSubjects, 0, size);
+            System.arraycopy(predicates, 0, newPredicates, 0, size);
+            System.arraycopy(objects, 0, newObjects, 0, size);
+            subjects = newSubjects;
+            predicates = newPredicates;
+            objects = newObjects;
+        }
+
+        subjects[size] = subject;
+        predicates[size] = predicate;
+        objects[size] = object;
+        size++;
+    }
+
+    private void removeAt(int index) {
+        int tail = size - index - 1;
+        if (tail > 0) {
+            System.arraycopy(subjects, index + 1, subjects, index, tail);
+            System.arraycopy(predicates, index + 1, predicates, index, tail);
+            System.arraycopy(objects, index + 1, objects, index, tail);
+        }
+        size--;
+        subjects[size] = null;
+        predicates[size] = null;
+        objects[size] = null;
+    }
+
+    private int indexOf(Resource subject, URI predicate, Node object) {
+        for (int i = 0; i < size; i++) {
+            if (samePredicate(predicates[i], predicate) && subject.equals(subjects[i]) && object.equals(objects[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the single statement with the specified subject and predicate, or -1 when there
+     * is no such statement.
+     *
+     * @throws MultipleValuesException when there is more than one such statement.
+     */
+    private int findSingle(Resource subject, URI predicate) throws MultipleValuesException {
+        int result = -1;
+        for (int i = 0; i < size; i++) {
+            if (samePredicate(predicates[i], predicate) && subject.equals(subjects[i])) {
+                if (result >= 0) {
+                    throw new MultipleValuesException(describedUri, predicate);
+                }
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    private RDFContainerImpl materialize() {
+        if (delegate == null) {
+            Model model;
+            try {
+                model = modelFactory.createModel();
+                model.open();
+                for (int i = 0; i < size; i++) {
+                    model.addStatement(subjects[i], predicates[i], objects[i]);
+                }
+            }
+            catch (ModelRuntimeException e) {
+                throw new UpdateException("cannot create model", e);
+            }
+
+            delegate = new RDFContainerImpl(model, describedUri);
+            delegate.setFullTextSink(fullTextSink);
+
+            subjects = null;
+            predicates = null;
+            objects = null;
+            size = 0;
+        }
+        return delegate;
+    }
+
+    /**
+     * Predicates beyond the interned ones are not shared, equal instances are then compared with equals().
+     */
+    private static boolean samePredicate(URI stored, URI predicate) {
+        return stored == predicate || stored.equals(predicate);
+    }
+
+    private static URI intern(URI predicate) {
+        URI result = PREDICATES.get(predicate);
+        if (result == null) {
+            if (PREDICATES.size() >= MAX_INTERNED_PREDICATES) {
+                return predicate;
+            }
+            result = PREDICATES.putIfAbsent(predicate, predicate);
+            if (result == null) {
+                result = predicate;
+            }
+        }
+        return result;
+    }
+
+    private void checkState() {
+        if (disposed) {
+            throw new IllegalStateException("Trying to perform an operation after disposal");
+        }
+    }
+
+    /**
+     * A ValueFactory that creates RDF2Go datatypes without a Model. Only blank nodes need a Model, as their
+     * identity is defined by the store they live in.
+     */
+    private class BufferedValueFactory implements ValueFactory {
+
+        public URI createURI(String uri) throws ModelException {
+            return new URIImpl(uri);
+        }
+
+        public URI createURI(String namespaceUri, String localName) throws ModelException {
+            return createURI(namespaceUri + "#" + localName);
+        }
+
+        public BlankNode createBlankNode() {
+            return getModel().createBlankNode();
+        }
+
+        public Literal createLiteral(String label) throws ModelException {
+            return new PlainLiteralImpl(label);
+        }
+
+        public Literal createLiteral(String label, URI datatype) throws ModelException {
+            return new DatatypeLiteralImpl(label, datatype);
+        }
+
+        public Literal createLiteral(boolean value) throws ModelException {
+            return new DatatypeLiteralImpl(String.valueOf(value), XSD._boolean);
+        }
+
+        public Literal createLiteral(long value) throws ModelException {
+            return new DatatypeLiteralImpl(String.valueOf(value), XSD._long);
+        }
+
+        public Literal createLiteral(int value) throws ModelException {
+            return new DatatypeLiteralImpl(String.valueOf(value), XSD._integer);
+        }
+
+        public Literal createLiteral(short value) throws ModelException {
+            return new DatatypeLiteralImpl(String.valueOf(value), XSD._short);
+        }
+
+        public Literal createLiteral(byte value) throws ModelException {
+            return new DatatypeLiteralImpl(String.valueOf(value), XSD._byte);
+        }
+
+        public Literal createLiteral(double value) throws ModelException {
+            return new DatatypeLiteralImpl(String.valueOf(value), XSD._double);
+        }
+
+        public Literal createLiteral(float value) throws ModelException {
+            return new DatatypeLiteralImpl(String.valueOf(value), XSD._float);
+        }
+
+        public Statement createStatement(Resource subject, URI predicate, Node object) {
+            return new StatementImpl(null, subject, predicate, object);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ * 
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.rdf.impl;
+
+import org.ontoware.rdf2go.ModelFactory;
+import org.ontoware.rdf2go.RDF2Go;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.semanticdesktop.aperture.rdf.FullTextSink;
+import org.semanticdesktop.aperture.rdf.RDFContainerFactory;
+
+/**
+ * Creates BufferedRDFContainer instances. Models are only created for the containers whose Model is actually
+ * requested, using the ModelFactory returned by RDF2Go.getModelFactory.
+ */
+public class BufferedRDFContainerFactory implements RDFContainerFactory,
+        org.semanticdesktop.aperture.accessor.RDFContainerFactory {
+
+    private ModelFactory factory;
+
+    private FullTextSink fullTextSink;
+
+    public BufferedRDFContainerFactory() {
+        factory = RDF2Go.getModelFactory();
+    }
+
+    /**
+     * Sets the FullTextSink that is attached to all RDFContainers created by this factory.
+     * 
+     * @param sink the FullTextSink, or null to store the full-text as a literal in the RDFContainers.
+     */
+    public void setFullTextSink(FullTextSink sink) {
+        this.fullTextSink = sink;
+    }
+
+    /**
+     * Returns the FullTextSink that is attached to all RDFContainers created by this factory.
+     */
+    public FullTextSink getFullTextSink() {
+        return fullTextSink;
+    }
+
+    public BufferedRDFContainer newInstance(String uri) {
+        return newInstance(new URIImpl(uri));
+    }
+
+    public BufferedRDFContainer newInstance(URI uri) {
+        BufferedRDFContainer container = new BufferedRDFContainer(uri, factory);
+        container.setFullTextSink(fullTextSink);
+        return container;
+    }
+
+    public BufferedRDFContainer getRDFContainer(URI uri) {
+        return newInstance(uri);
+    }
+}
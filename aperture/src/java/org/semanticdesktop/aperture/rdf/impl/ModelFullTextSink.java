@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ * 
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.rdf.impl;
+
+import java.io.Writer;
+
+import org.ontoware.rdf2go.model.node.URI;
+import org.semanticdesktop.aperture.rdf.FullTextSink;
+import org.semanticdesktop.aperture.rdf.RDFContainer;
+
+/**
+ * A FullTextSink that collects the full-text and stores it as a single literal in the RDFContainer once it
+ * is complete. This is what happens to the full-text of RDFContainers that have no FullTextSink. Attaching a
+ * ModelFullTextSink to an RDFContainer is useful to cap the length of the stored full-text.
+ */
+public class ModelFullTextSink implements FullTextSink {
+
+    private int maxChars;
+
+    /**
+     * Creates a ModelFullTextSink that stores the full-text without a limit on its length.
+     */
+    public ModelFullTextSink() {
+        this(-1);
+    }
+
+    /**
+     * Creates a ModelFullTextSink that stores at most the specified number of chars.
+     * 
+     * @param maxChars the maximum number of chars, or a negative number when there is no limit.
+     */
+    public ModelFullTextSink(int maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    public int getMaxChars() {
+        return maxChars;
+    }
+
+    public Writer openText(RDFContainer container, URI property) {
+        return new LiteralWriter(container, property);
+    }
+
+    private static class LiteralWriter extends Writer {
+
+        private RDFContainer container;
+
+        private URI property;
+
+        private StringBuilder buffer = new StringBuilder(1024);
+
+        public LiteralWriter(RDFContainer container, URI property) {
+            this.container = container;
+            this.property = property;
+        }
+
+        public void write(char[] chars, int offset, int length) {
+            buffer.append(chars, offset, length);
+        }
+
+        public void write(String string, int offset, int length) {
+            buffer.append(string, offset, offset + length);
+        }
+
+        public void flush() {
+            // nothing to flush, the literal is added when the writer is closed
+        }
+
+        public void close() {
+            if (buffer != null) {
+                if (buffer.length() > 0) {
+                    container.add(property, buffer.toString());
+                }
+                buffer = null;
+            }
+        }
+    }
+}
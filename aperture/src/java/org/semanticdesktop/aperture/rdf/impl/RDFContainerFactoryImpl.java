@@ -11,6 +11,7 @@ import org.ontoware.rdf2go.RDF2Go;
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.node.URI;
+import org.semanticdesktop.aperture.rdf.FullTextSink;
 import org.semanticdesktop.aperture.rdf.RDFContainerFactory;
 
 /**
@@ -22,15 +23,36 @@ public class RDFContainerFactoryImpl implements RDFContainerFactory,
 
     private ModelFactory factory;
 
+    private FullTextSink fullTextSink;
+
     public RDFContainerFactoryImpl() {
         factory = RDF2Go.getModelFactory();
     }
 
+    /**
+     * Sets the FullTextSink that is attached to all RDFContainers created by this factory.
+     * 
+     * @param sink the FullTextSink, or null to store the full-text as a literal in the model of the
+     *            RDFContainers.
+     */
+    public void setFullTextSink(FullTextSink sink) {
+        this.fullTextSink = sink;
+    }
+
+    /**
+     * Returns the FullTextSink that is attached to all RDFContainers created by this factory.
+     */
+    public FullTextSink getFullTextSink() {
+        return fullTextSink;
+    }
+
     public RDFContainerImpl newInstance(String uri) {
         try {
             Model newModel = factory.createModel();
             newModel.open();
-            return new RDFContainerImpl(newModel, uri);
+            RDFContainerImpl container = new RDFContainerImpl(newModel, uri);
+            container.setFullTextSink(fullTextSink);
+            return container;
         }
         catch (ModelRuntimeException me) {
             throw new RuntimeException(me);
@@ -41,7 +63,9 @@ public class RDFContainerFactoryImpl implements RDFContainerFactory,
         try {
             Model newModel = factory.createModel();
             newModel.open();
-            return new RDFContainerImpl(newModel, uri);
+            RDFContainerImpl container = new RDFContainerImpl(newModel, uri);
+            container.setFullTextSink(fullTextSink);
+            return container;
         }
         catch (ModelRuntimeException me) {
             throw new RuntimeException(me);
@@ -22,6 +22,7 @@ import org.ontoware.rdf2go.model.node.Node;
 import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.model.node.Variable;
 import org.ontoware.rdf2go.vocabulary.XSD;
+import org.semanticdesktop.aperture.rdf.FullTextSink;
 import org.semanticdesktop.aperture.rdf.MultipleValuesException;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 import org.semanticdesktop.aperture.rdf.UpdateException;
@@ -69,6 +70,11 @@ public class RDFContainerImpl implements RDFContainer {
      */
     private boolean disposed;
 
+    /**
+     * The FullTextSink that receives the full-text of the described resource, if any.
+     */
+    private FullTextSink fullTextSink;
+
     /**
      * Create a new RDFContainerImpl that will manage statements concerning the specified URI.
      * 
@@ -523,6 +529,20 @@ public class RDFContainerImpl implements RDFContainer {
         return disposed;
     }
 
+    /**
+     * Returns the FullTextSink that receives the full-text of the described resource, or null.
+     */
+    public FullTextSink getFullTextSink() {
+        return fullTextSink;
+    }
+
+    /**
+     * Sets the FullTextSink that receives the full-text of the described resource.
+     */
+    public void setFullTextSink(FullTextSink sink) {
+        this.fullTextSink = sink;
+    }
+
     /**
      * Returns whether the wrapped Model is shared with other RDFContainerImpls.
      */
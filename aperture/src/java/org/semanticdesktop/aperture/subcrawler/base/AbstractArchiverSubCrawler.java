@@ -93,6 +93,23 @@ public abstract class AbstractArchiverSubCrawler extends AbstractSubCrawler {
      * @return and ArchiveInputStream encapsulating the given compressed stream 
      */
     protected abstract ArchiveInputStream getArchiveInputStream(InputStream compressedStream);
+
+    /**
+     * Returns an ArchiveInputStream in which the entry with the given path is to be looked for. The default
+     * implementation returns the stream with all entries of the archive, which are then read one by one
+     * until the entry is found. Archive formats that allow it may override this method to return a stream
+     * with only the entry with the given path, e.g. when the compressed stream gives access to a file in
+     * which the entry can be looked up directly.
+     * 
+     * @param compressedStream the stream with the compressed archive data
+     * @param path the path of the entry within the archive, without the leading slash
+     * @return an ArchiveInputStream that contains the entry with the given path if the archive contains it
+     * @throws IOException if the archive could not be opened
+     */
+    protected ArchiveInputStream getArchiveInputStream(InputStream compressedStream, String path)
+            throws IOException {
+        return getArchiveInputStream(compressedStream);
+    }
     
     /**
      * @see SubCrawler#subCrawl(URI, InputStream, SubCrawlerHandler, DataSource, AccessData, Charset, String, RDFContainer)
@@ -141,7 +158,7 @@ public abstract class AbstractArchiverSubCrawler extends AbstractSubCrawler {
         
         ArchiveInputStream archiveStream = null;
         try {
-            archiveStream = getArchiveInputStream(stream);
+            archiveStream = getArchiveInputStream(stream, path.startsWith("/") ? path.substring(1) : path);
             ArchiveEntry archiveEntry = null;
             DataObject result = null;
             while ((archiveEntry = archiveStream.getNextEntry()) != null) {
@@ -161,6 +178,9 @@ public abstract class AbstractArchiverSubCrawler extends AbstractSubCrawler {
                 return result;
             }
         }
+        catch (PathNotFoundException e) {
+            throw e;
+        }
         catch (Exception e) {
             throw new SubCrawlerException(e);
         } 
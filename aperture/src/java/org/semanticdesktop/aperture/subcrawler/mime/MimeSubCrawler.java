@@ -35,6 +35,7 @@ import org.semanticdesktop.aperture.crawler.mail.AbstractJavaMailCrawler;
 import org.semanticdesktop.aperture.crawler.mail.DataObjectFactory;
 import org.semanticdesktop.aperture.crawler.mail.MailUtil;
 import org.semanticdesktop.aperture.datasource.DataSource;
+import org.semanticdesktop.aperture.rdf.FullTextSink;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 import org.semanticdesktop.aperture.rdf.UpdateException;
 import org.semanticdesktop.aperture.rdf.ValueFactory;
@@ -262,6 +263,12 @@ public class MimeSubCrawler extends AbstractSubCrawler implements DataObjectFact
         public void dispose() {
             /* ignore the call to dispose */
         }
+        public FullTextSink getFullTextSink() {
+            return wrappedContainer.getFullTextSink();
+        }
+        public void setFullTextSink(FullTextSink sink) {
+            wrappedContainer.setFullTextSink(sink);
+        }
         @SuppressWarnings("unchecked")
         public Collection getAll(URI property) {
             return wrappedContainer.getAll(property);
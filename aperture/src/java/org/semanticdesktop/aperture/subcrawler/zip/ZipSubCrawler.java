@@ -6,12 +6,16 @@
  */
 package org.semanticdesktop.aperture.subcrawler.zip;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import org.semanticdesktop.aperture.subcrawler.base.AbstractArchiverSubCrawler;
+import org.semanticdesktop.aperture.util.ExposedFileInputStream;
 
 /**
  * A SubCrawler Implementation working with ZIP archives.
@@ -33,6 +37,44 @@ public class ZipSubCrawler extends AbstractArchiverSubCrawler {
         @Override public void closeEntry() throws IOException { ((ZipInputStream)in).closeEntry(); }        
     }
     
+    /**
+     * An ArchiveInputStream with a single entry of a {@link ZipFile}, which is looked up in the central
+     * directory of the file instead of reading all entries before it. Closing the stream closes the ZipFile.
+     */
+    protected static class ZipFileEntryInputStream extends AbstractArchiverSubCrawler.ArchiveInputStream {
+
+        private ZipFile zipFile;
+
+        private ZipEntry entry;
+
+        /** Constructs a ZipFileEntryInputStream
+         *  @param zipFile the ZipFile containing the entry
+         *  @param entry the entry, or null if the ZipFile does not contain the requested entry
+         *  @throws IOException if the content of the entry could not be opened */
+        public ZipFileEntryInputStream(ZipFile zipFile, ZipEntry entry) throws IOException {
+            super(entry == null ? new ByteArrayInputStream(new byte[0]) : zipFile.getInputStream(entry));
+            this.zipFile = zipFile;
+            this.entry = entry;
+        }
+
+        @Override public ArchiveEntry getNextEntry() {
+            ZipEntry result = entry;
+            entry = null;
+            return (result == null) ? null : new ZipSubCrawlerEntry(result);
+        }
+
+        @Override public void closeEntry() { /* there is only one entry */ }
+
+        @Override public void close() throws IOException {
+            try {
+                super.close();
+            }
+            finally {
+                zipFile.close();
+            }
+        }
+    }
+
     /** An ArchiveEntry encapsulating a {@link ZipEntry}*/
     protected static class ZipSubCrawlerEntry extends AbstractArchiverSubCrawler.ArchiveEntry {
         private ZipEntry entry;
@@ -52,6 +94,30 @@ public class ZipSubCrawler extends AbstractArchiverSubCrawler {
         return new ZipSubCrawlerInputStream(in);
     }
 
+    /**
+     * Looks up the entry in the central directory when the stream is an {@link ExposedFileInputStream} on
+     * the whole zip file, so that only the bytes of that entry are read.
+     */
+    @Override
+    protected ArchiveInputStream getArchiveInputStream(InputStream in, String path) throws IOException {
+        File file = ExposedFileInputStream.getEntireFile(in);
+        if (file == null) {
+            return getArchiveInputStream(in);
+        }
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            ArchiveInputStream result = new ZipFileEntryInputStream(zipFile, zipFile.getEntry(path));
+            // from now on the ZipFile is closed along with the returned stream
+            zipFile = null;
+            return result;
+        }
+        finally {
+            if (zipFile != null) {
+                zipFile.close();
+            }
+        }
+    }
+
     @Override
     public String getUriPrefix() {
         return ZipSubCrawlerFactory.ZIP_URI_PREFIX;
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A ByteArrayInputStream that gives access to its buffer, so that code that knows about this class can
+ * process the remaining bytes in place rather than copying them out of the stream.
+ */
+public class ExposedByteArrayInputStream extends ByteArrayInputStream {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * The largest buffer that is allocated based on the size hint alone. Size hints often come from a server,
+     * a bogus one must not cause a huge allocation before any data has arrived.
+     */
+    private static final int MAX_INITIAL_BUFFER_SIZE = 1024 * 1024;
+
+    private volatile Object attachment;
+
+    public ExposedByteArrayInputStream(byte[] buffer) {
+        super(buffer);
+    }
+
+    public ExposedByteArrayInputStream(byte[] buffer, int offset, int length) {
+        super(buffer, offset, length);
+    }
+
+    /**
+     * Returns the buffer of this stream. The bytes that have not been read yet are the bytes from
+     * {@link #getPosition()} up to {@link #getCount()}.
+     */
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * Returns the index of the next byte to read from the buffer.
+     */
+    public synchronized int getPosition() {
+        return pos;
+    }
+
+    /**
+     * Returns the index one greater than the last valid byte in the buffer.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the object attached to this stream, or null.
+     */
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    /**
+     * Attaches an object to this stream, typically a result derived from its bytes that the next component
+     * processing the stream can reuse instead of deriving it again. The object replaces any object that was
+     * attached before.
+     */
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    /**
+     * Reads all bytes from the supplied stream. Unlike {@link IOUtil#readBytes(InputStream)}, the bytes are
+     * not copied to an array of the exact size: the resulting stream uses the buffer they were read into.
+     *
+     * @param in the stream to read, it is not closed
+     * @param sizeHint the expected number of bytes, or a value smaller than one when unknown. The initial
+     *            buffer is never larger than 1 MB, it grows as more data arrives
+     * @return a stream on the bytes that were read
+     * @throws IOException when reading the stream failed
+     */
+    public static ExposedByteArrayInputStream readFully(InputStream in, int sizeHint) throws IOException {
+        // one more than the hint, so that reaching the end does not require a larger buffer
+        byte[] buffer = new byte[sizeHint > 0 ? Math.min(sizeHint, MAX_INITIAL_BUFFER_SIZE - 1) + 1
+                : DEFAULT_BUFFER_SIZE];
+        int count = 0;
+        while (true) {
+            if (count == buffer.length) {
+                byte[] newBuffer = new byte[Math.max(buffer.length * 2, DEFAULT_BUFFER_SIZE)];
+                System.arraycopy(buffer, 0, newBuffer, 0, count);
+                buffer = newBuffer;
+            }
+            int bytesRead = in.read(buffer, count, buffer.length - count);
+            if (bytesRead < 0) {
+                break;
+            }
+            count += bytesRead;
+        }
+        return new ExposedByteArrayInputStream(buffer, 0, count);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * A buffered stream on a file that gives access to that file, so that code that knows about this class can
+ * access the file randomly rather than reading the stream from start to end. A zip archive for example can
+ * be opened with a java.util.zip.ZipFile, which reads the central directory and then only the entries that
+ * are needed.
+ */
+public class ExposedFileInputStream extends BufferedInputStream {
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    public ExposedFileInputStream(File file) throws FileNotFoundException {
+        this(file, new FileInputStream(file));
+    }
+
+    private ExposedFileInputStream(File file, FileInputStream in) {
+        super(in);
+        this.file = file;
+        this.channel = in.getChannel();
+    }
+
+    /**
+     * Returns the file this stream reads.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the position in the file of the next byte to read from this stream.
+     *
+     * @throws IOException when the stream has been closed
+     */
+    public synchronized long getPosition() throws IOException {
+        if (buf == null) {
+            throw new IOException("Stream closed");
+        }
+        return channel.position() - (count - pos);
+    }
+
+    /**
+     * Returns the file of the specified stream when the stream is an ExposedFileInputStream that is
+     * positioned at the start of the file, i.e. when the remaining bytes of the stream are the entire file.
+     *
+     * @param stream the stream to check
+     * @return the file, or null when the stream does not read an entire file
+     */
+    public static File getEntireFile(InputStream stream) {
+        if (stream instanceof ExposedFileInputStream) {
+            ExposedFileInputStream fileStream = (ExposedFileInputStream) stream;
+            try {
+                if (fileStream.getPosition() == 0) {
+                    return fileStream.getFile();
+                }
+            }
+            catch (IOException e) {
+                // the stream has been closed, it does not give access to anything
+            }
+        }
+        return null;
+    }
+}
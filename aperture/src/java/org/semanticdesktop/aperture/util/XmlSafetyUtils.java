@@ -303,15 +303,18 @@ public class XmlSafetyUtils {
      * @return an XML-safe version of the given RDFContainer.
      */
     public static RDFContainer wrapXmlSafeRDFContainer(RDFContainer container) {
+        RDFContainer result;
         if (container instanceof XmlSafeRDFContainer) {
             return container;
         } else if (container instanceof RDFContainerImpl) {
-            return new XmlSafeRDFContainer(container.getModel(), 
+            result = new XmlSafeRDFContainer(container.getModel(), 
                 container.getDescribedUri(), ((RDFContainerImpl)container).isModelShared());
         } else {
-            return new XmlSafeRDFContainer(container.getModel(), 
+            result = new XmlSafeRDFContainer(container.getModel(), 
                 container.getDescribedUri());
         }
+        result.setFullTextSink(container.getFullTextSink());
+        return result;
     }
     
     /**
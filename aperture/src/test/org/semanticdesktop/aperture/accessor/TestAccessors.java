@@ -11,13 +11,17 @@ import junit.framework.TestSuite;
 
 import org.semanticdesktop.aperture.accessor.base.CountingInputStreamTest;
 import org.semanticdesktop.aperture.accessor.base.TestAccessDataImpl;
+import org.semanticdesktop.aperture.accessor.base.TestBatchedModelAccessData;
+import org.semanticdesktop.aperture.accessor.base.TestCompactAccessData;
 import org.semanticdesktop.aperture.accessor.base.TestFaultyFileAccessdata;
 import org.semanticdesktop.aperture.accessor.base.TestFileAccessData;
 import org.semanticdesktop.aperture.accessor.base.TestFileDataObject;
+import org.semanticdesktop.aperture.accessor.base.TestLogAccessData;
 import org.semanticdesktop.aperture.accessor.base.TestModelAccessData;
 import org.semanticdesktop.aperture.accessor.base.TestNativeStoreModelAccessData;
 import org.semanticdesktop.aperture.accessor.base.TestSynchronizedAccessData;
 import org.semanticdesktop.aperture.accessor.file.TestFileAccessor;
+import org.semanticdesktop.aperture.accessor.http.TestHttpAccessor;
 import org.semanticdesktop.aperture.accessor.impl.TestDefaultDataAccessorRegistry;
 
 public class TestAccessors extends TestSuite {
@@ -30,14 +34,18 @@ public class TestAccessors extends TestSuite {
         super("accessors");
         
         addTest(new TestSuite(TestFileAccessor.class));
+        addTest(new TestSuite(TestHttpAccessor.class));
         addTest(new TestSuite(TestDefaultDataAccessorRegistry.class));
         addTest(new TestSuite(CountingInputStreamTest.class));
         addTest(new TestSuite(TestFileAccessData.class));
+        addTest(new TestSuite(TestLogAccessData.class));
         addTest(new TestSuite(TestFileDataObject.class));
         addTest(new TestSuite(TestFaultyFileAccessdata.class));
         addTest(new TestSuite(TestModelAccessData.class));
+        addTest(new TestSuite(TestBatchedModelAccessData.class));
         addTest(new TestSuite(TestSynchronizedAccessData.class));
         addTest(new TestSuite(TestAccessDataImpl.class));
+        addTest(new TestSuite(TestCompactAccessData.class));
         addTest(new TestSuite(TestNativeStoreModelAccessData.class));
     }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna.
+ * All rights reserved.
+ * 
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.accessor.base;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.ontoware.rdf2go.exception.ModelException;
+import org.ontoware.rdf2go.model.Model;
+import org.semanticdesktop.aperture.accessor.AccessData;
+
+/**
+ * Runs the AccessData tests on a ModelAccessData in write-behind mode.
+ */
+public class TestBatchedModelAccessData extends AccessDataTest {
+
+    private Model model;
+
+    public void setUp() throws ModelException, IOException {
+        model = createModel();
+        ModelAccessData accessData = new ModelAccessData(model);
+        // a small batch size, so that the buffer is written several times during each test
+        accessData.setBatchSize(3);
+        super.setUp(accessData);
+    }
+
+    public void tearDown() {
+        model.close();
+        model = null;
+    }
+
+    public void testModificationsAreBuffered() throws IOException {
+        ModelAccessData accessData = new ModelAccessData(model);
+        accessData.setBatchSize(1000);
+        accessData.initialize();
+        assertEquals(5, accessData.getSize());
+
+        long size = model.size();
+        accessData.put(id1, AccessData.DATE_KEY, "12");
+        accessData.put("urn:test", AccessData.BYTE_SIZE_KEY, "100");
+        accessData.putAggregatedID(folderid1, "urn:test");
+        assertEquals(size, model.size());
+
+        // answered from the cache
+        assertEquals("12", accessData.get(id1, AccessData.DATE_KEY));
+        assertEquals("100", accessData.get("urn:test", AccessData.BYTE_SIZE_KEY));
+        assertTrue(accessData.isKnownId("urn:test"));
+        assertTrue(accessData.isTouched(id1));
+        assertEquals(6, accessData.getSize());
+        assertEquals(size, model.size());
+
+        // queries that need the model write the buffer first
+        assertEquals(4, accessData.getAggregatedIDs(folderid1).size());
+        assertTrue(model.size() > size);
+        accessData.store();
+    }
+
+    public void testCacheIsLoadedFromModel() throws IOException {
+        accessDataToTest.put(id1, AccessData.DATE_KEY, "12");
+        accessDataToTest.putReferredID(id2, id3);
+        accessDataToTest.store();
+
+        ModelAccessData accessData = new ModelAccessData(model);
+        accessData.setBatchSize(10);
+        accessData.initialize();
+        assertEquals(5, accessData.getSize());
+        assertEquals("12", accessData.get(id1, AccessData.DATE_KEY));
+        assertEquals(value1, accessData.get(id1, key1));
+        assertTrue(accessData.getReferredIDs(id2).contains(id3));
+
+        // a new crawl, nothing is touched
+        int counter = 0;
+        Iterator iterator = accessData.getUntouchedIDsIterator();
+        while (iterator.hasNext()) {
+            assertTrue(idset.contains(iterator.next()));
+            counter++;
+        }
+        assertEquals(5, counter);
+
+        // the aggregation relation is known to the cache
+        accessData.touchRecursively(folderid2);
+        accessData.removeUntouchedIDs();
+        accessData.store();
+        accessData.initialize();
+        assertEquals(2, accessData.getSize());
+        assertEquals(1, accessData.getAggregatedIDs(folderid2).size());
+
+        // removing the last statement about an id makes it unknown
+        accessData.removeAggregatedID(folderid2, id3);
+        accessData.remove(id3);
+        accessData.putReferredID("urn:referring", id3);
+        assertEquals(2, accessData.getSize());
+        accessData.removeReferredIDs("urn:referring");
+        assertFalse(accessData.isKnownId("urn:referring"));
+        assertEquals(1, accessData.getSize());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ * 
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.accessor.base;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.semanticdesktop.aperture.accessor.AccessData;
+
+public class TestCompactAccessData extends AccessDataTest {
+
+    public void setUp() throws IOException {
+        super.setUp(new CompactAccessData());
+    }
+
+    public void testLongColumns() {
+        accessDataToTest.put(id1, AccessData.DATE_KEY, "1199145600000");
+        accessDataToTest.put(id1, AccessData.BYTE_SIZE_KEY, "-5");
+        assertEquals("1199145600000", accessDataToTest.get(id1, AccessData.DATE_KEY));
+        assertEquals("-5", accessDataToTest.get(id1, AccessData.BYTE_SIZE_KEY));
+
+        // values that are not canonical longs are returned unchanged
+        accessDataToTest.put(id1, AccessData.DATE_KEY, "007");
+        accessDataToTest.put(id2, AccessData.DATE_KEY, "Tue, 01 Jan 2008 00:00:00 GMT");
+        assertEquals("007", accessDataToTest.get(id1, AccessData.DATE_KEY));
+        assertEquals("Tue, 01 Jan 2008 00:00:00 GMT", accessDataToTest.get(id2, AccessData.DATE_KEY));
+
+        // values that do not fit in a long are returned unchanged
+        accessDataToTest.put(id1, AccessData.DATE_KEY, "9999999999999999999");
+        accessDataToTest.put(id2, AccessData.DATE_KEY, "-9999999999999999999");
+        accessDataToTest.put(id1, AccessData.BYTE_SIZE_KEY, "9223372036854775807");
+        accessDataToTest.put(id2, AccessData.BYTE_SIZE_KEY, "9223372036854775808");
+        assertEquals("9999999999999999999", accessDataToTest.get(id1, AccessData.DATE_KEY));
+        assertEquals("-9999999999999999999", accessDataToTest.get(id2, AccessData.DATE_KEY));
+        assertEquals("9223372036854775807", accessDataToTest.get(id1, AccessData.BYTE_SIZE_KEY));
+        assertEquals("9223372036854775808", accessDataToTest.get(id2, AccessData.BYTE_SIZE_KEY));
+
+        accessDataToTest.put(id1, AccessData.DATE_KEY, "12");
+        assertEquals("12", accessDataToTest.get(id1, AccessData.DATE_KEY));
+        accessDataToTest.remove(id1, AccessData.DATE_KEY);
+        assertNull(accessDataToTest.get(id1, AccessData.DATE_KEY));
+        assertEquals(value1, accessDataToTest.get(id1, key1));
+    }
+
+    public void testReferredIDOutlivesRemoval() {
+        accessDataToTest.putReferredID(id1, "http://example.org/unknown");
+        assertFalse(accessDataToTest.isKnownId("http://example.org/unknown"));
+        assertEquals(5, accessDataToTest.getSize());
+
+        accessDataToTest.putReferredID(id1, id2);
+        accessDataToTest.remove(id2);
+        assertFalse(accessDataToTest.isKnownId(id2));
+
+        // the removed id can still be retrieved as a referred id
+        Set referredIDs = accessDataToTest.getReferredIDs(id1);
+        assertEquals(2, referredIDs.size());
+        assertTrue(referredIDs.contains(id2));
+
+        accessDataToTest.removeReferredID(id1, id2);
+        accessDataToTest.removeReferredID(id1, "http://example.org/unknown");
+        assertNull(accessDataToTest.getReferredIDs(id1));
+    }
+
+    public void testManyIds() throws IOException {
+        // forces the dictionary to grow and to reuse the indices of removed ids
+        for (int i = 0; i < 5000; i++) {
+            accessDataToTest.put("urn:id:" + i, AccessData.DATE_KEY, String.valueOf(i));
+            accessDataToTest.putAggregatedID(folderid2, "urn:id:" + i);
+        }
+        assertEquals(5005, accessDataToTest.getSize());
+
+        for (int i = 0; i < 5000; i += 2) {
+            accessDataToTest.remove("urn:id:" + i);
+        }
+        assertEquals(2505, accessDataToTest.getSize());
+        assertEquals(2501, accessDataToTest.getAggregatedIDs(folderid2).size());
+
+        for (int i = 0; i < 5000; i++) {
+            accessDataToTest.put("urn:other:" + i, key1, value1);
+        }
+        assertEquals(7505, accessDataToTest.getSize());
+        assertEquals(7505, accessDataToTest.getStoredIDs().size());
+        assertTrue(accessDataToTest.getStoredIDs().contains("urn:id:4999"));
+        assertFalse(accessDataToTest.getStoredIDs().contains("urn:id:4998"));
+
+        for (int i = 1; i < 5000; i += 2) {
+            assertEquals(String.valueOf(i), accessDataToTest.get("urn:id:" + i, AccessData.DATE_KEY));
+        }
+
+        // a new crawl, only the subfolder is found again
+        accessDataToTest.initialize();
+        accessDataToTest.touchRecursively(folderid2);
+        accessDataToTest.removeUntouchedIDs();
+        assertEquals(2502, accessDataToTest.getSize());
+        assertNull(accessDataToTest.get("urn:other:1", key1));
+    }
+}
@@ -7,10 +7,13 @@
 package org.semanticdesktop.aperture.accessor.base;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.ontoware.rdf2go.RDF2Go;
 import org.ontoware.rdf2go.model.Model;
@@ -112,6 +115,74 @@ public class TestFileDataObject extends ApertureTestBase {
         tempFile.delete();
     }
     
+    public void testLazyContent() throws IOException {
+        File tempFile = createTempFile();
+        Model model = RDF2Go.getModelFactory().createModel();
+        model.open();
+        RDFContainer container = new RDFContainerImpl(model,TEST_URI);
+
+        // the file is only opened when the content is asked for
+        int resourceCount = ResourceTracker.getResourceCount();
+        FileDataObject object = new FileDataObjectBase(new URIImpl("uri:testuri"),null,container,tempFile);
+        assertEquals(resourceCount, ResourceTracker.getResourceCount());
+        InputStream contentStream = object.getContent();
+        assertSame(contentStream, object.getContent());
+        assertEquals(resourceCount + 1, ResourceTracker.getResourceCount());
+        assertEquals(tempFile.length(), IOUtil.readBytes(contentStream).length);
+
+        // disposing closes it
+        object.dispose();
+        assertEquals(resourceCount, ResourceTracker.getResourceCount());
+        assertNull(object.getContent());
+        tempFile.delete();
+    }
+
+    public void testContentChannel() throws IOException {
+        File tempFile = createTempFile();
+        byte [] bytes = IOUtil.readBytes(new FileInputStream(tempFile));
+        Model model = RDF2Go.getModelFactory().createModel();
+        model.open();
+        RDFContainer container = new RDFContainerImpl(model,TEST_URI);
+
+        int resourceCount = ResourceTracker.getResourceCount();
+        FileDataObject object = new FileDataObjectBase(new URIImpl("uri:testuri"),null,container,tempFile);
+        FileChannel channel = object.getContentChannel();
+        assertSame(channel, object.getContentChannel());
+        assertEquals(bytes.length, channel.size());
+        ByteBuffer buffer = object.mapContent();
+        assertEquals(ByteBuffer.wrap(bytes), buffer);
+
+        // the channel does not affect the content stream
+        object.getContent().read();
+        File downloadedFile = object.downloadContent();
+        assertEquals(bytes.length, downloadedFile.length());
+        downloadedFile.delete();
+
+        object.dispose();
+        assertFalse(channel.isOpen());
+        assertEquals(resourceCount, ResourceTracker.getResourceCount());
+        tempFile.delete();
+
+        // objects without a file have no channel
+        InputStream stream = new BufferedInputStream(new ByteArrayInputStream(bytes));
+        model = RDF2Go.getModelFactory().createModel();
+        model.open();
+        container = new RDFContainerImpl(model,TEST_URI);
+        object = new FileDataObjectBase(new URIImpl("uri:testuri"),null,container,stream);
+        assertNull(object.getContentChannel());
+        assertNull(object.mapContent());
+        object.dispose();
+    }
+
+    private File createTempFile() throws IOException {
+        File tempFile = File.createTempFile("test", "tmp");
+        InputStream stream = 
+            ResourceUtil.getInputStream(DOCS_PATH + "microsoft-excel-2000.xls", TestFileDataObject.class);
+        IOUtil.writeStream(stream, tempFile);
+        stream.close();
+        return tempFile;
+    }
+    
     public void testDownloadFile() throws IOException {
         InputStream stream = 
             ResourceUtil.getInputStream(DOCS_PATH + "microsoft-excel-2000.xls", TestFileDataObject.class);
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.accessor.base;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import org.semanticdesktop.aperture.accessor.AccessData;
+import org.semanticdesktop.aperture.util.FileUtil;
+
+public class TestLogAccessData extends AccessDataTest {
+
+    private static final String TMP_SUBDIR = "TestLogAccessData.tmpDir";
+
+    private File tmpDir;
+
+    public void setUp() throws IOException {
+        tmpDir = new File(System.getProperty("java.io.tmpdir"), TMP_SUBDIR).getCanonicalFile();
+        FileUtil.deltree(tmpDir);
+        super.setUp(new LogAccessData(tmpDir));
+    }
+
+    public void tearDown() {
+        // delete the temporary folder
+        FileUtil.deltree(tmpDir);
+    }
+
+    public void testFillStoreAndLoad() throws IOException {
+        accessDataToTest.put("urn:test", AccessData.DATE_KEY, "12");
+        accessDataToTest.putReferredID(id1, id3);
+        accessDataToTest.putReferredID(id3, id2);
+        accessDataToTest.store();
+
+        // load
+        AccessData accessData = new LogAccessData(tmpDir);
+        accessData.initialize();
+        checkContents(accessData);
+    }
+
+    public void testCompaction() throws IOException {
+        accessDataToTest.put("urn:test", AccessData.DATE_KEY, "12");
+        accessDataToTest.putReferredID(id1, id3);
+        accessDataToTest.putReferredID(id3, id2);
+
+        // overwrite a value many times, so that the log becomes much larger than the state
+        LogAccessData logAccessData = (LogAccessData) accessDataToTest;
+        logAccessData.setCompactionThreshold(100);
+        for (int i = 0; i < 200; i++) {
+            accessDataToTest.put("urn:counter", AccessData.DATE_KEY, String.valueOf(i));
+        }
+        accessDataToTest.store();
+
+        // the log should have been compacted into the second generation snapshot
+        assertTrue(new File(tmpDir, "snapshot-1.dat").exists());
+        assertFalse(new File(tmpDir, "log-0.dat").exists());
+        assertFalse(new File(tmpDir, "log-1.dat").exists());
+
+        // modifications after the compaction go to the new log
+        accessDataToTest.put("urn:counter", AccessData.DATE_KEY, "last");
+        accessDataToTest.store();
+        assertTrue(new File(tmpDir, "log-1.dat").exists());
+
+        AccessData accessData = new LogAccessData(tmpDir);
+        accessData.initialize();
+        assertEquals(7, accessData.getSize());
+        assertEquals("last", accessData.get("urn:counter", AccessData.DATE_KEY));
+        checkContents(accessData);
+    }
+
+    public void testIncompleteLogRecord() throws IOException {
+        accessDataToTest.put("urn:test", AccessData.DATE_KEY, "12");
+        accessDataToTest.store();
+
+        // simulate a crash in the middle of writing a record
+        accessDataToTest.put("urn:test", AccessData.DATE_KEY, "13");
+        accessDataToTest.store();
+        File logFile = new File(tmpDir, "log-0.dat");
+        long length = logFile.length();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(logFile, "rw");
+        randomAccessFile.setLength(length - 3);
+        randomAccessFile.close();
+
+        // the last modification is lost, all previous ones are still there
+        LogAccessData accessData = new LogAccessData(tmpDir);
+        accessData.initialize();
+        assertEquals("12", accessData.get("urn:test", AccessData.DATE_KEY));
+        assertEquals(value1, accessData.get(id1, key1));
+
+        // new records can be appended after the truncated one
+        accessData.put("urn:test", AccessData.DATE_KEY, "14");
+        accessData.store();
+        accessData = new LogAccessData(tmpDir);
+        accessData.initialize();
+        assertEquals("14", accessData.get("urn:test", AccessData.DATE_KEY));
+    }
+
+    public void testFailedLogWrite() throws IOException {
+        FailingLogAccessData accessData = new FailingLogAccessData(tmpDir);
+        accessData.initialize();
+        accessData.put("urn:test", AccessData.DATE_KEY, "12");
+        accessData.store();
+        File logFile = new File(tmpDir, "log-0.dat");
+        long length = logFile.length();
+
+        // only a part of the next record reaches the disk
+        accessData.put("urn:test", AccessData.DATE_KEY, "13");
+        accessData.writableBytes = 5;
+        try {
+            accessData.store();
+            fail("expected an IOException");
+        }
+        catch (IOException e) {
+            // expected
+        }
+        accessData.writableBytes = -1;
+
+        // the torn record is removed and nothing is appended after it
+        assertEquals(length, logFile.length());
+        accessData.put("urn:test", AccessData.DATE_KEY, "14");
+        assertEquals(length, logFile.length());
+
+        AccessData reloaded = new LogAccessData(tmpDir);
+        reloaded.initialize();
+        assertEquals("12", reloaded.get("urn:test", AccessData.DATE_KEY));
+
+        // the next store compacts the complete state into a new snapshot
+        accessData.store();
+        assertTrue(new File(tmpDir, "snapshot-1.dat").exists());
+        assertFalse(logFile.exists());
+        accessData.put("urn:test", AccessData.DATE_KEY, "15");
+        accessData.store();
+
+        reloaded = new LogAccessData(tmpDir);
+        reloaded.initialize();
+        assertEquals("15", reloaded.get("urn:test", AccessData.DATE_KEY));
+    }
+
+    public void testUnfinishedSnapshotIsIgnored() throws IOException {
+        accessDataToTest.store();
+
+        // simulate a crash while writing a new snapshot
+        FileOutputStream stream = new FileOutputStream(new File(tmpDir, "snapshot-1.tmp"));
+        stream.write(new byte[] { 1, 2, 3 });
+        stream.close();
+
+        AccessData accessData = new LogAccessData(tmpDir);
+        accessData.initialize();
+        assertEquals(5, accessData.getSize());
+        assertEquals(value1, accessData.get(id1, key1));
+        assertFalse(new File(tmpDir, "snapshot-1.tmp").exists());
+    }
+
+    public void testRemoveUntouchedIsPersisted() throws IOException {
+        accessDataToTest.store();
+        accessDataToTest.initialize();
+        accessDataToTest.touchRecursively(folderid2);
+        accessDataToTest.removeUntouchedIDs();
+        accessDataToTest.store();
+
+        AccessData accessData = new LogAccessData(tmpDir);
+        accessData.initialize();
+        assertEquals(2, accessData.getSize());
+        assertTrue(accessData.isKnownId(folderid2));
+        assertTrue(accessData.isKnownId(id3));
+        assertEquals(1, accessData.getAggregatedIDs(folderid2).size());
+    }
+
+    /**
+     * A LogAccessData whose log stream fails after a number of bytes has been written.
+     */
+    private static class FailingLogAccessData extends LogAccessData {
+
+        /**
+         * The number of bytes that can still be written to the log, -1 for no limit.
+         */
+        private int writableBytes = -1;
+
+        public FailingLogAccessData(File directory) {
+            super(directory);
+        }
+
+        OutputStream wrapLogStream(FileOutputStream stream) {
+            return new FilterOutputStream(stream) {
+
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    if (writableBytes >= 0 && length > writableBytes) {
+                        out.write(bytes, offset, writableBytes);
+                        writableBytes = 0;
+                        throw new IOException("Simulated write failure");
+                    }
+                    out.write(bytes, offset, length);
+                    if (writableBytes >= 0) {
+                        writableBytes -= length;
+                    }
+                }
+
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+            };
+        }
+    }
+
+    private void checkContents(AccessData accessData) {
+        // originally there were 5 id's, the sixth one is urn:test
+        assertTrue(accessData.getSize() >= 6);
+        assertEquals(3, accessData.getAggregatedIDs(folderid1).size());
+        assertEquals(1, accessData.getAggregatedIDs(folderid2).size());
+        assertEquals(id3, (String) accessData.getAggregatedIDs(folderid2).iterator().next());
+        assertEquals(0, accessData.getAggregatedIDs(id1).size());
+
+        assertEquals("12", accessData.get("urn:test", AccessData.DATE_KEY));
+        assertEquals(value1, accessData.get(id1, key1));
+        assertEquals(value2, accessData.get(id1, key2));
+        assertEquals(value3, accessData.get(id2, key1));
+
+        assertEquals(1, accessData.getReferredIDs(id1).size());
+        assertEquals(id3, accessData.getReferredIDs(id1).iterator().next().toString());
+        assertEquals(1, accessData.getReferredIDs(id3).size());
+        assertEquals(id2, accessData.getReferredIDs(id3).iterator().next().toString());
+
+        // the removal of an aggregating id should still cascade after reloading
+        accessData.remove(folderid1);
+        assertFalse(accessData.isKnownId(id3));
+    }
+}
@@ -168,6 +168,37 @@ public class TestFileAccessor extends ApertureTestBase {
 		object2.dispose();
     }
     
+    public void testFileAttributes() throws UrlNotFoundException, IOException {
+        // the URIs must be the same as the ones produced by File.toURI
+        FileAttributes fileAttributes = FileAttributes.read(tmpFile);
+        assertEquals(tmpFile.toURI().toString(), fileAttributes.getURI());
+        assertTrue(fileAttributes.exists());
+        assertTrue(fileAttributes.isFile());
+        assertFalse(fileAttributes.isDirectory());
+        assertEquals(tmpFile.length(), fileAttributes.getLength());
+        assertEquals(tmpFile.lastModified(), fileAttributes.getLastModified());
+
+        FileAttributes folderAttributes = FileAttributes.read(tmpDir);
+        assertEquals(tmpDir.toURI().toString(), folderAttributes.getURI());
+        assertTrue(folderAttributes.isDirectory());
+        assertEquals(tmpDir.toURI().toString(), FileAttributes.getFolderURI(tmpDir));
+
+        FileAttributes missingAttributes = FileAttributes.read(new File(tmpDir, "missing"));
+        assertFalse(missingAttributes.exists());
+
+        // the accessor should use the attributes of the children it gets instead of listing the folder
+        File otherFile = new File(tmpDir, "other.txt");
+        HashMap params = new HashMap();
+        params.put(FileAccessor.FILE_ATTRIBUTES_KEY, folderAttributes);
+        params.put(FileAccessor.CHILDREN_KEY, new FileAttributes[] { fileAttributes,
+                FileAttributes.read(otherFile) });
+        SimpleRDFContainerFactory factory = new SimpleRDFContainerFactory();
+        DataObject dataObject = fileAccessor.getDataObject(tmpDir.toURI().toString(), null, params, factory);
+        Model model = dataObject.getMetadata().getModel();
+        assertEquals(2, countStatements(model, dataObject.getMetadata().getDescribedUri(), NIE.hasPart));
+        dataObject.dispose();
+    }
+
     private class SimpleRDFContainerFactory implements RDFContainerFactory {
         public RDFContainer getRDFContainer(URI uri) {
             return createRDFContainer(uri);
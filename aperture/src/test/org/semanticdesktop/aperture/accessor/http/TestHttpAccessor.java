@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.accessor.http;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ontoware.rdf2go.model.node.URI;
+import org.semanticdesktop.aperture.ApertureTestBase;
+import org.semanticdesktop.aperture.accessor.AccessData;
+import org.semanticdesktop.aperture.accessor.DataObject;
+import org.semanticdesktop.aperture.accessor.FileDataObject;
+import org.semanticdesktop.aperture.accessor.RDFContainerFactory;
+import org.semanticdesktop.aperture.accessor.base.AccessDataImpl;
+import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.util.IOUtil;
+
+public class TestHttpAccessor extends ApertureTestBase {
+
+    private TestServer server;
+
+    private String url;
+
+    private HttpAccessor accessor;
+
+    private AccessData accessData;
+
+    private HttpAccessStatistics statistics;
+
+    private Map<Object, Object> params;
+
+    public void setUp() throws IOException {
+        server = new TestServer();
+        server.start();
+        url = "http://127.0.0.1:" + server.getPort() + "/page.html";
+
+        accessor = new HttpAccessor();
+        accessData = new AccessDataImpl();
+        accessData.initialize();
+        statistics = new HttpAccessStatistics();
+        params = new HashMap<Object, Object>();
+        params.put(HttpAccessor.STATISTICS_KEY, statistics);
+    }
+
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    public void testNotModified() throws Exception {
+        server.setResponse("\"v1\"", true, "<html><body>first version</body></html>");
+
+        DataObject object = getDataObject();
+        assertNotNull(object);
+        assertEquals("<html><body>first version</body></html>", IOUtil.readString(((FileDataObject) object)
+                .getContent()));
+        object.dispose();
+        assertEquals("\"v1\"", accessData.get(url, HttpAccessor.ETAG_KEY));
+        assertNotNull(accessData.get(url, HttpAccessor.LAST_MODIFIED_KEY));
+        assertNotNull(accessData.get(url, HttpAccessor.DIGEST_KEY));
+        assertEquals("39", accessData.get(url, AccessData.BYTE_SIZE_KEY));
+        assertNull(server.getLastHeader("If-None-Match"));
+
+        // the second request is a conditional request, answered with a 304
+        assertNull(getDataObject());
+        assertEquals("\"v1\"", server.getLastHeader("If-None-Match"));
+        assertNotNull(server.getLastHeader("If-Modified-Since"));
+        assertEquals(1L, statistics.getNotModifiedCount());
+        assertEquals(0L, statistics.getUnchangedContentCount());
+        assertEquals(39L, statistics.getSavedByteCount());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    public void testUnchangedContent() throws Exception {
+        // a server that ignores conditional requests and does not send validators
+        server.setResponse(null, false, "<html><body>static page</body></html>");
+
+        DataObject object = getDataObject();
+        assertNotNull(object);
+        object.dispose();
+
+        assertNull(getDataObject());
+        assertEquals(0L, statistics.getNotModifiedCount());
+        assertEquals(1L, statistics.getUnchangedContentCount());
+        assertEquals(37L, statistics.getSavedByteCount());
+
+        // a changed page is reported as modified
+        server.setResponse(null, false, "<html><body>changed page</body></html>");
+        object = getDataObject();
+        assertNotNull(object);
+        assertEquals("<html><body>changed page</body></html>", IOUtil.readString(((FileDataObject) object)
+                .getContent()));
+        object.dispose();
+        assertEquals(1L, statistics.getUnchangedContentCount());
+    }
+
+    public void testContentLargerThanDigestLimit() throws Exception {
+        accessor.setMaxDigestSize(10);
+        server.setResponse(null, false, "<html><body>static page</body></html>");
+
+        DataObject object = getDataObject();
+        assertNotNull(object);
+        assertEquals("<html><body>static page</body></html>", IOUtil.readString(((FileDataObject) object)
+                .getContent()));
+        object.dispose();
+        assertNull(accessData.get(url, HttpAccessor.DIGEST_KEY));
+
+        // without a digest the unchanged page cannot be recognized
+        object = getDataObject();
+        assertNotNull(object);
+        object.dispose();
+        assertEquals(0L, statistics.getUnchangedContentCount());
+    }
+
+    private DataObject getDataObject() throws Exception {
+        return accessor.getDataObjectIfModified(url, null, accessData, params, new RDFContainerFactory() {
+
+            public RDFContainer getRDFContainer(URI uri) {
+                return createRDFContainer(uri);
+            }
+        });
+    }
+
+    /**
+     * A minimal HTTP server that serves a single page and records the request headers.
+     */
+    private static class TestServer extends Thread {
+
+        private static final String LAST_MODIFIED = "Tue, 15 Nov 1994 12:45:26 GMT";
+
+        private ServerSocket serverSocket;
+
+        private String etag;
+
+        private boolean conditional;
+
+        private String body;
+
+        private Map<String, String> lastHeaders = new HashMap<String, String>();
+
+        private int requestCount;
+
+        public TestServer() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            setDaemon(true);
+        }
+
+        public int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        public synchronized void setResponse(String etag, boolean conditional, String body) {
+            this.etag = etag;
+            this.conditional = conditional;
+            this.body = body;
+        }
+
+        public synchronized String getLastHeader(String name) {
+            return lastHeaders.get(name.toLowerCase());
+        }
+
+        public synchronized int getRequestCount() {
+            return requestCount;
+        }
+
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+
+        public void run() {
+            while (true) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    try {
+                        handle(socket);
+                    }
+                    finally {
+                        socket.close();
+                    }
+                }
+                catch (SocketException e) {
+                    // the server socket has been closed
+                    return;
+                }
+                catch (IOException e) {
+                    // try the next connection
+                }
+            }
+        }
+
+        private void handle(Socket socket) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    "ISO-8859-1"));
+            List<String> lines = new ArrayList<String>();
+            String line;
+            while ((line = reader.readLine()) != null && line.length() > 0) {
+                lines.add(line);
+            }
+
+            String response;
+            synchronized (this) {
+                requestCount++;
+                lastHeaders.clear();
+                for (String header : lines) {
+                    int index = header.indexOf(':');
+                    if (index > 0) {
+                        lastHeaders.put(header.substring(0, index).trim().toLowerCase(), header.substring(
+                            index + 1).trim());
+                    }
+                }
+
+                boolean notModified = conditional && etag != null
+                        && etag.equals(lastHeaders.get("if-none-match"));
+                StringBuilder buffer = new StringBuilder();
+                buffer.append(notModified ? "HTTP/1.1 304 Not Modified\r\n" : "HTTP/1.1 200 OK\r\n");
+                buffer.append("Connection: close\r\n");
+                if (etag != null) {
+                    buffer.append("ETag: ").append(etag).append("\r\n");
+                    buffer.append("Last-Modified: ").append(LAST_MODIFIED).append("\r\n");
+                }
+                if (notModified) {
+                    buffer.append("\r\n");
+                }
+                else {
+                    buffer.append("Content-Type: text/html\r\n");
+                    buffer.append("Content-Length: ").append(body.length()).append("\r\n\r\n");
+                    buffer.append(body);
+                }
+                response = buffer.toString();
+            }
+
+            OutputStream out = socket.getOutputStream();
+            out.write(response.getBytes("ISO-8859-1"));
+            out.flush();
+        }
+    }
+}
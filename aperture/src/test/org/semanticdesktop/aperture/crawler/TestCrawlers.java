@@ -11,14 +11,20 @@ import junit.framework.TestSuite;
 
 import org.semanticdesktop.aperture.addressbook.AbstractAddressbookCrawlerTest;
 import org.semanticdesktop.aperture.addressbook.thunderbird.ThunderbirdCrawlerTest;
+import org.semanticdesktop.aperture.crawler.base.TestNTriplesCrawlerHandler;
 import org.semanticdesktop.aperture.crawler.filesystem.TestFileSystemCrawler;
 import org.semanticdesktop.aperture.crawler.ical.DurationConversionTest;
 import org.semanticdesktop.aperture.crawler.ical.TestIcalCrawler;
 import org.semanticdesktop.aperture.crawler.ical.TestIcalCrawlerIncremental;
 import org.semanticdesktop.aperture.crawler.impl.TestDefaultCrawlerRegistry;
+import org.semanticdesktop.aperture.crawler.imap.TestImapCrawler;
 import org.semanticdesktop.aperture.crawler.mail.DataObjectFactoryTest;
 import org.semanticdesktop.aperture.crawler.mbox.TestMboxCrawler;
 import org.semanticdesktop.aperture.crawler.mbox.TestMboxCrawlerMultiFolder;
+import org.semanticdesktop.aperture.crawler.mbox.TestMboxIndex;
+import org.semanticdesktop.aperture.crawler.web.TestFingerprintVisitedUrlStore;
+import org.semanticdesktop.aperture.crawler.web.TestSitemapReader;
+import org.semanticdesktop.aperture.crawler.web.TestWebCrawler;
 
 /**
  * Tests all Crawler implementations and related classes.
@@ -40,10 +46,16 @@ public class TestCrawlers extends TestSuite {
         addTest(new TestSuite(TestIcalCrawler.class));
         addTest(new TestSuite(TestIcalCrawlerIncremental.class));
         addTest(new TestSuite(DurationConversionTest.class));
+        addTest(new TestSuite(TestImapCrawler.class));
         addTest(new TestSuite(TestMboxCrawler.class));
         addTest(new TestSuite(TestMboxCrawlerMultiFolder.class));
+        addTest(new TestSuite(TestMboxIndex.class));
         addTest(new TestSuite(ThunderbirdCrawlerTest.class));
         addTest(new TestSuite(AbstractAddressbookCrawlerTest.class));
         addTest(new TestSuite(DataObjectFactoryTest.class));
+        addTest(new TestSuite(TestWebCrawler.class));
+        addTest(new TestSuite(TestFingerprintVisitedUrlStore.class));
+        addTest(new TestSuite(TestSitemapReader.class));
+        addTest(new TestSuite(TestNTriplesCrawlerHandler.class));
     }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ * 
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.base;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.ontoware.rdf2go.vocabulary.RDFS;
+import org.openrdf.model.Statement;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.openrdf.rio.ntriples.NTriplesParser;
+import org.semanticdesktop.aperture.ApertureTestBase;
+import org.semanticdesktop.aperture.accessor.base.DataObjectBase;
+import org.semanticdesktop.aperture.crawler.ExitCode;
+import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.util.IOUtil;
+
+public class TestNTriplesCrawlerHandler extends ApertureTestBase {
+
+    private static final String LABEL = "quote \" backslash \\ newline \n umlaut \u00e4 clef \ud834\udd1e";
+
+    public void testNTriples() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NTriplesCrawlerHandler handler = new NTriplesCrawlerHandler(bytes, false, true);
+        handler.crawlStarted(null);
+        handler.objectNew(null, createObject(handler, "uri:test:1"));
+        handler.objectChanged(null, createObject(handler, "uri:test:2"));
+        handler.objectRemoved(null, "uri:test:3");
+        handler.crawlStopped(null, ExitCode.COMPLETED);
+        handler.close();
+
+        InputStream stream = new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        NTriplesParser parser = new NTriplesParser();
+        StatementCollector collector = new StatementCollector();
+        parser.setRDFHandler(collector);
+        parser.parse(stream, "uri:test:");
+
+        // three statements per object and a tombstone for the changed and the removed object
+        assertEquals(8, collector.getStatements().size());
+        int labels = 0;
+        int tombstones = 0;
+        for (Statement statement : collector.getStatements()) {
+            if (statement.getPredicate().toString().equals(RDFS.label.toString())) {
+                assertEquals(LABEL, statement.getObject().stringValue());
+                labels++;
+            }
+            else if (statement.getPredicate().toString().equals(NTriplesCrawlerHandler.REMOVED.toString())) {
+                assertFalse(statement.getSubject().toString().equals("uri:test:1"));
+                tombstones++;
+            }
+        }
+        assertEquals(2, labels);
+        assertEquals(2, tombstones);
+    }
+
+    public void testNQuads() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NTriplesCrawlerHandler handler = new NTriplesCrawlerHandler(bytes, true, false);
+        handler.objectNew(null, createObject(handler, "uri:test:1"));
+        handler.objectRemoved(null, "uri:test:2");
+        handler.close();
+
+        String[] lines = IOUtil.readString(new ByteArrayInputStream(bytes.toByteArray())).split("\n");
+        assertEquals(4, lines.length);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(lines[i].endsWith(" <uri:test:1> ."));
+        }
+        assertTrue(lines[3].startsWith("<uri:test:2> <" + NTriplesCrawlerHandler.REMOVED + "> "));
+        assertTrue(lines[3].endsWith(" <uri:test:2> ."));
+    }
+
+    private DataObjectBase createObject(NTriplesCrawlerHandler handler, String uriString) {
+        URI uri = new URIImpl(uriString);
+        RDFContainer metadata = handler.getRDFContainerFactory(null, uriString).getRDFContainer(uri);
+        metadata.put(RDFS.label, LABEL);
+        metadata.put(RDFS.comment, 42);
+        return new DataObjectBase(uri, null, metadata);
+    }
+}
@@ -8,6 +8,9 @@ package org.semanticdesktop.aperture.crawler.filesystem;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.ontoware.rdf2go.exception.ModelException;
 import org.ontoware.rdf2go.model.Model;
@@ -18,6 +21,7 @@ import org.semanticdesktop.aperture.accessor.DataObject;
 import org.semanticdesktop.aperture.accessor.FileDataObject;
 import org.semanticdesktop.aperture.accessor.FolderDataObject;
 import org.semanticdesktop.aperture.accessor.RDFContainerFactory;
+import org.semanticdesktop.aperture.accessor.base.AccessDataImpl;
 import org.semanticdesktop.aperture.accessor.file.FileAccessorFactory;
 import org.semanticdesktop.aperture.accessor.impl.DataAccessorRegistryImpl;
 import org.semanticdesktop.aperture.crawler.Crawler;
@@ -285,6 +289,112 @@ public class TestFileSystemCrawler extends ApertureTestBase {
         configuration.getModel().close();
     }
 
+    public void testParallelCrawl() throws Exception {
+        // add a few more folders and files, so that there is something to do for the workers
+        Set<String> expectedUris = new HashSet<String>();
+        expectedUris.add(tmpDir.toURI().toString());
+        expectedUris.add(tmpFile1.toURI().toString());
+        expectedUris.add(tmpFile2.toURI().toString());
+        expectedUris.add(tmpFile4.toURI().toString());
+        expectedUris.add(subDir.toURI().toString());
+        expectedUris.add(tmpFile3.toURI().toString());
+        for (int i = 0; i < 5; i++) {
+            File folder = new File(subDir, "folder" + i);
+            assertTrue(folder.mkdir());
+            expectedUris.add(folder.getCanonicalFile().toURI().toString());
+            for (int j = 0; j < 10; j++) {
+                File file = new File(folder, "file-" + j + ".txt");
+                IOUtil.writeString("test file " + i + "-" + j, file);
+                expectedUris.add(file.getCanonicalFile().toURI().toString());
+            }
+        }
+
+        // create a DataSource
+        RDFContainer configuration = createRDFContainer("urn:test:dummySource");
+        FileSystemDataSource dataSource = new FileSystemDataSource();
+        dataSource.setConfiguration(configuration);
+        dataSource.setRootFolder(tmpDir.getAbsolutePath());
+
+        // create a Crawler for this DataSource
+        FileSystemCrawler crawler = new FileSystemCrawler();
+        crawler.setDataSource(dataSource);
+        crawler.setThreadCount(4);
+        crawler.setAccessData(new AccessDataImpl());
+
+        // setup a DataAccessorRegistry
+        DataAccessorRegistryImpl registry = new DataAccessorRegistryImpl();
+        registry.add(new FileAccessorFactory());
+        crawler.setDataAccessorRegistry(registry);
+
+        // the first crawl should report every file and folder exactly once
+        ParallelCrawlerHandler crawlerHandler = new ParallelCrawlerHandler();
+        crawler.setCrawlerHandler(crawlerHandler);
+        crawler.crawl();
+        assertEquals(ExitCode.COMPLETED, crawlerHandler.getExitCode());
+        assertEquals(expectedUris, crawlerHandler.getNewUris());
+        assertEquals(expectedUris.size(), crawler.getCrawlReport().getNewCount());
+        assertTrue(crawlerHandler.getUnmodifiedUris().isEmpty());
+
+        // the second crawl should find everything unmodified
+        crawlerHandler = new ParallelCrawlerHandler();
+        crawler.setCrawlerHandler(crawlerHandler);
+        crawler.crawl();
+        assertEquals(ExitCode.COMPLETED, crawlerHandler.getExitCode());
+        assertTrue(crawlerHandler.getNewUris().isEmpty());
+        assertEquals(expectedUris, crawlerHandler.getUnmodifiedUris());
+        assertEquals(0, crawler.getCrawlReport().getRemovedCount());
+
+        configuration.getModel().close();
+    }
+
+    public void testStopParallelCrawl() throws Exception {
+        // create enough files to keep all workers busy when the crawl is stopped
+        int fileCount = 6;
+        for (int i = 0; i < 10; i++) {
+            File folder = new File(subDir, "folder" + i);
+            assertTrue(folder.mkdir());
+            for (int j = 0; j < 20; j++) {
+                IOUtil.writeString("test file " + i + "-" + j, new File(folder, "file-" + j + ".txt"));
+                fileCount++;
+            }
+            fileCount++;
+        }
+
+        // create a DataSource
+        RDFContainer configuration = createRDFContainer("urn:test:dummySource");
+        FileSystemDataSource dataSource = new FileSystemDataSource();
+        dataSource.setConfiguration(configuration);
+        dataSource.setRootFolder(tmpDir.getAbsolutePath());
+
+        // create a Crawler for this DataSource
+        int threadCount = 4;
+        FileSystemCrawler crawler = new FileSystemCrawler();
+        crawler.setDataSource(dataSource);
+        crawler.setThreadCount(threadCount);
+        crawler.setAccessData(new AccessDataImpl());
+
+        // setup a DataAccessorRegistry
+        DataAccessorRegistryImpl registry = new DataAccessorRegistryImpl();
+        registry.add(new FileAccessorFactory());
+        crawler.setDataAccessorRegistry(registry);
+
+        // stop the crawl from the handler, only the objects already being processed by the other workers
+        // may still be reported
+        StoppingCrawlerHandler crawlerHandler = new StoppingCrawlerHandler(10);
+        crawler.setCrawlerHandler(crawlerHandler);
+        crawler.crawl();
+        assertEquals(ExitCode.STOP_REQUESTED, crawlerHandler.getExitCode());
+        assertEquals(ExitCode.STOP_REQUESTED, crawler.getCrawlReport().getExitCode());
+        assertTrue(crawlerHandler.getCallbacksAfterStop() < threadCount);
+        assertTrue(crawlerHandler.getNewUris().size() < fileCount);
+
+        // give any runaway worker the chance to report something after the crawl has ended
+        Thread.sleep(200);
+        assertEquals(0, crawlerHandler.getCallbacksAfterCrawlStopped());
+
+        configuration.getModel().close();
+    }
+
     private URI toURI(File file) {
         return URIImpl.createURIWithoutChecking(file.toURI().toString());
     }
@@ -375,4 +485,130 @@ public class TestFileSystemCrawler extends ApertureTestBase {
             fail();
         }
     }
+
+    private class ParallelCrawlerHandler implements CrawlerHandler, RDFContainerFactory {
+
+        private Set<String> newUris = Collections.synchronizedSet(new HashSet<String>());
+
+        private Set<String> unmodifiedUris = Collections.synchronizedSet(new HashSet<String>());
+
+        private ExitCode exitCode;
+
+        public Set<String> getNewUris() {
+            return newUris;
+        }
+
+        public Set<String> getUnmodifiedUris() {
+            return unmodifiedUris;
+        }
+
+        public ExitCode getExitCode() {
+            return exitCode;
+        }
+
+        public void crawlStarted(Crawler crawler) {
+        // no-op
+        }
+
+        public void crawlStopped(Crawler crawler, ExitCode exitCode) {
+            this.exitCode = exitCode;
+        }
+
+        public void accessingObject(Crawler crawler, String url) {
+        // no-op
+        }
+
+        public RDFContainerFactory getRDFContainerFactory(Crawler crawler, String url) {
+            return this;
+        }
+
+        public RDFContainer getRDFContainer(URI uri) {
+            return new RDFContainerImpl(createModel(), uri);
+        }
+
+        public void objectNew(Crawler dataCrawler, DataObject object) {
+            assertTrue(newUris.add(object.getID().toString()));
+            object.dispose();
+        }
+
+        public void objectChanged(Crawler dataCrawler, DataObject object) {
+            object.dispose();
+            fail();
+        }
+
+        public void objectNotModified(Crawler crawler, String url) {
+            assertTrue(unmodifiedUris.add(url));
+        }
+
+        public void objectRemoved(Crawler dataCrawler, String url) {
+            fail();
+        }
+
+        public void clearStarted(Crawler crawler) {
+            fail();
+        }
+
+        public void clearingObject(Crawler crawler, String url) {
+            fail();
+        }
+
+        public void clearFinished(Crawler crawler, ExitCode exitCode) {
+            fail();
+        }
+    }
+
+    private class StoppingCrawlerHandler extends ParallelCrawlerHandler {
+
+        private int stopAfter;
+
+        private int callbackCount;
+
+        private int callbacksAfterStop;
+
+        private int callbacksAfterCrawlStopped;
+
+        private boolean stopped;
+
+        private boolean crawlStopped;
+
+        public StoppingCrawlerHandler(int stopAfter) {
+            this.stopAfter = stopAfter;
+        }
+
+        public synchronized int getCallbacksAfterStop() {
+            return callbacksAfterStop;
+        }
+
+        public synchronized int getCallbacksAfterCrawlStopped() {
+            return callbacksAfterCrawlStopped;
+        }
+
+        public synchronized void crawlStopped(Crawler crawler, ExitCode exitCode) {
+            super.crawlStopped(crawler, exitCode);
+            crawlStopped = true;
+        }
+
+        public void objectNew(Crawler dataCrawler, DataObject object) {
+            registerCallback(dataCrawler);
+            super.objectNew(dataCrawler, object);
+        }
+
+        public void objectNotModified(Crawler crawler, String url) {
+            registerCallback(crawler);
+            super.objectNotModified(crawler, url);
+        }
+
+        private synchronized void registerCallback(Crawler crawler) {
+            if (crawlStopped) {
+                callbacksAfterCrawlStopped++;
+            }
+            else if (stopped) {
+                callbacksAfterStop++;
+            }
+            else if (++callbackCount == stopAfter) {
+                crawler.stop();
+                stopped = true;
+            }
+        }
+    }
 }
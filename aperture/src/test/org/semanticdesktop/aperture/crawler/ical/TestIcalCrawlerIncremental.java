@@ -30,6 +30,8 @@ public class TestIcalCrawlerIncremental extends ApertureTestBase {
 
     private AccessData accessData;
 
+    private IcalCrawler icalCrawler;
+
     public void setUp() {
         accessData = new AccessDataImpl();
     }
@@ -101,11 +103,53 @@ public class TestIcalCrawlerIncremental extends ApertureTestBase {
         handler2.close();
     }
 
+    public void testUnchangedFile() throws Exception {
+        TestIncrementalCrawlerHandler handler = readIcalFile("cal01.ics", accessData, null);
+        assertNewModUnmodDel(handler, 5, 0, 0, 0);
+        File file = handler.getFile();
+        long lastModified = file.lastModified();
+
+        // the file is written again, with the same content
+        TestIncrementalCrawlerHandler handler2 = readIcalFile("cal01.ics", accessData, file);
+        assertNewModUnmodDel(handler2, 0, 0, 5, 0);
+
+        // the modification date and size are the same as well, the file is not even read
+        TestIncrementalCrawlerHandler handler3 = readIcalFile("cal01.ics", accessData, file, lastModified);
+        assertNewModUnmodDel(handler3, 0, 0, 5, 0);
+        handler.close();
+        handler2.close();
+        handler3.close();
+    }
+
+    public void testSkippedComponents() throws Exception {
+        TestIncrementalCrawlerHandler handler = readIcalFile("cal01.ics", accessData, null);
+        assertNewModUnmodDel(handler, 5, 0, 0, 0);
+        TestIncrementalCrawlerHandler handler2 = readIcalFile("cal01-1.ics", accessData, handler.getFile());
+        assertNewModUnmodDel(handler2, 0, 1, 4, 0);
+        // the two events that have not changed are not parsed, the timezone always is
+        assertEquals("2", icalCrawler.getCrawlReport().getStatistics().get(
+            IcalCrawler.SKIPPED_COMPONENT_COUNT_STATISTIC));
+
+        // the event changes back and the timezone changes, the other two events are skipped again
+        TestIncrementalCrawlerHandler handler3 = readIcalFile("cal01-2.ics", accessData, handler.getFile());
+        assertNewModUnmodDel(handler3, 0, 2, 3, 0);
+        assertEquals("2", icalCrawler.getCrawlReport().getStatistics().get(
+            IcalCrawler.SKIPPED_COMPONENT_COUNT_STATISTIC));
+        handler.close();
+        handler2.close();
+        handler3.close();
+    }
+
+    private TestIncrementalCrawlerHandler readIcalFile(String fileName, AccessData accessData, File file)
+            throws Exception {
+        return readIcalFile(fileName, accessData, file, -1);
+    }
+
     /**
      * Crawls the ICAL file and returns the crawler handler.
      */
-    private TestIncrementalCrawlerHandler readIcalFile(String fileName, AccessData accessData, File file)
-            throws Exception {
+    private TestIncrementalCrawlerHandler readIcalFile(String fileName, AccessData accessData, File file,
+            long lastModified) throws Exception {
         InputStream fileStream = ResourceUtil.getInputStream(ICAL_TESTDATA_PATH + fileName,this.getClass());
         assertNotNull(fileStream);
         File tempFile = null;
@@ -115,6 +159,9 @@ public class TestIcalCrawlerIncremental extends ApertureTestBase {
         else {
             tempFile = createTempFile(fileStream, file);
         }
+        if (lastModified >= 0) {
+            assertTrue(tempFile.setLastModified(lastModified));
+        }
         Model configurationModel = createModel();
         IcalDataSource icalDataSource = new IcalDataSource();
         RDFContainer configurationContainer = new RDFContainerImpl(configurationModel, "source:testsource");
@@ -125,7 +172,7 @@ public class TestIcalCrawlerIncremental extends ApertureTestBase {
         TestIncrementalCrawlerHandler testCrawlerHandler = new TestIncrementalCrawlerHandler();
         testCrawlerHandler.setFile(tempFile);
 
-        IcalCrawler icalCrawler = new IcalCrawler();
+        icalCrawler = new IcalCrawler();
         icalCrawler.setDataSource(icalDataSource);
         icalCrawler.setDataAccessorRegistry(new DefaultDataAccessorRegistry());
         icalCrawler.setCrawlerHandler(testCrawlerHandler);
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.imap;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Flags;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.MethodNotSupportedException;
+import javax.mail.Session;
+import javax.mail.Store;
+import javax.mail.UIDFolder;
+import javax.mail.URLName;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * An in-process stand-in for an IMAP server. All stores share one mailbox, which the tests fill with
+ * {@link #setMailbox(Map)}. Every folder can hold both messages and subfolders, the UID of a message is its
+ * position in its folder.
+ */
+public class MemoryImapStore extends Store {
+
+    private static Map<String, List<String>> mailbox = Collections.emptyMap();
+
+    private static final AtomicInteger CONNECTION_COUNT = new AtomicInteger();
+
+    /**
+     * Replaces the content of the mailbox.
+     *
+     * @param folders maps the full names of the folders, with '/' as separator, to the raw messages in them
+     */
+    public static synchronized void setMailbox(Map<String, List<String>> folders) {
+        mailbox = new TreeMap<String, List<String>>(folders);
+        CONNECTION_COUNT.set(0);
+    }
+
+    private static synchronized Map<String, List<String>> getMailbox() {
+        return mailbox;
+    }
+
+    /**
+     * Returns the number of connections made since the mailbox has been set.
+     */
+    public static int getConnectionCount() {
+        return CONNECTION_COUNT.get();
+    }
+
+    public MemoryImapStore(Session session, URLName url) {
+        super(session, url);
+    }
+
+    protected boolean protocolConnect(String host, int port, String user, String password) {
+        CONNECTION_COUNT.incrementAndGet();
+        return true;
+    }
+
+    public Folder getDefaultFolder() {
+        return new MemoryFolder("");
+    }
+
+    public Folder getFolder(String name) {
+        return new MemoryFolder(name);
+    }
+
+    public Folder getFolder(URLName url) {
+        return new MemoryFolder(url.getFile());
+    }
+
+    private class MemoryFolder extends Folder implements UIDFolder {
+
+        private final String fullName;
+
+        private Message[] messages;
+
+        public MemoryFolder(String fullName) {
+            super(MemoryImapStore.this);
+            this.fullName = fullName;
+        }
+
+        public String getName() {
+            return fullName.substring(fullName.lastIndexOf('/') + 1);
+        }
+
+        public String getFullName() {
+            return fullName;
+        }
+
+        public Folder getParent() {
+            if (fullName.length() == 0) {
+                return null;
+            }
+            int separatorIndex = fullName.lastIndexOf('/');
+            return new MemoryFolder(separatorIndex < 0 ? "" : fullName.substring(0, separatorIndex));
+        }
+
+        public boolean exists() {
+            return fullName.length() == 0 || getMailbox().containsKey(fullName);
+        }
+
+        public Folder[] list(String pattern) {
+            String prefix = fullName.length() == 0 ? "" : fullName + '/';
+            List<Folder> result = new ArrayList<Folder>();
+            for (String name : getMailbox().keySet()) {
+                if (name.startsWith(prefix) && name.indexOf('/', prefix.length()) < 0) {
+                    result.add(new MemoryFolder(name));
+                }
+            }
+            return result.toArray(new Folder[result.size()]);
+        }
+
+        public char getSeparator() {
+            return '/';
+        }
+
+        public int getType() {
+            return fullName.length() == 0 ? HOLDS_FOLDERS : HOLDS_FOLDERS | HOLDS_MESSAGES;
+        }
+
+        public boolean create(int type) {
+            return false;
+        }
+
+        public boolean hasNewMessages() {
+            return false;
+        }
+
+        public Folder getFolder(String name) {
+            return new MemoryFolder(fullName.length() == 0 ? name : fullName + '/' + name);
+        }
+
+        public boolean delete(boolean recurse) {
+            return false;
+        }
+
+        public boolean renameTo(Folder folder) {
+            return false;
+        }
+
+        public void open(int mode) throws MessagingException {
+            List<String> content = getMailbox().get(fullName);
+            messages = new Message[content.size()];
+            for (int i = 0; i < messages.length; i++) {
+                messages[i] = new MemoryMessage(this, content.get(i), i + 1);
+            }
+            this.mode = mode;
+        }
+
+        public void close(boolean expunge) {
+            messages = null;
+        }
+
+        public boolean isOpen() {
+            return messages != null;
+        }
+
+        public Flags getPermanentFlags() {
+            return new Flags();
+        }
+
+        public int getMessageCount() {
+            return messages.length;
+        }
+
+        public Message getMessage(int index) {
+            return messages[index - 1];
+        }
+
+        public void appendMessages(Message[] messagesToAppend) throws MessagingException {
+            throw new MethodNotSupportedException();
+        }
+
+        public Message[] expunge() throws MessagingException {
+            throw new MethodNotSupportedException();
+        }
+
+        public long getUIDValidity() {
+            return 1;
+        }
+
+        public Message getMessageByUID(long uid) {
+            return uid > 0 && uid <= messages.length ? messages[(int) uid - 1] : null;
+        }
+
+        public Message[] getMessagesByUID(long start, long end) {
+            List<Message> result = new ArrayList<Message>();
+            for (long uid = start; uid <= Math.min(end, messages.length); uid++) {
+                result.add(getMessageByUID(uid));
+            }
+            return result.toArray(new Message[result.size()]);
+        }
+
+        public Message[] getMessagesByUID(long[] uids) {
+            Message[] result = new Message[uids.length];
+            for (int i = 0; i < uids.length; i++) {
+                result[i] = getMessageByUID(uids[i]);
+            }
+            return result;
+        }
+
+        public long getUID(Message message) {
+            return message.getMessageNumber();
+        }
+    }
+
+    private static class MemoryMessage extends MimeMessage {
+
+        public MemoryMessage(Folder folder, String content, int number) throws MessagingException {
+            super(folder, new ByteArrayInputStream(content.getBytes()), number);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.imap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.mail.Provider;
+import javax.mail.Session;
+
+import org.semanticdesktop.aperture.ApertureTestBase;
+import org.semanticdesktop.aperture.TestIncrementalCrawlerHandler;
+import org.semanticdesktop.aperture.accessor.AccessData;
+import org.semanticdesktop.aperture.accessor.base.AccessDataImpl;
+import org.semanticdesktop.aperture.datasource.imap.ImapDataSource;
+import org.semanticdesktop.aperture.rdf.RDFContainer;
+
+/**
+ * Crawls a {@link MemoryImapStore}, which the default mail session uses for the imap protocol during the
+ * tests.
+ */
+public class TestImapCrawler extends ApertureTestBase {
+
+    private Session session;
+
+    private Provider originalProvider;
+
+    private RDFContainer configuration;
+
+    private Map<String, List<String>> mailbox;
+
+    public void setUp() throws Exception {
+        // the session the crawler uses
+        session = Session.getDefaultInstance(System.getProperties());
+        originalProvider = session.getProvider("imap");
+        session.setProvider(new Provider(Provider.Type.STORE, "imap", MemoryImapStore.class.getName(),
+                "Aperture", null));
+
+        configuration = createRDFContainer("urn:dummy:source");
+        mailbox = new HashMap<String, List<String>>();
+        addFolder("a", 2);
+        addFolder("b", 2);
+        addFolder("c", 1);
+        addFolder("c/d", 3);
+        addFolder("e", 0);
+        MemoryImapStore.setMailbox(mailbox);
+    }
+
+    public void tearDown() throws Exception {
+        session.setProvider(originalProvider);
+        configuration.getModel().close();
+    }
+
+    public void testCrawl() throws Exception {
+        // the default folder, five folders and eight messages
+        TestIncrementalCrawlerHandler handler = crawl(null, 1);
+        assertNewModUnmodDel(handler, 14, 0, 0, 0);
+        assertEquals(1, MemoryImapStore.getConnectionCount());
+        handler.close();
+
+        TestIncrementalCrawlerHandler parallelHandler = crawl(null, 3);
+        assertNewModUnmodDel(parallelHandler, 14, 0, 0, 0);
+        assertEquals(handler.getNewObjects(), parallelHandler.getNewObjects());
+        assertEquals(3, MemoryImapStore.getConnectionCount());
+        parallelHandler.close();
+    }
+
+    public void testConnectionsLimitedByFolders() throws Exception {
+        // there is nothing to crawl for more connections than folders
+        TestIncrementalCrawlerHandler handler = crawl(null, 10);
+        assertNewModUnmodDel(handler, 14, 0, 0, 0);
+        assertEquals(6, MemoryImapStore.getConnectionCount());
+        handler.close();
+    }
+
+    public void testIncrementalParallelCrawl() throws Exception {
+        AccessData accessData = new AccessDataImpl();
+        TestIncrementalCrawlerHandler handler1 = crawl(accessData, 3);
+        assertNewModUnmodDel(handler1, 14, 0, 0, 0);
+        handler1.close();
+
+        TestIncrementalCrawlerHandler handler2 = crawl(accessData, 3);
+        assertNewModUnmodDel(handler2, 0, 0, 14, 0);
+        handler2.close();
+
+        // a new message in b, a message removed from c/d
+        mailbox.get("b").add(createMessage("b", 3));
+        mailbox.get("c/d").remove(2);
+        MemoryImapStore.setMailbox(mailbox);
+        TestIncrementalCrawlerHandler handler3 = crawl(accessData, 3);
+        assertNewModUnmodDel(handler3, 1, 2, 11, 1);
+        handler3.close();
+
+        // the AccessData is the same as after a crawl over a single connection
+        TestIncrementalCrawlerHandler handler4 = crawl(accessData, 1);
+        assertNewModUnmodDel(handler4, 0, 0, 14, 0);
+        handler4.close();
+    }
+
+    private void addFolder(String name, int messageCount) {
+        List<String> messages = new ArrayList<String>();
+        for (int i = 1; i <= messageCount; i++) {
+            messages.add(createMessage(name, i));
+        }
+        mailbox.put(name, messages);
+    }
+
+    private String createMessage(String folderName, int number) {
+        return "From: sender@example.com\r\nTo: recipient@example.com\r\nSubject: message " + number
+                + " in " + folderName + "\r\nMessage-ID: <" + number + "." + folderName.replace('/', '.')
+                + "@example.com>\r\n\r\nBody of message " + number + ".\r\n";
+    }
+
+    private TestIncrementalCrawlerHandler crawl(AccessData accessData, int connectionPoolSize) {
+        MemoryImapStore.setMailbox(mailbox);
+        ImapDataSource dataSource = new ImapDataSource();
+        dataSource.setConfiguration(configuration);
+        dataSource.setHostname("localhost");
+        dataSource.setConnectionPoolSize(Integer.valueOf(connectionPoolSize));
+
+        ImapCrawler crawler = new ImapCrawler();
+        crawler.setDataSource(dataSource);
+        crawler.setAccessData(accessData);
+        TestIncrementalCrawlerHandler handler = new TestIncrementalCrawlerHandler();
+        crawler.setCrawlerHandler(handler);
+        crawler.crawl();
+        return handler;
+    }
+}
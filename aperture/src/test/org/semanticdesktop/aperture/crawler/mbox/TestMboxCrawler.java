@@ -84,6 +84,33 @@ public class TestMboxCrawler extends ApertureTestBase {
         handler2.close();
     }
     
+    public void testUnchangedMailbox() throws Exception {
+        AccessData accessData = new AccessDataImpl();
+        TestIncrementalCrawlerHandler handler1 = crawl("mbox-aperture-inc1",accessData, null);
+        assertNewModUnmodDel(handler1, 5, 0, 0, 0);
+        handler1.close();
+        File file = handler1.getFile();
+        long lastModified = file.lastModified();
+        // the file has been touched, the mailbox is reported as changed, the mails are not parsed again
+        TestIncrementalCrawlerHandler handler2 = crawl("mbox-aperture-inc1",accessData, file, -1,
+            lastModified + 2000);
+        assertNewModUnmodDel(handler2, 0, 1, 4, 0);
+        handler2.close();
+        // the file has the same date and size as when it was crawled, it is not even opened
+        TestIncrementalCrawlerHandler handler3 = crawl("mbox-aperture-inc1",accessData, file, -1,
+            lastModified + 2000);
+        assertNewModUnmodDel(handler3, 0, 0, 5, 0);
+        handler3.close();
+        // the same holds for the new mail, once the changed mailbox has been crawled
+        TestIncrementalCrawlerHandler handler4 = crawl("mbox-aperture-inc2",accessData, file);
+        assertNewModUnmodDel(handler4, 1, 1, 4, 0);
+        handler4.close();
+        TestIncrementalCrawlerHandler handler5 = crawl("mbox-aperture-inc2",accessData, file, -1,
+            file.lastModified());
+        assertNewModUnmodDel(handler5, 0, 0, 6, 0);
+        handler5.close();
+    }
+    
     public void testMaximumSize() throws Exception {
         TestIncrementalCrawlerHandler handler1 = crawl("mbox-testfolder",null, null);
         // no size restriction, it should find the mailbox, two emails and two attachments
@@ -106,12 +133,20 @@ public class TestMboxCrawler extends ApertureTestBase {
     }
     
     private TestIncrementalCrawlerHandler crawl(String fileName, AccessData data, File oldTempFile, int maxSize) throws Exception {
+        return crawl(fileName, data, oldTempFile, maxSize, -1);
+    }
+    
+    private TestIncrementalCrawlerHandler crawl(String fileName, AccessData data, File oldTempFile, int maxSize,
+            long lastModified) throws Exception {
         MboxDataSource dataSource = new MboxDataSource();
         dataSource.setConfiguration(configuration);
         
         InputStream stream = ResourceUtil.getInputStream(DOCS_PATH + fileName, this.getClass());
         
         File newTempFile = createTempFile(stream, oldTempFile);
+        if (lastModified >= 0) {
+            assertTrue(newTempFile.setLastModified(lastModified));
+        }
         
         dataSource.setMboxPath(newTempFile.getAbsolutePath());
         if (maxSize > 0) {
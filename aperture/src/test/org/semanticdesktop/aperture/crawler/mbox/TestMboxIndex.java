@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.mbox;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Properties;
+
+import javax.mail.Folder;
+import javax.mail.Session;
+import javax.mail.Store;
+import javax.mail.URLName;
+import javax.mail.internet.MimeMessage;
+
+import org.semanticdesktop.aperture.ApertureTestBase;
+
+public class TestMboxIndex extends ApertureTestBase {
+
+    private static final String MESSAGE_1 = "From alice Mon Oct  9 18:08:19 2006\n"
+            + "Subject: first\nX-Status: 0000\n\nHello\nFrom the first message\n\n";
+
+    private static final String MESSAGE_2 = "From bob Mon Oct  9 18:09:19 2006\r\n"
+            + "Subject: second\r\n\r\nsecond body\r\n\r\n";
+
+    private static final String MESSAGE_3 = "From carol Mon Oct  9 18:10:19 2006\n"
+            + "Subject: third\n\nthird body\n";
+
+    private File file;
+
+    private Store store;
+
+    private Folder folder;
+
+    public void setUp() throws Exception {
+        file = File.createTempFile("index", ".mbox");
+        // the messages need a folder, the folder of the store is not used otherwise
+        store = Session.getInstance(new Properties()).getStore(new URLName("mstor:" + file.getPath()));
+        store.connect();
+        folder = store.getDefaultFolder();
+    }
+
+    public void tearDown() throws Exception {
+        store.close();
+        file.delete();
+    }
+
+    public void testScan() throws Exception {
+        write(MESSAGE_1 + MESSAGE_2 + MESSAGE_3, false);
+        MboxIndex index = new MboxIndex(file);
+        index.open(null);
+        assertEquals(3, index.getMessageCount());
+        assertEquals(0, index.getReusedMessageCount());
+
+        // a "From " line in a body does not separate messages unless it follows an empty line
+        MimeMessage message = index.getMessage(0, folder);
+        assertEquals("first", message.getSubject());
+        assertEquals("Hello\nFrom the first message\n", message.getContent());
+        assertEquals(1, message.getMessageNumber());
+        message = index.getMessage(1, folder);
+        assertEquals("second", message.getSubject());
+        assertEquals("second body\r\n", message.getContent());
+        assertEquals("third body", index.getMessage(2, folder).getContent());
+        index.close();
+
+        // the content of the messages can be read after the file has been closed
+        assertEquals("second body\r\n", message.getContent());
+    }
+
+    public void testReuse() throws Exception {
+        write(MESSAGE_1 + MESSAGE_2, false);
+        MboxIndex index = new MboxIndex(file);
+        index.open(null);
+        String storedIndex = index.toString();
+        String digest = index.getDigest(1);
+        index.close();
+
+        // appended messages are the only ones that are scanned
+        write(MESSAGE_3, true);
+        index.open(storedIndex);
+        assertEquals(3, index.getMessageCount());
+        assertEquals(2, index.getReusedMessageCount());
+        assertEquals(digest, index.getDigest(1));
+        assertEquals("third", index.getMessage(2, folder).getSubject());
+        storedIndex = index.toString();
+        index.close();
+
+        // a message that changes size invalidates the entries from that message on
+        write(MESSAGE_1.replace("first message", "first, longer message") + MESSAGE_2 + MESSAGE_3, false);
+        index.open(storedIndex);
+        assertEquals(3, index.getMessageCount());
+        assertEquals(0, index.getReusedMessageCount());
+        assertEquals(digest, index.getDigest(1));
+        storedIndex = index.toString();
+        index.close();
+
+        // headers that are rewritten in place do not change the digest
+        write(MESSAGE_1 + MESSAGE_2 + MESSAGE_3, false);
+        index.open(null);
+        digest = index.getDigest(0);
+        storedIndex = index.toString();
+        index.close();
+        write(MESSAGE_1.replace("0000", "0001") + MESSAGE_2 + MESSAGE_3, false);
+        index.open(storedIndex);
+        assertEquals(3, index.getReusedMessageCount());
+        index.close();
+        index.open(null);
+        assertEquals(digest, index.getDigest(0));
+        index.close();
+
+        // a malformed index is ignored
+        index.open("garbage");
+        assertEquals(3, index.getMessageCount());
+        assertEquals(0, index.getReusedMessageCount());
+        index.close();
+    }
+
+    private void write(String content, boolean append) throws Exception {
+        if (append) {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            randomAccessFile.seek(randomAccessFile.length());
+            randomAccessFile.write(content.getBytes("ISO-8859-1"));
+            randomAccessFile.close();
+        }
+        else {
+            FileOutputStream stream = new FileOutputStream(file);
+            stream.write(content.getBytes("ISO-8859-1"));
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.web;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.semanticdesktop.aperture.util.FileUtil;
+
+public class TestFingerprintVisitedUrlStore extends TestCase {
+
+    private static final String TMP_SUBDIR = "TestFingerprintVisitedUrlStore.tmpDir";
+
+    private File tmpDir;
+
+    public void setUp() throws IOException {
+        tmpDir = new File(System.getProperty("java.io.tmpdir"), TMP_SUBDIR).getCanonicalFile();
+        FileUtil.deltree(tmpDir);
+        assertTrue(tmpDir.mkdir());
+    }
+
+    public void tearDown() {
+        FileUtil.deltree(tmpDir);
+    }
+
+    public void testAddAndContains() {
+        // a filter that is much too small, so that the hash table is consulted often and has to grow
+        FingerprintVisitedUrlStore store = new FingerprintVisitedUrlStore(1000, 0.1, tmpDir);
+        int urlCount = 100000;
+        for (int i = 0; i < urlCount; i += 2) {
+            store.add(getUrl(i));
+        }
+        store.add(getUrl(0));
+
+        for (int i = 0; i < urlCount; i++) {
+            assertEquals(i % 2 == 0, store.contains(getUrl(i)));
+        }
+        assertEquals(urlCount / 2, store.size());
+        assertTrue(store.getFilterFalsePositiveCount() > 0);
+        assertTrue(store.getDiskUsage() >= urlCount / 2 * 8);
+        assertEquals(1, tmpDir.list().length);
+
+        // the memory usage does not depend on the number of URLs
+        long memoryUsage = store.getMemoryUsage();
+        store.add(getUrl(1));
+        assertEquals(memoryUsage, store.getMemoryUsage());
+        assertTrue(store.getFingerprintCollisionRate() < 1e-12);
+
+        // the filter is much too small, so that it reports most new URLs as possibly added
+        assertEquals(store.getFilterFalsePositiveRate(), store.getFalsePositiveRate(), 0.0);
+        assertTrue(store.getFalsePositiveRate() > 0.5);
+
+        store.close();
+        assertEquals(0, tmpDir.list().length);
+    }
+
+    public void testFullTable() {
+        // a table of 1024 slots is full after 614 fingerprints
+        FingerprintVisitedUrlStore store = new FingerprintVisitedUrlStore(100000, 0.0001, tmpDir, 1024);
+        int urlCount = 5000;
+        for (int i = 0; i < urlCount; i += 2) {
+            store.add(getUrl(i));
+        }
+        store.add(getUrl(urlCount - 2));
+        assertEquals(1024 * 8, store.getDiskUsage());
+
+        // the URLs that did not fit in the table are still found through the Bloom filter
+        int falsePositiveCount = 0;
+        for (int i = 0; i < urlCount; i++) {
+            if (i % 2 == 0) {
+                assertTrue(store.contains(getUrl(i)));
+            }
+            else if (store.contains(getUrl(i))) {
+                falsePositiveCount++;
+            }
+        }
+        assertTrue(falsePositiveCount < 5);
+        assertTrue(store.size() <= urlCount / 2);
+        assertTrue(store.size() > urlCount / 2 - 5);
+
+        // clearing the store makes the table usable again
+        store.clear();
+        assertFalse(store.contains(getUrl(0)));
+        store.add(getUrl(0));
+        assertTrue(store.contains(getUrl(0)));
+        assertEquals(1, store.size());
+        store.close();
+    }
+
+    public void testClear() {
+        FingerprintVisitedUrlStore store = new FingerprintVisitedUrlStore(1000, 0.01, tmpDir);
+        store.add("http://example.org/");
+        assertTrue(store.contains("http://example.org/"));
+        store.clear();
+        assertFalse(store.contains("http://example.org/"));
+        assertEquals(0, store.size());
+        assertEquals(0, tmpDir.list().length);
+
+        store.add("http://example.org/other");
+        assertTrue(store.contains("http://example.org/other"));
+        store.close();
+    }
+
+    public void testFilterSize() {
+        // roughly 9.6 bits per URL for a 1% false positive rate
+        FingerprintVisitedUrlStore store = new FingerprintVisitedUrlStore(1000000, 0.01);
+        assertTrue(store.getMemoryUsage() > 1150000);
+        assertTrue(store.getMemoryUsage() < 1250000);
+        assertEquals(0.0, store.getFilterFalsePositiveRate(), 0.0);
+    }
+
+    public void testInvalidArguments() {
+        try {
+            new FingerprintVisitedUrlStore(0, 0.01);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            // this should happen
+        }
+        try {
+            new FingerprintVisitedUrlStore(1000, 1.0);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            // this should happen
+        }
+    }
+
+    public void testHashSetStore() {
+        HashSetVisitedUrlStore store = new HashSetVisitedUrlStore();
+        store.add("http://example.org/");
+        store.add("http://example.org/");
+        assertTrue(store.contains("http://example.org/"));
+        assertFalse(store.contains("http://example.org/other"));
+        assertEquals(1, store.size());
+        assertTrue(store.getMemoryUsage() > 0);
+        assertEquals(0.0, store.getFalsePositiveRate(), 0.0);
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(0, store.getMemoryUsage());
+    }
+
+    private String getUrl(int i) {
+        return "http://www.example.org/folder" + (i % 100) + "/page" + i + ".html";
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestSitemapReader extends TestCase implements SitemapReader.Listener {
+
+    private List<String> urls;
+
+    private List<Long> lastModifieds;
+
+    private List<Long> changeIntervals;
+
+    private List<String> sitemaps;
+
+    public void setUp() {
+        urls = new ArrayList<String>();
+        lastModifieds = new ArrayList<Long>();
+        changeIntervals = new ArrayList<Long>();
+        sitemaps = new ArrayList<String>();
+    }
+
+    public void urlFound(String url, long lastModified, long changeInterval) {
+        urls.add(url);
+        lastModifieds.add(Long.valueOf(lastModified));
+        changeIntervals.add(Long.valueOf(changeInterval));
+    }
+
+    public void sitemapFound(String url) {
+        sitemaps.add(url);
+    }
+
+    public void testSitemap() throws IOException {
+        parse("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+                + "<url><loc>http://example.org/</loc><lastmod>2005-01-01</lastmod>"
+                + "<changefreq>monthly</changefreq><priority>0.8</priority></url>"
+                + "<url><loc> http://example.org/a.html </loc><changefreq>never</changefreq></url>"
+                + "<url><loc>http://example.org/b.html</loc><lastmod>2005-01-01T00:00:01Z</lastmod></url>"
+                + "</urlset>", "http://example.org/sitemap.xml");
+
+        assertEquals(Arrays.asList(new String[] { "http://example.org/", "http://example.org/a.html",
+                "http://example.org/b.html" }), urls);
+        assertTrue(lastModifieds.get(0).longValue() > 0L);
+        assertEquals(-1L, lastModifieds.get(1).longValue());
+        assertEquals(1104537601000L, lastModifieds.get(2).longValue());
+        assertEquals(30L * 24L * 60L * 60L * 1000L, changeIntervals.get(0).longValue());
+        assertEquals(Long.MAX_VALUE, changeIntervals.get(1).longValue());
+        assertEquals(-1L, changeIntervals.get(2).longValue());
+        assertTrue(sitemaps.isEmpty());
+    }
+
+    public void testDateWithoutTime() {
+        // a date without a time stands for the entire day
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2005, Calendar.JANUARY, 2);
+        assertEquals(calendar.getTimeInMillis() - 1L, SitemapReader.parseDate("2005-01-01"));
+        assertEquals(1104623999999L, SitemapReader.parseDate("2005-01-01Z"));
+
+        calendar.set(2005, Calendar.FEBRUARY, 1);
+        assertEquals(calendar.getTimeInMillis() - 1L, SitemapReader.parseDate("2005-01"));
+
+        // a time is taken as it is
+        assertEquals(1104537600000L, SitemapReader.parseDate("2005-01-01T00:00:00Z"));
+    }
+
+    public void testSitemapIndex() throws IOException {
+        parse("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+                + "<sitemap><loc>http://example.org/sitemap1.xml.gz</loc>"
+                + "<lastmod>2004-10-01</lastmod></sitemap>"
+                + "<sitemap><loc>http://example.org/sitemap2.xml.gz</loc></sitemap>"
+                + "</sitemapindex>", "http://example.org/sitemap.xml");
+
+        assertEquals(Arrays.asList(new String[] { "http://example.org/sitemap1.xml.gz",
+                "http://example.org/sitemap2.xml.gz" }), sitemaps);
+        assertTrue(urls.isEmpty());
+    }
+
+    public void testRssFeed() throws IOException {
+        parse("<rss version=\"2.0\"><channel><title>news</title><link>http://example.org/</link>"
+                + "<item><title>first</title><link>http://example.org/news/1.html</link>"
+                + "<pubDate>Sat, 01 Jan 2005 00:00:01 GMT</pubDate></item>"
+                + "<item><title>second</title><link>/news/2.html</link></item>"
+                + "</channel></rss>", "http://example.org/feed.rss");
+
+        // the link of the channel is not an entry
+        assertEquals(Arrays.asList(new String[] { "http://example.org/news/1.html",
+                "http://example.org/news/2.html" }), urls);
+        assertEquals(1104537601000L, lastModifieds.get(0).longValue());
+        assertEquals(-1L, lastModifieds.get(1).longValue());
+    }
+
+    public void testAtomFeed() throws IOException {
+        parse("<feed xmlns=\"http://www.w3.org/2005/Atom\"><title>news</title>"
+                + "<link href=\"http://example.org/\"/>"
+                + "<entry><title>first</title><link rel=\"edit\" href=\"http://example.org/edit/1\"/>"
+                + "<link href=\"http://example.org/news/1.html\"/>"
+                + "<updated>2005-01-01T01:00:01+01:00</updated></entry>"
+                + "</feed>", "http://example.org/feed.atom");
+
+        assertEquals(Arrays.asList(new String[] { "http://example.org/news/1.html" }), urls);
+        assertEquals(1104537601000L, lastModifieds.get(0).longValue());
+    }
+
+    public void testRobotsTxt() throws IOException {
+        String robotsTxt = "User-agent: *\nDisallow: /private/\n\n"
+                + "Sitemap: http://example.org/sitemap.xml # the main sitemap\n"
+                + "sitemap:http://example.org/news.xml\n";
+        List<String> result = SitemapReader.parseRobotsTxt(new ByteArrayInputStream(robotsTxt
+                .getBytes("UTF-8")));
+        assertEquals(Arrays.asList(new String[] { "http://example.org/sitemap.xml",
+                "http://example.org/news.xml" }), result);
+    }
+
+    public void testInvalidSitemap() {
+        try {
+            parse("<urlset><url><loc>http://example.org/</loc>", "http://example.org/sitemap.xml");
+            fail();
+        }
+        catch (IOException e) {
+            // this should happen
+        }
+    }
+
+    private void parse(String sitemap, String url) throws IOException {
+        new SitemapReader(this).parse(new ByteArrayInputStream(sitemap.getBytes("UTF-8")), url);
+    }
+}
@@ -0,0 +1,509 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.crawler.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.ontoware.rdf2go.model.node.URI;
+import org.semanticdesktop.aperture.ApertureTestBase;
+import org.semanticdesktop.aperture.accessor.DataObject;
+import org.semanticdesktop.aperture.accessor.RDFContainerFactory;
+import org.semanticdesktop.aperture.accessor.base.AccessDataImpl;
+import org.semanticdesktop.aperture.accessor.file.FileAccessorFactory;
+import org.semanticdesktop.aperture.accessor.impl.DataAccessorRegistryImpl;
+import org.semanticdesktop.aperture.crawler.Crawler;
+import org.semanticdesktop.aperture.crawler.CrawlerHandler;
+import org.semanticdesktop.aperture.crawler.ExitCode;
+import org.semanticdesktop.aperture.crawler.base.CrawlReportBase;
+import org.semanticdesktop.aperture.datasource.web.WebDataSource;
+import org.semanticdesktop.aperture.hypertext.linkextractor.html.HtmlLinkExtractorFactory;
+import org.semanticdesktop.aperture.hypertext.linkextractor.impl.LinkExtractorRegistryImpl;
+import org.semanticdesktop.aperture.mime.identifier.magic.MagicMimeTypeIdentifier;
+import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.rdf.impl.RDFContainerImpl;
+import org.semanticdesktop.aperture.util.FileUtil;
+import org.semanticdesktop.aperture.util.IOUtil;
+
+public class TestWebCrawler extends ApertureTestBase {
+
+    private static final String TMP_SUBDIR = "TestWebCrawler.tmpDir";
+
+    private File tmpDir;
+
+    private File indexFile;
+
+    private Set<String> expectedUrls;
+
+    public void setUp() throws IOException {
+        tmpDir = new File(System.getProperty("java.io.tmpdir"), TMP_SUBDIR).getCanonicalFile();
+        FileUtil.deltree(tmpDir);
+        assertTrue(tmpDir.mkdir());
+        expectedUrls = new HashSet<String>();
+
+        // an index page linking to a number of pages, which link to a number of subpages and back to the index
+        StringBuilder index = new StringBuilder("<html><body>");
+        for (int i = 0; i < 8; i++) {
+            StringBuilder page = new StringBuilder("<html><body><a href=\"index.html\">index</a>");
+            for (int j = 0; j < 4; j++) {
+                String subpageName = "subpage-" + i + "-" + j + ".html";
+                page.append("<a href=\"").append(subpageName).append("\">subpage</a>");
+                writePage(subpageName, "<html><body><a href=\"page-" + ((i + 1) % 8)
+                        + ".html\">next</a></body></html>");
+            }
+            page.append("</body></html>");
+
+            String pageName = "page-" + i + ".html";
+            index.append("<a href=\"").append(pageName).append("\">page</a>");
+            writePage(pageName, page.toString());
+        }
+        index.append("</body></html>");
+        indexFile = writePage("index.html", index.toString());
+    }
+
+    private File writePage(String name, String contents) throws IOException {
+        File file = new File(tmpDir, name);
+        IOUtil.writeString(contents, file);
+        expectedUrls.add(file.toURI().toString());
+        return file;
+    }
+
+    public void tearDown() {
+        FileUtil.deltree(tmpDir);
+    }
+
+    public void testSequentialCrawl() throws Exception {
+        checkCrawl(1);
+    }
+
+    public void testParallelCrawl() throws Exception {
+        checkCrawl(4);
+    }
+
+    public void testCrawlWithoutAccessData() throws Exception {
+        RDFContainer configuration = createRDFContainer("urn:test:dummySource");
+        WebCrawler crawler = createCrawler(configuration, 4);
+        FingerprintVisitedUrlStore store = new FingerprintVisitedUrlStore(1000, 0.01);
+        crawler.setVisitedUrlStore(store);
+
+        CollectingCrawlerHandler crawlerHandler = new CollectingCrawlerHandler();
+        crawler.setCrawlerHandler(crawlerHandler);
+        crawler.crawl();
+        assertEquals(ExitCode.COMPLETED, crawlerHandler.getExitCode());
+        assertEquals(expectedUrls, crawlerHandler.getNewUrls());
+
+        // the statistics of the store are part of the crawl report, also after it has been stored
+        CrawlReportBase report = (CrawlReportBase) crawler.getCrawlReport();
+        assertEquals(String.valueOf(expectedUrls.size()), report
+                .getStatistic(WebCrawler.VISITED_URL_COUNT_STATISTIC));
+        assertEquals(String.valueOf(store.getMemoryUsage()), report
+                .getStatistic(WebCrawler.VISITED_URL_MEMORY_STATISTIC));
+        double falsePositiveRate = Double.parseDouble(report
+                .getStatistic(WebCrawler.VISITED_URL_FALSE_POSITIVE_RATE_STATISTIC));
+        assertTrue(falsePositiveRate > 0.0);
+        assertTrue(falsePositiveRate < 0.01);
+        long filterPositives = Long.parseLong(report
+                .getStatistic(WebCrawler.VISITED_URL_FILTER_POSITIVE_STATISTIC));
+        long filterFalsePositives = Long.parseLong(report
+                .getStatistic(WebCrawler.VISITED_URL_FILTER_FALSE_POSITIVE_STATISTIC));
+        assertTrue(filterPositives >= filterFalsePositives);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        report.write(buffer);
+        CrawlReportBase readReport = new CrawlReportBase();
+        readReport.read(new ByteArrayInputStream(buffer.toByteArray()));
+        assertEquals(report.getStatistics(), readReport.getStatistics());
+        assertEquals(expectedUrls.size(), readReport.getNewCount());
+
+        // the store has released its file
+        assertEquals(0, store.getDiskUsage());
+
+        configuration.getModel().close();
+    }
+
+    public void testSitemapDiscovery() throws Exception {
+        RDFContainer configuration = createRDFContainer("urn:test:dummySource");
+        WebCrawler crawler = createCrawler(configuration, 1);
+        crawler.setAccessData(new AccessDataImpl());
+        crawler.setSitemapDiscovery(true);
+
+        // a sitemap index referring to a sitemap that lists the index, the pages and an unlinked page
+        File orphanFile = writePage("orphan.html", "<html><body>not linked</body></html>");
+        StringBuilder sitemap = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">");
+        appendSitemapEntry(sitemap, indexFile, "<lastmod>2000-01-01</lastmod>");
+        for (int i = 0; i < 8; i++) {
+            appendSitemapEntry(sitemap, new File(tmpDir, "page-" + i + ".html"),
+                "<lastmod>2000-01-01T12:00:00+00:00</lastmod>");
+        }
+        appendSitemapEntry(sitemap, orphanFile, "<changefreq>always</changefreq>");
+        sitemap.append("</urlset>");
+        File sitemapFile = new File(tmpDir, "sitemap.xml");
+        IOUtil.writeString(sitemap.toString(), sitemapFile);
+        File sitemapIndexFile = new File(tmpDir, "sitemap-index.xml");
+        IOUtil.writeString("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+                + "<sitemap><loc>" + sitemapFile.toURI() + "</loc></sitemap></sitemapindex>", sitemapIndexFile);
+        crawler.setSitemapUrls(Arrays.asList(new String[] { sitemapIndexFile.toURI().toString() }));
+
+        // the first crawl reports every page, including the one that is only listed in the sitemap
+        CollectingCrawlerHandler crawlerHandler = new CollectingCrawlerHandler();
+        crawler.setCrawlerHandler(crawlerHandler);
+        crawler.crawl();
+        assertEquals(expectedUrls, crawlerHandler.getNewUrls());
+        CrawlReportBase report = (CrawlReportBase) crawler.getCrawlReport();
+        assertEquals("10", report.getStatistic(WebCrawler.SITEMAP_URL_COUNT_STATISTIC));
+        assertEquals("0", report.getStatistic(WebCrawler.SITEMAP_UNCHANGED_STATISTIC));
+
+        // The pages that have not changed according to the sitemap are not accessed in the second crawl, so
+        // a deleted page is not noticed. The subpages are still reached through the stored links.
+        assertTrue(new File(tmpDir, "page-3.html").delete());
+        crawlerHandler = new CollectingCrawlerHandler();
+        crawler.setCrawlerHandler(crawlerHandler);
+        crawler.crawl();
+        assertEquals(ExitCode.COMPLETED, crawlerHandler.getExitCode());
+        assertTrue(crawlerHandler.getNewUrls().isEmpty());
+        assertEquals(expectedUrls, crawlerHandler.getUnmodifiedUrls());
+        assertEquals(0, crawler.getCrawlReport().getRemovedCount());
+        report = (CrawlReportBase) crawler.getCrawlReport();
+        assertEquals("9", report.getStatistic(WebCrawler.SITEMAP_UNCHANGED_STATISTIC));
+
+        configuration.getModel().close();
+    }
+
+    public void testSitemapDateOfPreviousCrawl() throws Exception {
+        RDFContainer configuration = createRDFContainer("urn:test:dummySource");
+        WebCrawler crawler = createCrawler(configuration, 1);
+        crawler.setAccessData(new AccessDataImpl());
+        crawler.setSitemapDiscovery(true);
+
+        // the index page was modified today, but the sitemap does not say when
+        String today = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+        StringBuilder sitemap = new StringBuilder(
+            "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">");
+        appendSitemapEntry(sitemap, indexFile, "<lastmod>" + today + "</lastmod>");
+        sitemap.append("</urlset>");
+        File sitemapFile = new File(tmpDir, "sitemap.xml");
+        IOUtil.writeString(sitemap.toString(), sitemapFile);
+        crawler.setSitemapUrls(Arrays.asList(new String[] { sitemapFile.toURI().toString() }));
+
+        CollectingCrawlerHandler crawlerHandler = new CollectingCrawlerHandler();
+        crawler.setCrawlerHandler(crawlerHandler);
+        crawler.crawl();
+        assertEquals(expectedUrls, crawlerHandler.getNewUrls());
+
+        // the page may have changed after the previous crawl on the same day, so it is accessed again
+        crawlerHandler = new CollectingCrawlerHandler();
+        crawler.setCrawlerHandler(crawlerHandler);
+        crawler.crawl();
+        assertEquals(ExitCode.COMPLETED, crawlerHandler.getExitCode());
+        assertEquals(expectedUrls, crawlerHandler.getUnmodifiedUrls());
+        CrawlReportBase report = (CrawlReportBase) crawler.getCrawlReport();
+        assertEquals("1", report.getStatistic(WebCrawler.SITEMAP_URL_COUNT_STATISTIC));
+        assertEquals("0", report.getStatistic(WebCrawler.SITEMAP_UNCHANGED_STATISTIC));
+
+        configuration.getModel().close();
+    }
+
+    private void appendSitemapEntry(StringBuilder sitemap, File file, String properties) {
+        sitemap.append("<url><loc>").append(file.toURI()).append("</loc>");
+        sitemap.append(properties).append("</url>");
+    }
+
+    private WebCrawler createCrawler(RDFContainer configuration, int threadCount) {
+        WebDataSource dataSource = new WebDataSource();
+        dataSource.setConfiguration(configuration);
+        dataSource.setRootUrl(indexFile.toURI().toString());
+
+        WebCrawler crawler = new WebCrawler();
+        crawler.setDataSource(dataSource);
+        crawler.setThreadCount(threadCount);
+        crawler.setMaxConnectionsPerHost(threadCount);
+        crawler.setMimeTypeIdentifier(new MagicMimeTypeIdentifier());
+
+        DataAccessorRegistryImpl accessorRegistry = new DataAccessorRegistryImpl();
+        accessorRegistry.add(new FileAccessorFactory());
+        crawler.setDataAccessorRegistry(accessorRegistry);
+
+        LinkExtractorRegistryImpl linkExtractorRegistry = new LinkExtractorRegistryImpl();
+        linkExtractorRegistry.add(new HtmlLinkExtractorFactory());
+        crawler.setLinkExtractorRegistry(linkExtractorRegistry);
+        return crawler;
+    }
+
+    private void checkCrawl(int threadCount) throws Exception {
+        RDFContainer configuration = createRDFContainer("urn:test:dummySource");
+        WebCrawler crawler = createCrawler(configuration, threadCount);
+        crawler.setAccessData(new AccessDataImpl());
+
+        // the first crawl should report every page exactly once
+        CollectingCrawlerHandler crawlerHandler = new CollectingCrawlerHandler();
+        crawler.setCrawlerHandler(crawlerHandler);
+        crawler.crawl();
+        assertEquals(ExitCode.COMPLETED, crawlerHandler.getExitCode());
+        assertEquals(expectedUrls, crawlerHandler.getNewUrls());
+        assertTrue(crawlerHandler.getUnmodifiedUrls().isEmpty());
+
+        // the second crawl should reach all pages through the links stored in the AccessData
+        crawlerHandler = new CollectingCrawlerHandler();
+        crawler.setCrawlerHandler(crawlerHandler);
+        crawler.crawl();
+        assertEquals(ExitCode.COMPLETED, crawlerHandler.getExitCode());
+        assertTrue(crawlerHandler.getNewUrls().isEmpty());
+        assertEquals(expectedUrls, crawlerHandler.getUnmodifiedUrls());
+        assertEquals(0, crawler.getCrawlReport().getRemovedCount());
+
+        configuration.getModel().close();
+    }
+
+    public void testJobQueueOrder() {
+        CrawlJobQueue queue = new CrawlJobQueue(2, 1, 0L);
+        queue.add(new CrawlJob("http://a.org/1", 1));
+        queue.add(new CrawlJob("http://b.org/1", 1));
+        queue.add(new CrawlJob("http://a.org/2", 2));
+        queue.add(new CrawlJob("http://b.org/2", 2));
+        queue.add(new CrawlJob("http://a.org/3", 1));
+        assertEquals(5, queue.size());
+
+        // larger depths first, equal depths in the order in which they were added
+        assertEquals("http://a.org/2", pollAndFinish(queue));
+        assertEquals("http://b.org/2", pollAndFinish(queue));
+        assertEquals("http://a.org/1", pollAndFinish(queue));
+        assertEquals("http://b.org/1", pollAndFinish(queue));
+        assertEquals("http://a.org/3", pollAndFinish(queue));
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll(0L));
+    }
+
+    public void testJobQueueReplaceAndRemove() {
+        // an unlimited crawl depth
+        int depth = Integer.MAX_VALUE - 1;
+        CrawlJobQueue queue = new CrawlJobQueue(Integer.MAX_VALUE, 1, 0L);
+        queue.add(new CrawlJob("http://a.org/1", depth));
+        queue.add(new CrawlJob("http://a.org/2", depth));
+        queue.add(new CrawlJob("http://a.org/3", depth));
+
+        // replace a job by one with a larger depth and remove another one
+        queue.add(new CrawlJob("http://a.org/3", depth + 1));
+        assertEquals(depth + 1, queue.get("http://a.org/3").getDepth());
+        assertEquals("http://a.org/1", queue.remove("http://a.org/1").getURL());
+        assertNull(queue.remove("http://a.org/1"));
+        assertEquals(2, queue.size());
+
+        assertEquals("http://a.org/3", pollAndFinish(queue));
+        assertEquals("http://a.org/2", pollAndFinish(queue));
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll(0L));
+        assertEquals(-1L, queue.getWaitTime(0L));
+    }
+
+    public void testJobQueueHostLimits() {
+        CrawlJobQueue queue = new CrawlJobQueue(1, 1, 100L);
+        queue.add(new CrawlJob("http://a.org/1", 1));
+        queue.add(new CrawlJob("http://a.org/2", 1));
+        queue.add(new CrawlJob("http://b.org/1", 0));
+
+        // a.org is being accessed, so the job of b.org is next even though it has a smaller depth
+        CrawlJob job = queue.poll(1000L);
+        assertEquals("http://a.org/1", job.getURL());
+        assertEquals("http://b.org/1", queue.poll(1000L).getURL());
+        assertNull(queue.poll(1000L));
+        assertEquals(-1L, queue.getWaitTime(1000L));
+
+        // a.org is available again after the politeness delay
+        queue.jobFinished(job);
+        assertEquals(60L, queue.getWaitTime(1040L));
+        assertNull(queue.poll(1040L));
+        assertEquals("http://a.org/2", queue.poll(1100L).getURL());
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testJobQueueManyHosts() {
+        // compare the queue with a scan over all jobs, as it was implemented before
+        int maxConnections = 2;
+        long politenessDelay = 50L;
+        CrawlJobQueue queue = new CrawlJobQueue(3, maxConnections, politenessDelay);
+        List<CrawlJob> queuedJobs = new ArrayList<CrawlJob>();
+        List<CrawlJob> activeJobs = new ArrayList<CrawlJob>();
+        HashMap<String, Integer> activeCounts = new HashMap<String, Integer>();
+        HashMap<String, Long> accessTimes = new HashMap<String, Long>();
+
+        Random random = new Random(42L);
+        long now = 0L;
+        int urlCounter = 0;
+        for (int step = 0; step < 20000; step++) {
+            now += random.nextInt(3);
+            int action = random.nextInt(3);
+            if (action == 0 && urlCounter < 5000) {
+                CrawlJob job = new CrawlJob("http://host" + random.nextInt(500) + ".org/" + urlCounter++,
+                        random.nextInt(4));
+                queue.add(job);
+                queuedJobs.add(job);
+            }
+            else if (action == 1 && !activeJobs.isEmpty()) {
+                CrawlJob job = activeJobs.remove(random.nextInt(activeJobs.size()));
+                String host = CrawlJobQueue.getHost(job.getURL());
+                activeCounts.put(host, activeCounts.get(host) - 1);
+                queue.jobFinished(job);
+            }
+            else {
+                // the expected job and wait time
+                CrawlJob expected = null;
+                long expectedWaitTime = -1L;
+                for (CrawlJob job : queuedJobs) {
+                    String host = CrawlJobQueue.getHost(job.getURL());
+                    Integer activeCount = activeCounts.get(host);
+                    if (activeCount != null && activeCount.intValue() >= maxConnections) {
+                        continue;
+                    }
+                    Long accessTime = accessTimes.get(host);
+                    long waitTime = accessTime == null ? 0L : Math.max(0L, accessTime + politenessDelay - now);
+                    if (expectedWaitTime < 0L || waitTime < expectedWaitTime) {
+                        expectedWaitTime = waitTime;
+                    }
+                    if (waitTime == 0L && (expected == null || job.getDepth() > expected.getDepth())) {
+                        expected = job;
+                    }
+                }
+
+                assertEquals(expectedWaitTime, queue.getWaitTime(now));
+                CrawlJob job = queue.poll(now);
+                assertSame(expected, job);
+                if (job != null) {
+                    String host = CrawlJobQueue.getHost(job.getURL());
+                    Integer activeCount = activeCounts.get(host);
+                    activeCounts.put(host, activeCount == null ? 1 : activeCount.intValue() + 1);
+                    accessTimes.put(host, now);
+                    queuedJobs.remove(job);
+                    activeJobs.add(job);
+                }
+            }
+            assertEquals(queuedJobs.size(), queue.size());
+        }
+    }
+
+    public void testGetHost() {
+        assertEquals("http://a.org", CrawlJobQueue.getHost("http://a.org"));
+        assertEquals("http://a.org:8080", CrawlJobQueue.getHost("HTTP://A.org:8080/index.html"));
+        assertEquals("https://a.org", CrawlJobQueue.getHost("https://a.org?query"));
+        assertEquals("file://", CrawlJobQueue.getHost("file:///tmp/index.html"));
+        assertEquals("file:", CrawlJobQueue.getHost("file:/tmp/index.html"));
+    }
+
+    public void testInvalidSettings() {
+        WebCrawler crawler = new WebCrawler();
+        try {
+            crawler.setThreadCount(0);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            // this should happen
+        }
+        try {
+            crawler.setMaxConnectionsPerHost(0);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            // this should happen
+        }
+        try {
+            crawler.setPolitenessDelay(-1L);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            // this should happen
+        }
+    }
+
+    private String pollAndFinish(CrawlJobQueue queue) {
+        CrawlJob job = queue.poll(0L);
+        queue.jobFinished(job);
+        return job.getURL();
+    }
+
+    private class CollectingCrawlerHandler implements CrawlerHandler, RDFContainerFactory {
+
+        private Set<String> newUrls = Collections.synchronizedSet(new HashSet<String>());
+
+        private Set<String> unmodifiedUrls = Collections.synchronizedSet(new HashSet<String>());
+
+        private ExitCode exitCode;
+
+        public Set<String> getNewUrls() {
+            return newUrls;
+        }
+
+        public Set<String> getUnmodifiedUrls() {
+            return unmodifiedUrls;
+        }
+
+        public ExitCode getExitCode() {
+            return exitCode;
+        }
+
+        public void crawlStarted(Crawler crawler) {
+        // no-op
+        }
+
+        public void crawlStopped(Crawler crawler, ExitCode exitCode) {
+            this.exitCode = exitCode;
+        }
+
+        public void accessingObject(Crawler crawler, String url) {
+        // no-op
+        }
+
+        public RDFContainerFactory getRDFContainerFactory(Crawler crawler, String url) {
+            return this;
+        }
+
+        public RDFContainer getRDFContainer(URI uri) {
+            return new RDFContainerImpl(createModel(), uri);
+        }
+
+        public void objectNew(Crawler dataCrawler, DataObject object) {
+            assertTrue(newUrls.add(object.getID().toString()));
+            object.dispose();
+        }
+
+        public void objectChanged(Crawler dataCrawler, DataObject object) {
+            object.dispose();
+            fail();
+        }
+
+        public void objectNotModified(Crawler crawler, String url) {
+            assertTrue(unmodifiedUrls.add(url));
+        }
+
+        public void objectRemoved(Crawler dataCrawler, String url) {
+            fail();
+        }
+
+        public void clearStarted(Crawler crawler) {
+            fail();
+        }
+
+        public void clearingObject(Crawler crawler, String url) {
+            fail();
+        }
+
+        public void clearFinished(Crawler crawler, ExitCode exitCode) {
+            fail();
+        }
+    }
+}
@@ -26,6 +26,8 @@ import org.semanticdesktop.aperture.extractor.presentations.PresentationsExtract
 import org.semanticdesktop.aperture.extractor.publisher.PublisherExtractorTest;
 import org.semanticdesktop.aperture.extractor.quattro.QuattroExtractorTest;
 import org.semanticdesktop.aperture.extractor.rtf.RtfExtractorTest;
+import org.semanticdesktop.aperture.extractor.util.ExtractionCacheTest;
+import org.semanticdesktop.aperture.extractor.util.FullTextWriterTest;
 import org.semanticdesktop.aperture.extractor.util.ThreadedExtractorWrapperTest;
 import org.semanticdesktop.aperture.extractor.visio.VisioExtractorTest;
 import org.semanticdesktop.aperture.extractor.word.WordExtractorTest;
@@ -75,6 +77,8 @@ public class TestExtractors extends TestSuite {
         addTest(new TestSuite(TestDefaultExtractorRegistry.class));
         
         // misc unit tests
+        addTest(new TestSuite(ExtractionCacheTest.class));
+        addTest(new TestSuite(FullTextWriterTest.class));
         addTest(new TestSuite(ThreadedExtractorWrapperTest.class));
     }
 }
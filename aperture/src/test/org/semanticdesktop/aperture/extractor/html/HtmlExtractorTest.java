@@ -7,13 +7,21 @@
 package org.semanticdesktop.aperture.extractor.html;
 
 import java.io.IOException;
+import java.util.HashMap;
 
 import org.ontoware.rdf2go.exception.ModelException;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
 import org.semanticdesktop.aperture.extractor.Extractor;
 import org.semanticdesktop.aperture.extractor.ExtractorException;
 import org.semanticdesktop.aperture.extractor.ExtractorFactory;
 import org.semanticdesktop.aperture.extractor.ExtractorTestBase;
+import org.semanticdesktop.aperture.hypertext.linkextractor.LinkExtractor;
+import org.semanticdesktop.aperture.hypertext.linkextractor.html.HtmlLinkExtractor;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.util.ExposedByteArrayInputStream;
+import org.semanticdesktop.aperture.util.IOUtil;
+import org.semanticdesktop.aperture.util.ResourceUtil;
 import org.semanticdesktop.aperture.vocabulary.NCO;
 import org.semanticdesktop.aperture.vocabulary.NIE;
 
@@ -29,6 +37,31 @@ public class HtmlExtractorTest extends ExtractorTestBase {
         }
     }
 
+    public void testSharedAnalysis() throws Exception {
+        byte[] document = IOUtil.readBytes(ResourceUtil.getInputStream(RESOURCES[0], HtmlExtractorTest.class));
+        ExposedByteArrayInputStream stream = new ExposedByteArrayInputStream(document);
+
+        // extracting the links analyzes the entire document
+        HashMap params = new HashMap();
+        params.put(LinkExtractor.BASE_URL_KEY, "http://docs-r-us.com/dummy");
+        new HtmlLinkExtractor().extractLinks(stream, params);
+        Object analysis = stream.getAttachment();
+        assertNotNull(analysis);
+        stream.reset();
+
+        // the extractor reuses that analysis
+        URI id = new URIImpl("http://docs-r-us.com/dummy");
+        RDFContainer container = createRDFContainer(id);
+        new HtmlExtractorFactory().get().extract(id, stream, null, null, container);
+        assertSame(analysis, stream.getAttachment());
+        checkStatement(NIE.plainTextContent, "example text", container);
+        checkStatement(NIE.title, "Example document", container);
+        checkSimpleContact(NCO.creator, "Chris", container);
+        checkStatement(NIE.keyword, "extractor", container);
+        checkStatement(NIE.description, "testing", container);
+        container.dispose();
+    }
+
     private void testExtraction(String resourceName) throws ExtractorException, IOException, ModelException {
         ExtractorFactory factory = new HtmlExtractorFactory();
         Extractor extractor = factory.get();
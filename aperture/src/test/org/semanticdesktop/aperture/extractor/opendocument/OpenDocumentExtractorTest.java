@@ -6,7 +6,9 @@
  */
 package org.semanticdesktop.aperture.extractor.opendocument;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.ontoware.rdf2go.exception.ModelException;
 import org.semanticdesktop.aperture.extractor.Extractor;
@@ -14,6 +16,9 @@ import org.semanticdesktop.aperture.extractor.ExtractorException;
 import org.semanticdesktop.aperture.extractor.ExtractorFactory;
 import org.semanticdesktop.aperture.extractor.ExtractorTestBase;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.util.ExposedFileInputStream;
+import org.semanticdesktop.aperture.util.IOUtil;
+import org.semanticdesktop.aperture.util.ResourceUtil;
 import org.semanticdesktop.aperture.vocabulary.NCO;
 import org.semanticdesktop.aperture.vocabulary.NFO;
 import org.semanticdesktop.aperture.vocabulary.NIE;
@@ -79,6 +84,30 @@ public class OpenDocumentExtractorTest extends ExtractorTestBase {
         container.dispose();
     }
     
+    public void testFileExtraction() throws Exception {
+        // a document in a file is read through the central directory, with the same results
+        RDFContainer expected = getStatements(OPEN_DOCUMENT_WRITER_DOC);
+        File file = File.createTempFile("opendocument", ".zip");
+        InputStream stream = null;
+        try {
+            IOUtil.writeStream(ResourceUtil.getInputStream(OPEN_DOCUMENT_WRITER_DOC, getClass()), file);
+            stream = new ExposedFileInputStream(file);
+            RDFContainer container = createRDFContainer(expected.getDescribedUri());
+            new OpenDocumentExtractorFactory().get().extract(container.getDescribedUri(), stream, null, null,
+                container);
+            assertEquals(expected.getString(NIE.plainTextContent), container.getString(NIE.plainTextContent));
+            assertEquals(expected.getModel().size(), container.getModel().size());
+            container.dispose();
+        }
+        finally {
+            if (stream != null) {
+                stream.close();
+            }
+            file.delete();
+        }
+        expected.dispose();
+    }
+
     private RDFContainer getStatements(String resourceName) throws ExtractorException, IOException {
         ExtractorFactory factory = new OpenDocumentExtractorFactory();
         Extractor extractor = factory.get();
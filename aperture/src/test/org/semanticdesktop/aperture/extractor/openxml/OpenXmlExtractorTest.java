@@ -6,7 +6,9 @@
  */
 package org.semanticdesktop.aperture.extractor.openxml;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.ontoware.rdf2go.exception.ModelException;
 import org.semanticdesktop.aperture.extractor.Extractor;
@@ -14,6 +16,9 @@ import org.semanticdesktop.aperture.extractor.ExtractorException;
 import org.semanticdesktop.aperture.extractor.ExtractorFactory;
 import org.semanticdesktop.aperture.extractor.ExtractorTestBase;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.util.ExposedFileInputStream;
+import org.semanticdesktop.aperture.util.IOUtil;
+import org.semanticdesktop.aperture.util.ResourceUtil;
 import org.semanticdesktop.aperture.vocabulary.NCO;
 import org.semanticdesktop.aperture.vocabulary.NIE;
 
@@ -54,6 +59,33 @@ public class OpenXmlExtractorTest extends ExtractorTestBase {
         }
     }
 
+    public void testFileExtraction() throws Exception {
+        // a document in a file is read through the central directory, with the same results
+        Extractor extractor = new OpenXmlExtractorFactory().get();
+        for (int i = 0; i < RESOURCES.length; i++) {
+            RDFContainer expected = getStatements(DOCS_PATH + RESOURCES[i]);
+            File file = File.createTempFile("openxml", ".zip");
+            InputStream stream = null;
+            try {
+                IOUtil.writeStream(ResourceUtil.getInputStream(DOCS_PATH + RESOURCES[i], getClass()), file);
+                stream = new ExposedFileInputStream(file);
+                RDFContainer container = createRDFContainer(expected.getDescribedUri());
+                extractor.extract(container.getDescribedUri(), stream, null, null, container);
+                assertEquals(expected.getString(NIE.plainTextContent), container.getString(NIE.plainTextContent));
+                assertEquals(expected.getString(NIE.title), container.getString(NIE.title));
+                assertEquals(expected.getModel().size(), container.getModel().size());
+                container.dispose();
+            }
+            finally {
+                if (stream != null) {
+                    stream.close();
+                }
+                file.delete();
+            }
+            expected.dispose();
+        }
+    }
+
     private RDFContainer getStatements(String resourceName) throws ExtractorException, IOException {
         ExtractorFactory factory = new OpenXmlExtractorFactory();
         Extractor extractor = factory.get();
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.extractor.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.UUID;
+
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.LanguageTagLiteralImpl;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.ontoware.rdf2go.vocabulary.RDFS;
+import org.semanticdesktop.aperture.ApertureTestBase;
+import org.semanticdesktop.aperture.accessor.FileDataObject;
+import org.semanticdesktop.aperture.accessor.base.FileDataObjectBase;
+import org.semanticdesktop.aperture.crawler.base.CrawlerHandlerBase;
+import org.semanticdesktop.aperture.extractor.Extractor;
+import org.semanticdesktop.aperture.extractor.ExtractorException;
+import org.semanticdesktop.aperture.extractor.ExtractorFactory;
+import org.semanticdesktop.aperture.extractor.impl.ExtractorRegistryImpl;
+import org.semanticdesktop.aperture.extractor.pdf.PdfExtractorFactory;
+import org.semanticdesktop.aperture.mime.identifier.MimeTypeIdentifier;
+import org.semanticdesktop.aperture.mime.identifier.magic.MagicMimeTypeIdentifier;
+import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.rdf.impl.BufferedRDFContainer;
+import org.semanticdesktop.aperture.rdf.impl.ModelFullTextSink;
+import org.semanticdesktop.aperture.util.ExposedByteArrayInputStream;
+import org.semanticdesktop.aperture.util.FileUtil;
+import org.semanticdesktop.aperture.util.IOUtil;
+import org.semanticdesktop.aperture.util.ResourceUtil;
+import org.semanticdesktop.aperture.vocabulary.NCO;
+import org.semanticdesktop.aperture.vocabulary.NIE;
+
+/**
+ * Tests for the {@link ExtractionCache} class and its use by {@link CrawlerHandlerBase}.
+ */
+public class ExtractionCacheTest extends ApertureTestBase {
+
+    private static final String TMP_SUBDIR = "ExtractionCacheTest.tmpDir";
+
+    private static final String MIME_TYPE = "application/x-test";
+
+    private static final String PDF_DOC = DOCS_PATH + "pdf-word-2000-pdfwriter-7.0.pdf";
+
+    private File tmpDir;
+
+    private CountingExtractor extractor;
+
+    private TestHandler handler;
+
+    public void setUp() throws IOException {
+        tmpDir = new File(System.getProperty("java.io.tmpdir"), TMP_SUBDIR).getCanonicalFile();
+        FileUtil.deltree(tmpDir);
+        assertTrue(tmpDir.mkdir());
+
+        extractor = new CountingExtractor();
+        ExtractorRegistryImpl registry = new ExtractorRegistryImpl();
+        registry.add(new ExtractorFactory() {
+
+            public Extractor get() {
+                return extractor;
+            }
+
+            public Set getSupportedMimeTypes() {
+                return Collections.singleton(MIME_TYPE);
+            }
+        });
+        handler = new TestHandler(new TestMimeTypeIdentifier(), registry);
+        handler.setExtractionCache(new ExtractionCache(new File(tmpDir, "cache"), 1024 * 1024));
+    }
+
+    public void tearDown() {
+        FileUtil.deltree(tmpDir);
+    }
+
+    public void testHitReplaysStatementsUnderOwnUri() throws Exception {
+        RDFContainer first = process("uri:first", new ExposedByteArrayInputStream(bytes("contents")));
+        RDFContainer second = process("uri:second", new ExposedByteArrayInputStream(bytes("contents")));
+        assertEquals(1, extractor.count);
+        assertEquals(1, handler.getExtractionCache().getHitCount());
+        assertEquals(1, handler.getExtractionCache().getMissCount());
+
+        checkStatements(first);
+        checkStatements(second);
+        assertEquals(MIME_TYPE, second.getString(NIE.mimeType));
+
+        // generated resources are never shared between objects
+        assertFalse(first.getNode(NCO.creator).equals(second.getNode(NCO.creator)));
+        assertFalse(first.getNode(NCO.contributor).equals(second.getNode(NCO.contributor)));
+
+        first.dispose();
+        second.dispose();
+    }
+
+    public void testDifferentContentsAreExtracted() throws Exception {
+        process("uri:first", new ExposedByteArrayInputStream(bytes("contents"))).dispose();
+        process("uri:second", new ExposedByteArrayInputStream(bytes("other contents"))).dispose();
+        assertEquals(2, extractor.count);
+        assertEquals(2, handler.getExtractionCache().getEntryCount());
+    }
+
+    public void testStreamsAndFilesShareEntries() throws Exception {
+        // a plain stream is spooled to a temporary file while its digest is computed
+        RDFContainer first = process("uri:first", new ByteArrayInputStream(bytes("contents")));
+        assertEquals("contents", extractor.lastContents);
+        checkStatements(first);
+        first.dispose();
+
+        File file = new File(tmpDir, "contents.txt");
+        IOUtil.writeString("contents", file);
+        RDFContainer container = new BufferedRDFContainer("uri:file");
+        FileDataObject object = new FileDataObjectBase(container.getDescribedUri(), null, container, file);
+        handler.process(object);
+        checkStatements(container);
+        object.dispose();
+
+        RDFContainer second = process("uri:second", new ByteArrayInputStream(bytes("contents")));
+        checkStatements(second);
+        second.dispose();
+        assertEquals(1, extractor.count);
+    }
+
+    public void testFailedExtractionIsNotCached() throws Exception {
+        extractor.fail = true;
+        try {
+            process("uri:first", new ExposedByteArrayInputStream(bytes("contents")));
+            fail();
+        }
+        catch (ExtractorException e) {
+            // this should happen
+        }
+        assertEquals(0, handler.getExtractionCache().getEntryCount());
+
+        extractor.fail = false;
+        RDFContainer container = process("uri:second", new ExposedByteArrayInputStream(bytes("contents")));
+        checkStatements(container);
+        container.dispose();
+        assertEquals(2, extractor.count);
+    }
+
+    public void testFullTextSinkBypassesCache() throws Exception {
+        RDFContainer container = new BufferedRDFContainer("uri:first");
+        container.setFullTextSink(new ModelFullTextSink());
+        FileDataObject object = new FileDataObjectBase(container.getDescribedUri(), null, container,
+                new ExposedByteArrayInputStream(bytes("contents")));
+        handler.process(object);
+        object.dispose();
+        assertEquals(1, extractor.count);
+        assertEquals(0, handler.getExtractionCache().getEntryCount());
+    }
+
+    public void testEviction() throws Exception {
+        process("uri:first", new ExposedByteArrayInputStream(bytes("contents"))).dispose();
+        long entrySize = handler.getExtractionCache().getSize();
+        assertTrue(entrySize > 0);
+
+        // room for two entries of about the same size
+        ExtractionCache cache = new ExtractionCache(new File(tmpDir, "cache"), entrySize * 2 + entrySize / 2);
+        handler.setExtractionCache(cache);
+        for (int i = 0; i < 10; i++) {
+            process("uri:" + i, new ExposedByteArrayInputStream(bytes("contents " + i))).dispose();
+            assertTrue(cache.getSize() <= cache.getMaxSize());
+        }
+        assertEquals(2, cache.getEntryCount());
+
+        // the most recently stored entries are kept
+        int count = extractor.count;
+        process("uri:x", new ExposedByteArrayInputStream(bytes("contents 9"))).dispose();
+        assertEquals(count, extractor.count);
+        process("uri:y", new ExposedByteArrayInputStream(bytes("contents 0"))).dispose();
+        assertEquals(count + 1, extractor.count);
+    }
+
+    public void testEntriesSurviveRestart() throws Exception {
+        process("uri:first", new ExposedByteArrayInputStream(bytes("contents"))).dispose();
+        ExtractionCache cache = new ExtractionCache(new File(tmpDir, "cache"), 1024 * 1024);
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(handler.getExtractionCache().getSize(), cache.getSize());
+
+        handler.setExtractionCache(cache);
+        RDFContainer container = process("uri:second", new ExposedByteArrayInputStream(bytes("contents")));
+        checkStatements(container);
+        container.dispose();
+        assertEquals(1, extractor.count);
+
+        cache.clear();
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testOnlyFragmentsAndPathsAreRelative() throws Exception {
+        BufferedRDFContainer extracted = new BufferedRDFContainer("file:/a/foo.txt");
+        extracted.add(NIE.hasPart, new URIImpl("file:/a/foo.txt#part"));
+        extracted.add(NIE.hasPart, new URIImpl("file:/a/foo.txt/entry"));
+        extracted.add(RDFS.seeAlso, new URIImpl("file:/a/foo.txt.bak"));
+
+        ExtractionCache cache = handler.getExtractionCache();
+        BufferedRDFContainer first = new BufferedRDFContainer("file:/a/foo.txt");
+        cache.store("0123456789", extracted, first);
+        BufferedRDFContainer second = new BufferedRDFContainer("file:/b/bar.txt");
+        assertTrue(cache.replay("0123456789", second));
+
+        Collection parts = second.getAll(NIE.hasPart);
+        assertEquals(2, parts.size());
+        assertTrue(parts.contains(new URIImpl("file:/b/bar.txt#part")));
+        assertTrue(parts.contains(new URIImpl("file:/b/bar.txt/entry")));
+        assertEquals(new URIImpl("file:/a/foo.txt.bak"), second.getURI(RDFS.seeAlso));
+
+        extracted.dispose();
+        first.dispose();
+        second.dispose();
+    }
+
+    public void testKeyDependsOnMimeType() {
+        byte[] digest = ExtractionCache.createDigest().digest(new byte[] { 1, 2, 3 });
+        String key = ExtractionCache.getKey(digest, "text/plain", extractor);
+        assertEquals(key, ExtractionCache.getKey(digest, "text/plain", extractor));
+        assertFalse(key.equals(ExtractionCache.getKey(digest, "text/html", extractor)));
+        assertFalse(key.equals(ExtractionCache.getKey(digest, null, extractor)));
+    }
+
+    public void testPdfExtractor() throws Exception {
+        ExtractorRegistryImpl registry = new ExtractorRegistryImpl();
+        registry.add(new PdfExtractorFactory());
+        TestHandler pdfHandler = new TestHandler(new MagicMimeTypeIdentifier(), registry);
+        pdfHandler.setExtractionCache(handler.getExtractionCache());
+
+        byte[] pdf = IOUtil.readBytes(ResourceUtil.getInputStream(PDF_DOC, ExtractionCacheTest.class));
+        BufferedRDFContainer first = (BufferedRDFContainer) pdfHandler.process("uri:first",
+                new ByteArrayInputStream(pdf));
+        BufferedRDFContainer second = (BufferedRDFContainer) pdfHandler.process("uri:second",
+                new ByteArrayInputStream(pdf));
+        assertEquals(1, pdfHandler.getExtractionCache().getHitCount());
+
+        String text = first.getString(NIE.plainTextContent);
+        assertNotNull(text);
+        assertEquals(text, second.getString(NIE.plainTextContent));
+        assertEquals(first.getString(NIE.title), second.getString(NIE.title));
+        assertEquals(first.size(), second.size());
+        first.dispose();
+        second.dispose();
+    }
+
+    private RDFContainer process(String uri, InputStream stream) throws Exception {
+        return handler.process(uri, stream);
+    }
+
+    private void checkStatements(RDFContainer container) {
+        URI id = container.getDescribedUri();
+        assertEquals("title", container.getString(NIE.title));
+        assertEquals(new Date(1000000000000L), container.getDate(NIE.contentCreated));
+        assertEquals(new LanguageTagLiteralImpl("keyword", "en"), container.getNode(NIE.keyword));
+        assertEquals(new URIImpl(id + "#part"), container.getURI(NIE.hasPart));
+
+        URI creator = container.getURI(NCO.creator);
+        assertTrue(creator.toString().startsWith("urn:uuid:"));
+        assertTrue(container.getModel().contains(creator, NCO.fullname, "creator"));
+
+        Node contributor = container.getNode(NCO.contributor);
+        assertTrue(contributor instanceof BlankNode);
+        assertTrue(container.getModel().contains((BlankNode) contributor, NCO.fullname, "contributor"));
+    }
+
+    private static byte[] bytes(String string) throws IOException {
+        return string.getBytes("UTF-8");
+    }
+
+    private static class TestHandler extends CrawlerHandlerBase {
+
+        public TestHandler(MimeTypeIdentifier mimeTypeIdentifier, ExtractorRegistryImpl registry) {
+            super(mimeTypeIdentifier, registry, null);
+        }
+
+        public RDFContainer process(String uri, InputStream stream) throws Exception {
+            RDFContainer container = new BufferedRDFContainer(uri);
+            process(new FileDataObjectBase(container.getDescribedUri(), null, container, stream));
+            return container;
+        }
+
+        public void process(FileDataObject object) throws Exception {
+            processBinary(null, object);
+        }
+    }
+
+    private static class TestMimeTypeIdentifier implements MimeTypeIdentifier {
+
+        public String identify(byte[] firstBytes, String fileName, URI uri) {
+            return MIME_TYPE;
+        }
+
+        public int getMinArrayLength() {
+            return 4;
+        }
+    }
+
+    private static class CountingExtractor implements Extractor {
+
+        private int count;
+
+        private boolean fail;
+
+        private String lastContents;
+
+        public void extract(URI id, InputStream stream, Charset charset, String mimeType, RDFContainer result)
+                throws ExtractorException {
+            count++;
+            try {
+                lastContents = IOUtil.readString(stream);
+            }
+            catch (IOException e) {
+                throw new ExtractorException(e);
+            }
+
+            result.add(NIE.title, "title");
+            if (fail) {
+                throw new ExtractorException("failing on purpose");
+            }
+            result.add(NIE.contentCreated, new Date(1000000000000L));
+            result.add(NIE.keyword, new LanguageTagLiteralImpl("keyword", "en"));
+            result.add(NIE.hasPart, new URIImpl(id + "#part"));
+
+            URI creator = new URIImpl("urn:uuid:" + UUID.randomUUID());
+            result.add(NCO.creator, creator);
+            result.getModel().addStatement(creator, NCO.fullname, "creator");
+
+            BlankNode contributor = result.getValueFactory().createBlankNode();
+            result.add(NCO.contributor, contributor);
+            result.getModel().addStatement(contributor, NCO.fullname, "contributor");
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2006 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.extractor.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.ontoware.rdf2go.model.node.URI;
+import org.semanticdesktop.aperture.extractor.Extractor;
+import org.semanticdesktop.aperture.extractor.ExtractorTestBase;
+import org.semanticdesktop.aperture.extractor.openxml.OpenXmlExtractorFactory;
+import org.semanticdesktop.aperture.extractor.pdf.PdfExtractorFactory;
+import org.semanticdesktop.aperture.extractor.plaintext.PlainTextExtractorFactory;
+import org.semanticdesktop.aperture.extractor.wordperfect.WordPerfectExtractorFactory;
+import org.semanticdesktop.aperture.rdf.FullTextSink;
+import org.semanticdesktop.aperture.rdf.RDFContainer;
+import org.semanticdesktop.aperture.rdf.impl.ModelFullTextSink;
+import org.semanticdesktop.aperture.rdf.impl.RDFContainerFactoryImpl;
+import org.semanticdesktop.aperture.vocabulary.NIE;
+
+/**
+ * Tests for the {@link FullTextWriter} class and the way extractors pass their text to a {@link FullTextSink}.
+ */
+public class FullTextWriterTest extends ExtractorTestBase {
+
+    public void testTextIsStoredInModelWithoutSink() throws IOException {
+        RDFContainer container = createRDFContainer("urn:test");
+        FullTextWriter writer = new FullTextWriter(container);
+        writer.write("first ");
+        writer.write("second".toCharArray());
+        assertNull(container.getString(NIE.plainTextContent));
+        writer.close();
+        assertEquals("first second", container.getString(NIE.plainTextContent));
+        assertEquals(12, writer.getCharCount());
+        assertFalse(writer.isTruncated());
+        container.dispose();
+    }
+
+    public void testNoLiteralWithoutText() throws IOException {
+        RDFContainer container = createRDFContainer("urn:test");
+        FullTextWriter writer = new FullTextWriter(container);
+        writer.write("");
+        writer.close();
+        FullTextWriter.add(container, NIE.plainTextContent, "");
+        assertTrue(container.getAll(NIE.plainTextContent).isEmpty());
+        container.dispose();
+    }
+
+    public void testMaxChars() throws IOException {
+        RDFContainer container = createRDFContainer("urn:test");
+        container.setFullTextSink(new ModelFullTextSink(8));
+        FullTextWriter writer = new FullTextWriter(container);
+        writer.write("abcde");
+        assertFalse(writer.isFull());
+        writer.write("fghij");
+        assertTrue(writer.isFull());
+        assertTrue(writer.isTruncated());
+        writer.write('k');
+        writer.close();
+        assertEquals("abcdefgh", container.getString(NIE.plainTextContent));
+        container.dispose();
+    }
+
+    public void testWriteAfterClose() throws IOException {
+        RDFContainer container = createRDFContainer("urn:test");
+        FullTextWriter writer = new FullTextWriter(container);
+        writer.close();
+        try {
+            writer.write("text");
+            fail();
+        }
+        catch (IOException e) {
+            // this should happen
+        }
+        container.dispose();
+    }
+
+    public void testExtractorsStreamToSink() throws Exception {
+        checkStreamedText(new PlainTextExtractorFactory().get(), "plain-text.txt", "plain text");
+        checkStreamedText(new PdfExtractorFactory().get(), "pdf-word-2000-pdfmaker-7.0.pdf", "Microsoft Word");
+        checkStreamedText(new OpenXmlExtractorFactory().get(), "microsoft-word-2007beta2.docx", "Microsoft");
+        checkStreamedText(new WordPerfectExtractorFactory().get(), "corel-wordperfect-x3.wpd", "WordPerfect");
+    }
+
+    public void testMaxCharsAppliesToAllExtractors() throws Exception {
+        checkMaxChars(new PlainTextExtractorFactory().get(), "plain-text.txt");
+        checkMaxChars(new PdfExtractorFactory().get(), "pdf-word-2000-pdfmaker-7.0.pdf");
+        checkMaxChars(new OpenXmlExtractorFactory().get(), "microsoft-word-2007beta2.docx");
+        checkMaxChars(new WordPerfectExtractorFactory().get(), "corel-wordperfect-x3.wpd");
+    }
+
+    private void checkStreamedText(Extractor extractor, String fileName, String expectedText) throws Exception {
+        CollectingSink sink = new CollectingSink();
+        RDFContainerFactoryImpl factory = new RDFContainerFactoryImpl();
+        factory.setFullTextSink(sink);
+
+        RDFContainer container = extract(DOCS_PATH + fileName, extractor, factory);
+
+        // the text went to the sink and not to the model
+        assertNull(container.getString(NIE.plainTextContent));
+        assertEquals(NIE.plainTextContent, sink.property);
+        assertEquals(container.getDescribedUri(), sink.container.getDescribedUri());
+        assertTrue(sink.closed);
+        assertTrue(sink.text.toString().indexOf(expectedText) >= 0);
+        container.dispose();
+    }
+
+    private void checkMaxChars(Extractor extractor, String fileName) throws Exception {
+        RDFContainerFactoryImpl factory = new RDFContainerFactoryImpl();
+        factory.setFullTextSink(new ModelFullTextSink(10));
+        RDFContainer container = extract(DOCS_PATH + fileName, extractor, factory);
+        assertEquals(10, container.getString(NIE.plainTextContent).length());
+        container.dispose();
+    }
+
+    private static class CollectingSink implements FullTextSink {
+
+        private RDFContainer container;
+
+        private URI property;
+
+        private StringBuilder text = new StringBuilder();
+
+        private boolean closed;
+
+        public int getMaxChars() {
+            return -1;
+        }
+
+        public Writer openText(RDFContainer container, URI property) {
+            this.container = container;
+            this.property = property;
+            return new Writer() {
+
+                public void write(char[] chars, int offset, int length) {
+                    text.append(chars, offset, length);
+                }
+
+                public void flush() {}
+
+                public void close() {
+                    closed = true;
+                }
+            };
+        }
+    }
+}
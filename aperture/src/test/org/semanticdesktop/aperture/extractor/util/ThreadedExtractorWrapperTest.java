@@ -12,12 +12,14 @@ import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import org.ontoware.rdf2go.model.node.URI;
 import org.semanticdesktop.aperture.ApertureTestBase;
 import org.semanticdesktop.aperture.extractor.Extractor;
 import org.semanticdesktop.aperture.extractor.ExtractorException;
+import org.semanticdesktop.aperture.extractor.util.ExtractionService.LatencyStatistics;
 import org.semanticdesktop.aperture.extractor.util.ThreadedExtractorWrapper.ExtractionAbortedException;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 
@@ -168,6 +170,52 @@ public class ThreadedExtractorWrapperTest extends ApertureTestBase {
         testThrowException(new ArrayIndexOutOfBoundsException());
     }
 
+    /**
+     * Tests whether an extractor that ignores being interrupted is quarantined by the ExtractionService: it
+     * should not use up the only thread of the pool and it should be reflected in the metrics.
+     * 
+     * @throws Exception
+     */
+    public void testHangingExtractorIsQuarantined() throws Exception {
+        ExtractionService service = new ExtractionService(1);
+        try {
+            HangingExtractor hangingExtractor = new HangingExtractor();
+            ThreadedExtractorWrapper wrapper = new ThreadedExtractorWrapper(hangingExtractor, 100, 100, 100,
+                    service);
+            try {
+                wrapper.extract(null, null, null, "application/pdf", null);
+                fail();
+            }
+            catch (ExtractionAbortedException eae) {
+                // this should happen
+            }
+            assertEquals(1, service.getTimeoutCount());
+            assertEquals(1, service.getAbandonedThreadCount());
+            assertEquals(1, service.getActiveTaskCount());
+
+            // the pool still has a thread available for other documents
+            initializeStream(1024);
+            wrapper = new ThreadedExtractorWrapper(new WaitingExtractor(0), 100, 100, 100, service);
+            wrapper.extract(null, _stream, null, "text/plain", null);
+            Map<String, LatencyStatistics> latencies = service.getLatencyStatistics();
+            assertEquals(1, latencies.get("text/plain").getCount());
+            assertNull(latencies.get("application/pdf"));
+
+            // once the hanging extractor ends, its thread is released
+            hangingExtractor.release();
+            long end = System.currentTimeMillis() + 5000L;
+            while (service.getAbandonedThreadCount() > 0 && System.currentTimeMillis() < end) {
+                safelySleep(10);
+            }
+            assertEquals(0, service.getAbandonedThreadCount());
+            assertEquals(1, service.getAbandonedTaskCount());
+            assertEquals(0, service.getActiveTaskCount());
+        }
+        finally {
+            service.shutdown();
+        }
+    }
+
     private void testThrowException(Exception e) {
         ExceptionThrowingExtractor extractor = new ExceptionThrowingExtractor(e);
         ThreadedExtractorWrapper tewrapper = new ThreadedExtractorWrapper(extractor);
@@ -210,6 +258,30 @@ public class ThreadedExtractorWrapperTest extends ApertureTestBase {
         }
     }
     
+    /**
+     * An extractor that keeps running, even when interrupted, until it is released.
+     */
+    private static class HangingExtractor implements Extractor {
+
+        private volatile boolean released;
+
+        public void release() {
+            released = true;
+        }
+
+        public void extract(URI id, InputStream stream, Charset charset, String mimeType, RDFContainer result)
+                throws ExtractorException {
+            while (!released) {
+                try {
+                    Thread.sleep(10);
+                }
+                catch (InterruptedException e) {
+                    // ignore, like many real-world extractors do
+                }
+            }
+        }
+    }
+
     private class PlanPoint {
         private int bytes;
         private long pointInTimeOrLength;
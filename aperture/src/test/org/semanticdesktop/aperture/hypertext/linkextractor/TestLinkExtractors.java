@@ -9,7 +9,9 @@ package org.semanticdesktop.aperture.hypertext.linkextractor;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import org.semanticdesktop.aperture.hypertext.linkextractor.html.HtmlAnalysisTest;
 import org.semanticdesktop.aperture.hypertext.linkextractor.html.HtmlLinkExtractorTest;
+import org.semanticdesktop.aperture.hypertext.linkextractor.html.HtmlLinkScannerTest;
 import org.semanticdesktop.aperture.hypertext.linkextractor.impl.TestDefaultLinkExtractorRegistry;
 
 public class TestLinkExtractors extends TestSuite {
@@ -22,6 +24,8 @@ public class TestLinkExtractors extends TestSuite {
         super("link extractors");
         
         addTest(new TestSuite(HtmlLinkExtractorTest.class));
+        addTest(new TestSuite(HtmlLinkScannerTest.class));
+        addTest(new TestSuite(HtmlAnalysisTest.class));
         
         addTest(new TestSuite(TestDefaultLinkExtractorRegistry.class));
     }
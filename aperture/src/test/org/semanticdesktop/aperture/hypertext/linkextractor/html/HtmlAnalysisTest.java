@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.hypertext.linkextractor.html;
+
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.semanticdesktop.aperture.ApertureTestBase;
+import org.semanticdesktop.aperture.hypertext.linkextractor.LinkExtractor;
+import org.semanticdesktop.aperture.util.ExposedByteArrayInputStream;
+import org.semanticdesktop.aperture.util.IOUtil;
+import org.semanticdesktop.aperture.util.ResourceUtil;
+
+public class HtmlAnalysisTest extends ApertureTestBase {
+
+    private static final String BASE_URL = "http://example.org/dir/page.html";
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public void testTextAndMetadata() throws Exception {
+        HtmlAnalysis analysis = analyze("<html><head><title> The &amp; title </title>"
+                + "<META NAME=Author CONTENT=\"Chris\"><meta name=\"keywords\" content=\"a, b,c\ta\">"
+                + "<meta name=description content=\"first\"><meta name=description content=\"second\">"
+                + "<style>p { color: red }</style><script>if (a<b) document.write('<b>x</b>');</script>"
+                + "</head>\n<body>\n  <h1>Hello&nbsp;world</h1>\n<!-- a comment -->"
+                + "<p>Some <a href=\"next.html\">linked</a> text.<xmp>&amp;</xmp></body></html>", null);
+
+        assertEquals("The & title", analysis.getTitle());
+        assertEquals("Chris", analysis.getAuthor());
+        assertEquals("second", analysis.getDescription());
+        assertEquals(Arrays.asList(new String[] { "a", "b", "c" }), Arrays.asList(analysis.getKeywords()
+                .toArray()));
+        assertEquals(" The & title  Hello world Some  linked  text. &amp; ", analysis.getText());
+        assertEquals(Arrays.asList(new String[] { "http://example.org/dir/next.html" }), analysis.getLinks());
+
+        analysis = analyze("<p>no metadata", null);
+        assertNull(analysis.getTitle());
+        assertNull(analysis.getAuthor());
+        assertNull(analysis.getDescription());
+        assertTrue(analysis.getKeywords().isEmpty());
+        assertEquals("no metadata ", analysis.getText());
+    }
+
+    public void testCharsets() throws Exception {
+        String text = "caf\u00e9";
+
+        // the charset reported by the source, ISO-8859-1 when there is none
+        byte[] document = ("<title>" + text + "</title>").getBytes("UTF-8");
+        assertEquals(ISO_8859_1, analyze(document, null).getCharset());
+        assertEquals(text, analyze(document, UTF_8).getTitle());
+
+        // a charset declared in the document overrules it, also when it is declared after the text
+        document = ("<title>" + text + "</title><meta charset=\"utf-8\">").getBytes("UTF-8");
+        assertEquals(text, analyze(document, ISO_8859_1).getTitle());
+        document = ("<title>" + text + "</title><meta http-equiv=Content-Type "
+                + "content=\"text/html; charset=windows-1252\">").getBytes("windows-1252");
+        assertEquals(text, analyze(document, UTF_8).getTitle());
+
+        // unknown and non-ASCII charsets are not taken at their word
+        document = ("<meta charset=\"unknown\"><title>" + text + "</title>").getBytes("UTF-8");
+        assertEquals(UTF_8, analyze(document, UTF_8).getCharset());
+        document = ("<meta charset=\"UTF-16\"><title>" + text + "</title>").getBytes("UTF-8");
+        assertEquals(text, analyze(document, null).getTitle());
+
+        // a byte order mark overrules everything
+        document = ("\ufeff<title>" + text + "</title><meta charset=\"iso-8859-1\">").getBytes("UTF-8");
+        assertEquals(text, analyze(document, ISO_8859_1).getTitle());
+        assertEquals(text + " ", analyze(document, null).getText());
+
+        // documents in UTF-16 are scanned as well
+        document = ("\ufeff<title>" + text + "</title><a href=\"" + text + ".html\">").getBytes("UTF-16LE");
+        HtmlAnalysis analysis = analyze(document, null);
+        assertEquals(text, analysis.getTitle());
+        assertEquals(Arrays.asList(new String[] { "http://example.org/dir/" + text + ".html" }), analysis
+                .getLinks());
+        document = ("<title>" + text + "</title>").getBytes("UTF-16BE");
+        assertEquals(text, analyze(document, Charset.forName("UTF-16BE")).getTitle());
+    }
+
+    public void testLinks() throws Exception {
+        byte[] document = IOUtil.readBytes(ResourceUtil.getInputStream(DOCS_PATH + "html-quelle.de.html",
+            HtmlAnalysisTest.class));
+        URL baseURL = new URL(BASE_URL);
+        for (int i = 0; i < 2; i++) {
+            boolean includeEmbeddedResources = i == 0;
+            HtmlAnalysis analysis = HtmlLinkScanner.analyze(document, 0, document.length, baseURL,
+                includeEmbeddedResources, null);
+            assertEquals(HtmlLinkScanner.extractLinks(document, 0, document.length, baseURL,
+                includeEmbeddedResources), analysis.getLinks());
+            assertTrue(analysis.getTitle().length() > 0);
+            assertTrue(analysis.getText().length() > 0);
+        }
+    }
+
+    public void testSharedAnalysis() throws Exception {
+        byte[] document = "<title>shared</title><a href=x>".getBytes("ISO-8859-1");
+        ExposedByteArrayInputStream stream = new ExposedByteArrayInputStream(document);
+
+        // the link extractor attaches its analysis to the stream
+        HashMap params = new HashMap();
+        params.put(LinkExtractor.BASE_URL_KEY, BASE_URL);
+        params.put(LinkExtractor.CHARSET_KEY, "ISO-8859-1");
+        List links = new HtmlLinkExtractor().extractLinks(stream, params);
+        assertEquals(Arrays.asList(new String[] { "http://example.org/dir/x" }), links);
+        HtmlAnalysis analysis = (HtmlAnalysis) stream.getAttachment();
+        assertNotNull(analysis);
+        assertEquals(-1, stream.read());
+
+        // a consumer of the text reuses it, whatever the links are based on
+        stream.reset();
+        assertSame(analysis, HtmlAnalysis.analyze(stream, null));
+        assertEquals(-1, stream.read());
+        stream.reset();
+        assertSame(analysis, HtmlAnalysis.analyze(stream, ISO_8859_1));
+
+        // but not when the charset, the region or the links differ
+        stream.reset();
+        assertNotSame(analysis, HtmlAnalysis.analyze(stream, UTF_8));
+        stream.reset();
+        HtmlAnalysis otherAnalysis = HtmlAnalysis.analyze(stream, null, false, ISO_8859_1);
+        assertNotSame(analysis, otherAnalysis);
+        assertEquals(Arrays.asList(new String[] { "x" }), otherAnalysis.getLinks());
+        stream.reset();
+        stream.skip(21);
+        assertNull(HtmlAnalysis.analyze(stream, null).getTitle());
+
+        // other streams are analyzed as they are
+        assertEquals("shared", HtmlAnalysis.analyze(new ByteArrayInputStream(document), null).getTitle());
+    }
+
+    private HtmlAnalysis analyze(String document, Charset charset) throws Exception {
+        return analyze(document.getBytes("ISO-8859-1"), charset);
+    }
+
+    private HtmlAnalysis analyze(byte[] document, Charset charset) throws Exception {
+        return HtmlLinkScanner.analyze(document, 0, document.length, new URL(BASE_URL), false, charset);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.hypertext.linkextractor.html;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.semanticdesktop.aperture.ApertureTestBase;
+import org.semanticdesktop.aperture.hypertext.linkextractor.LinkExtractor;
+import org.semanticdesktop.aperture.util.ExposedByteArrayInputStream;
+import org.semanticdesktop.aperture.util.IOUtil;
+import org.semanticdesktop.aperture.util.ResourceUtil;
+
+public class HtmlLinkScannerTest extends ApertureTestBase {
+
+    private static final String BASE_URL = "http://example.org/dir/page.html";
+
+    /**
+     * Documents that exercise the corner cases of the Tokenizer.
+     */
+    private static final String[] DOCUMENTS = {
+            "<a href=x>",
+            "<A HREF='x y'>",
+            "<a href = \"x\" href=y>",
+            "<a href=\"x\" href>",
+            "<a \"href\"=x>",
+            "<a =x href=y>",
+            "<a href=\"x>y\" >",
+            "<a href=\"x",
+            "<a href=x",
+            "<a",
+            "<",
+            "</a",
+            "<a/ href=x><a/>",
+            "<!-- <a href=x> --><a href=y>",
+            "<!-- <a href=x> - -> <a href=z> -- > <a href=y>",
+            "<!--- x -> --><a href=y>",
+            "<!DOCTYPE html PUBLIC \"-//W3C//DTD HTML 4.01//EN\" \"http://www.w3.org/TR/html4/strict.dtd\">"
+                    + "<a href=x>",
+            "<!doctype \"a>b\"><a href=x>",
+            "<!DOC><a href=x>",
+            "<!><a href=x>",
+            "<!-x><a href=x>",
+            "<!a href=x><a href=y>",
+            "<!",
+            "<!-",
+            "<!--",
+            "<base href=\"http://example.com/base/\"><a href=x><base href=nourl><a href=y>",
+            "<meta http-equiv=\" Refresh \" content=\"5; URL=http://example.com/\">",
+            "<meta http-equiv=refresh content=\"0;next.html\"><meta content=x>",
+            "<img src=a lowsrc=b longdesc=c usemap=#d><input src=e usemap=f>",
+            "<frame src=a longdesc=b><iframe src=c><head profile=d><area href=e>",
+            "<q cite=a><blockquote cite=b><ins cite=c><del cite=d>",
+            "<link href=a src=b><layer src=c background=d><ilayer src=e>",
+            "<body background=a><table background=b><tr background=c><th background=d><td background=e>",
+            "<a href=\"a&amp;b&lt;&#65;&#x42;&unknown;&\">",
+            "<a\thref=x\n><a\rhref=y\f><a\u000bhref=z>",
+            "<a\u00a0href=x><a href=\u00a0x>",
+            "<A\u00e9 href=x><a href=\u00e9\u00ff>",
+            "<ablockquote cite=x><blockquotex cite=y>",
+            "text < a href=x> <a href=y>",
+            "<a href=x/>"
+        };
+
+    public void testCornerCases() throws Exception {
+        for (int i = 0; i < DOCUMENTS.length; i++) {
+            byte[] bytes = DOCUMENTS[i].getBytes("ISO-8859-1");
+            checkLinks(bytes, false);
+            checkLinks(bytes, true);
+        }
+    }
+
+    public void testCorpus() throws Exception {
+        URL url = ResourceUtil.getURL(DOCS_PATH + "html-condenast.html", HtmlLinkScannerTest.class);
+        assertNotNull(url);
+        if (!"file".equals(url.getProtocol())) {
+            // the test documents are not in a directory, check the HTML documents only
+            checkResource(DOCS_PATH + "html-condenast.html");
+            checkResource(DOCS_PATH + "html-quelle.de.html");
+            checkResource(DOCS_PATH + "html-handwritten.html");
+            return;
+        }
+
+        // check all documents, the binary ones give the tokenizer a hard time
+        File[] files = new File(url.toURI()).getParentFile().listFiles();
+        int documentCount = 0;
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].isFile()) {
+                checkStream(new FileInputStream(files[i]));
+                documentCount++;
+            }
+        }
+        assertTrue(documentCount > 10);
+    }
+
+    public void testRegions() throws Exception {
+        byte[] document = "<a href=x><a href=y><a href=z>".getBytes("ISO-8859-1");
+        List links = HtmlLinkScanner.extractLinks(document, 10, 10, null, false);
+        assertEquals(1, links.size());
+        assertEquals("y", links.get(0));
+
+        // a heap buffer is scanned in place, a direct one is copied
+        ByteBuffer buffer = ByteBuffer.wrap(document);
+        buffer.position(10);
+        assertEquals(2, HtmlLinkScanner.extractLinks(buffer.slice(), null, false).size());
+        assertEquals(10, buffer.position());
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(document.length);
+        directBuffer.put(document);
+        directBuffer.flip();
+        assertEquals(3, HtmlLinkScanner.extractLinks(directBuffer, null, false).size());
+        assertEquals(0, directBuffer.position());
+
+        try {
+            HtmlLinkScanner.extractLinks(document, 10, document.length, null, false);
+            fail();
+        }
+        catch (IndexOutOfBoundsException e) {
+            // this should happen
+        }
+    }
+
+    public void testExposedStream() throws Exception {
+        byte[] document = "<a href=x><a href=y>".getBytes("ISO-8859-1");
+        ExposedByteArrayInputStream stream = new ExposedByteArrayInputStream(document);
+        stream.skip(10);
+        HashMap params = new HashMap();
+        params.put(LinkExtractor.BASE_URL_KEY, BASE_URL);
+        List links = new HtmlLinkExtractor().extractLinks(stream, params);
+        assertEquals(1, links.size());
+        assertEquals("http://example.org/dir/y", links.get(0));
+        assertEquals(-1, stream.read());
+    }
+
+    public void testConcurrentExtraction() throws Exception {
+        final byte[] bytes = IOUtil.readBytes(ResourceUtil.getInputStream(DOCS_PATH + "html-quelle.de.html",
+            HtmlLinkScannerTest.class));
+        final HtmlLinkExtractor extractor = new HtmlLinkExtractor();
+        final List expected = getLinks(extractor, bytes, false);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ArrayList<Future<List>> futures = new ArrayList<Future<List>>();
+            for (int i = 0; i < 40; i++) {
+                futures.add(executor.submit(new Callable<List>() {
+
+                    public List call() throws Exception {
+                        return getLinks(extractor, bytes, false);
+                    }
+                }));
+            }
+            for (Future<List> future : futures) {
+                assertEquals(expected, future.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private void checkResource(String resource) throws Exception {
+        checkStream(ResourceUtil.getInputStream(resource, HtmlLinkScannerTest.class));
+    }
+
+    private void checkStream(InputStream stream) throws Exception {
+        try {
+            byte[] bytes = IOUtil.readBytes(stream);
+            checkLinks(bytes, false);
+            checkLinks(bytes, true);
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    private void checkLinks(byte[] bytes, boolean includeEmbeddedResources) throws Exception {
+        List expected = getLinks(new TokenizingLinkExtractor(), bytes, includeEmbeddedResources);
+        assertEquals(expected, getLinks(new HtmlLinkExtractor(), bytes, includeEmbeddedResources));
+        assertEquals(expected, HtmlLinkScanner.extractLinks(bytes, 0, bytes.length, new URL(BASE_URL),
+            includeEmbeddedResources));
+    }
+
+    private List getLinks(LinkExtractor extractor, byte[] bytes, boolean includeEmbeddedResources)
+            throws Exception {
+        HashMap params = new HashMap();
+        params.put(LinkExtractor.BASE_URL_KEY, BASE_URL);
+        params.put(LinkExtractor.INCLUDE_EMBEDDED_RESOURCES_KEY, Boolean.valueOf(includeEmbeddedResources));
+        return extractor.extractLinks(new ByteArrayInputStream(bytes), params);
+    }
+}
@@ -6,6 +6,8 @@
  */
 package org.semanticdesktop.aperture.mime.identifier.magic;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -16,6 +18,7 @@ import org.ontoware.rdf2go.model.node.impl.URIImpl;
 import org.semanticdesktop.aperture.mime.identifier.MimeTypeIdentifier;
 import org.semanticdesktop.aperture.util.IOUtil;
 import org.semanticdesktop.aperture.util.ResourceUtil;
+import org.semanticdesktop.aperture.util.UtfUtil;
 
 public class TestMagicMimeTypeIdentifier extends TestCase {
 
@@ -145,4 +148,96 @@ public class TestMagicMimeTypeIdentifier extends TestCase {
 		String uriType = identifier.identify(null, null, URIImpl.createURIWithoutChecking("file:test.html"));
 		assertEquals("text/html", uriType);
 	}
+
+    /**
+     * Checks that the compiled matcher returns the same MIME types as testing all MimeTypeDescriptions one
+     * by one, for all test documents and for their UTF-16 encoded and white space prefixed variants.
+     */
+    public void testCompiledMatcherAgreesWithDescriptions() throws Exception {
+        MagicMimeTypeIdentifier identifier = new MagicMimeTypeIdentifier();
+        ArrayList descriptions = identifier.getMimeTypeDescriptions();
+        MagicMatcher matcher = new MagicMatcher(descriptions);
+        File docsFolder = new File(ResourceUtil.getURL(DOCS_PATH, getClass()).toURI());
+        File[] files = docsFolder.listFiles();
+        assertTrue(files.length > 50);
+
+        for (int i = 0; i < files.length; i++) {
+            if (!files[i].isFile()) {
+                continue;
+            }
+
+            FileInputStream stream = new FileInputStream(files[i]);
+            byte[] bytes = IOUtil.readBytes(stream, identifier.getMinArrayLength());
+            stream.close();
+            String name = files[i].getName();
+            String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+            checkAgreement(matcher, descriptions, bytes, extension);
+            checkAgreement(matcher, descriptions, bytes, null);
+
+            // the same bytes, preceded by white space and by a UTF-16 Byte Order Mark
+            byte[] prefixed = new byte[bytes.length + 2];
+            prefixed[0] = ' ';
+            prefixed[1] = '\n';
+            System.arraycopy(bytes, 0, prefixed, 2, bytes.length);
+            checkAgreement(matcher, descriptions, prefixed, null);
+
+            String text = new String(bytes, "ISO-8859-1");
+            checkAgreement(matcher, descriptions, concat(UtfUtil.UTF16LE_BOM, (" " + text).getBytes("UTF-16LE")),
+                null);
+            checkAgreement(matcher, descriptions, concat(UtfUtil.UTF16BE_BOM, text.getBytes("UTF-16BE")), extension);
+            checkAgreement(matcher, descriptions, concat(UtfUtil.UTF8_BOM, ("\t" + text).getBytes("UTF-8")), null);
+        }
+    }
+
+    private void checkAgreement(MagicMatcher matcher, ArrayList descriptions, byte[] bytes, String extension) {
+        String expected = identifyLinearly(decode(bytes), bytes, extension, descriptions);
+        assertEquals(extension, expected, matcher.identify(new MagicInput(bytes), extension));
+    }
+
+    private byte[] concat(byte[] first, byte[] second) {
+        byte[] result = new byte[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private char[] decode(byte[] bytes) {
+        byte[] bom = UtfUtil.findMatchingBOM(bytes);
+        int bomLength = bom == null ? 0 : bom.length;
+        int contentLength = (bytes.length - bomLength) & ~1;
+        try {
+            String charset = UtfUtil.getCharsetName(bom == null ? UtfUtil.UTF8_BOM : bom);
+            return new String(bytes, bomLength, contentLength, charset).toCharArray();
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The reference algorithm: tests the descriptions one by one, in list order.
+     */
+    private String identifyLinearly(char[] chars, byte[] bytes, String extension, ArrayList descriptions) {
+        for (int i = 0; i < descriptions.size(); i++) {
+            MimeTypeDescription description = (MimeTypeDescription) descriptions.get(i);
+            if (description.matches(chars)) {
+                String result = identifyLinearly(chars, bytes, extension, description.getRequiringTypes());
+                return result == null ? description.getMimeType() : result;
+            }
+        }
+        for (int i = 0; i < descriptions.size(); i++) {
+            MimeTypeDescription description = (MimeTypeDescription) descriptions.get(i);
+            if (description.matches(bytes)) {
+                String result = identifyLinearly(chars, bytes, extension, description.getRequiringTypes());
+                return result == null ? description.getMimeType() : result;
+            }
+        }
+        for (int i = 0; extension != null && i < descriptions.size(); i++) {
+            MimeTypeDescription description = (MimeTypeDescription) descriptions.get(i);
+            if (description.containsExtension(extension)) {
+                return description.getMimeType();
+            }
+        }
+        return null;
+    }
 }
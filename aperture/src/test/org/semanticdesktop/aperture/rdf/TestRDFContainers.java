@@ -9,6 +9,7 @@ package org.semanticdesktop.aperture.rdf;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import org.semanticdesktop.aperture.rdf.impl.TestBufferedRDFContainer;
 import org.semanticdesktop.aperture.rdf.impl.TestRdfContainerImpl;
 
 public class TestRDFContainers extends TestSuite {
@@ -21,5 +22,6 @@ public class TestRDFContainers extends TestSuite {
         super("RDF containers");
         
         addTest(new TestSuite(TestRdfContainerImpl.class));
+        addTest(new TestSuite(TestBufferedRDFContainer.class));
     }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2005 - 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ * 
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.rdf.impl;
+
+import java.util.Collection;
+import java.util.Date;
+
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.ontoware.rdf2go.vocabulary.RDF;
+import org.ontoware.rdf2go.vocabulary.RDFS;
+import org.semanticdesktop.aperture.ApertureTestBase;
+import org.semanticdesktop.aperture.rdf.MultipleValuesException;
+import org.semanticdesktop.aperture.rdf.ValueFactory;
+
+public class TestBufferedRDFContainer extends ApertureTestBase {
+
+    private static final URI SUBJECT = URIImpl.createURIWithoutChecking("urn:test:dummy");
+
+    private static final URI PROP_INT = URIImpl.createURIWithoutChecking("http://example.com/ont/int");
+
+    private static final URI PROP_DATE = URIImpl.createURIWithoutChecking("http://example.com/ont/date");
+
+    public void testPutSemantics() throws Exception {
+        BufferedRDFContainer container = new BufferedRDFContainer(SUBJECT);
+        ValueFactory valFac = container.getValueFactory();
+
+        assertNull(container.getString(RDFS.label));
+
+        container.put(RDFS.label, "label");
+        assertEquals("label", container.getString(RDFS.label));
+
+        container.put(RDFS.label, "label2");
+        assertEquals("label2", container.getString(RDFS.label));
+        assertEquals(1, container.size());
+
+        container.add(RDFS.label, valFac.createLiteral("label3"));
+        try {
+            container.getString(RDFS.label);
+            fail();
+        }
+        catch (MultipleValuesException e) {
+            // this is the required behaviour
+        }
+        try {
+            container.put(RDFS.label, "label4");
+            fail();
+        }
+        catch (MultipleValuesException e) {
+            // this is the required behaviour
+        }
+        assertEquals(2, container.getAll(RDFS.label).size());
+        assertFalse(container.isMaterialized());
+        container.dispose();
+    }
+
+    public void testTypedValues() {
+        BufferedRDFContainer container = new BufferedRDFContainer(SUBJECT);
+        Date date = new Date(1000L * (System.currentTimeMillis() / 1000L));
+
+        container.put(PROP_INT, 23);
+        container.put(PROP_DATE, date);
+        container.put(RDFS.seeAlso, RDF.type);
+
+        assertEquals(new Integer(23), container.getInteger(PROP_INT));
+        assertEquals(date, container.getDate(PROP_DATE));
+        assertEquals(RDF.type, container.getURI(RDFS.seeAlso));
+
+        container.remove(PROP_INT);
+        assertNull(container.getInteger(PROP_INT));
+        assertEquals(2, container.size());
+        container.dispose();
+    }
+
+    public void testAddIsIdempotent() throws Exception {
+        BufferedRDFContainer container = new BufferedRDFContainer(SUBJECT);
+        ValueFactory valFac = container.getValueFactory();
+
+        container.add(RDFS.label, "label");
+        container.add(RDFS.label, "label");
+        container.add(valFac.createStatement(SUBJECT, RDFS.label, valFac.createLiteral("label")));
+        assertEquals(1, container.size());
+        assertEquals("label", container.getString(RDFS.label));
+
+        container.remove(valFac.createStatement(SUBJECT, RDFS.label, valFac.createLiteral("label")));
+        assertEquals(0, container.size());
+        container.dispose();
+    }
+
+    public void testMaterialization() throws Exception {
+        BufferedRDFContainer container = new BufferedRDFContainer(SUBJECT);
+        ValueFactory valFac = container.getValueFactory();
+
+        container.put(RDFS.label, "label");
+        container.add(valFac.createStatement(RDF.type, RDFS.label, valFac.createLiteral("type")));
+        assertEquals(2, container.getStatements().size());
+        assertFalse(container.isMaterialized());
+
+        Model model = container.getModel();
+        assertTrue(container.isMaterialized());
+        assertEquals(2, model.size());
+        assertTrue(model.contains(SUBJECT, RDFS.label, valFac.createLiteral("label")));
+
+        // the container now edits the model
+        container.put(RDFS.label, "label2");
+        assertTrue(model.contains(SUBJECT, RDFS.label, valFac.createLiteral("label2")));
+        assertFalse(model.contains(SUBJECT, RDFS.label, valFac.createLiteral("label")));
+        assertEquals("label2", container.getString(RDFS.label));
+        container.dispose();
+    }
+
+    public void testLargeContainerIsMaterialized() {
+        BufferedRDFContainer container = new BufferedRDFContainer(SUBJECT);
+        for (int i = 0; i < 2000; i++) {
+            container.add(RDFS.comment, i);
+        }
+        assertTrue(container.isMaterialized());
+        Collection values = container.getAll(RDFS.comment);
+        assertEquals(2000, values.size());
+        container.dispose();
+    }
+
+    public void testPredicatesBeyondInternTable() throws Exception {
+        // fill the table of interned predicates, which is shared by all containers
+        for (int i = 0; i < 5000; i++) {
+            BufferedRDFContainer filler = new BufferedRDFContainer(SUBJECT);
+            filler.add(URIImpl.createURIWithoutChecking("http://example.com/ont/filler" + i), i);
+            filler.dispose();
+        }
+
+        // equal predicates that are not interned are distinct instances
+        String uri = "http://example.com/ont/uninterned";
+        BufferedRDFContainer container = new BufferedRDFContainer(SUBJECT);
+        container.put(URIImpl.createURIWithoutChecking(uri), "a");
+        container.put(URIImpl.createURIWithoutChecking(uri), "b");
+        assertEquals(1, container.size());
+        assertEquals("b", container.getString(URIImpl.createURIWithoutChecking(uri)));
+
+        container.add(URIImpl.createURIWithoutChecking(uri), "c");
+        assertEquals(2, container.getAll(URIImpl.createURIWithoutChecking(uri)).size());
+        ValueFactory valFac = container.getValueFactory();
+        container.remove(valFac.createStatement(SUBJECT, URIImpl.createURIWithoutChecking(uri), valFac
+                .createLiteral("c")));
+        container.remove(URIImpl.createURIWithoutChecking(uri));
+        assertEquals(0, container.size());
+        assertFalse(container.isMaterialized());
+        container.dispose();
+    }
+}
@@ -6,6 +6,7 @@
  */
 package org.semanticdesktop.aperture.subcrawler.zip;
 
+import java.io.File;
 import java.io.InputStream;
 import java.util.Set;
 
@@ -15,9 +16,13 @@ import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.model.node.impl.URIImpl;
 import org.ontoware.rdf2go.vocabulary.RDF;
 import org.semanticdesktop.aperture.accessor.DataObject;
+import org.semanticdesktop.aperture.accessor.FileDataObject;
 import org.semanticdesktop.aperture.rdf.RDFContainer;
 import org.semanticdesktop.aperture.rdf.impl.RDFContainerFactoryImpl;
+import org.semanticdesktop.aperture.subcrawler.PathNotFoundException;
 import org.semanticdesktop.aperture.subcrawler.SubCrawlerTestBase;
+import org.semanticdesktop.aperture.util.ExposedFileInputStream;
+import org.semanticdesktop.aperture.util.IOUtil;
 import org.semanticdesktop.aperture.util.ResourceUtil;
 import org.semanticdesktop.aperture.vocabulary.NFO;
 
@@ -77,6 +82,46 @@ public class ZipSubCrawlerTest extends SubCrawlerTestBase {
         assertEquals(new URIImpl("zip:uri:dummyuri/zip-test.zip!/zip-test/test2.txt"),obj.getID());
     }
     
+    /**
+     * Tests whether entries of zip files are looked up in the central directory
+     */
+    public void testAccessingZipFileEntries() throws Exception {
+        File file = File.createTempFile("zip-test", ".zip");
+        try {
+            IOUtil.writeStream(ResourceUtil.getInputStream(DOCS_PATH + "zip-test.zip", getClass()), file);
+            URI parentUri = new URIImpl("uri:dummyuri/zip-test.zip");
+            ZipSubCrawler subCrawler = new ZipSubCrawler();
+
+            InputStream stream = new ExposedFileInputStream(file);
+            DataObject obj = subCrawler.getDataObject(parentUri, "/zip-test/subfolder/test4.txt", stream, null,
+                null, null, new RDFContainerFactoryImpl());
+            assertEquals(new URIImpl("zip:uri:dummyuri/zip-test.zip!/zip-test/subfolder/test4.txt"), obj.getID());
+            assertCrc32Hash(obj.getMetadata().getModel(), obj.getID(), 4267625106L);
+            // the file stream has not been read, the entry has been read from the zip file
+            assertEquals(0, ((ExposedFileInputStream) stream).getPosition());
+            InputStream expected = ResourceUtil.getInputStream(DOCS_PATH + "zip-test.zip", getClass());
+            DataObject expectedObj = subCrawler.getDataObject(parentUri, "/zip-test/subfolder/test4.txt",
+                expected, null, null, null, new RDFContainerFactoryImpl());
+            assertEquals(new String(IOUtil.readBytes(((FileDataObject) expectedObj).getContent())), new String(
+                IOUtil.readBytes(((FileDataObject) obj).getContent())));
+            expectedObj.dispose();
+            obj.dispose();
+
+            try {
+                subCrawler.getDataObject(parentUri, "/zip-test/missing.txt", stream, null, null, null,
+                    new RDFContainerFactoryImpl());
+                fail();
+            }
+            catch (PathNotFoundException e) {
+                // this should happen
+            }
+            stream.close();
+        }
+        finally {
+            file.delete();
+        }
+    }
+
     private void assertCrc32Hash(Model model, Resource resource, long i) {
         Resource hashResource = findSingleObjectResource(model, resource, NFO.hasHash);
         assertSingleValueProperty(model, hashResource, RDF.type, NFO.FileHash);
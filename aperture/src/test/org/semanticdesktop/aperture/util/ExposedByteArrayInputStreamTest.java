@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2008 Aduna and Deutsches Forschungszentrum fuer Kuenstliche Intelligenz DFKI GmbH.
+ * All rights reserved.
+ *
+ * Licensed under the Aperture BSD-style license.
+ */
+package org.semanticdesktop.aperture.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ExposedByteArrayInputStream}.
+ */
+public class ExposedByteArrayInputStreamTest extends TestCase {
+
+    public void testReadFullyWithExactHint() throws IOException {
+        byte[] data = createData(1000);
+        ExposedByteArrayInputStream stream = ExposedByteArrayInputStream.readFully(new ByteArrayInputStream(
+                data), data.length);
+        assertEquals(data.length + 1, stream.getBuffer().length);
+        assertContents(data, stream);
+    }
+
+    public void testReadFullyWithBogusHint() throws IOException {
+        // a Content-Length header of almost 2 GB must not be allocated up front
+        byte[] data = createData(1000);
+        ExposedByteArrayInputStream stream = ExposedByteArrayInputStream.readFully(new ByteArrayInputStream(
+                data), Integer.MAX_VALUE - 1);
+        assertTrue(stream.getBuffer().length <= 1024 * 1024);
+        assertContents(data, stream);
+    }
+
+    public void testReadFullyGrowsBeyondInitialBuffer() throws IOException {
+        byte[] data = createData(3 * 1024 * 1024 + 17);
+        ExposedByteArrayInputStream stream = ExposedByteArrayInputStream.readFully(new ByteArrayInputStream(
+                data), data.length);
+        assertContents(data, stream);
+
+        stream = ExposedByteArrayInputStream.readFully(new ByteArrayInputStream(data), 0);
+        assertContents(data, stream);
+    }
+
+    private byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    private void assertContents(byte[] expected, ExposedByteArrayInputStream stream) {
+        assertEquals(expected.length, stream.getCount());
+        byte[] actual = new byte[stream.getCount()];
+        System.arraycopy(stream.getBuffer(), 0, actual, 0, actual.length);
+        assertTrue(Arrays.equals(expected, actual));
+    }
+}
@@ -28,5 +28,6 @@ public class TestUtils extends TestSuite {
         addTest(new TestSuite(UriUtilTest.class));
         addTest(new TestSuite(DateUtilTest.class));
         addTest(new TestSuite(HttpClientUtilTest.class));
+        addTest(new TestSuite(ExposedByteArrayInputStreamTest.class));
     }
 }